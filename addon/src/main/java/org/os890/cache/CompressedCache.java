@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache;
+
+import javax.cache.Cache;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Extensions of the JCache API offered by the compressed caches.
+ *
+ * <p>The caches created by {@link CompressedCacheFactory} implement this interface:</p>
+ * <pre>
+ * CompressedCache&lt;String, MyData&gt; compressedCache = cache.unwrap(CompressedCache.class);
+ * </pre>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public interface CompressedCache<K, V> extends Cache<K, V> {
+
+    /**
+     * Reads the value of the given key on the {@link CompressedCacheOptions#asyncExecutor(Executor) async executor},
+     * so the calling thread doesn't pay for decompression.
+     *
+     * <p>Like all asynchronous operations, the returned future fails with a
+     * {@link RejectedExecutionException} if {@link CompressedCacheOptions#maxPendingAsyncOperations(int)}
+     * operations are pending already, instead of blocking the caller.</p>
+     *
+     * @param key the key
+     * @return the value, completed with {@code null} if there is no mapping
+     */
+    CompletableFuture<V> getAsync(K key);
+
+    /**
+     * Compresses and stores the value on the async executor, like {@link #put(Object, Object)}.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return completed once the value is stored
+     */
+    CompletableFuture<Void> putAsync(K key, V value);
+
+    /**
+     * Reads the values of the given keys on the async executor, like {@link #getAll(Set)}.
+     *
+     * @param keys the keys
+     * @return the found values
+     */
+    CompletableFuture<Map<K, V>> getAllAsync(Set<? extends K> keys);
+
+    /**
+     * Compresses and stores the given entries on the async executor, like {@link #putAll(Map)}.
+     *
+     * @param map the entries
+     * @return completed once the entries are stored, or failed with a {@link PutAllException}
+     */
+    CompletableFuture<Void> putAllAsync(Map<? extends K, ? extends V> map);
+
+    /**
+     * Returns the compression counters of this cache.
+     *
+     * @return a live view of the counters
+     */
+    CompressionStatistics getCompressionStatistics();
+
+    /**
+     * Returns the counters of the tier of decoded values, see {@link CompressedCacheOptions#hotTier(long)}.
+     *
+     * @return a live view of the counters, all {@code 0} if the cache has no hot tier
+     */
+    HotTierStatistics getHotTierStatistics();
+
+    /**
+     * Returns the JCache statistics together with the compression metrics of this cache.
+     *
+     * @return a live view of the statistics, the JCache counters stay {@code 0} unless
+     *         {@link CompressedCacheOptions#statisticsEnabled(boolean) enabled}
+     */
+    CompressedCacheStatisticsMXBean getStatistics();
+
+    /**
+     * Returns the keys of all entries, without decompressing any value.
+     *
+     * <p>Like {@link #iterator()} the iteration is weakly consistent: it never fails due to
+     * concurrent changes, which may or may not be reflected.  {@link Iterator#remove()}
+     * removes the mapping of the last key.</p>
+     *
+     * @return an iterator over the keys, including those of the disk tier
+     */
+    Iterator<K> keyIterator();
+
+    /**
+     * Returns a stream of all entries, which decompresses a value only if its
+     * {@link Cache.Entry#getValue()} gets called.
+     *
+     * <p>The stream splits across the entries of the cache, so a {@link Stream#parallel() parallel}
+     * scan which filters by key and then reads the values decompresses them in parallel.
+     * Values read by a scan don't populate the soft references of
+     * {@link CompressedValueMode#FAST FAST} mode or the hot tier.  Concurrent changes may or may not be reflected.</p>
+     *
+     * @return a sequential stream of the entries, including those of the disk tier
+     */
+    Stream<Cache.Entry<K, V>> stream();
+
+    /**
+     * Writes all entries with their compressed bytes to the given file, e.g. to warm up
+     * the cache after a restart via {@link #loadSnapshot(Path)}.
+     *
+     * <p>Values are neither decompressed nor re-marshalled, only the keys get serialised.
+     * The snapshot is weakly consistent: concurrent changes may or may not be included.</p>
+     *
+     * @param file the snapshot file, replaced atomically once the snapshot is complete
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeSnapshot(Path file) throws IOException;
+
+    /**
+     * Writes the keys which were put or removed since the previous snapshot to the given file.
+     *
+     * <p>Needs {@link CompressedCacheOptions#incrementalSnapshots(boolean)}.  To restore the
+     * cache, load the last full snapshot followed by the incremental ones in the order they
+     * were written.</p>
+     *
+     * @param file the snapshot file, replaced atomically once the snapshot is complete
+     * @throws IOException           if the snapshot cannot be written
+     * @throws IllegalStateException if incremental snapshots aren't enabled or no full snapshot was written yet
+     */
+    void writeIncrementalSnapshot(Path file) throws IOException;
+
+    /**
+     * Loads a full or incremental snapshot into this cache.
+     *
+     * <p>Blocks of the file are parsed in parallel and the compressed bytes are stored as-is,
+     * so loading costs hardly more than reading the file.  The cache has to use the same
+     * codec class and serializer as the cache which wrote the snapshot; for a
+     * {@link org.os890.cache.serializer.GeneratedSerializer generated serializer} the fields of
+     * the value class have to be the same as well.</p>
+     *
+     * @param file the snapshot file
+     * @return the number of loaded records, including removals
+     * @throws IOException              if the snapshot cannot be read
+     * @throws IllegalArgumentException if the snapshot was written with a different codec or serializer
+     */
+    long loadSnapshot(Path file) throws IOException;
+}
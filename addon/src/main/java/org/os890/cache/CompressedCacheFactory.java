@@ -20,25 +20,22 @@
 package org.os890.cache;
 
 import com.google.common.cache.CacheBuilder;
-import org.apache.ignite.Ignition;
-import org.apache.ignite.configuration.IgniteConfiguration;
-import org.apache.ignite.internal.binary.BinaryMarshaller;
-import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
-import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
+import org.os890.cache.internal.CompressedEntryWeigher;
 import org.os890.cache.internal.GuavaWrapper;
 
 import javax.cache.Cache;
-import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Factory for creating and managing {@link Cache} instances backed by Guava
- * with transparent value compression (GZIP via {@link CompressedEntry}).
+ * with transparent value compression (GZIP by default, see {@link CompressedCacheOptions#codec(CompressionCodec)}).
  *
- * <p>On first use, optionally starts an Apache Ignite node (controlled by the
- * {@code org.os890.cache.START_IGNITE} system property, default {@code true})
- * to provide the binary marshaller used for value serialisation.</p>
+ * <p>Values are serialised with the {@link ValueSerializer} of the cache options, by default
+ * the Ignite binary marshaller without an Ignite node
+ * ({@link org.os890.cache.serializer.IgniteBinarySerializer}).  For records and simple value
+ * classes a serializer gets generated from the value class, see
+ * {@link CompressedCacheOptions#generatedSerializer(boolean)}.</p>
  *
  * <p>Cache instances are stored by name and reused across calls with the same name.</p>
  */
@@ -46,33 +43,6 @@ public class CompressedCacheFactory {
 
     private static Map<String, Cache<?, ?>> cacheMap = new ConcurrentHashMap<>();
 
-    static {
-        boolean startIgnite = "true".equalsIgnoreCase(System.getProperty("org.os890.cache.START_IGNITE", "true"));
-
-        if (startIgnite) {
-            System.setProperty("IGNITE_UPDATE_NOTIFIER", "false");
-            System.setProperty("IGNITE_QUIET", "true");
-            System.setProperty("IGNITE_NO_ASCII", "true");
-
-            TcpDiscoverySpi nodeDiscovery = new TcpDiscoverySpi();
-            TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder();
-            ipFinder.setAddresses(Collections.singletonList("127.0.0.1"));
-            nodeDiscovery.setIpFinder(ipFinder);
-
-            // Ignite 2.17 removed IgniteConfiguration.setDaemon(); the node now runs
-            // as a non-daemon server by default.  BinaryMarshaller is set explicitly so
-            // that GuavaWrapper can retrieve it from the running configuration.
-            BinaryMarshaller binaryMarshaller = new BinaryMarshaller();
-            // Ignite deprecated setMarshaller/getMarshaller but no replacement
-            // exists for explicitly configuring the marshaller.
-            @SuppressWarnings("deprecation")
-            IgniteConfiguration configuration = new IgniteConfiguration()
-                    .setDiscoverySpi(nodeDiscovery)
-                    .setMarshaller(binaryMarshaller);
-            Ignition.start(configuration);
-        }
-    }
-
     /**
      * Creates or retrieves a cache with the given name and maximum size,
      * using {@link CompressedValueMode#FAST FAST} compression.
@@ -82,7 +52,7 @@ public class CompressedCacheFactory {
      * @param cacheName unique cache name
      * @param maxSize   maximum number of entries
      * @param keyClass  key class (unused at runtime, for type inference)
-     * @param valueClass value class (unused at runtime, for type inference)
+     * @param valueClass value class (used to generate a serializer, may be {@code null})
      * @return the named cache
      */
     public static <K, V> Cache<K, V> getOrCreateSimpleCache(String cacheName, long maxSize, Class<K> keyClass, Class<V> valueClass) {
@@ -97,7 +67,7 @@ public class CompressedCacheFactory {
      * @param cacheName          unique cache name
      * @param maxSize            maximum number of entries
      * @param keyClass           key class (unused at runtime, for type inference)
-     * @param valueClass         value class (unused at runtime, for type inference)
+     * @param valueClass         value class (used to generate a serializer, may be {@code null})
      * @param compressedValueMode compression strategy to use
      * @return the named cache
      */
@@ -105,6 +75,64 @@ public class CompressedCacheFactory {
         return getOrCreateCache(cacheName, CacheBuilder.newBuilder().maximumSize(maxSize), keyClass, valueClass, compressedValueMode);
     }
 
+    /**
+     * Creates or retrieves a cache with the given name, maximum size, and options.
+     *
+     * @param <K>        key type
+     * @param <V>        value type
+     * @param cacheName  unique cache name
+     * @param maxSize    maximum number of entries
+     * @param keyClass   key class (unused at runtime, for type inference)
+     * @param valueClass value class (used to generate a serializer, may be {@code null})
+     * @param options    compression mode, codec and further settings
+     * @return the named cache
+     */
+    public static <K, V> Cache<K, V> getOrCreateSimpleCache(String cacheName, long maxSize, Class<K> keyClass, Class<V> valueClass, CompressedCacheOptions options) {
+        return getOrCreateCache(cacheName, CacheBuilder.newBuilder().maximumSize(maxSize), keyClass, valueClass, options);
+    }
+
+    /**
+     * Creates or retrieves a cache limited by the memory its entries retain,
+     * using {@link CompressedValueMode#FAST FAST} compression.
+     *
+     * @param <K>        key type
+     * @param <V>        value type
+     * @param cacheName  unique cache name
+     * @param maxBytes   maximum retained size of all entries in bytes
+     * @param keyClass   key class (unused at runtime, for type inference)
+     * @param valueClass value class (used to generate a serializer, may be {@code null})
+     * @return the named cache
+     * @see #getOrCreateSizedCache(String, long, Class, Class, CompressedCacheOptions)
+     */
+    public static <K, V> Cache<K, V> getOrCreateSizedCache(String cacheName, long maxBytes, Class<K> keyClass, Class<V> valueClass) {
+        return getOrCreateSizedCache(cacheName, maxBytes, keyClass, valueClass, CompressedCacheOptions.newOptions());
+    }
+
+    /**
+     * Creates or retrieves a cache limited by the memory its entries retain.
+     *
+     * <p>Entries are weighed by {@link CompressedEntryWeigher}: the compressed bytes plus a
+     * per-entry overhead, in FAST mode plus an estimate of the decoded value while it's softly
+     * reachable, in OFF_HEAP mode including the off-heap bytes.  The weight is estimated when
+     * an entry gets stored.  Custom builders can use the weigher together with
+     * {@code maximumWeight(long)} as well.</p>
+     *
+     * @param <K>        key type
+     * @param <V>        value type
+     * @param cacheName  unique cache name
+     * @param maxBytes   maximum retained size of all entries in bytes
+     * @param keyClass   key class (unused at runtime, for type inference)
+     * @param valueClass value class (used to generate a serializer, may be {@code null})
+     * @param options    compression mode, codec and further settings
+     * @return the named cache
+     */
+    public static <K, V> Cache<K, V> getOrCreateSizedCache(String cacheName, long maxBytes, Class<K> keyClass, Class<V> valueClass, CompressedCacheOptions options) {
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(CompressedEntryWeigher.INSTANCE);
+        return getOrCreateCache(cacheName, cacheBuilder, keyClass, valueClass, options);
+    }
+
     /**
      * Creates or retrieves a cache with the given name and Guava cache builder,
      * using {@link CompressedValueMode#FAST FAST} compression.
@@ -112,9 +140,9 @@ public class CompressedCacheFactory {
      * @param <K>                  key type
      * @param <V>                  value type
      * @param cacheName            unique cache name
-     * @param providedCacheBuilder Guava cache builder controlling eviction and other settings
+     * @param providedCacheBuilder Guava cache builder controlling eviction and other settings, consumed by the cache
      * @param keyClass             key class (unused at runtime, for type inference)
-     * @param valueClass           value class (unused at runtime, for type inference)
+     * @param valueClass           value class (used to generate a serializer, may be {@code null})
      * @return the named cache
      */
     public static <K, V> Cache<K, V> getOrCreateCache(String cacheName, CacheBuilder<Object, Object> providedCacheBuilder, Class<K> keyClass, Class<V> valueClass) {
@@ -127,31 +155,55 @@ public class CompressedCacheFactory {
      * @param <K>                  key type
      * @param <V>                  value type
      * @param cacheName            unique cache name
-     * @param providedCacheBuilder Guava cache builder controlling eviction and other settings
+     * @param providedCacheBuilder Guava cache builder controlling eviction and other settings, consumed by the cache
      * @param keyClass             key class (unused at runtime, for type inference)
-     * @param valueClass           value class (unused at runtime, for type inference)
+     * @param valueClass           value class (used to generate a serializer, may be {@code null})
      * @param compressedValueMode  compression strategy to use
      * @return the named cache
      */
-    @SuppressWarnings("unchecked")
     public static <K, V> Cache<K, V> getOrCreateCache(String cacheName, CacheBuilder<Object, Object> providedCacheBuilder, Class<K> keyClass, Class<V> valueClass, CompressedValueMode compressedValueMode) {
+        return getOrCreateCache(cacheName, providedCacheBuilder, keyClass, valueClass, CompressedCacheOptions.newOptions().valueMode(compressedValueMode));
+    }
+
+    /**
+     * Creates or retrieves a cache with the given name, Guava cache builder, and options.
+     *
+     * <p>The given builder is consumed: the cache configures it before it builds its Guava cache,
+     * e.g. with the expiry of the options and {@code recordStats()}, so it can't be reused for a
+     * further cache.  In {@link CompressedValueMode#OFF_HEAP OFF_HEAP} mode and with
+     * {@link CompressedCacheOptions#diskOverflow(java.nio.file.Path, long) disk overflow}, or with
+     * {@link CompressedCacheOptions#cacheEntryListener(javax.cache.configuration.CacheEntryListenerConfiguration)
+     * entry listeners} or {@link CompressedCacheOptions#deferredCompression(java.time.Duration) deferred compression}
+     * in the options, a removal listener gets registered on the builder, which therefore must not have one already.</p>
+     *
+     * @param <K>                  key type
+     * @param <V>                  value type
+     * @param cacheName            unique cache name
+     * @param providedCacheBuilder Guava cache builder controlling eviction and other settings, consumed by the cache
+     * @param keyClass             key class (unused at runtime, for type inference)
+     * @param valueClass           value class (used to generate a serializer, may be {@code null})
+     * @param options              compression mode, codec and further settings
+     * @return the named cache
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Cache<K, V> getOrCreateCache(String cacheName, CacheBuilder<Object, Object> providedCacheBuilder, Class<K> keyClass, Class<V> valueClass, CompressedCacheOptions options) {
         Cache<K, V> foundCache = (Cache<K, V>) cacheMap.get(cacheName);
 
         if (foundCache != null) {
             return foundCache;
         }
-        return createCache(cacheName, providedCacheBuilder, compressedValueMode);
+        return createCache(cacheName, providedCacheBuilder, valueClass, options);
     }
 
     @SuppressWarnings("unchecked")
-    private static synchronized <K, V> Cache<K, V> createCache(String cacheName, CacheBuilder<Object, Object> cacheBuilder, CompressedValueMode compressedValueMode) {
+    private static synchronized <K, V> Cache<K, V> createCache(String cacheName, CacheBuilder<Object, Object> cacheBuilder, Class<V> valueClass, CompressedCacheOptions options) {
         Cache<K, V> foundCache = (Cache<K, V>) cacheMap.get(cacheName);
 
         if (foundCache != null) {
             return foundCache;
         }
 
-        Cache<K, V> newCache = new GuavaWrapper<>(cacheName, cacheBuilder, compressedValueMode);
+        Cache<K, V> newCache = new GuavaWrapper<>(cacheName, cacheBuilder, valueClass, options);
         cacheMap.put(cacheName, newCache);
         return newCache;
     }
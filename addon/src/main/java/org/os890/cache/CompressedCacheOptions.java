@@ -0,0 +1,804 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache;
+
+import org.os890.cache.codec.GzipCodec;
+import org.os890.cache.serializer.IgniteBinarySerializer;
+
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.integration.CacheLoader;
+
+import java.io.ObjectInputFilter;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Settings of a compressed cache which go beyond the Guava {@code CacheBuilder}.
+ *
+ * <p>Follows the fluent style of the Guava builder:</p>
+ * <pre>
+ * CompressedCacheOptions options = CompressedCacheOptions.newOptions()
+ *         .valueMode(CompressedValueMode.SMALL)
+ *         .codec(new Lz4BlockCodec());
+ * </pre>
+ *
+ * <p>The options are read once when the cache gets created; later changes have no effect
+ * on existing caches.</p>
+ */
+public class CompressedCacheOptions {
+
+    /** Default value of {@link #minCompressionSize(int)}. */
+    public static final int DEFAULT_MIN_COMPRESSION_SIZE = 64;
+
+    /** Default value of {@link #minCompressionRatio(double)}. */
+    public static final double DEFAULT_MIN_COMPRESSION_RATIO = 1.1;
+
+    /** Default value of {@link #deferredCompressionHeapWatermark(double)}. */
+    public static final double DEFAULT_DEFERRED_COMPRESSION_HEAP_WATERMARK = 0.8;
+
+    /** Default value of {@link #maxPendingAsyncOperations(int)}. */
+    public static final int DEFAULT_MAX_PENDING_ASYNC_OPERATIONS = 1024;
+
+    /** Default value of {@link #parallelBatchThreshold(int)}. */
+    public static final int DEFAULT_PARALLEL_BATCH_THRESHOLD = 256;
+
+    private CompressedValueMode valueMode = CompressedValueMode.FAST;
+    private CompressionCodec codec = new GzipCodec();
+    private ValueSerializer serializer;
+    private ObjectInputFilter deserializationFilter;
+    private int minCompressionSize = DEFAULT_MIN_COMPRESSION_SIZE;
+    private double minCompressionRatio = DEFAULT_MIN_COMPRESSION_RATIO;
+    private Path diskOverflowDirectory;
+    private long maxDiskOverflowBytes;
+    private boolean incrementalSnapshots;
+    private boolean generatedSerializer;
+    private boolean serializedValueComparison;
+    private long hotTierMaxBytes;
+    private Duration deferredCompressionIdleTime;
+    private double deferredCompressionHeapWatermark = DEFAULT_DEFERRED_COMPRESSION_HEAP_WATERMARK;
+    private int parallelBatchThreshold = DEFAULT_PARALLEL_BATCH_THRESHOLD;
+    private int batchParallelism = Runtime.getRuntime().availableProcessors();
+    private Executor batchExecutor;
+    private Executor asyncExecutor;
+    private int maxPendingAsyncOperations = DEFAULT_MAX_PENDING_ASYNC_OPERATIONS;
+    private CacheLoader<?, ?> cacheLoader;
+    private Duration refreshAfterWrite;
+    private Duration expireAfterWrite;
+    private Duration expireAfterAccess;
+    private boolean statisticsEnabled;
+    private Executor listenerExecutor;
+    private final List<CacheEntryListenerConfiguration<?, ?>> cacheEntryListenerConfigurations = new ArrayList<>();
+
+    /**
+     * Creates options with the defaults: {@link CompressedValueMode#FAST FAST} mode and GZIP compression.
+     *
+     * @return new options
+     */
+    public static CompressedCacheOptions newOptions() {
+        return new CompressedCacheOptions();
+    }
+
+    /**
+     * Sets the compression mode.
+     *
+     * @param valueMode the compression mode
+     * @return these options
+     */
+    public CompressedCacheOptions valueMode(CompressedValueMode valueMode) {
+        this.valueMode = Objects.requireNonNull(valueMode, "valueMode");
+        return this;
+    }
+
+    /**
+     * Sets the codec used to compress the serialised values.
+     *
+     * @param codec the codec
+     * @return these options
+     */
+    public CompressedCacheOptions codec(CompressionCodec codec) {
+        this.codec = Objects.requireNonNull(codec, "codec");
+        return this;
+    }
+
+    /**
+     * Sets the serializer which converts values to bytes before they get compressed.
+     *
+     * <p>Defaults to {@link IgniteBinarySerializer#getDefault()}, the Ignite binary format without
+     * an Ignite node.  {@link org.os890.cache.serializer.JavaSerializer} works without Ignite on
+     * the classpath.</p>
+     *
+     * @param serializer the serializer
+     * @return these options
+     */
+    public CompressedCacheOptions serializer(ValueSerializer serializer) {
+        this.serializer = Objects.requireNonNull(serializer, "serializer");
+        return this;
+    }
+
+    /**
+     * Sets the filter for the classes the serializer may instantiate when it reads values back,
+     * e.g. from snapshots or the disk tier.
+     *
+     * <p>Without a filter, a cache created with a value class accepts the classes of the package
+     * of the value class (and its sub-packages) and of the {@code java.base} module, and rejects
+     * all others.  Values referencing classes of other packages, and snapshots with keys of other
+     * packages, need a filter which accepts them, e.g.
+     * {@code ObjectInputFilter.Config.createFilter("com.example.**;java.base/*;!*")}.  Rejected
+     * values can't be read and count as decompression failures.  Caches without a value class
+     * only apply the JVM-wide filter of Java serialization.</p>
+     *
+     * @param deserializationFilter the filter, checked with the class of every object the serializer restores
+     * @return these options
+     */
+    public CompressedCacheOptions deserializationFilter(ObjectInputFilter deserializationFilter) {
+        this.deserializationFilter = Objects.requireNonNull(deserializationFilter, "deserializationFilter");
+        return this;
+    }
+
+    /**
+     * Enables the serializer generated for the value class of the cache.
+     *
+     * <p>If the value class passed to the factory is a record or a simple value class (see
+     * {@link org.os890.cache.serializer.GeneratedSerializer}), its fields are written directly,
+     * without the class names and schemas the generic serializers store with every value.  The
+     * configured {@link #serializer(ValueSerializer) serializer} is still used for other classes
+     * and field types.  Disabled by default: values are rebuilt via the constructor of the class,
+     * and after a change of its fields values written before (in snapshots or the disk tier)
+     * can't be read anymore, see {@link org.os890.cache.serializer.GeneratedSerializer}.</p>
+     *
+     * @param generatedSerializer {@code true} to generate a serializer, {@code false} to serialise all values with the configured serializer
+     * @return these options
+     */
+    public CompressedCacheOptions generatedSerializer(boolean generatedSerializer) {
+        this.generatedSerializer = generatedSerializer;
+        return this;
+    }
+
+    /**
+     * Compares the expected value of {@code replace(key, oldValue, newValue)} and
+     * {@code remove(key, oldValue)} with the stored value by their serialised forms.
+     *
+     * <p>The expected value gets serialised once and its 64-bit fingerprint gets compared with the
+     * one the stored form records, so a different value is rejected without decompressing it.  If
+     * the fingerprints match, the serialised values are compared byte by byte (after decompressing,
+     * but without deserialising the stored value).  Values count as equal only if their serialised
+     * forms are, which deviates from the {@code equals} semantics of JCache for value classes whose
+     * {@code equals} is looser than their serialised form (e.g. ignoring a field which still gets
+     * serialised, or collections serialised in iteration order).  Disabled by default, the stored
+     * value then gets decoded and compared via {@code equals}.</p>
+     *
+     * @param serializedValueComparison {@code true} to compare serialised forms, {@code false} to compare values via {@code equals}
+     * @return these options
+     */
+    public CompressedCacheOptions serializedValueComparison(boolean serializedValueComparison) {
+        this.serializedValueComparison = serializedValueComparison;
+        return this;
+    }
+
+    /**
+     * Sets the serialised size below which values are stored uncompressed.
+     *
+     * <p>Tiny values don't compress, the codec header alone can make them larger.</p>
+     *
+     * @param minCompressionSize size in bytes, {@code 0} compresses every value
+     * @return these options
+     */
+    public CompressedCacheOptions minCompressionSize(int minCompressionSize) {
+        if (minCompressionSize < 0) {
+            throw new IllegalArgumentException("minCompressionSize must not be negative");
+        }
+        this.minCompressionSize = minCompressionSize;
+        return this;
+    }
+
+    /**
+     * Sets the compression ratio (serialised size / compressed size) a value has to reach
+     * to be stored compressed.
+     *
+     * <p>Large values are probed by compressing a prefix, so incompressible payloads like
+     * JPEG images or pre-zipped documents are detected without compressing them completely.
+     * Values which don't reach the ratio are stored uncompressed and are read without
+     * decompression.</p>
+     *
+     * @param minCompressionRatio the minimum ratio, values up to {@code 1} store every value
+     *                            in compressed form which is smaller than the serialised one
+     * @return these options
+     */
+    public CompressedCacheOptions minCompressionRatio(double minCompressionRatio) {
+        if (minCompressionRatio < 0 || Double.isNaN(minCompressionRatio)) {
+            throw new IllegalArgumentException("minCompressionRatio must not be negative");
+        }
+        this.minCompressionRatio = minCompressionRatio;
+        return this;
+    }
+
+    /**
+     * Enables a disk tier for entries evicted because the maximum size of the cache was reached.
+     *
+     * <p>The compressed bytes of evicted entries are appended as-is to memory-mapped segment files
+     * in a subdirectory named after the cache, which stays locked while the cache is open.  A read which misses in memory falls through to the disk tier and
+     * moves the entry back to memory.  If the disk budget is used up, the oldest segment gets
+     * dropped.  The files are deleted when the cache gets closed.</p>
+     *
+     * <p>Entries on disk keep the expiry they had in memory: the {@link #expireAfterWrite(Duration)}
+     * deadline of their original write, and for {@link #expireAfterAccess(Duration)} the time of the
+     * eviction plus the access timeout.  Limitations: a promoted entry starts a new expiry period
+     * in the Guava cache, so it can stay in memory up to one period longer than configured (it
+     * isn't written to disk again after its original deadline), and the deadlines are based on
+     * {@link System#nanoTime()}, not on a custom {@code Ticker} of the cache builder.  The expiry
+     * has to be configured in these options, a cache builder with an expiry of its own is
+     * rejected.</p>
+     *
+     * @param directory    parent directory of the per-cache segment directories
+     * @param maxDiskBytes maximum size of all segment files, at least one segment of 1 MiB
+     *                     gets created
+     * @return these options
+     */
+    public CompressedCacheOptions diskOverflow(Path directory, long maxDiskBytes) {
+        if (maxDiskBytes <= 0) {
+            throw new IllegalArgumentException("maxDiskBytes must be positive");
+        }
+        this.diskOverflowDirectory = Objects.requireNonNull(directory, "directory");
+        this.maxDiskOverflowBytes = maxDiskBytes;
+        return this;
+    }
+
+    /**
+     * Enables tracking of changed keys for {@link CompressedCache#writeIncrementalSnapshot(Path)}.
+     *
+     * <p>Costs one set operation per write, so it's disabled by default.</p>
+     *
+     * @param incrementalSnapshots {@code true} to track changes between snapshots
+     * @return these options
+     */
+    public CompressedCacheOptions incrementalSnapshots(boolean incrementalSnapshots) {
+        this.incrementalSnapshots = incrementalSnapshots;
+        return this;
+    }
+
+    /**
+     * Adds a tier of decoded values in front of the compressed entries, limited by the
+     * estimated size of the decoded values.
+     *
+     * <p>A frequency-based admission policy (W-TinyLFU) decides which values stay decoded, so
+     * values read once don't push out values read over and over.  Unlike the soft references
+     * of {@link CompressedValueMode#FAST FAST} mode, which the garbage collector clears all at
+     * once under memory pressure, the tier keeps a predictable set of hot values.  In FAST mode
+     * the entries therefore don't keep soft references if a hot tier is configured.  The hit
+     * rate is available via {@link CompressedCache#getHotTierStatistics()}.</p>
+     *
+     * @param maxBytes estimated size of all decoded values the tier may hold
+     * @return these options
+     */
+    public CompressedCacheOptions hotTier(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.hotTierMaxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Keeps new values uncompressed until they weren't read for the given idle time.
+     *
+     * <p>A background compactor replaces idle entries with compressed ones of the configured
+     * {@link #valueMode(CompressedValueMode) mode}.  Values which get overwritten, removed or
+     * evicted before, e.g. in session-like caches with a high churn, are never compressed.
+     * If the used heap exceeds the {@link #deferredCompressionHeapWatermark(double) watermark},
+     * all pending values get compressed right away.</p>
+     *
+     * <p>The compressed entry replaces the pending one in the Guava cache, which counts as a
+     * write: the {@link #expireAfterWrite(Duration) expiry after write} starts again once a value got
+     * compressed, so such values live up to the idle time longer.  Evicted and removed values
+     * are dropped via a removal listener, the cache builder therefore must not have one.</p>
+     *
+     * <p>Reads of pending values return the stored instance, like reads in
+     * {@link CompressedValueMode#FAST FAST} mode while the soft reference is set.</p>
+     *
+     * @param idleTime time without reads after which a value gets compressed
+     * @return these options
+     */
+    public CompressedCacheOptions deferredCompression(Duration idleTime) {
+        if (idleTime.isNegative() || idleTime.isZero()) {
+            throw new IllegalArgumentException("idleTime must be positive");
+        }
+        this.deferredCompressionIdleTime = idleTime;
+        return this;
+    }
+
+    /**
+     * Sets the fraction of the maximum heap above which all values pending for
+     * {@link #deferredCompression(Duration) deferred compression} get compressed right away.
+     *
+     * @param heapWatermark fraction of {@link Runtime#maxMemory()}, between {@code 0} and {@code 1}
+     * @return these options
+     */
+    public CompressedCacheOptions deferredCompressionHeapWatermark(double heapWatermark) {
+        if (!(heapWatermark >= 0 && heapWatermark <= 1)) {
+            throw new IllegalArgumentException("heapWatermark must be between 0 and 1");
+        }
+        this.deferredCompressionHeapWatermark = heapWatermark;
+        return this;
+    }
+
+    /**
+     * Sets the batch size from which {@code getAll} decompresses and {@code putAll} compresses
+     * the values in parallel.
+     *
+     * <p>Smaller batches are processed on the calling thread, where handing the work to
+     * other threads costs more than it saves.</p>
+     *
+     * @param parallelBatchThreshold number of entries, {@link Integer#MAX_VALUE} disables parallel batches
+     * @return these options
+     */
+    public CompressedCacheOptions parallelBatchThreshold(int parallelBatchThreshold) {
+        if (parallelBatchThreshold < 1) {
+            throw new IllegalArgumentException("parallelBatchThreshold must be positive");
+        }
+        this.parallelBatchThreshold = parallelBatchThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the number of parts a parallel batch is split into.
+     *
+     * <p>The calling thread processes one part itself, the others are submitted to the
+     * {@link #batchExecutor(Executor) batch executor}.  Defaults to the number of processors.</p>
+     *
+     * @param batchParallelism number of parts, {@code 1} disables parallel batches
+     * @return these options
+     */
+    public CompressedCacheOptions batchParallelism(int batchParallelism) {
+        if (batchParallelism < 1) {
+            throw new IllegalArgumentException("batchParallelism must be positive");
+        }
+        this.batchParallelism = batchParallelism;
+        return this;
+    }
+
+    /**
+     * Sets the executor for parallel batches.
+     *
+     * <p>Defaults to {@link ForkJoinPool#commonPool()}, which is shared with parallel streams and
+     * the background work of the cache.  A dedicated executor keeps large batches from
+     * competing with them.</p>
+     *
+     * @param batchExecutor the executor
+     * @return these options
+     */
+    public CompressedCacheOptions batchExecutor(Executor batchExecutor) {
+        this.batchExecutor = Objects.requireNonNull(batchExecutor, "batchExecutor");
+        return this;
+    }
+
+    /**
+     * Sets the executor of the asynchronous operations like {@link CompressedCache#putAsync(Object, Object)}.
+     *
+     * <p>Defaults to a new virtual thread per operation, so operations which wait for the
+     * disk tier don't hold a platform thread.</p>
+     *
+     * @param asyncExecutor the executor
+     * @return these options
+     */
+    public CompressedCacheOptions asyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = Objects.requireNonNull(asyncExecutor, "asyncExecutor");
+        return this;
+    }
+
+    /**
+     * Sets the number of asynchronous operations which may be pending at the same time.
+     *
+     * <p>Further operations fail right away with a {@link java.util.concurrent.RejectedExecutionException},
+     * so callers on event-loop threads never block and can shed load or retry.</p>
+     *
+     * @param maxPendingAsyncOperations maximum number of submitted but not yet completed operations
+     * @return these options
+     */
+    public CompressedCacheOptions maxPendingAsyncOperations(int maxPendingAsyncOperations) {
+        if (maxPendingAsyncOperations < 1) {
+            throw new IllegalArgumentException("maxPendingAsyncOperations must be positive");
+        }
+        this.maxPendingAsyncOperations = maxPendingAsyncOperations;
+        return this;
+    }
+
+    /**
+     * Sets the loader which reads values through on misses.
+     *
+     * <p>{@code get} and {@code getAll} load missing values, {@code getAll} with one
+     * {@link CacheLoader#loadAll(Iterable)} call for all missing keys.  Concurrent misses of
+     * the same key wait for one load, whose value is compressed once.  {@code loadAll} of the
+     * cache uses the loader as well.</p>
+     *
+     * @param cacheLoader the loader, its key and value types have to match the cache
+     * @return these options
+     */
+    public CompressedCacheOptions cacheLoader(CacheLoader<?, ?> cacheLoader) {
+        this.cacheLoader = Objects.requireNonNull(cacheLoader, "cacheLoader");
+        return this;
+    }
+
+    /**
+     * Reloads values read after the given time since they were stored, before they expire.
+     *
+     * <p>The read returns the current value, the {@link #cacheLoader(CacheLoader) loader} runs
+     * on the {@link #asyncExecutor(Executor) async executor} and the loaded value replaces the
+     * entry unless it was changed meanwhile.  If the reload fails, the current value stays.
+     * Use a shorter time than the {@link #expireAfterWrite(Duration) expiry}, so frequently
+     * read entries don't expire.</p>
+     *
+     * @param refreshAfterWrite time after which a read triggers a reload
+     * @return these options
+     */
+    public CompressedCacheOptions refreshAfterWrite(Duration refreshAfterWrite) {
+        if (refreshAfterWrite.isNegative() || refreshAfterWrite.isZero()) {
+            throw new IllegalArgumentException("refreshAfterWrite must be positive");
+        }
+        this.refreshAfterWrite = refreshAfterWrite;
+        return this;
+    }
+
+    /**
+     * Expires entries the given time after they were stored, configured on the Guava cache
+     * builder when the cache gets created.
+     *
+     * <p>Set the expiry here instead of on the cache builder: the builder doesn't expose its
+     * settings, so the cache only knows the expiry configured in these options.  The
+     * {@link #diskOverflow(Path, long) disk tier} needs it for the deadlines of evicted entries
+     * and rejects a cache builder with an expiry of its own.</p>
+     *
+     * @param expireAfterWrite time after which stored entries expire
+     * @return these options
+     */
+    public CompressedCacheOptions expireAfterWrite(Duration expireAfterWrite) {
+        if (expireAfterWrite.isNegative()) {
+            throw new IllegalArgumentException("expireAfterWrite must not be negative");
+        }
+        this.expireAfterWrite = expireAfterWrite;
+        return this;
+    }
+
+    /**
+     * Expires entries the given time after they were last read or stored, configured on the
+     * Guava cache builder when the cache gets created.
+     *
+     * <p>Like {@link #expireAfterWrite(Duration)}, set it here instead of on the cache builder.</p>
+     *
+     * @param expireAfterAccess time after which entries expire which weren't accessed
+     * @return these options
+     */
+    public CompressedCacheOptions expireAfterAccess(Duration expireAfterAccess) {
+        if (expireAfterAccess.isNegative()) {
+            throw new IllegalArgumentException("expireAfterAccess must not be negative");
+        }
+        this.expireAfterAccess = expireAfterAccess;
+        return this;
+    }
+
+    /**
+     * Records the JCache statistics and compression latencies, and registers them via JMX.
+     *
+     * <p>The cache registers a {@link javax.cache.management.CacheStatisticsMXBean} and a
+     * {@link CompressedCacheStatisticsMXBean} with the platform MBean server, which get
+     * unregistered when the cache is closed.  Counters are striped, recording costs two
+     * {@code System.nanoTime()} calls per operation and one per (de)compression.  The eviction
+     * count comes from the Guava cache, the cache enables {@code recordStats()} on its builder.</p>
+     *
+     * @param statisticsEnabled whether to record statistics, disabled by default
+     * @return these options
+     */
+    public CompressedCacheOptions statisticsEnabled(boolean statisticsEnabled) {
+        this.statisticsEnabled = statisticsEnabled;
+        return this;
+    }
+
+    /**
+     * Sets the executor which delivers the events of asynchronous entry listeners.
+     *
+     * <p>Events are queued per listener and a task on this executor hands them over in
+     * batches, at most one task per listener at a time.  Defaults to a new virtual thread
+     * per task.</p>
+     *
+     * @param listenerExecutor the executor
+     * @return these options
+     */
+    public CompressedCacheOptions listenerExecutor(Executor listenerExecutor) {
+        this.listenerExecutor = Objects.requireNonNull(listenerExecutor, "listenerExecutor");
+        return this;
+    }
+
+    /**
+     * Registers an entry listener when the cache gets created.
+     *
+     * <p>Listeners can also be registered later via
+     * {@link javax.cache.Cache#registerCacheEntryListener(CacheEntryListenerConfiguration)}, but
+     * expired events need a removal listener on the Guava cache, which is installed only if
+     * listeners are configured here (or in {@link CompressedValueMode#OFF_HEAP OFF_HEAP} mode
+     * and with {@link #diskOverflow(Path, long) disk overflow}).  Without it, caches which expire
+     * entries reject later registered listeners for expired events.</p>
+     *
+     * @param configuration the listener configuration, its key and value types have to match the cache
+     * @return these options
+     */
+    public CompressedCacheOptions cacheEntryListener(CacheEntryListenerConfiguration<?, ?> configuration) {
+        cacheEntryListenerConfigurations.add(Objects.requireNonNull(configuration, "configuration"));
+        return this;
+    }
+
+    /**
+     * Returns the compression mode.
+     *
+     * @return the compression mode
+     */
+    public CompressedValueMode getValueMode() {
+        return valueMode;
+    }
+
+    /**
+     * Returns the codec used to compress the serialised values.
+     *
+     * @return the codec
+     */
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Returns the serializer which converts values to bytes.
+     *
+     * @return the configured serializer, or the shared {@link IgniteBinarySerializer} if none was set
+     */
+    public ValueSerializer getSerializer() {
+        return serializer != null ? serializer : IgniteBinarySerializer.getDefault();
+    }
+
+    /**
+     * Returns the filter for the classes the serializer may instantiate.
+     *
+     * @return the configured filter, or {@code null} to derive it from the value class
+     */
+    public ObjectInputFilter getDeserializationFilter() {
+        return deserializationFilter;
+    }
+
+    /**
+     * Returns whether a serializer gets generated for the value class of the cache.
+     *
+     * @return {@code true} if generated serializers are enabled
+     */
+    public boolean isGeneratedSerializer() {
+        return generatedSerializer;
+    }
+
+    /**
+     * Returns whether conditional operations compare values by their serialised forms.
+     *
+     * @return {@code true} if serialised forms are compared
+     */
+    public boolean isSerializedValueComparison() {
+        return serializedValueComparison;
+    }
+
+    /**
+     * Returns the size of the tier of decoded values.
+     *
+     * @return the size in bytes, {@code 0} if there is no hot tier
+     */
+    public long getHotTierMaxBytes() {
+        return hotTierMaxBytes;
+    }
+
+    /**
+     * Returns the idle time after which new values get compressed.
+     *
+     * @return the idle time, or {@code null} if values are compressed when they are stored
+     */
+    public Duration getDeferredCompressionIdleTime() {
+        return deferredCompressionIdleTime;
+    }
+
+    /**
+     * Returns the fraction of the maximum heap above which pending values get compressed right away.
+     *
+     * @return the heap watermark
+     */
+    public double getDeferredCompressionHeapWatermark() {
+        return deferredCompressionHeapWatermark;
+    }
+
+    /**
+     * Returns the batch size from which {@code getAll} and {@code putAll} process the values in parallel.
+     *
+     * @return number of entries
+     */
+    public int getParallelBatchThreshold() {
+        return parallelBatchThreshold;
+    }
+
+    /**
+     * Returns the number of parts a parallel batch is split into.
+     *
+     * @return number of parts
+     */
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    /**
+     * Returns the executor for parallel batches.
+     *
+     * @return the configured executor, or the common fork-join pool if none was set
+     */
+    public Executor getBatchExecutor() {
+        return batchExecutor != null ? batchExecutor : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Returns the executor of the asynchronous operations.
+     *
+     * @return the configured executor, or one starting a virtual thread per operation if none was set
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor != null ? asyncExecutor : VirtualThreadExecutor.ASYNC;
+    }
+
+    /**
+     * Returns the number of asynchronous operations which may be pending at the same time.
+     *
+     * @return maximum number of pending operations
+     */
+    public int getMaxPendingAsyncOperations() {
+        return maxPendingAsyncOperations;
+    }
+
+    /**
+     * Returns the loader which reads values through on misses.
+     *
+     * @return the loader, or {@code null} if the cache isn't read-through
+     */
+    public CacheLoader<?, ?> getCacheLoader() {
+        return cacheLoader;
+    }
+
+    /**
+     * Returns the time after which reads trigger a reload of the value.
+     *
+     * @return the time, or {@code null} if values don't get refreshed
+     */
+    public Duration getRefreshAfterWrite() {
+        return refreshAfterWrite;
+    }
+
+    /**
+     * Returns the time after which stored entries expire.
+     *
+     * @return the time, or {@code null} if not configured in these options
+     */
+    public Duration getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    /**
+     * Returns the time after which entries expire which weren't accessed.
+     *
+     * @return the time, or {@code null} if not configured in these options
+     */
+    public Duration getExpireAfterAccess() {
+        return expireAfterAccess;
+    }
+
+    /**
+     * Returns whether statistics are recorded and registered via JMX.
+     *
+     * @return {@code true} if statistics are enabled
+     */
+    public boolean isStatisticsEnabled() {
+        return statisticsEnabled;
+    }
+
+    /**
+     * Returns the executor which delivers the events of asynchronous entry listeners.
+     *
+     * @return the configured executor, or one starting a virtual thread per task if none was set
+     */
+    public Executor getListenerExecutor() {
+        return listenerExecutor != null ? listenerExecutor : VirtualThreadExecutor.LISTENER;
+    }
+
+    /**
+     * Returns the entry listeners registered when the cache gets created.
+     *
+     * @return the listener configurations, never {@code null}
+     */
+    public List<CacheEntryListenerConfiguration<?, ?>> getCacheEntryListenerConfigurations() {
+        return List.copyOf(cacheEntryListenerConfigurations);
+    }
+
+    /**
+     * Returns the serialised size below which values are stored uncompressed.
+     *
+     * @return size in bytes
+     */
+    public int getMinCompressionSize() {
+        return minCompressionSize;
+    }
+
+    /**
+     * Returns the compression ratio a value has to reach to be stored compressed.
+     *
+     * @return the minimum ratio
+     */
+    public double getMinCompressionRatio() {
+        return minCompressionRatio;
+    }
+
+    /**
+     * Returns the directory of the disk tier for evicted entries.
+     *
+     * @return the directory, or {@code null} if the disk tier is disabled
+     */
+    public Path getDiskOverflowDirectory() {
+        return diskOverflowDirectory;
+    }
+
+    /**
+     * Returns the maximum size of the disk tier for evicted entries.
+     *
+     * @return size in bytes, {@code 0} if the disk tier is disabled
+     */
+    public long getMaxDiskOverflowBytes() {
+        return maxDiskOverflowBytes;
+    }
+
+    /**
+     * Returns whether changed keys are tracked for incremental snapshots.
+     *
+     * @return {@code true} if incremental snapshots are enabled
+     */
+    public boolean isIncrementalSnapshots() {
+        return incrementalSnapshots;
+    }
+
+    /**
+     * Default async and listener executor, starts a virtual thread per task.
+     */
+    private static final class VirtualThreadExecutor implements Executor {
+
+        private static final VirtualThreadExecutor ASYNC = new VirtualThreadExecutor("compressed-cache-async-");
+        private static final VirtualThreadExecutor LISTENER = new VirtualThreadExecutor("compressed-cache-listener-");
+
+        private final ThreadFactory threadFactory;
+
+        private VirtualThreadExecutor(String namePrefix) {
+            this.threadFactory = Thread.ofVirtual().name(namePrefix, 0).factory();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            threadFactory.newThread(task).start();
+        }
+    }
+}
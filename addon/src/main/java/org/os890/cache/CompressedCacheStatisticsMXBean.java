@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache;
+
+import javax.cache.management.CacheStatisticsMXBean;
+
+/**
+ * Statistics of a compressed cache, the JCache counters extended by compression metrics.
+ *
+ * <p>With {@link CompressedCacheOptions#statisticsEnabled(boolean)} the cache registers the
+ * standard {@link CacheStatisticsMXBean} as {@code javax.cache:type=CacheStatistics} and this
+ * extended view as {@code org.os890.cache:type=CompressedCacheStatistics}, both with the
+ * cache name as {@code Cache} property.  Available via {@link CompressedCache#getStatistics()}
+ * as well.</p>
+ *
+ * <p>The JCache counters (hits, misses, puts, removals, evictions and their timings) and the
+ * latency histograms are only recorded while statistics are enabled; {@link #clear()} resets
+ * them.  The other compression counters are recorded always.</p>
+ *
+ * <p>Histograms are arrays of counts per latency bucket: bucket {@code 0} counts operations
+ * below one microsecond, bucket {@code i} those which took from {@code 2^(i-1)} up to
+ * {@code 2^i} microseconds, the last bucket all longer ones.</p>
+ */
+public interface CompressedCacheStatisticsMXBean extends CacheStatisticsMXBean, CompressionStatistics {
+
+    /**
+     * Returns the serialised size of all values which were compressed or stored uncompressed.
+     *
+     * @return the number of bytes before compression
+     */
+    long getSerializedBytes();
+
+    /**
+     * Returns the size of the stored forms created for these values.
+     *
+     * @return the number of bytes after compression
+     */
+    long getStoredBytes();
+
+    /**
+     * Returns the ratio between the serialised and the stored bytes.
+     *
+     * @return the compression ratio, {@code 0} if no value was stored yet
+     */
+    default double getCompressionRatio() {
+        long storedBytes = getStoredBytes();
+        return storedBytes == 0 ? 0 : (double) getSerializedBytes() / storedBytes;
+    }
+
+    /**
+     * Returns the number of values which couldn't be serialised or compressed.
+     *
+     * @return the number of failed compressions
+     */
+    long getCompressionFailures();
+
+    /**
+     * Returns the number of stored values which couldn't be decompressed or deserialised.
+     *
+     * @return the number of failed decompressions
+     */
+    long getDecompressionFailures();
+
+    /**
+     * Returns the histogram of the time spent to serialise and compress a value.
+     *
+     * @return the counts per latency bucket
+     */
+    long[] getCompressTimeHistogram();
+
+    /**
+     * Returns the histogram of the time spent to decompress and deserialise a value.
+     *
+     * @return the counts per latency bucket
+     */
+    long[] getDecompressTimeHistogram();
+
+    /**
+     * Returns the 99th percentile of the compression time.
+     *
+     * @return the upper bound of the bucket of the percentile in microseconds
+     */
+    float getCompressTime99thPercentile();
+
+    /**
+     * Returns the 99th percentile of the decompression time.
+     *
+     * @return the upper bound of the bucket of the percentile in microseconds
+     */
+    float getDecompressTime99thPercentile();
+
+    /**
+     * Returns the number of {@link CompressedValueMode#FAST FAST} reads served by the soft
+     * reference to the decoded value.
+     *
+     * @return the number of reads without decompression
+     */
+    long getSoftReferenceHits();
+
+    /**
+     * Returns the number of {@link CompressedValueMode#FAST FAST} reads which had to
+     * decompress, because the soft reference was cleared.
+     *
+     * @return the number of reads with decompression
+     */
+    long getSoftReferenceMisses();
+
+    /**
+     * Returns the share of {@link CompressedValueMode#FAST FAST} reads served by the soft reference.
+     *
+     * @return a value between {@code 0} and {@code 1}
+     */
+    default double getSoftReferenceHitRate() {
+        long hits = getSoftReferenceHits();
+        long total = hits + getSoftReferenceMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the memory retained by the entries currently in memory, estimated like
+     * {@link CompressedCacheFactory#getOrCreateSizedCache(String, long, Class, Class, CompressedCacheOptions) sized caches}
+     * weigh them.  Computed on each call by visiting all entries.
+     *
+     * @return the estimated footprint in bytes, including off-heap memory
+     */
+    long getCompressedFootprint();
+}
@@ -36,5 +36,15 @@ public enum CompressedValueMode {
      * Stores only the compressed bytes without a soft reference to the uncompressed value.
      * Every read decompresses the value, using less memory than {@link #FAST}.
      */
-    SMALL
+    SMALL,
+
+    /**
+     * Stores the compressed bytes outside the Java heap in slabs allocated via the
+     * foreign memory API, the cache only holds a small handle per entry.
+     * Reads behave like {@link #SMALL}, but the payloads neither count towards the old
+     * generation nor need to be marked by the garbage collector.  The memory is released
+     * when entries get evicted or invalidated and when the cache is closed.
+     * Can't be combined with {@code softValues()} or {@code weakValues()}.
+     */
+    OFF_HEAP
 }
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache;
+
+import java.io.IOException;
+
+/**
+ * Compresses and decompresses the serialised form of cache values.
+ *
+ * <p>A codec is selected per cache via {@link CompressedCacheOptions#codec(CompressionCodec)}.
+ * Implementations have to be thread-safe, since a single instance is shared by all
+ * entries of a cache.  Ready-to-use implementations are available in the
+ * {@code org.os890.cache.codec} package.</p>
+ *
+ * <p>Both methods work on caller-provided arrays, so the cache can compress into a pooled
+ * scratch buffer and decompress straight into an array of the exact uncompressed size.
+ * The uncompressed length is stored by the cache, codecs don't need to record it.</p>
+ */
+public interface CompressionCodec {
+
+    /**
+     * Compresses the given input range into the given output range.
+     *
+     * @param input           the uncompressed bytes
+     * @param inputOffset     start of the uncompressed bytes
+     * @param inputLength     number of uncompressed bytes
+     * @param output          the target array
+     * @param outputOffset    start of the target range
+     * @param maxOutputLength size of the target range
+     * @return the number of bytes written, or {@code -1} if the compressed form doesn't fit
+     *         into {@code maxOutputLength} bytes
+     * @throws IOException if the input cannot be compressed
+     */
+    int compress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength) throws IOException;
+
+    /**
+     * Restores the bytes produced by {@link #compress(byte[], int, int, byte[], int, int)}.
+     *
+     * @param input        the compressed bytes
+     * @param inputOffset  start of the compressed bytes
+     * @param inputLength  number of compressed bytes
+     * @param output       the target array
+     * @param outputOffset start of the target range
+     * @param outputLength the uncompressed length, the target range gets filled completely
+     * @throws IOException if the input is corrupt or was not produced by this codec
+     */
+    void decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int outputLength) throws IOException;
+
+    /**
+     * Returns the state which is needed to decompress values later on, e.g. trained dictionaries.
+     *
+     * <p>Cache snapshots store it next to the compressed values and pass it to
+     * {@link #importState(byte[])} of the codec which reads them after a restart.</p>
+     *
+     * @return the state, or {@code null} for stateless codecs
+     */
+    default byte[] exportState() {
+        return null;
+    }
+
+    /**
+     * Restores the state returned by {@link #exportState()}, so values compressed
+     * by the exporting codec instance can be decompressed.
+     *
+     * @param state the exported state
+     * @throws IOException if the state is corrupt or conflicts with the current state
+     */
+    default void importState(byte[] state) throws IOException {
+        //stateless
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache;
+
+/**
+ * Counters describing how the values of a cache were stored.
+ *
+ * <p>Available via {@link CompressedCache#getCompressionStatistics()}.</p>
+ */
+public interface CompressionStatistics {
+
+    /**
+     * Returns the number of values stored in compressed form.
+     *
+     * @return the number of compressed values
+     */
+    long getCompressedCount();
+
+    /**
+     * Returns the number of values stored uncompressed, because they were too small
+     * or didn't reach the configured compression ratio.
+     *
+     * @return the number of values which skipped compression
+     */
+    long getBypassedCount();
+
+    /**
+     * Returns the share of values which skipped compression.
+     *
+     * @return a value between {@code 0} and {@code 1}
+     */
+    default double getBypassRate() {
+        long bypassed = getBypassedCount();
+        long total = bypassed + getCompressedCount();
+        return total == 0 ? 0 : (double) bypassed / total;
+    }
+}
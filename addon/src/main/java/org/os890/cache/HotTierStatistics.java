@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache;
+
+/**
+ * Counters of the hot tier of decoded values, see {@link CompressedCacheOptions#hotTier(long)}.
+ *
+ * <p>Available via {@link CompressedCache#getHotTierStatistics()}.  Without a hot tier all
+ * counters stay {@code 0}.</p>
+ */
+public interface HotTierStatistics {
+
+    /**
+     * Returns the number of reads served with an already decoded value.
+     *
+     * @return the number of hits
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of reads which had to decode the value.
+     *
+     * @return the number of misses
+     */
+    long getMissCount();
+
+    /**
+     * Returns the number of decoded values dropped to stay within the byte budget,
+     * including values which weren't admitted.
+     *
+     * @return the number of evictions
+     */
+    long getEvictionCount();
+
+    /**
+     * Returns the number of decoded values currently held.
+     *
+     * @return the number of values
+     */
+    long getEntryCount();
+
+    /**
+     * Returns the estimated size of the decoded values currently held.
+     *
+     * @return the size in bytes
+     */
+    long getWeightedSize();
+
+    /**
+     * Returns the share of reads served with an already decoded value.
+     *
+     * @return a value between {@code 0} and {@code 1}
+     */
+    default double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
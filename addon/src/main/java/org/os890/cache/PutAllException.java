@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache;
+
+import javax.cache.CacheException;
+import java.util.Set;
+
+/**
+ * Thrown by {@code putAll} if some of the values couldn't be compressed and stored.
+ *
+ * <p>All other entries of the map were stored, so the caller can retry or skip just the
+ * failed keys.</p>
+ */
+public class PutAllException extends CacheException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Set<Object> failedKeys;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param failedKeys the keys whose values weren't stored
+     * @param cause      the first exception thrown while storing a value, may be {@code null}
+     */
+    public PutAllException(Set<Object> failedKeys, Throwable cause) {
+        super(failedKeys.size() + " of the given values couldn't be compressed and stored", cause);
+        this.failedKeys = Set.copyOf(failedKeys);
+    }
+
+    /**
+     * Returns the keys whose values weren't stored.
+     *
+     * @return the failed keys
+     */
+    public Set<Object> getFailedKeys() {
+        return failedKeys;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache;
+
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+
+/**
+ * Converts cache values (and, for snapshots, keys) to bytes before they get compressed.
+ *
+ * <p>A serializer is selected per cache via {@link CompressedCacheOptions#serializer(ValueSerializer)}.
+ * Implementations have to be thread-safe, since a single instance is shared by all
+ * entries of a cache.  Ready-to-use implementations are available in the
+ * {@code org.os890.cache.serializer} package; custom implementations can plug in any
+ * other format.</p>
+ *
+ * <p>Serialised bytes may be stored on disk by snapshots and the disk tier, so they should
+ * be readable by a new serializer instance after a restart.</p>
+ */
+public interface ValueSerializer {
+
+    /**
+     * Serialises the given object.
+     *
+     * @param object the object to serialise
+     * @return the serialised form
+     * @throws IOException if the object cannot be serialised
+     */
+    byte[] serialize(Object object) throws IOException;
+
+    /**
+     * Restores an object from the bytes produced by {@link #serialize(Object)}.
+     *
+     * @param bytes the serialised form
+     * @return the restored object
+     * @throws IOException if the bytes cannot be deserialised
+     */
+    Object deserialize(byte[] bytes) throws IOException;
+
+    /**
+     * Returns a serializer for the same format which only instantiates the classes accepted by
+     * the given filter when it reads the serialised form.
+     *
+     * <p>Caches call it with their {@link CompressedCacheOptions#deserializationFilter(ObjectInputFilter)
+     * deserialization filter}.  The default returns this serializer unchanged, which is right for
+     * formats which don't name the classes to instantiate.</p>
+     *
+     * @param filter the filter to check the classes with
+     * @return a serializer applying the filter
+     */
+    default ValueSerializer withDeserializationFilter(ObjectInputFilter filter) {
+        return this;
+    }
+}
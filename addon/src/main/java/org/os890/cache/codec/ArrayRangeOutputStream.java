@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream writing into a fixed range of an existing array.
+ *
+ * <p>Lets stream-based compressors write straight into the caller's buffer.
+ * Writing beyond the range fails and marks the stream as {@link #isOverflowed() overflowed}.</p>
+ */
+final class ArrayRangeOutputStream extends OutputStream {
+
+    private final byte[] target;
+    private final int start;
+    private final int end;
+
+    private int position;
+    private boolean overflowed;
+
+    ArrayRangeOutputStream(byte[] target, int offset, int length) {
+        this.target = target;
+        this.start = offset;
+        this.end = offset + length;
+        this.position = offset;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(1);
+        target[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] source, int offset, int length) throws IOException {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, target, position, length);
+        position += length;
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     *
+     * @return the number of bytes written
+     */
+    int size() {
+        return position - start;
+    }
+
+    /**
+     * Returns whether a write exceeded the range.
+     *
+     * @return {@code true} if the output didn't fit
+     */
+    boolean isOverflowed() {
+        return overflowed;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (length > end - position) {
+            overflowed = true;
+            throw new IOException("output exceeds " + (end - start) + " bytes");
+        }
+    }
+}
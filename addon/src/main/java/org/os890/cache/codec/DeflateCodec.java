@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.codec;
+
+import org.os890.cache.CompressionCodec;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw Deflate codec (no GZIP header and trailer) with a configurable compression level.
+ *
+ * <p>Level {@link Deflater#BEST_SPEED} trades some compression ratio for noticeably
+ * faster writes, {@link Deflater#BEST_COMPRESSION} does the opposite.</p>
+ */
+public class DeflateCodec implements CompressionCodec {
+
+    private final int level;
+
+    /**
+     * Creates a codec with {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a codec with the given compression level.
+     *
+     * @param level compression level from {@code 0} to {@code 9}, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @throws IllegalArgumentException if the level is out of range
+     */
+    public DeflateCodec(int level) {
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level " + level);
+        }
+        this.level = level;
+    }
+
+    /**
+     * Returns the compression level.
+     *
+     * @return the compression level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public int compress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength) {
+        Deflater deflater = ZlibPool.deflater(level);
+        try {
+            return ZlibPool.deflate(deflater, input, inputOffset, inputLength, output, outputOffset, maxOutputLength);
+        } finally {
+            ZlibPool.release(deflater, level);
+        }
+    }
+
+    @Override
+    public void decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int outputLength) throws IOException {
+        Inflater inflater = ZlibPool.inflater();
+        try {
+            ZlibPool.inflate(inflater, input, inputOffset, inputLength, output, outputOffset, outputLength);
+        } finally {
+            ZlibPool.release(inflater);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.codec;
+
+import org.os890.cache.CompressionCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw Deflate codec with a preset dictionary trained from the values of the cache.
+ *
+ * <p>Small values of the same shape hardly compress on their own, because each value
+ * starts with an empty Deflate window.  This codec samples the serialised values passed
+ * to {@link #compress(byte[], int, int, byte[], int, int)} (reservoir sampling, so the samples stay representative)
+ * and trains a dictionary in the background once {@code sampleSize} values were seen.
+ * Values compressed before that point are stored without dictionary.</p>
+ *
+ * <p>Every compressed value starts with the 2-byte id of the dictionary it was compressed
+ * with ({@code 0} = none).  {@link #retrain()} activates a new dictionary for new values,
+ * while previous dictionaries are kept, so existing entries stay readable.  Each
+ * dictionary is retained for the lifetime of the codec; with the default size of
+ * {@value #DEFAULT_MAX_DICTIONARY_SIZE} bytes this is negligible compared to the cache.</p>
+ *
+ * <p>Use one instance per cache, the dictionary is specific to the values it was trained with.
+ * The dictionaries are part of {@link #exportState()}, so cache snapshots stay readable
+ * after a restart.</p>
+ */
+public class DictionaryDeflateCodec implements CompressionCodec {
+
+    /** Default number of sample values collected for training. */
+    public static final int DEFAULT_SAMPLE_SIZE = 512;
+
+    /** Default upper bound of the dictionary size (Deflate can't use more than 32 KiB). */
+    public static final int DEFAULT_MAX_DICTIONARY_SIZE = 8 * 1024;
+
+    private static final int NO_DICTIONARY = 0;
+    private static final int MAX_DICTIONARY_ID = 0xFFFF;
+    private static final int MAX_SAMPLE_LENGTH = 4 * 1024;
+    private static final int HEADER_LENGTH = 2;
+
+    private final int level;
+    private final int sampleSize;
+    private final int maxDictionarySize;
+
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    private final AtomicBoolean trainingScheduled = new AtomicBoolean();
+    private final LongAdder seenValues = new LongAdder();
+    private final List<byte[]> samples = new ArrayList<>();
+
+    private volatile int activeDictionaryId = NO_DICTIONARY;
+    private int lastDictionaryId = NO_DICTIONARY;
+
+    /**
+     * Creates a codec with {@link Deflater#DEFAULT_COMPRESSION}, {@value #DEFAULT_SAMPLE_SIZE}
+     * samples and dictionaries of up to {@value #DEFAULT_MAX_DICTIONARY_SIZE} bytes.
+     */
+    public DictionaryDeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION, DEFAULT_SAMPLE_SIZE, DEFAULT_MAX_DICTIONARY_SIZE);
+    }
+
+    /**
+     * Creates a codec with the given settings.
+     *
+     * <p>Larger dictionaries find more matches, but Deflate has to index the whole dictionary
+     * for every compressed value, so they slow down writes of small values.</p>
+     *
+     * @param level             compression level from {@code 0} to {@code 9}, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param sampleSize        number of values sampled before the first dictionary gets trained
+     * @param maxDictionarySize upper bound of the dictionary size in bytes (at most 32 KiB)
+     * @throws IllegalArgumentException if a setting is out of range
+     */
+    public DictionaryDeflateCodec(int level, int sampleSize, int maxDictionarySize) {
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level " + level);
+        }
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sampleSize has to be positive");
+        }
+        if (maxDictionarySize < 1 || maxDictionarySize > 32 * 1024) {
+            throw new IllegalArgumentException("maxDictionarySize has to be between 1 and 32768");
+        }
+        this.level = level;
+        this.sampleSize = sampleSize;
+        this.maxDictionarySize = maxDictionarySize;
+    }
+
+    @Override
+    public int compress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength) {
+        offerSample(input, inputOffset, inputLength);
+
+        if (maxOutputLength < HEADER_LENGTH) {
+            return -1;
+        }
+
+        int dictionaryId = activeDictionaryId;
+        Deflater deflater = ZlibPool.deflater(level);
+        int deflatedLength;
+        try {
+            if (dictionaryId != NO_DICTIONARY) {
+                deflater.setDictionary(dictionaries.get(dictionaryId));
+            }
+            deflatedLength = ZlibPool.deflate(deflater, input, inputOffset, inputLength,
+                    output, outputOffset + HEADER_LENGTH, maxOutputLength - HEADER_LENGTH);
+        } finally {
+            ZlibPool.release(deflater, level);
+        }
+        if (deflatedLength < 0) {
+            return -1;
+        }
+
+        output[outputOffset] = (byte) (dictionaryId >>> 8);
+        output[outputOffset + 1] = (byte) dictionaryId;
+        return deflatedLength + HEADER_LENGTH;
+    }
+
+    @Override
+    public void decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int outputLength) throws IOException {
+        if (inputLength < HEADER_LENGTH) {
+            throw new IOException("missing dictionary id");
+        }
+
+        int dictionaryId = ((input[inputOffset] & 0xFF) << 8) | (input[inputOffset + 1] & 0xFF);
+        Inflater inflater = ZlibPool.inflater();
+        try {
+            if (dictionaryId != NO_DICTIONARY) {
+                byte[] dictionary = dictionaries.get(dictionaryId);
+                if (dictionary == null) {
+                    throw new IOException("unknown dictionary " + dictionaryId);
+                }
+                //raw streams don't request the dictionary, it has to be set upfront
+                inflater.setDictionary(dictionary);
+            }
+            ZlibPool.inflate(inflater, input, inputOffset + HEADER_LENGTH, inputLength - HEADER_LENGTH, output, outputOffset, outputLength);
+        } finally {
+            ZlibPool.release(inflater);
+        }
+    }
+
+    /**
+     * Trains a new dictionary from the current samples and uses it for all values compressed afterwards.
+     *
+     * <p>Values compressed with previous dictionaries stay readable.</p>
+     *
+     * @return the id of the new dictionary, or the id of the current one if there are no usable samples
+     * @throws IllegalStateException if all dictionary ids are used up
+     */
+    public synchronized int retrain() {
+        List<byte[]> currentSamples;
+        synchronized (samples) {
+            currentSamples = new ArrayList<>(samples);
+        }
+
+        byte[] dictionary = DictionaryTrainer.train(currentSamples, maxDictionarySize);
+        if (dictionary.length == 0) {
+            return activeDictionaryId;
+        }
+        if (lastDictionaryId == MAX_DICTIONARY_ID) {
+            throw new IllegalStateException("all dictionary ids are used");
+        }
+
+        int dictionaryId = ++lastDictionaryId;
+        dictionaries.put(dictionaryId, dictionary);
+        activeDictionaryId = dictionaryId;
+        return dictionaryId;
+    }
+
+    /**
+     * Returns all dictionaries and the id of the active one.
+     *
+     * @return the serialised dictionaries
+     */
+    @Override
+    public synchronized byte[] exportState() {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(result)) {
+            output.writeInt(activeDictionaryId);
+            output.writeInt(dictionaries.size());
+            for (Map.Entry<Integer, byte[]> dictionary : dictionaries.entrySet()) {
+                output.writeInt(dictionary.getKey());
+                output.writeInt(dictionary.getValue().length);
+                output.write(dictionary.getValue());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); //not thrown by in-memory streams
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Adds the exported dictionaries and activates the dictionary which was active on export.
+     *
+     * @param state the exported state
+     * @throws IOException if the state is corrupt or a dictionary id is already used for a different dictionary
+     */
+    @Override
+    public synchronized void importState(byte[] state) throws IOException {
+        Map<Integer, byte[]> importedDictionaries = new HashMap<>();
+        int importedActiveId;
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(state))) {
+            importedActiveId = input.readInt();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                int dictionaryId = input.readInt();
+                byte[] dictionary = new byte[input.readInt()];
+                input.readFully(dictionary);
+
+                byte[] existingDictionary = dictionaries.get(dictionaryId);
+                if (existingDictionary != null && !Arrays.equals(existingDictionary, dictionary)) {
+                    throw new IOException("dictionary " + dictionaryId + " is already used for a different dictionary");
+                }
+                importedDictionaries.put(dictionaryId, dictionary);
+            }
+        }
+
+        dictionaries.putAll(importedDictionaries);
+        for (int dictionaryId : importedDictionaries.keySet()) {
+            lastDictionaryId = Math.max(lastDictionaryId, dictionaryId);
+        }
+        if (importedActiveId != NO_DICTIONARY) {
+            activeDictionaryId = importedActiveId;
+        }
+    }
+
+    /**
+     * Returns the id of the dictionary used for new values.
+     *
+     * @return the dictionary id, {@code 0} if no dictionary was trained yet
+     */
+    public int getActiveDictionaryId() {
+        return activeDictionaryId;
+    }
+
+    /**
+     * Returns the number of dictionaries retained to read existing values.
+     *
+     * @return the number of dictionaries
+     */
+    public int getDictionaryCount() {
+        return dictionaries.size();
+    }
+
+    private void offerSample(byte[] input, int inputOffset, int inputLength) {
+        seenValues.increment();
+        long seen = seenValues.sum();
+
+        //reservoir sampling: keep each of the seen values with the same probability
+        int slot = seen <= sampleSize ? (int) seen - 1 : (int) Math.min(ThreadLocalRandom.current().nextLong(seen), Integer.MAX_VALUE);
+        if (slot >= sampleSize) {
+            return;
+        }
+
+        byte[] sample = Arrays.copyOfRange(input, inputOffset, inputOffset + Math.min(inputLength, MAX_SAMPLE_LENGTH));
+        boolean complete;
+        synchronized (samples) {
+            if (samples.size() < sampleSize) {
+                samples.add(sample);
+            } else {
+                samples.set(slot, sample);
+            }
+            complete = samples.size() == sampleSize;
+        }
+
+        if (complete && activeDictionaryId == NO_DICTIONARY && trainingScheduled.compareAndSet(false, true)) {
+            ForkJoinPool.commonPool().execute(this::retrain);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a preset Deflate dictionary from sample values.
+ *
+ * <p>Simplified variant of the segment cover algorithm used by zstd: every sample is
+ * split into fixed-size segments, and each segment is scored by how many other samples
+ * share its 8-byte substrings.  The best segments are picked greedily; substrings of
+ * picked segments no longer count, so the dictionary does not repeat itself.  Deflate
+ * finds matches near the end of the dictionary with shorter distances, which is why the
+ * best segments are placed last.</p>
+ */
+final class DictionaryTrainer {
+
+    private static final int KMER_LENGTH = 8;
+    private static final int SEGMENT_LENGTH = 64;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * Trains a dictionary.
+     *
+     * @param samples           the sample values
+     * @param maxDictionarySize upper bound for the dictionary size in bytes
+     * @return the dictionary, or an empty array if the samples have nothing in common
+     */
+    static byte[] train(List<byte[]> samples, int maxDictionarySize) {
+        Map<Long, Integer> frequencies = countSampleFrequencies(samples);
+
+        PriorityQueue<Segment> candidates = new PriorityQueue<>();
+        for (byte[] sample : samples) {
+            for (int offset = 0; offset + KMER_LENGTH <= sample.length; offset += SEGMENT_LENGTH) {
+                int score = score(sample, offset, frequencies);
+                if (score > 0) {
+                    candidates.add(new Segment(sample, offset, score));
+                }
+            }
+        }
+
+        List<Segment> selected = new ArrayList<>();
+        int dictionarySize = 0;
+        while (!candidates.isEmpty() && dictionarySize < maxDictionarySize) {
+            Segment candidate = candidates.poll();
+            int currentScore = score(candidate.sample, candidate.offset, frequencies);
+
+            if (currentScore <= 0) {
+                continue;
+            }
+            //scores only decrease, so a candidate that is still ahead of the next best one is the best one
+            if (!candidates.isEmpty() && currentScore < candidates.peek().score) {
+                candidates.add(new Segment(candidate.sample, candidate.offset, currentScore));
+                continue;
+            }
+
+            selected.add(candidate);
+            dictionarySize += candidate.length();
+            forget(candidate.sample, candidate.offset, frequencies);
+        }
+
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(Math.min(dictionarySize, maxDictionarySize));
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            Segment segment = selected.get(i);
+            int length = Math.min(segment.length(), maxDictionarySize - dictionary.size());
+            dictionary.write(segment.sample, segment.offset, length);
+        }
+        return dictionary.toByteArray();
+    }
+
+    private static Map<Long, Integer> countSampleFrequencies(List<byte[]> samples) {
+        Map<Long, Integer> frequencies = new HashMap<>();
+        Map<Long, byte[]> lastSeenIn = new HashMap<>();
+
+        for (byte[] sample : samples) {
+            for (int position = 0; position + KMER_LENGTH <= sample.length; position++) {
+                Long kmer = kmer(sample, position);
+                //count every substring once per sample
+                if (lastSeenIn.put(kmer, sample) != sample) {
+                    frequencies.merge(kmer, 1, Integer::sum);
+                }
+            }
+        }
+        return frequencies;
+    }
+
+    private static int score(byte[] sample, int offset, Map<Long, Integer> frequencies) {
+        int score = 0;
+        int end = Math.min(sample.length, offset + SEGMENT_LENGTH) - KMER_LENGTH;
+        for (int position = offset; position <= end; position++) {
+            int frequency = frequencies.getOrDefault(kmer(sample, position), 0);
+            //substrings of a single sample don't help other values
+            if (frequency > 1) {
+                score += frequency;
+            }
+        }
+        return score;
+    }
+
+    private static void forget(byte[] sample, int offset, Map<Long, Integer> frequencies) {
+        int end = Math.min(sample.length, offset + SEGMENT_LENGTH) - KMER_LENGTH;
+        for (int position = offset; position <= end; position++) {
+            frequencies.remove(kmer(sample, position));
+        }
+    }
+
+    private static long kmer(byte[] sample, int position) {
+        long result = 0;
+        for (int i = 0; i < KMER_LENGTH; i++) {
+            result = (result << 8) | (sample[position + i] & 0xFF);
+        }
+        return result;
+    }
+
+    private static final class Segment implements Comparable<Segment> {
+
+        private final byte[] sample;
+        private final int offset;
+        private final int score;
+
+        private Segment(byte[] sample, int offset, int score) {
+            this.sample = sample;
+            this.offset = offset;
+            this.score = score;
+        }
+
+        private int length() {
+            return Math.min(SEGMENT_LENGTH, sample.length - offset);
+        }
+
+        @Override
+        public int compareTo(Segment other) {
+            return Integer.compare(other.score, score);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.codec;
+
+import org.os890.cache.CompressionCodec;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * GZIP codec using the default compression level.
+ *
+ * <p>This is the default codec of every cache.  It has a good compression ratio,
+ * but decompression is noticeably slower than with {@link Lz4BlockCodec}.</p>
+ *
+ * <p>Writes a minimal GZIP member (10-byte header, raw Deflate data, CRC-32 and size trailer)
+ * with pooled {@link Deflater}/{@link Inflater} instances instead of the GZIP streams.</p>
+ */
+public class GzipCodec implements CompressionCodec {
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int TRAILER_LENGTH = 8;
+    private static final int OVERHEAD = HEADER.length + TRAILER_LENGTH;
+
+    @Override
+    public int compress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength) {
+        if (maxOutputLength < OVERHEAD) {
+            return -1;
+        }
+
+        Deflater deflater = ZlibPool.deflater(Deflater.DEFAULT_COMPRESSION);
+        int deflatedLength;
+        try {
+            deflatedLength = ZlibPool.deflate(deflater, input, inputOffset, inputLength,
+                    output, outputOffset + HEADER.length, maxOutputLength - OVERHEAD);
+        } finally {
+            ZlibPool.release(deflater, Deflater.DEFAULT_COMPRESSION);
+        }
+        if (deflatedLength < 0) {
+            return -1;
+        }
+
+        System.arraycopy(HEADER, 0, output, outputOffset, HEADER.length);
+        int trailerOffset = outputOffset + HEADER.length + deflatedLength;
+        writeIntLittleEndian(output, trailerOffset, (int) crc(input, inputOffset, inputLength));
+        writeIntLittleEndian(output, trailerOffset + 4, inputLength);
+        return deflatedLength + OVERHEAD;
+    }
+
+    @Override
+    public void decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int outputLength) throws IOException {
+        if (inputLength < OVERHEAD || input[inputOffset] != HEADER[0] || input[inputOffset + 1] != HEADER[1]
+                || input[inputOffset + 2] != HEADER[2] || input[inputOffset + 3] != 0) {
+            throw new IOException("not a GZIP member written by " + GzipCodec.class.getSimpleName());
+        }
+
+        Inflater inflater = ZlibPool.inflater();
+        try {
+            ZlibPool.inflate(inflater, input, inputOffset + HEADER.length, inputLength - OVERHEAD, output, outputOffset, outputLength);
+        } finally {
+            ZlibPool.release(inflater);
+        }
+
+        int trailerOffset = inputOffset + inputLength - TRAILER_LENGTH;
+        if (readIntLittleEndian(input, trailerOffset) != (int) crc(output, outputOffset, outputLength)
+                || readIntLittleEndian(input, trailerOffset + 4) != outputLength) {
+            throw new IOException("GZIP trailer doesn't match the content");
+        }
+    }
+
+    private static long crc(byte[] content, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(content, offset, length);
+        return crc.getValue();
+    }
+
+    private static void writeIntLittleEndian(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >>> 8);
+        target[offset + 2] = (byte) (value >>> 16);
+        target[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static int readIntLittleEndian(byte[] source, int offset) {
+        return (source[offset] & 0xFF) | (source[offset + 1] & 0xFF) << 8
+                | (source[offset + 2] & 0xFF) << 16 | (source[offset + 3] & 0xFF) << 24;
+    }
+}
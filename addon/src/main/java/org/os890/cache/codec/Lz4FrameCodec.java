@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.codec;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.os890.cache.CompressionCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * LZ4 frame format codec based on Apache Commons Compress.
+ *
+ * <p>Compared to {@link Lz4BlockCodec} the frame format adds a small header and splits
+ * large values into independent blocks.  Checksums are disabled, since the bytes never
+ * leave the heap.</p>
+ */
+public class Lz4FrameCodec implements CompressionCodec {
+
+    private static final FramedLZ4CompressorOutputStream.Parameters PARAMETERS =
+            new FramedLZ4CompressorOutputStream.Parameters(FramedLZ4CompressorOutputStream.BlockSize.K64, false, false, false);
+
+    @Override
+    public int compress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength) throws IOException {
+        ArrayRangeOutputStream outputStream = new ArrayRangeOutputStream(output, outputOffset, maxOutputLength);
+        try (FramedLZ4CompressorOutputStream lz4OutputStream = new FramedLZ4CompressorOutputStream(outputStream, PARAMETERS)) {
+            lz4OutputStream.write(input, inputOffset, inputLength);
+        } catch (IOException e) {
+            if (outputStream.isOverflowed()) {
+                return -1;
+            }
+            throw e;
+        }
+        return outputStream.size();
+    }
+
+    @Override
+    public void decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int outputLength) throws IOException {
+        try (FramedLZ4CompressorInputStream lz4InputStream = new FramedLZ4CompressorInputStream(new ByteArrayInputStream(input, inputOffset, inputLength))) {
+            if (lz4InputStream.readNBytes(output, outputOffset, outputLength) != outputLength) {
+                throw new IOException("LZ4 stream is shorter than " + outputLength + " bytes");
+            }
+        }
+    }
+}
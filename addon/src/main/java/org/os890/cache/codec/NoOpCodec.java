@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.codec;
+
+import org.os890.cache.CompressionCodec;
+
+import java.io.IOException;
+
+/**
+ * Pass-through codec that stores the serialised value as-is.
+ *
+ * <p>Useful to measure the serialisation cost without any compression.
+ * With the default minimum compression ratio the cache stores such values
+ * uncompressed anyway.</p>
+ */
+public class NoOpCodec implements CompressionCodec {
+
+    @Override
+    public int compress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength) {
+        if (inputLength > maxOutputLength) {
+            return -1;
+        }
+        System.arraycopy(input, inputOffset, output, outputOffset, inputLength);
+        return inputLength;
+    }
+
+    @Override
+    public void decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int outputLength) throws IOException {
+        if (inputLength != outputLength) {
+            throw new IOException("expected " + outputLength + " bytes, found " + inputLength);
+        }
+        System.arraycopy(input, inputOffset, output, outputOffset, outputLength);
+    }
+}
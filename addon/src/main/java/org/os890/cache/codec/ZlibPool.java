@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.codec;
+
+import org.os890.cache.internal.ObjectPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pools raw (no zlib header) {@link Deflater} and {@link Inflater} instances.
+ *
+ * <p>Creating them allocates native zlib state, which is released again by {@code end()}.
+ * Reusing them avoids this init/end churn on every compressed and decompressed value.</p>
+ */
+final class ZlibPool {
+
+    private static final List<ObjectPool<Deflater>> DEFLATERS = new ArrayList<>();
+    private static final ObjectPool<Inflater> INFLATERS = new ObjectPool<>();
+
+    static {
+        //index 0 is Deflater.DEFAULT_COMPRESSION (-1)
+        for (int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+            DEFLATERS.add(new ObjectPool<>());
+        }
+    }
+
+    private ZlibPool() {
+    }
+
+    /**
+     * Returns a raw deflater with the given level.
+     *
+     * @param level the compression level
+     * @return a reset deflater, has to be passed to {@link #release(Deflater, int)} afterwards
+     */
+    static Deflater deflater(int level) {
+        Deflater deflater = DEFLATERS.get(level + 1).poll();
+        return deflater != null ? deflater : new Deflater(level, true);
+    }
+
+    /**
+     * Resets the deflater and returns it to the pool.
+     *
+     * @param deflater the deflater obtained via {@link #deflater(int)}
+     * @param level    the level the deflater was obtained with
+     */
+    static void release(Deflater deflater, int level) {
+        deflater.reset();
+        if (!DEFLATERS.get(level + 1).offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns a raw inflater.
+     *
+     * @return a reset inflater, has to be passed to {@link #release(Inflater)} afterwards
+     */
+    static Inflater inflater() {
+        Inflater inflater = INFLATERS.poll();
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    /**
+     * Resets the inflater and returns it to the pool.
+     *
+     * @param inflater the inflater obtained via {@link #inflater()}
+     */
+    static void release(Inflater inflater) {
+        inflater.reset();
+        if (!INFLATERS.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Compresses the input with the prepared deflater into the given output range.
+     *
+     * @param deflater        the deflater, with dictionary if needed
+     * @param input           the uncompressed bytes
+     * @param inputOffset     start of the uncompressed bytes
+     * @param inputLength     number of uncompressed bytes
+     * @param output          the target array
+     * @param outputOffset    start of the target range
+     * @param maxOutputLength size of the target range
+     * @return the number of bytes written, or {@code -1} if the output doesn't fit
+     */
+    static int deflate(Deflater deflater, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength) {
+        deflater.setInput(input, inputOffset, inputLength);
+        deflater.finish();
+
+        int written = 0;
+        while (!deflater.finished() && written < maxOutputLength) {
+            written += deflater.deflate(output, outputOffset + written, maxOutputLength - written);
+        }
+        return deflater.finished() ? written : -1;
+    }
+
+    /**
+     * Decompresses the input with the prepared inflater into exactly the given output range.
+     *
+     * @param inflater     the inflater, with dictionary if needed
+     * @param input        the compressed bytes
+     * @param inputOffset  start of the compressed bytes
+     * @param inputLength  number of compressed bytes
+     * @param output       the target array
+     * @param outputOffset start of the target range
+     * @param outputLength number of uncompressed bytes
+     * @throws IOException if the input is corrupt or doesn't match the expected length
+     */
+    static void inflate(Inflater inflater, byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int outputLength) throws IOException {
+        inflater.setInput(input, inputOffset, inputLength);
+        try {
+            int read = 0;
+            while (read < outputLength) {
+                int length = inflater.inflate(output, outputOffset + read, outputLength - read);
+                if (length == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("deflate stream ended after " + read + " of " + outputLength + " bytes");
+                }
+                read += length;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+    }
+}
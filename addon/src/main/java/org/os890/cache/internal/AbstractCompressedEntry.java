@@ -19,35 +19,134 @@
 
 package org.os890.cache.internal;
 
-import org.apache.ignite.marshaller.Marshaller;
 import org.os890.cache.CompressedEntry;
 
+import java.io.IOException;
+
 /**
  * Base class for compressed cache entries.
  *
- * <p>Holds the marshaller used for value serialisation and the GZIP-compressed
+ * <p>Holds the {@link ValueCompressor} of the cache and the compressed
  * byte array produced by subclasses.  A {@code failureFound} flag short-circuits
- * further compression or decompression attempts after an error.</p>
+ * further compression or decompression attempts after an error.  Both fields are volatile,
+ * since entries are read by all threads of the cache.</p>
  *
  * @param <V> the type of the uncompressed value
  */
 public abstract class AbstractCompressedEntry<V> implements CompressedEntry<V> {
 
-    /** Marshaller used to serialise and deserialise values before GZIP compression. */
-    protected final Marshaller marshaller;
+    /** Serialises and compresses values of the cache this entry belongs to. */
+    protected final ValueCompressor<V> compressor;
 
-    /** GZIP-compressed representation of the value, set by subclasses. */
-    protected byte[] compressedValue;
+    /** Compressed representation of the value, set by subclasses. */
+    protected volatile byte[] compressedValue;
 
     /** Set to {@code true} if a compression or decompression error occurred. */
-    protected boolean failureFound; //false per default
+    protected volatile boolean failureFound; //false per default
+
+    private long writeTime; //only set for caches which refresh values or have a disk tier
+
+    /**
+     * Creates a new entry with the given compressor.
+     *
+     * @param compressor the compressor of the cache
+     */
+    public AbstractCompressedEntry(ValueCompressor<V> compressor) {
+        this.compressor = compressor;
+    }
+
+    /**
+     * Returns the stored form of the value as produced by {@link ValueCompressor#compress(Object)},
+     * e.g. to move it to another storage tier without recompressing it.
+     *
+     * @return the stored bytes, or {@code null} if the entry isn't valid (anymore)
+     */
+    abstract byte[] getStoredBytes();
+
+    /**
+     * Returns the value like {@link #getUncompressedValue()}, but doesn't keep the decoded value
+     * for later reads, e.g. for scans over all entries.
+     *
+     * @return the value, or {@code null} if it cannot be restored
+     */
+    V peekUncompressedValue() {
+        byte[] storedBytes = getStoredBytes();
+        if (storedBytes == null) {
+            return null;
+        }
+
+        try {
+            return compressor.restore(storedBytes);
+        } catch (IOException | RuntimeException e) {
+            //counted and logged by the compressor
+            return null;
+        }
+    }
+
+    /**
+     * Returns the serialised size of the value, e.g. to estimate the size of the decoded value.
+     *
+     * @return the size in bytes, {@code 0} if the entry isn't valid (anymore)
+     */
+    int getSerializedLength() {
+        byte[] currentValue = compressedValue;
+        return currentValue != null ? ValueCompressor.getUncompressedLength(currentValue) : 0;
+    }
 
     /**
-     * Creates a new entry with the given marshaller.
+     * Tells whether the stored value can be compared via {@link #holdsSerializedValue(ValueCompressor.SerializedValue)}.
      *
-     * @param marshaller the marshaller to use for value serialisation
+     * @return {@code true} if the stored form records a fingerprint
+     * @see ValueCompressor#hasFingerprint(byte[])
      */
-    public AbstractCompressedEntry(Marshaller marshaller) {
-        this.marshaller = marshaller;
+    boolean hasFingerprint() {
+        byte[] currentValue = compressedValue;
+        return currentValue != null && ValueCompressor.hasFingerprint(currentValue);
     }
+
+    /**
+     * Tells whether the stored value equals the given serialised value, without deserialising it.
+     *
+     * @param value the value returned by {@link ValueCompressor#serializeForComparison(Object)}
+     * @return {@code true} if the serialised values are equal, {@code false} if they differ or the entry isn't valid
+     * @see ValueCompressor#holdsSerializedValue(byte[], ValueCompressor.SerializedValue)
+     */
+    boolean holdsSerializedValue(ValueCompressor.SerializedValue value) {
+        return holdsSerializedValue(compressedValue, value);
+    }
+
+    //the stored bytes of other entry types are looked up only if the fingerprint matches
+    final boolean holdsSerializedValue(byte[] storedBytes, ValueCompressor.SerializedValue value) {
+        try {
+            return storedBytes != null && compressor.holdsSerializedValue(storedBytes, value);
+        } catch (IOException | RuntimeException e) {
+            //a value which can't be decompressed doesn't equal any other
+            return false;
+        }
+    }
+
+    /**
+     * Records when the entry was stored, before it gets into the cache.
+     *
+     * @param writeTime the {@link System#nanoTime()} of the write
+     */
+    void setWriteTime(long writeTime) {
+        this.writeTime = writeTime;
+    }
+
+    /**
+     * Returns when the entry was stored, e.g. to refresh it after some time.
+     *
+     * @return the {@link System#nanoTime()} of the write, {@code 0} if it isn't known
+     */
+    long getWriteTime() {
+        return writeTime;
+    }
+
+    /**
+     * Returns an estimate of the memory retained by this entry, used by {@link CompressedEntryWeigher}.
+     *
+     * @return the size in bytes
+     */
+    abstract long getRetainedSize();
 }
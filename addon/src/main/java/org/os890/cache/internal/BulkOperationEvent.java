@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Bulk operation of a cache which took longer than the threshold.
+ */
+@Name("org.os890.cache.BulkOperation")
+@Label("Bulk Operation")
+@Description("getAll, putAll or invokeAll of a cache, including (de)compression on the batch executor")
+@Threshold("10 ms")
+final class BulkOperationEvent extends CacheEvent {
+
+    static final String GET_ALL = "getAll";
+    static final String PUT_ALL = "putAll";
+    static final String INVOKE_ALL = "invokeAll";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Requested Entries")
+    int requestedEntries;
+
+    @Label("Processed Entries")
+    @Description("Entries found, stored or processed")
+    int processedEntries;
+
+    void finish(String cacheName, String valueMode, String operation, int requestedEntries, int processedEntries) {
+        end();
+        if (shouldCommit()) {
+            this.cacheName = cacheName;
+            this.valueMode = valueMode;
+            this.operation = operation;
+            this.requestedEntries = requestedEntries;
+            this.processedEntries = processedEntries;
+            commit();
+        }
+    }
+}
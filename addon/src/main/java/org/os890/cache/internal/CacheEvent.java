@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Base of the Java Flight Recorder events of a cache, with the cache name and mode.
+ *
+ * <p>The events are threshold-gated: without a running recording, {@code begin()},
+ * {@code end()} and {@code shouldCommit()} are no-ops which the JIT removes together with
+ * the event object.  With a recording, only events above the configured threshold get
+ * their fields set and committed.</p>
+ */
+@Category("Compressed Cache")
+abstract class CacheEvent extends Event {
+
+    @Label("Cache Name")
+    String cacheName;
+
+    @Label("Value Mode")
+    String valueMode;
+}
@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheStatisticsMXBean;
+
+import javax.cache.CacheException;
+import javax.cache.management.CacheStatisticsMXBean;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * JCache counters of a cache together with the compression metrics of its {@link ValueCompressor}.
+ *
+ * <p>All counters are {@link LongAdder}s, so recording from many threads doesn't contend.
+ * While statistics are disabled, recording is skipped and no time is taken.  Evictions are
+ * counted by Guava ({@code recordStats()}), the footprint is computed on demand.</p>
+ */
+class CacheStatistics implements CompressedCacheStatisticsMXBean {
+
+    private static final String CACHE_MANAGER_NAME = CompressedCacheFactory.class.getName();
+
+    private final boolean enabled;
+    private final ValueCompressor<?> compressor;
+    private final LongSupplier evictionCount;
+    private final LongSupplier footprint;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder removals = new LongAdder();
+    private final LongAdder getNanos = new LongAdder();
+    private final LongAdder putNanos = new LongAdder();
+    private final LongAdder removeNanos = new LongAdder();
+    private volatile long clearedEvictionCount;
+
+    private ObjectName[] registeredNames = new ObjectName[0];
+
+    /**
+     * Creates the statistics of a cache.
+     *
+     * @param enabled       whether the JCache counters and timings get recorded
+     * @param compressor    the compressor of the cache
+     * @param evictionCount returns the number of evictions since the cache was created
+     * @param footprint     computes the memory retained by the entries
+     */
+    CacheStatistics(boolean enabled, ValueCompressor<?> compressor, LongSupplier evictionCount, LongSupplier footprint) {
+        this.enabled = enabled;
+        this.compressor = compressor;
+        this.evictionCount = evictionCount;
+        this.footprint = footprint;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    long startTime() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    void recordGets(long hitCount, long missCount, long startTime) {
+        if (!enabled) {
+            return;
+        }
+        hits.add(hitCount);
+        misses.add(missCount);
+        getNanos.add(System.nanoTime() - startTime);
+    }
+
+    void recordPuts(long count, long startTime) {
+        if (!enabled || count == 0) {
+            return;
+        }
+        puts.add(count);
+        putNanos.add(System.nanoTime() - startTime);
+    }
+
+    void recordRemovals(long count, long startTime) {
+        if (!enabled || count == 0) {
+            return;
+        }
+        removals.add(count);
+        removeNanos.add(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Registers the standard and the extended MXBean of the given cache with the platform MBean server.
+     *
+     * @param cacheName the name of the cache
+     * @throws CacheException if a cache with the same name is registered already
+     */
+    synchronized void register(String cacheName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName standardName = createName("javax.cache:type=CacheStatistics,CacheManager=" + ObjectName.quote(CACHE_MANAGER_NAME) + ",Cache=" + ObjectName.quote(cacheName));
+        ObjectName extendedName = createName("org.os890.cache:type=CompressedCacheStatistics,Cache=" + ObjectName.quote(cacheName));
+        try {
+            //an object can be registered as MXBean once, the standard view has simple types only
+            server.registerMBean(new StandardMBean(this, CacheStatisticsMXBean.class, false), standardName);
+            registeredNames = new ObjectName[] {standardName};
+            server.registerMBean(new StandardMBean(this, CompressedCacheStatisticsMXBean.class, true), extendedName);
+            registeredNames = new ObjectName[] {standardName, extendedName};
+        } catch (JMException e) {
+            unregister();
+            throw new CacheException("it wasn't possible to register the statistics of cache " + cacheName, e);
+        }
+    }
+
+    /**
+     * Removes the MXBeans registered by {@link #register(String)}.
+     */
+    synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (InstanceNotFoundException e) {
+                //unregistered by someone else
+            } catch (JMException e) {
+                throw new CacheException("it wasn't possible to unregister " + name, e);
+            }
+        }
+        registeredNames = new ObjectName[0];
+    }
+
+    private static ObjectName createName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (MalformedObjectNameException e) {
+            throw new CacheException(e);
+        }
+    }
+
+    /**
+     * Resets the JCache counters, the evictions and the latency histograms.
+     */
+    @Override
+    public void clear() {
+        hits.reset();
+        misses.reset();
+        puts.reset();
+        removals.reset();
+        getNanos.reset();
+        putNanos.reset();
+        removeNanos.reset();
+        clearedEvictionCount = evictionCount.getAsLong();
+        if (compressor.getCompressTimes() != null) {
+            compressor.getCompressTimes().clear();
+            compressor.getRestoreTimes().clear();
+        }
+    }
+
+    @Override
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public float getCacheHitPercentage() {
+        long gets = getCacheGets();
+        return gets == 0 ? 0 : (float) getCacheHits() / gets * 100;
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public float getCacheMissPercentage() {
+        long gets = getCacheGets();
+        return gets == 0 ? 0 : (float) getCacheMisses() / gets * 100;
+    }
+
+    @Override
+    public long getCacheGets() {
+        return getCacheHits() + getCacheMisses();
+    }
+
+    @Override
+    public long getCachePuts() {
+        return puts.sum();
+    }
+
+    @Override
+    public long getCacheRemovals() {
+        return removals.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return enabled ? evictionCount.getAsLong() - clearedEvictionCount : 0;
+    }
+
+    @Override
+    public float getAverageGetTime() {
+        return averageMicros(getNanos, getCacheGets());
+    }
+
+    @Override
+    public float getAveragePutTime() {
+        return averageMicros(putNanos, getCachePuts());
+    }
+
+    @Override
+    public float getAverageRemoveTime() {
+        return averageMicros(removeNanos, getCacheRemovals());
+    }
+
+    private static float averageMicros(LongAdder nanos, long count) {
+        return count == 0 ? 0 : (float) nanos.sum() / count / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    @Override
+    public long getCompressedCount() {
+        return compressor.getCompressedCount();
+    }
+
+    @Override
+    public long getBypassedCount() {
+        return compressor.getBypassedCount();
+    }
+
+    @Override
+    public long getSerializedBytes() {
+        return compressor.getSerializedBytes();
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return compressor.getStoredBytes();
+    }
+
+    @Override
+    public long getCompressionFailures() {
+        return compressor.getCompressionFailures();
+    }
+
+    @Override
+    public long getDecompressionFailures() {
+        return compressor.getDecompressionFailures();
+    }
+
+    @Override
+    public long[] getCompressTimeHistogram() {
+        LatencyHistogram histogram = compressor.getCompressTimes();
+        return histogram != null ? histogram.getCounts() : new long[LatencyHistogram.BUCKET_COUNT];
+    }
+
+    @Override
+    public long[] getDecompressTimeHistogram() {
+        LatencyHistogram histogram = compressor.getRestoreTimes();
+        return histogram != null ? histogram.getCounts() : new long[LatencyHistogram.BUCKET_COUNT];
+    }
+
+    @Override
+    public float getCompressTime99thPercentile() {
+        LatencyHistogram histogram = compressor.getCompressTimes();
+        return histogram != null ? histogram.getPercentile(0.99) : 0;
+    }
+
+    @Override
+    public float getDecompressTime99thPercentile() {
+        LatencyHistogram histogram = compressor.getRestoreTimes();
+        return histogram != null ? histogram.getPercentile(0.99) : 0;
+    }
+
+    @Override
+    public long getSoftReferenceHits() {
+        return compressor.getSoftReferenceHits();
+    }
+
+    @Override
+    public long getSoftReferenceMisses() {
+        return compressor.getSoftReferenceMisses();
+    }
+
+    @Override
+    public long getCompressedFootprint() {
+        return footprint.getAsLong();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Compression of a serialised value which took longer than the threshold.
+ */
+@Name("org.os890.cache.Compress")
+@Label("Value Compression")
+@Description("Compression of a serialised value, including the probe of large values")
+@Threshold("1 ms")
+@StackTrace(false)
+final class CompressEvent extends CacheEvent {
+
+    @Label("Codec")
+    String codec;
+
+    @Label("Input Size")
+    @DataAmount
+    int inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    int outputSize;
+
+    @Label("Compressed")
+    @Description("false if the value was stored uncompressed, because it was too small or didn't compress")
+    boolean compressed;
+
+    void finish(ValueCompressor<?> source, int inputSize, int outputSize, boolean compressed) {
+        end();
+        if (shouldCommit()) {
+            this.cacheName = source.getCacheName();
+            this.valueMode = source.getValueModeName();
+            this.codec = source.getCodec().getClass().getSimpleName();
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            this.compressed = compressed;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import com.google.common.cache.Weigher;
+
+/**
+ * Weighs compressed cache entries by the memory they retain, for caches sized via
+ * {@code CacheBuilder.maximumWeight(long)} in bytes.
+ *
+ * <p>The weight is an estimate made once when the entry is stored: a fixed overhead for the
+ * Guava map entry and the entry object, plus the retained size reported by the entry, i.e.
+ * the compressed array, the off-heap slot in OFF_HEAP mode and an estimate of the softly
+ * reachable decoded value in FAST mode.  Keys aren't weighed beyond the fixed overhead.</p>
+ */
+public final class CompressedEntryWeigher implements Weigher<Object, Object> {
+
+    /** Shared instance, the weigher is stateless. */
+    public static final CompressedEntryWeigher INSTANCE = new CompressedEntryWeigher();
+
+    /** Guava entry, strong value reference and hash table slot. */
+    static final int MAP_ENTRY_OVERHEAD = 64;
+
+    /** Header and length of an array. */
+    static final int ARRAY_OVERHEAD = 16;
+
+    /** A {@link java.lang.ref.SoftReference} including its reference-queue fields. */
+    static final int SOFT_REFERENCE_OVERHEAD = 48;
+
+    /**
+     * Rough factor between the serialised and the decoded size of a value,
+     * decoded objects carry headers, references and padding.
+     */
+    static final int DECODED_EXPANSION_FACTOR = 2;
+
+    private CompressedEntryWeigher() {
+    }
+
+    @Override
+    public int weigh(Object key, Object value) {
+        if (value instanceof AbstractCompressedEntry<?> entry) {
+            return (int) Math.min(Integer.MAX_VALUE, MAP_ENTRY_OVERHEAD + entry.getRetainedSize());
+        }
+        return MAP_ENTRY_OVERHEAD;
+    }
+}
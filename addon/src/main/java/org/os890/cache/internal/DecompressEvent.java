@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Decompression of a stored value which took longer than the threshold.
+ */
+@Name("org.os890.cache.Decompress")
+@Label("Value Decompression")
+@Description("Decompression of a stored value into its serialised form")
+@Threshold("1 ms")
+@StackTrace(false)
+final class DecompressEvent extends CacheEvent {
+
+    @Label("Codec")
+    String codec;
+
+    @Label("Input Size")
+    @DataAmount
+    int inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    int outputSize;
+
+    void finish(ValueCompressor<?> source, int inputSize, int outputSize) {
+        end();
+        if (shouldCommit()) {
+            this.cacheName = source.getCacheName();
+            this.valueMode = source.getValueModeName();
+            this.codec = source.getCodec().getClass().getSimpleName();
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import org.os890.cache.CompressedEntry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Compresses {@link PendingCompressedEntry pending entries} in the background, once they
+ * weren't read for the idle time or the used heap exceeds the watermark.
+ *
+ * <p>A compacted entry replaces the pending one via {@link ConcurrentMap#replace(Object, Object, Object)},
+ * so an entry which got overwritten or removed in the meantime stays untouched and the
+ * compressed replacement is discarded.  The replacement is a write for the Guava cache, so it
+ * restarts {@code expireAfterWrite} of the entry.  Compaction runs on the common fork-join pool; a
+ * run is scheduled for the earliest deadline of the remaining pending entries, and right
+ * away if a new entry finds the heap above the watermark.</p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class DeferredCompactor<K, V> {
+
+    private final ConcurrentMap<K, CompressedEntry<V>> cacheMap;
+    private final Function<V, CompressedEntry<V>> entryFactory;
+    private final Consumer<CompressedEntry<V>> discardedEntryHandler;
+    private final long idleNanos;
+    private final double heapWatermark;
+
+    private final Map<K, PendingCompressedEntry<V>> pendingEntries = new ConcurrentHashMap<>();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final AtomicBoolean urgentCompactionScheduled = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a compactor for the given cache.
+     *
+     * @param cacheMap              map view of the cache the pending entries are stored in
+     * @param entryFactory          creates the compressed entry which replaces a pending one
+     * @param discardedEntryHandler releases compressed entries which didn't make it into the cache
+     * @param idleTime              time without reads after which a pending entry gets compressed
+     * @param heapWatermark         fraction of the maximum heap above which all pending entries get compressed
+     */
+    DeferredCompactor(ConcurrentMap<K, CompressedEntry<V>> cacheMap, Function<V, CompressedEntry<V>> entryFactory,
+                      Consumer<CompressedEntry<V>> discardedEntryHandler, Duration idleTime, double heapWatermark) {
+        this.cacheMap = cacheMap;
+        this.entryFactory = entryFactory;
+        this.discardedEntryHandler = discardedEntryHandler;
+        this.idleNanos = idleTime.toNanos();
+        this.heapWatermark = heapWatermark;
+    }
+
+    /**
+     * Registers an entry which was just stored in the cache.
+     *
+     * <p>A pending entry previously registered for the key gets dropped without compression.</p>
+     *
+     * @param key   the key of the entry
+     * @param entry the pending entry
+     */
+    void register(K key, PendingCompressedEntry<V> entry) {
+        pendingEntries.put(key, entry);
+
+        if (isHeapAboveWatermark()) {
+            if (urgentCompactionScheduled.compareAndSet(false, true)) {
+                ForkJoinPool.commonPool().execute(() -> {
+                    urgentCompactionScheduled.set(false);
+                    compact(true);
+                });
+            }
+        } else {
+            scheduleCompaction(idleNanos);
+        }
+    }
+
+    /**
+     * Drops an entry which left the cache, so its uncompressed value isn't kept until the next run.
+     *
+     * @param key   the key of the entry
+     * @param entry the pending entry which got evicted, expired, overwritten or removed
+     */
+    void forget(K key, PendingCompressedEntry<V> entry) {
+        pendingEntries.remove(key, entry);
+    }
+
+    /**
+     * Returns the number of entries waiting for compaction.
+     *
+     * @return the number of pending entries
+     */
+    int getPendingCount() {
+        return pendingEntries.size();
+    }
+
+    /**
+     * Stops the background compaction, pending entries stay uncompressed.
+     */
+    void close() {
+        closed = true;
+        pendingEntries.clear();
+    }
+
+    private void scheduleCompaction(long delayNanos) {
+        if (!closed && compactionScheduled.compareAndSet(false, true)) {
+            Executor delayedExecutor = CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, ForkJoinPool.commonPool());
+            delayedExecutor.execute(() -> {
+                compactionScheduled.set(false);
+                compact(false);
+            });
+        }
+    }
+
+    private void compact(boolean compactAll) {
+        if (closed) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        boolean aboveWatermark = compactAll || isHeapAboveWatermark();
+        long nextDelay = idleNanos;
+
+        for (Map.Entry<K, PendingCompressedEntry<V>> pendingEntry : pendingEntries.entrySet()) {
+            PendingCompressedEntry<V> entry = pendingEntry.getValue();
+            long idleTime = now - entry.getLastAccessTime();
+
+            if (aboveWatermark || idleTime >= idleNanos) {
+                if (pendingEntries.remove(pendingEntry.getKey(), entry)) {
+                    replace(pendingEntry.getKey(), entry);
+                }
+            } else {
+                nextDelay = Math.min(nextDelay, idleNanos - idleTime);
+            }
+        }
+
+        if (!pendingEntries.isEmpty()) {
+            scheduleCompaction(nextDelay);
+        }
+    }
+
+    private void replace(K key, PendingCompressedEntry<V> pendingEntry) {
+        if (cacheMap.get(key) != pendingEntry) {
+            //overwritten or removed, there is nothing to compress
+            return;
+        }
+
+        CompressedEntry<V> compressedEntry = entryFactory.apply(pendingEntry.getValue());
+        if (compressedEntry instanceof AbstractCompressedEntry<V> storedEntry) {
+            storedEntry.setWriteTime(pendingEntry.getWriteTime());
+        }
+        if (!compressedEntry.isValid() || !cacheMap.replace(key, pendingEntry, compressedEntry)) {
+            //an invalid entry leaves the value uncompressed in the cache
+            discardedEntryHandler.accept(compressedEntry);
+        }
+    }
+
+    private boolean isHeapAboveWatermark() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+        return usedHeap > heapWatermark * runtime.maxMemory();
+    }
+}
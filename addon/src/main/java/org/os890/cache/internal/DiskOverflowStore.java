@@ -0,0 +1,454 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second storage tier for entries evicted from the in-memory cache.
+ *
+ * <p>The stored bytes of evicted entries are appended as-is to memory-mapped segment files,
+ * an in-memory index maps each key to its location.  A lookup removes the key from the index,
+ * since the caller promotes the entry back to memory.  Removing or overwriting keys leaves
+ * garbage in the segments; sealed segments with less than half live data get compacted on the
+ * common {@link ForkJoinPool} by copying their live records to the active segment.  If the
+ * configured disk budget is reached, the oldest segment is dropped together with its entries.</p>
+ *
+ * <p>Each cache writes to a subdirectory named after it, which stays locked via a lock file while
+ * the store is open.  The tier is a cache itself, the segment files are deleted when the store
+ * gets closed and aren't read again after a restart.  It has no expiry of its own: each record keeps the
+ * {@link System#nanoTime()} deadline the entry had in memory, expired records are dropped on
+ * lookup and by the compaction.</p>
+ *
+ * @param <K> key type
+ */
+final class DiskOverflowStore<K> implements AutoCloseable {
+
+    private static final long MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    private static final int SEGMENTS_PER_BUDGET = 4;
+    private static final String LOCK_FILE = "overflow.lock";
+    private static final String SEGMENT_FILES = "segment-*.bin";
+
+    /** Deadline of records which don't expire. */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final long maxDiskBytes;
+    private final int segmentSize;
+    private final Map<K, Location> index = new ConcurrentHashMap<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    private Segment activeSegment;
+    private int nextSegmentId;
+    private volatile boolean closed;
+
+    /**
+     * Creates a store writing its segment files to a subdirectory of the given directory.
+     *
+     * @param directory    parent directory of the segment files, created if needed
+     * @param cacheName    name of the cache, used for the subdirectory
+     * @param maxDiskBytes maximum size of all segment files together
+     * @throws IllegalStateException if another open store uses the subdirectory
+     * @throws UncheckedIOException  if the subdirectory can't be created
+     */
+    DiskOverflowStore(Path directory, String cacheName, long maxDiskBytes) {
+        this.directory = directory.resolve(directoryName(cacheName));
+        this.maxDiskBytes = maxDiskBytes;
+        this.segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxDiskBytes / SEGMENTS_PER_BUDGET));
+
+        try {
+            Files.createDirectories(this.directory);
+            this.lockChannel = lock(this.directory.resolve(LOCK_FILE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("can't create overflow directory " + this.directory, e);
+        }
+        deleteSegmentFiles();
+    }
+
+    //cache names may contain characters which aren't allowed in file names, the hash keeps the replaced ones apart
+    private static String directoryName(String cacheName) {
+        return cacheName.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + Integer.toHexString(cacheName.hashCode());
+    }
+
+    private static FileChannel lock(Path lockFile) throws IOException {
+        FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; //locked by a cache of this JVM
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("the overflow directory " + lockFile.getParent() + " is used by another cache");
+        }
+        return channel;
+    }
+
+    //files of a process which didn't close its cache, the lock guarantees nobody uses them anymore
+    private void deleteSegmentFiles() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_FILES)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("can't delete old segment files in " + directory, e);
+        }
+    }
+
+    /**
+     * Stores the bytes of an evicted entry, replacing an older version of the key.
+     * Values larger than a segment and versions older than the stored one aren't stored.
+     *
+     * @param key         the key
+     * @param storedBytes the stored form of the value
+     * @param writeTime   the strictly increasing {@link System#nanoTime()} the value was written to the cache
+     * @param deadline    the {@link System#nanoTime()} the entry expires at, or {@link #NO_DEADLINE}
+     * @throws UncheckedIOException if a segment file can't be created
+     */
+    void write(K key, byte[] storedBytes, long writeTime, long deadline) {
+        if (closed || storedBytes.length > segmentSize) {
+            return;
+        }
+
+        Location location = append(storedBytes, writeTime, deadline, null);
+        if (location == null) {
+            return;
+        }
+        //evictions of the same key can be written by different threads in any order
+        while (true) {
+            Location storedLocation = index.putIfAbsent(key, location);
+            if (storedLocation == null) {
+                return;
+            }
+            if (storedLocation.writeTime - writeTime > 0) {
+                discard(location);
+                return;
+            }
+            if (index.replace(key, storedLocation, location)) {
+                discard(storedLocation);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the key from this tier and returns its stored bytes.
+     *
+     * @param key the key
+     * @return the record, or {@code null} if the key isn't stored in this tier or expired
+     */
+    OverflowRecord take(K key) {
+        Location location = index.remove(key);
+        if (location == null) {
+            return null;
+        }
+
+        OverflowRecord result = location.isExpired(System.nanoTime()) ? null : new OverflowRecord(location.read(), location.writeTime);
+        discard(location);
+        return result;
+    }
+
+    /**
+     * Returns the stored bytes of the key without removing it from this tier.
+     *
+     * @param key the key
+     * @return the stored bytes, or {@code null} if the key isn't stored in this tier or expired
+     */
+    byte[] peek(K key) {
+        Location location = index.get(key);
+        return location != null && !location.isExpired(System.nanoTime()) ? location.read() : null;
+    }
+
+    /**
+     * Returns a live view of the keys stored in this tier, including expired ones.
+     *
+     * @return the keys
+     */
+    Set<K> keys() {
+        return index.keySet();
+    }
+
+    /**
+     * Returns {@code true} if this tier has a version of the given key which didn't expire.
+     *
+     * @param key the key
+     * @return {@code true} if the key is stored
+     */
+    boolean contains(K key) {
+        Location location = index.get(key);
+        return location != null && !location.isExpired(System.nanoTime());
+    }
+
+    /**
+     * Removes the key from this tier, e.g. because it was removed from the cache.
+     *
+     * @param key the key
+     */
+    void remove(K key) {
+        discard(index.remove(key));
+    }
+
+    /**
+     * Removes the version of the key written before the given time, because a newer value was
+     * put into memory.  The newer value itself stays, if it got evicted to this tier meanwhile.
+     *
+     * @param key       the key
+     * @param writeTime the write time of the newer value
+     */
+    void removeOutdated(K key, long writeTime) {
+        Location location = index.get(key);
+        if (location != null && writeTime - location.writeTime > 0 && index.remove(key, location)) {
+            discard(location);
+        }
+    }
+
+    /**
+     * Removes all keys from this tier.
+     */
+    void clear() {
+        index.clear();
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.liveBytes.set(0);
+            }
+        }
+        scheduleCompaction();
+    }
+
+    /**
+     * Returns the number of keys stored in this tier.
+     *
+     * @return the number of keys
+     */
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * Deletes all segment files and releases the directory.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        index.clear();
+        while (!segments.isEmpty()) {
+            segments.removeFirst().delete();
+        }
+        activeSegment = null;
+
+        try (lockChannel) {
+            Files.deleteIfExists(directory.resolve(LOCK_FILE));
+        } catch (IOException e) {
+            directory.resolve(LOCK_FILE).toFile().deleteOnExit();
+        }
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            directory.toFile().deleteOnExit();
+        }
+    }
+
+    private synchronized Location append(byte[] storedBytes, long writeTime, long deadline, Segment excluded) {
+        if (closed) {
+            return null;
+        }
+
+        if (activeSegment == null || activeSegment.writePosition + storedBytes.length > segmentSize) {
+            while (!segments.isEmpty() && (long) (segments.size() + 1) * segmentSize > maxDiskBytes) {
+                Segment oldest = segments.peekFirst();
+                if (oldest == excluded) {
+                    return null;
+                }
+                dropSegment(oldest);
+            }
+            activeSegment = new Segment(directory.resolve("segment-" + nextSegmentId++ + ".bin"), segmentSize);
+            segments.addLast(activeSegment);
+            scheduleCompaction();
+        }
+
+        Segment segment = activeSegment;
+        int offset = segment.writePosition;
+        segment.buffer.put(offset, storedBytes);
+        segment.writePosition += storedBytes.length;
+        segment.liveBytes.addAndGet(storedBytes.length);
+        return new Location(segment, offset, storedBytes.length, writeTime, deadline);
+    }
+
+    private void dropSegment(Segment segment) {
+        segments.remove(segment);
+        index.values().removeIf(location -> location.segment == segment);
+        segment.delete();
+    }
+
+    private void discard(Location location) {
+        if (location == null) {
+            return;
+        }
+        location.segment.liveBytes.addAndGet(-location.length);
+        if (location.segment != activeSegment && location.segment.isMostlyGarbage()) {
+            scheduleCompaction();
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (!closed && compactionScheduled.compareAndSet(false, true)) {
+            ForkJoinPool.commonPool().execute(this::compact);
+        }
+    }
+
+    private void compact() {
+        try {
+            Segment candidate;
+            while ((candidate = nextCompactionCandidate()) != null) {
+                compact(candidate);
+            }
+        } finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    private synchronized Segment nextCompactionCandidate() {
+        for (Segment segment : segments) {
+            if (segment != activeSegment && segment.isMostlyGarbage()) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private void compact(Segment segment) {
+        long now = System.nanoTime();
+        for (Map.Entry<K, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if (location.segment != segment) {
+                continue;
+            }
+            if (location.isExpired(now)) {
+                if (index.remove(entry.getKey(), location)) {
+                    segment.liveBytes.addAndGet(-location.length);
+                }
+                continue;
+            }
+
+            Location movedLocation = append(location.read(), location.writeTime, location.deadline, segment);
+            if (movedLocation == null) {
+                break; //closed or no space left, the segment gets dropped as a whole
+            }
+            if (index.replace(entry.getKey(), location, movedLocation)) {
+                segment.liveBytes.addAndGet(-location.length);
+            } else {
+                discard(movedLocation);
+            }
+        }
+
+        synchronized (this) {
+            if (segments.contains(segment)) {
+                dropSegment(segment);
+            }
+        }
+    }
+
+    /**
+     * Stored bytes of a key taken from this tier.
+     *
+     * @param storedBytes the stored form of the value
+     * @param writeTime   the {@link System#nanoTime()} the value was written to the cache, {@code 0} if unknown
+     */
+    record OverflowRecord(byte[] storedBytes, long writeTime) {
+    }
+
+    /**
+     * Position of stored bytes within a segment, with the expiry of the entry.
+     */
+    private record Location(Segment segment, int offset, int length, long writeTime, long deadline) {
+
+        private byte[] read() {
+            byte[] result = new byte[length];
+            segment.buffer.get(offset, result);
+            return result;
+        }
+
+        private boolean isExpired(long now) {
+            return deadline != NO_DEADLINE && now - deadline >= 0;
+        }
+    }
+
+    /**
+     * A memory-mapped, append-only segment file.
+     */
+    private static final class Segment {
+
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private volatile int writePosition; //written under the store lock
+
+        private Segment(Path file, int segmentSize) {
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException("can't create overflow segment " + file, e);
+            }
+        }
+
+        private boolean isMostlyGarbage() {
+            return liveBytes.get() < writePosition / 2;
+        }
+
+        private void delete() {
+            try {
+                //the mapping stays valid for concurrent readers until the buffer gets collected
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+}
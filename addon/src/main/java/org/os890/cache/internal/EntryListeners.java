@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import org.os890.cache.CompressedEntry;
+
+import javax.cache.Cache;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.Factory;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryEventFilter;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.event.EventType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Registered entry listeners of a cache and the delivery of their events.
+ *
+ * <p>Synchronous listeners are called by the thread which changed the entry, before the
+ * operation returns, and their exceptions reach the caller as {@link CacheEntryListenerException}.
+ * Asynchronous listeners get their events through a queue per registration: the writing
+ * thread only enqueues, a task on the listener executor drains the queue and hands up to
+ * {@value #MAX_BATCH_SIZE} events of the same type to one listener call.  At most one task
+ * per registration runs at a time, so a listener gets its events in the order they were
+ * enqueued and a slow listener only delays its own events.</p>
+ *
+ * <p>Filters run where the listener runs, i.e. on the listener executor for asynchronous
+ * registrations.  Events decode values only if a filter or listener reads them.</p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class EntryListeners<K, V> {
+
+    /** Maximum number of events passed to one call of an asynchronous listener. */
+    static final int MAX_BATCH_SIZE = 256;
+
+    private static final System.Logger LOGGER = System.getLogger(EntryListeners.class.getName());
+
+    private final Cache<K, V> source;
+    private final Executor executor;
+    private final Function<CompressedEntry<V>, V> decoder;
+    private final Consumer<CompressedEntry<V>> releaser;
+    private final List<Registration<K, V>> registrations = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates the listeners of a cache.
+     *
+     * @param source   the cache, source of the events
+     * @param executor runs the delivery to asynchronous listeners
+     * @param decoder  decodes the value of an entry without side effects on the cache
+     * @param releaser releases an entry handed over to {@link #dispatch(EventType, Object, CompressedEntry, CompressedEntry)}
+     */
+    EntryListeners(Cache<K, V> source, Executor executor, Function<CompressedEntry<V>, V> decoder, Consumer<CompressedEntry<V>> releaser) {
+        this.source = source;
+        this.executor = executor;
+        this.decoder = decoder;
+        this.releaser = releaser;
+    }
+
+    boolean isEmpty() {
+        return registrations.isEmpty();
+    }
+
+    /**
+     * Creates the listener and filter of the configuration and adds them.
+     *
+     * @param configuration  the listener configuration
+     * @param expiredEvents  whether the cache reports expired entries
+     * @throws IllegalArgumentException if the configuration is registered already or the listener
+     *                                  waits for expired events the cache can't report
+     */
+    synchronized void register(CacheEntryListenerConfiguration<K, V> configuration, boolean expiredEvents) {
+        for (Registration<K, V> registration : registrations) {
+            if (registration.configuration.equals(configuration)) {
+                throw new IllegalArgumentException("the listener configuration is registered already");
+            }
+        }
+        Registration<K, V> registration = new Registration<>(configuration);
+        if (!expiredEvents && registration.listensTo(EventType.EXPIRED)) {
+            throw new IllegalArgumentException("expired events need a removal listener on the Guava cache, " +
+                    "configure the listener via CompressedCacheOptions#cacheEntryListener instead");
+        }
+        registrations.add(registration);
+    }
+
+    /**
+     * Removes the registration of the configuration, its queued events are dropped.
+     *
+     * @param configuration the listener configuration
+     */
+    synchronized void deregister(CacheEntryListenerConfiguration<K, V> configuration) {
+        for (Registration<K, V> registration : registrations) {
+            if (registration.configuration.equals(configuration)) {
+                registrations.remove(registration);
+                registration.closed = true;
+                drainClosed(registration);
+                return;
+            }
+        }
+    }
+
+    List<CacheEntryListenerConfiguration<K, V>> getConfigurations() {
+        List<CacheEntryListenerConfiguration<K, V>> result = new ArrayList<>();
+        for (Registration<K, V> registration : registrations) {
+            result.add(registration.configuration);
+        }
+        return result;
+    }
+
+    /**
+     * Removes all registrations.
+     */
+    synchronized void close() {
+        for (CacheEntryListenerConfiguration<K, V> configuration : getConfigurations()) {
+            deregister(configuration);
+        }
+    }
+
+    /**
+     * Notifies the listeners of the given event type.
+     *
+     * <p>Takes over one retained reference of each entry, which gets released once all
+     * registrations got the event.</p>
+     *
+     * @param eventType the type of the change
+     * @param key       the key of the changed entry
+     * @param newEntry  the new entry, {@code null} for removed and expired entries
+     * @param oldEntry  the replaced or removed entry, {@code null} for created entries
+     * @throws CacheEntryListenerException if a synchronous listener failed
+     */
+    void dispatch(EventType eventType, K key, CompressedEntry<V> newEntry, CompressedEntry<V> oldEntry) {
+        List<Registration<K, V>> targets = new ArrayList<>(registrations.size());
+        for (Registration<K, V> registration : registrations) {
+            if (registration.listensTo(eventType)) {
+                targets.add(registration);
+            }
+        }
+
+        if (targets.isEmpty()) {
+            releaser.accept(newEntry);
+            releaser.accept(oldEntry);
+            return;
+        }
+        LazyEntryEvent<K, V> event = new LazyEntryEvent<>(source, eventType, key, newEntry, oldEntry, decoder, releaser, targets.size());
+
+        CacheEntryListenerException failure = null;
+        for (Registration<K, V> registration : targets) {
+            if (!registration.configuration.isSynchronous()) {
+                enqueue(registration, event);
+                continue;
+            }
+
+            try {
+                deliver(registration, List.of(event));
+            } catch (CacheEntryListenerException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void enqueue(Registration<K, V> registration, LazyEntryEvent<K, V> event) {
+        registration.queue.add(event);
+        if (!registration.draining.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> drain(registration));
+        } catch (RejectedExecutionException e) {
+            //e.g. the executor was shut down, the events must not get lost
+            drain(registration);
+        }
+    }
+
+    private void drain(Registration<K, V> registration) {
+        while (true) {
+            List<LazyEntryEvent<K, V>> batch = new ArrayList<>();
+            LazyEntryEvent<K, V> event;
+            while (batch.size() < MAX_BATCH_SIZE && (event = registration.queue.poll()) != null) {
+                batch.add(event);
+            }
+
+            if (batch.isEmpty()) {
+                registration.draining.set(false);
+                //an event enqueued before the flag was reset didn't schedule a drain
+                if (registration.queue.isEmpty() || !registration.draining.compareAndSet(false, true)) {
+                    return;
+                }
+            } else if (registration.closed) {
+                batch.forEach(LazyEntryEvent::delivered);
+            } else {
+                try {
+                    deliver(registration, batch);
+                } catch (CacheEntryListenerException e) {
+                    LOGGER.log(System.Logger.Level.WARNING, "asynchronous cache entry listener failed", e);
+                }
+            }
+        }
+    }
+
+    //a running drain task releases the queued events itself
+    private void drainClosed(Registration<K, V> registration) {
+        if (!registration.queue.isEmpty() && registration.draining.compareAndSet(false, true)) {
+            drain(registration);
+        }
+    }
+
+    //hands consecutive events of the same type to one listener call
+    private void deliver(Registration<K, V> registration, List<LazyEntryEvent<K, V>> events) {
+        CacheEntryListenerException failure = null;
+        try {
+            int start = 0;
+            while (start < events.size()) {
+                EventType eventType = events.get(start).getEventType();
+                List<CacheEntryEvent<? extends K, ? extends V>> sameType = new ArrayList<>();
+                int end = start;
+                for (; end < events.size() && events.get(end).getEventType() == eventType; end++) {
+                    sameType.add(events.get(end));
+                }
+                start = end;
+
+                try {
+                    registration.fire(eventType, sameType);
+                } catch (CacheEntryListenerException e) {
+                    failure = failure != null ? failure : e;
+                } catch (RuntimeException e) {
+                    failure = failure != null ? failure : new CacheEntryListenerException(e);
+                }
+            }
+        } finally {
+            events.forEach(LazyEntryEvent::delivered);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Listener and filter created from a configuration, with the queue of the asynchronous delivery.
+     *
+     * @param <K> key type
+     * @param <V> value type
+     */
+    private static final class Registration<K, V> {
+
+        private final CacheEntryListenerConfiguration<K, V> configuration;
+        private final CacheEntryListener<K, V> listener;
+        private final CacheEntryEventFilter<K, V> filter;
+        private final Queue<LazyEntryEvent<K, V>> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        @SuppressWarnings("unchecked")
+        private Registration(CacheEntryListenerConfiguration<K, V> configuration) {
+            this.configuration = configuration;
+            this.listener = (CacheEntryListener<K, V>) configuration.getCacheEntryListenerFactory().create();
+            Factory<CacheEntryEventFilter<? super K, ? super V>> filterFactory = configuration.getCacheEntryEventFilterFactory();
+            this.filter = filterFactory != null ? (CacheEntryEventFilter<K, V>) filterFactory.create() : null;
+        }
+
+        private boolean listensTo(EventType eventType) {
+            return switch (eventType) {
+                case CREATED -> listener instanceof CacheEntryCreatedListener;
+                case UPDATED -> listener instanceof CacheEntryUpdatedListener;
+                case REMOVED -> listener instanceof CacheEntryRemovedListener;
+                case EXPIRED -> listener instanceof CacheEntryExpiredListener;
+            };
+        }
+
+        private void fire(EventType eventType, List<CacheEntryEvent<? extends K, ? extends V>> events) {
+            if (filter != null) {
+                events.removeIf(event -> !filter.evaluate(event));
+                if (events.isEmpty()) {
+                    return;
+                }
+            }
+
+            switch (eventType) {
+                case CREATED -> ((CacheEntryCreatedListener<K, V>) listener).onCreated(events);
+                case UPDATED -> ((CacheEntryUpdatedListener<K, V>) listener).onUpdated(events);
+                case REMOVED -> ((CacheEntryRemovedListener<K, V>) listener).onRemoved(events);
+                case EXPIRED -> ((CacheEntryExpiredListener<K, V>) listener).onExpired(events);
+                default -> throw new IllegalStateException(eventType.name() + " isn't supported");
+            }
+        }
+    }
+}
@@ -19,57 +19,87 @@
 
 package org.os890.cache.internal;
 
-import org.apache.ignite.marshaller.Marshaller;
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.lang.ref.SoftReference;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A compressed cache entry that keeps a {@link SoftReference} to the uncompressed
  * value for faster repeated reads ({@link org.os890.cache.CompressedValueMode#FAST FAST} mode).
  *
  * <p>The soft reference is discarded under JVM memory pressure, after which the value
- * is restored from the compressed bytes on the next {@link #getUncompressedValue()} call.</p>
+ * is restored from the compressed bytes on the next {@link #getUncompressedValue()} call.
+ * Restoring is single-flight: the first reader publishes a pending restore via CAS and
+ * decompresses, concurrent readers of the same entry wait for its result instead of
+ * inflating the same bytes again.</p>
  *
  * @param <V> the type of the uncompressed value
  */
 public class FastCompressedEntry<V> extends AbstractCompressedEntry<V> {
 
-    private transient SoftReference<V> transientValueRef; //stores the uncompressed value for a faster access - will be dropped if there isn't enough memory or the value gets replicated
+    private static final int ENTRY_SIZE = 48;
+
+    private static final VarHandle PENDING_RESTORE;
+
+    static {
+        try {
+            PENDING_RESTORE = MethodHandles.lookup()
+                    .findVarHandle(FastCompressedEntry.class, "pendingRestore", CompletableFuture.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private transient volatile SoftReference<V> transientValueRef; //stores the uncompressed value for a faster access - will be dropped if there isn't enough memory or the value gets replicated
+
+    @SuppressWarnings("unused") //accessed via PENDING_RESTORE
+    private transient volatile CompletableFuture<V> pendingRestore; //set while a thread restores the value
 
     /**
      * Creates a new fast entry by compressing the given value.
      *
      * @param value      the value to compress
-     * @param marshaller the marshaller used to serialise the value before compression
+     * @param compressor the compressor of the cache
      */
-    FastCompressedEntry(V value, Marshaller marshaller) {
-        super(marshaller);
+    FastCompressedEntry(V value, ValueCompressor<V> compressor) {
+        super(compressor);
         this.transientValueRef = new SoftReference<>(value);
-        compressToByteArray();
+        compressToByteArray(value);
     }
 
-    @Override
-    public V getUncompressedValue() {
-        V currentValue = null;
+    private FastCompressedEntry(ValueCompressor<V> compressor, byte[] storedBytes) {
+        super(compressor);
+        this.compressedValue = storedBytes;
+    }
 
-        SoftReference<V> currentValueRef = this.transientValueRef;
-        if (!isTransientValueRefEmpty(currentValueRef)) {
-            currentValue = currentValueRef.get();
-        }
+    /**
+     * Creates an entry from bytes produced by {@link ValueCompressor#compress(Object)}
+     * without recompressing them.  The soft reference gets populated by the first read.
+     *
+     * @param <V>         the type of the uncompressed value
+     * @param storedBytes the stored form of the value
+     * @param compressor  the compressor of the cache
+     * @return the new entry
+     */
+    static <V> FastCompressedEntry<V> fromStoredBytes(byte[] storedBytes, ValueCompressor<V> compressor) {
+        return new FastCompressedEntry<>(compressor, storedBytes);
+    }
 
-        if (currentValue == null & compressedValue != null) {
-            currentValue = restoreFromByteArray();
+    @Override
+    public V getUncompressedValue() {
+        V currentValue = getTransientValue();
+        compressor.recordSoftReferenceRead(currentValue != null);
+        if (currentValue != null) {
+            return currentValue;
         }
-
-        return currentValue;
+        return restoreFromByteArray();
     }
 
-    private void createNewTransientValueRef(V value) {
-        this.transientValueRef = new SoftReference<>(value);
+    @Override
+    V peekUncompressedValue() {
+        V currentValue = getTransientValue();
+        return currentValue != null ? currentValue : super.peekUncompressedValue();
     }
 
     @Override
@@ -77,85 +107,84 @@ public class FastCompressedEntry<V> extends AbstractCompressedEntry<V> {
         if (failureFound) {
             return false;
         }
-        SoftReference<V> currentValueRef = this.transientValueRef;
-        return !isTransientValueRefEmpty(currentValueRef) || compressedValue != null;
+        return getTransientValue() != null || compressedValue != null;
     }
 
-    private void compressToByteArray() {
-        if (compressedValue != null || failureFound) {
-            return;
+    @Override
+    long getRetainedSize() {
+        byte[] currentValue = compressedValue;
+        long result = ENTRY_SIZE;
+        if (currentValue != null) {
+            result += CompressedEntryWeigher.ARRAY_OVERHEAD + currentValue.length;
         }
 
-        try {
-            SoftReference<V> currentValueRef = this.transientValueRef;
-
-            if (isTransientValueRefEmpty(currentValueRef)) {
-                return;
-            }
-
-            V valueToArchive = currentValueRef.get();
-
-            if (valueToArchive == null) {
-                return;
+        SoftReference<V> currentValueRef = this.transientValueRef;
+        if (currentValueRef != null) {
+            result += CompressedEntryWeigher.SOFT_REFERENCE_OVERHEAD;
+            if (currentValueRef.get() != null && currentValue != null) {
+                result += (long) ValueCompressor.getUncompressedLength(currentValue) * CompressedEntryWeigher.DECODED_EXPANSION_FACTOR;
             }
+        }
+        return result;
+    }
 
-            byte[] valueAsByes = marshaller.marshal(valueToArchive);
-            byte[] compressedOutput;
+    @Override
+    byte[] getStoredBytes() {
+        return failureFound ? null : compressedValue;
+    }
 
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                 GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
-                 ByteArrayInputStream inputStream = new ByteArrayInputStream(valueAsByes);) {
-                inputStream.transferTo(gzipOutputStream);
-                gzipOutputStream.finish();
-                compressedOutput = outputStream.toByteArray();
-            }
+    private void compressToByteArray(V valueToArchive) {
+        if (valueToArchive == null) {
+            return;
+        }
 
-            this.compressedValue = compressedOutput;
+        try {
+            this.compressedValue = compressor.compress(valueToArchive);
         } catch (Exception e) {
-            //TODO logging
+            //counted and logged by the compressor
             failureFound = true;
         }
     }
 
     private V restoreFromByteArray() {
-        if (compressedValue == null || failureFound) {
-            return null;
-        }
-
-        SoftReference<V> currentValueRef = this.transientValueRef;
-        if (currentValueRef != null) {
-            V currentValue = currentValueRef.get();
+        while (compressedValue != null && !failureFound) {
+            @SuppressWarnings("unchecked")
+            CompletableFuture<V> runningRestore = (CompletableFuture<V>) PENDING_RESTORE.getAcquire(this);
+            if (runningRestore != null) {
+                //another reader decompresses already
+                return runningRestore.join();
+            }
 
-            if (currentValue != null) {
-                return currentValue;
+            CompletableFuture<V> ownRestore = new CompletableFuture<>();
+            if (PENDING_RESTORE.compareAndSet(this, null, ownRestore)) {
+                return restoreSingleFlight(ownRestore);
             }
         }
+        return null;
+    }
 
-        byte[] valueToDecompress = this.compressedValue;
-
+    private V restoreSingleFlight(CompletableFuture<V> ownRestore) {
+        V result = null;
         try {
-            byte[] uncompressedValue;
-
-            try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(valueToDecompress))) {
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-
-                gzipInputStream.transferTo(outputStream);
-                uncompressedValue = outputStream.toByteArray();
-            }
-
-            if (uncompressedValue != null) {
-                V result = marshaller.unmarshal(uncompressedValue, uncompressedValue.getClass().getClassLoader());
-                createNewTransientValueRef(result);
-                return result;
+            //the previous restore might have finished between the first check and the CAS
+            result = getTransientValue();
+            if (result == null) {
+                result = compressor.restore(compressedValue);
+                this.transientValueRef = new SoftReference<>(result);
             }
         } catch (Exception e) {
-            //TODO logging
+            //counted and logged by the compressor
             failureFound = true;
+        } finally {
+            //the value is published before the pending restore gets removed, so later readers find one of both
+            ownRestore.complete(result);
+            PENDING_RESTORE.compareAndSet(this, ownRestore, null);
         }
-        return null;
+        return result;
     }
 
-    private boolean isTransientValueRefEmpty(SoftReference<V> valueRef) {
-        return valueRef == null || valueRef.get() == null;
+    private V getTransientValue() {
+        SoftReference<V> currentValueRef = this.transientValueRef;
+        return currentValueRef != null ? currentValueRef.get() : null;
     }
 }
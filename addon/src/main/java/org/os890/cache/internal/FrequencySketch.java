@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+/**
+ * Count-min sketch with 4-bit counters, estimating how often keys were accessed recently.
+ *
+ * <p>Each key increments one counter in each of four rows of a table of {@code long} words,
+ * 16 counters per word.  The estimate is the minimum of the four counters, so hash collisions
+ * can only make it too large.  Once the number of increments reaches ten times the number
+ * of counters per row, all counters are halved, so the frequencies reflect recent accesses
+ * and keys which were hot a long time ago fade out.</p>
+ *
+ * <p>Not thread-safe, the {@link HotTier} only uses it while holding its lock.</p>
+ */
+final class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final long[] table;
+    private final int counterMask;
+    private final int sampleSize;
+
+    private int additions;
+
+    /**
+     * Creates a sketch for about the given number of distinct keys.
+     *
+     * @param expectedKeys number of keys whose frequencies should be told apart
+     */
+    FrequencySketch(long expectedKeys) {
+        int counters = Integer.highestOneBit(Math.clamp(expectedKeys, 64, 1 << 24) - 1) << 1;
+        this.table = new long[counters / 4];
+        this.counterMask = counters - 1;
+        this.sampleSize = counters * 10;
+    }
+
+    /**
+     * Records an access of the given key.
+     *
+     * @param keyHash hash code of the key
+     */
+    void increment(int keyHash) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            added |= incrementAt(counterIndex(keyHash, row), row);
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the estimated number of recent accesses of the given key.
+     *
+     * @param keyHash hash code of the key
+     * @return the estimate, at most {@value #MAX_COUNT}
+     */
+    int frequency(int keyHash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            frequency = Math.min(frequency, counterAt(counterIndex(keyHash, row), row));
+        }
+        return frequency;
+    }
+
+    private int counterIndex(int keyHash, int row) {
+        long hash = (keyHash + SEEDS[row]) * SEEDS[row];
+        return (int) (hash ^ (hash >>> 32)) & counterMask;
+    }
+
+    //every row uses its own quarter of the 16 counters of a word
+    private int counterAt(int counterIndex, int row) {
+        int shift = ((counterIndex & 3) + (row << 2)) << 2;
+        return (int) ((table[counterIndex >>> 2] >>> shift) & 0xF);
+    }
+
+    private boolean incrementAt(int counterIndex, int row) {
+        int wordIndex = counterIndex >>> 2;
+        int shift = ((counterIndex & 3) + (row << 2)) << 2;
+        if (((table[wordIndex] >>> shift) & 0xF) == MAX_COUNT) {
+            return false;
+        }
+        table[wordIndex] += 1L << shift;
+        return true;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+}
@@ -20,43 +20,155 @@
 package org.os890.cache.internal;
 
 import com.google.common.cache.CacheBuilder;
-import org.apache.ignite.Ignite;
-import org.apache.ignite.Ignition;
-import org.apache.ignite.internal.GridKernalContext;
-import org.apache.ignite.internal.IgniteKernal;
-import org.apache.ignite.marshaller.Marshaller;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import org.os890.cache.CompressedCache;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedCacheStatisticsMXBean;
 import org.os890.cache.CompressedEntry;
 import org.os890.cache.CompressedValueMode;
+import org.os890.cache.CompressionCodec;
+import org.os890.cache.CompressionStatistics;
+import org.os890.cache.HotTierStatistics;
+import org.os890.cache.PutAllException;
+import org.os890.cache.ValueSerializer;
+import org.os890.cache.serializer.GeneratedSerializer;
 
 import javax.cache.Cache;
 import javax.cache.CacheManager;
 import javax.cache.configuration.CacheEntryListenerConfiguration;
 import javax.cache.configuration.Configuration;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.EventType;
+import javax.cache.integration.CacheLoader;
 import javax.cache.integration.CompletionListener;
 import javax.cache.processor.EntryProcessor;
 import javax.cache.processor.EntryProcessorException;
 import javax.cache.processor.EntryProcessorResult;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * JCache {@link Cache} implementation backed by a Guava in-memory cache.
  *
- * <p>Values are serialised with the Ignite {@link Marshaller} and compressed with GZIP
- * before being stored.  Decompression happens on-demand when a value is read.
+ * <p>Values are serialised with the configured {@link ValueSerializer} (or one generated for the value class) and compressed with the
+ * configured {@link org.os890.cache.CompressionCodec} (GZIP by default) before being stored.  Decompression happens on-demand when a value is read.
  * The compression strategy (FAST or SMALL) determines whether a soft reference to
- * the uncompressed value is kept between reads.</p>
+ * the uncompressed value is kept between reads.  In OFF_HEAP mode the compressed bytes
+ * live in an {@link OffHeapStore}, and a removal listener on the Guava cache frees the
+ * slots of evicted, replaced and invalidated entries.  The same listener moves entries
+ * evicted due to the size limit to the optional {@link DiskOverflowStore}, reads which miss
+ * in memory promote them back.</p>
+ *
+ * <p>With deferred compression new values are stored as {@link PendingCompressedEntry}, and
+ * the {@link DeferredCompactor} replaces them with compressed entries once they are idle.
+ * An optional {@link HotTier} keeps the decoded values of frequently read keys.</p>
+ *
+ * <p>Scans ({@link #iterator()}, {@link #stream()}) wrap the entries in {@link ScannedEntry}
+ * instances, which decode the value only when it gets read.</p>
+ *
+ * <p>Read-through caches load missing values via a {@link LoadCoalescer}, which calls the
+ * loader once per key even if several threads miss it at the same time.</p>
+ *
+ * <p>Compound operations like {@code getAndPut} or {@code replace} compress the new value
+ * before they touch the map, and then swap entries with a single atomic operation of the
+ * map view of the Guava cache.  Operations which compare the current value do so outside
+ * the map lock and replace the entry only if it's still the one they compared.  They compare
+ * the fingerprint recorded in the stored bytes first, and decode the value only if it
+ * doesn't match.</p>
+ *
+ * <p>Snapshots store the serialised keys with the stored bytes of the entries in a
+ * {@link SnapshotFile}, so a restart can reload them without compressing values again.</p>
+ *
+ * <p>While {@link EntryListeners} are registered, operations keep the entries they swapped
+ * and hand them over to a {@link LazyEntryEvent}, which decodes values only for listeners
+ * which read them.</p>
  *
  * @param <K> key type
  * @param <V> value type
  */
-public class GuavaWrapper<K, V> implements Cache<K, V> {
+public class GuavaWrapper<K, V> implements CompressedCache<K, V> {
+
+    private static final HotTierStatistics NO_HOT_TIER = new HotTierStatistics() {
+        @Override
+        public long getHitCount() {
+            return 0;
+        }
+
+        @Override
+        public long getMissCount() {
+            return 0;
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return 0;
+        }
+
+        @Override
+        public long getEntryCount() {
+            return 0;
+        }
+
+        @Override
+        public long getWeightedSize() {
+            return 0;
+        }
+    };
 
     private final String cacheName;
     private final CompressedValueMode compressedValueMode;
-    private final Marshaller marshaller;
+    private final ValueCompressor<V> compressor;
+    private final OffHeapStore offHeapStore;
+    private final DiskOverflowStore<K> overflowStore;
+    private final Map<K, Long> changedKeys; //key -> change sequence
+    private final int parallelBatchThreshold;
+    private final int batchParallelism;
+    private final Executor batchExecutor;
+    private final Executor asyncExecutor;
+    private final int maxPendingAsyncOperations;
+    private final Semaphore asyncPermits;
+    private final DeferredCompactor<K, V> deferredCompactor;
+    private final HotTier<K, V> hotTier;
+    private final LoadCoalescer<K, V> loadCoalescer;
+    private final long refreshAfterWriteNanos;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final CacheStatistics statistics;
+    private final EntryListeners<K, V> listeners;
+    private final boolean expiredEventsMissed; //expiring cache without removal listener
+    private final boolean serializedValueComparison;
+
+    private final AtomicLong changeSequence = new AtomicLong();
+    private final AtomicLong processedEvictions = new AtomicLong(); //evictions handed over to the disk tier
+    private final AtomicLong lastWriteTime = new AtomicLong();
+    private volatile long lastClearSequence;
+    private volatile long snapshotClearSequence; //last clear covered by a snapshot
+    private volatile boolean fullSnapshotWritten;
 
     private com.google.common.cache.Cache<K, CompressedEntry<V>> wrappedCache;
     private boolean closed;
@@ -65,53 +177,256 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
      * Creates a new wrapper with the given name, Guava cache builder and compression mode.
      *
      * @param cacheName           unique name for this cache
-     * @param cacheBuilder        Guava cache builder controlling eviction and size limits
+     * @param cacheBuilder        Guava cache builder controlling eviction and size limits, gets configured and built
      * @param compressedValueMode compression strategy
      */
     public GuavaWrapper(String cacheName, CacheBuilder<Object, Object> cacheBuilder, CompressedValueMode compressedValueMode) {
+        this(cacheName, cacheBuilder, CompressedCacheOptions.newOptions().valueMode(compressedValueMode));
+    }
+
+    /**
+     * Creates a new wrapper with the given name, Guava cache builder and options.
+     *
+     * @param cacheName    unique name for this cache
+     * @param cacheBuilder Guava cache builder controlling eviction and size limits, gets configured and built
+     * @param options      compression mode, codec and further settings
+     */
+    public GuavaWrapper(String cacheName, CacheBuilder<Object, Object> cacheBuilder, CompressedCacheOptions options) {
+        this(cacheName, cacheBuilder, null, options);
+    }
+
+    /**
+     * Creates a new wrapper with the given name, Guava cache builder, value class and options.
+     *
+     * @param cacheName    unique name for this cache
+     * @param cacheBuilder Guava cache builder controlling eviction and size limits, gets configured and built
+     * @param valueClass   class of the values, used to generate a serializer, may be {@code null}
+     * @param options      compression mode, codec and further settings
+     */
+    @SuppressWarnings("this-escape") //the listeners only keep the cache as source of their events
+    public GuavaWrapper(String cacheName, CacheBuilder<Object, Object> cacheBuilder, Class<V> valueClass, CompressedCacheOptions options) {
         this.cacheName = cacheName;
-        wrappedCache = cacheBuilder.build();
-        this.compressedValueMode = compressedValueMode;
-        this.marshaller = createMarshaller(compressedValueMode);
+        this.compressedValueMode = options.getValueMode();
+
+        boolean diskTier = options.getDiskOverflowDirectory() != null;
+        boolean builderExpiry = hasExpiry(cacheBuilder);
+        if (builderExpiry && diskTier) {
+            throw new IllegalArgumentException("the disk tier needs to know the expiry, " +
+                    "configure it via CompressedCacheOptions instead of the cache builder");
+        }
+        configureExpiry(cacheBuilder, options);
+
+        this.offHeapStore = compressedValueMode == CompressedValueMode.OFF_HEAP ? new OffHeapStore() : null;
+
+        this.changedKeys = options.isIncrementalSnapshots() ? new ConcurrentHashMap<>() : null;
+        this.serializedValueComparison = options.isSerializedValueComparison();
+        this.hotTier = options.getHotTierMaxBytes() > 0 ? new HotTier<>(options.getHotTierMaxBytes()) : null;
+        this.parallelBatchThreshold = options.getParallelBatchThreshold();
+        this.batchParallelism = options.getBatchParallelism();
+        this.batchExecutor = options.getBatchExecutor();
+        this.asyncExecutor = options.getAsyncExecutor();
+        this.maxPendingAsyncOperations = options.getMaxPendingAsyncOperations();
+        this.asyncPermits = new Semaphore(maxPendingAsyncOperations);
+        this.loadCoalescer = createLoadCoalescer(options.getCacheLoader());
+        this.refreshAfterWriteNanos = loadCoalescer != null && options.getRefreshAfterWrite() != null ?
+                options.getRefreshAfterWrite().toNanos() : 0;
+        this.expireAfterWriteNanos = diskTier && options.getExpireAfterWrite() != null ?
+                options.getExpireAfterWrite().toNanos() : 0;
+        this.expireAfterAccessNanos = diskTier && options.getExpireAfterAccess() != null ?
+                options.getExpireAfterAccess().toNanos() : 0;
+
+        this.listeners = new EntryListeners<>(this, options.getListenerExecutor(), GuavaWrapper::peekValue, GuavaWrapper::releaseEntry);
+        registerConfiguredListeners(options);
+
+        //the disk tier compares the evictions queued by Guava with the processed ones
+        if (options.isStatisticsEnabled() || diskTier) {
+            cacheBuilder.recordStats();
+        }
+        if (offHeapStore != null || diskTier || !listeners.isEmpty() || options.getDeferredCompressionIdleTime() != null) {
+            this.expiredEventsMissed = false;
+            wrappedCache = createCacheWithRemovalListener(cacheBuilder);
+        } else {
+            //listeners registered later can't get expired events, a cache without expiry has none
+            this.expiredEventsMissed = builderExpiry || options.getExpireAfterWrite() != null || options.getExpireAfterAccess() != null;
+            wrappedCache = cacheBuilder.build();
+        }
+        ValueSerializer serializer = options.getSerializer();
+        ObjectInputFilter deserializationFilter = options.getDeserializationFilter() != null ?
+                options.getDeserializationFilter() : valueClassFilter(valueClass);
+        if (deserializationFilter != null) {
+            serializer = serializer.withDeserializationFilter(deserializationFilter);
+        }
+        if (options.isGeneratedSerializer()) {
+            serializer = GeneratedSerializer.forClass(valueClass, serializer);
+        }
+        this.compressor = new ValueCompressor<>(cacheName, compressedValueMode, serializer, options.getCodec(),
+                options.getMinCompressionSize(), options.getMinCompressionRatio(), options.isStatisticsEnabled());
+        //locks its directory, so it gets created once the settings were checked
+        this.overflowStore = diskTier ?
+                new DiskOverflowStore<>(options.getDiskOverflowDirectory(), cacheName, options.getMaxDiskOverflowBytes()) : null;
+        this.statistics = new CacheStatistics(options.isStatisticsEnabled(), compressor,
+                () -> wrappedCache.stats().evictionCount(), this::computeFootprint);
+        if (statistics.isEnabled()) {
+            statistics.register(cacheName);
+        }
+
+        if (options.getDeferredCompressionIdleTime() != null) {
+            this.deferredCompactor = new DeferredCompactor<>(wrappedCache.asMap(), this::createCompressedEntry, GuavaWrapper::releaseEntry,
+                    options.getDeferredCompressionIdleTime(), options.getDeferredCompressionHeapWatermark());
+        } else {
+            this.deferredCompactor = null;
+        }
     }
 
     /**
      * Returns the value associated with the given key, or {@code null} if no mapping exists.
      *
+     * <p>Read-through caches load a missing value, see {@link CompressedCacheOptions#cacheLoader(CacheLoader)}.</p>
+     *
      * @param key the key whose associated value is to be returned
      * @return the value mapped to the key, or {@code null} if absent
+     * @throws javax.cache.integration.CacheLoaderException if the loader failed
      */
     @Override
     public V get(K key) {
-        CompressedEntry<V> compressedEntry = wrappedCache.getIfPresent(key);
+        long startTime = statistics.startTime();
+        CompressedEntry<V> compressedEntry = findEntry(key);
 
         if (compressedEntry != null) {
-            return compressedEntry.getUncompressedValue();
+            refreshIfDue(key, compressedEntry);
+            V value = readValue(key, compressedEntry);
+            statistics.recordGets(1, 0, startTime);
+            return value;
         }
-        return null;
+        statistics.recordGets(0, 1, startTime);
+        return loadCoalescer != null ? loadCoalescer.load(key, this::storeLoaded) : null;
     }
 
     /**
      * Returns a map of the values associated with the given keys.
      *
+     * <p>From {@link CompressedCacheOptions#parallelBatchThreshold(int)} found entries on, the
+     * values are decompressed in parallel on the batch executor.  Read-through caches load
+     * the missing values with one bulk call of the loader.</p>
+     *
      * @param keys the keys whose associated values are to be returned
      * @return a map of keys to their values for each key that has a mapping
+     * @throws javax.cache.integration.CacheLoaderException if the loader failed
      */
     @Override
     public Map<K, V> getAll(Set<? extends K> keys) {
+        BulkOperationEvent event = new BulkOperationEvent();
+        event.begin();
+        long startTime = statistics.startTime();
         Map<K, CompressedEntry<V>> foundEntries = wrappedCache.getAllPresent(keys);
+        if (refreshAfterWriteNanos > 0 && foundEntries != null) {
+            foundEntries.forEach(this::refreshIfDue);
+        }
 
-        Map<K, V> result = new HashMap<>();
-        if (foundEntries != null) {
+        Map<K, V> result = HashMap.newHashMap(keys.size());
+        if (foundEntries != null && foundEntries.size() >= parallelBatchThreshold && batchParallelism > 1) {
+            decompressInParallel(foundEntries, result);
+        } else if (foundEntries != null) {
             for (Map.Entry<K, CompressedEntry<V>> currentEntry : foundEntries.entrySet()) {
                 if (currentEntry.getKey() != null && currentEntry.getValue() != null) {
-                    result.put(currentEntry.getKey(), currentEntry.getValue().getUncompressedValue());
+                    result.put(currentEntry.getKey(), readValue(currentEntry.getKey(), currentEntry.getValue()));
+                }
+            }
+        }
+
+        if (overflowStore != null && result.size() < keys.size()) {
+            for (K key : keys) {
+                if (!result.containsKey(key)) {
+                    CompressedEntry<V> promotedEntry = promote(key);
+                    if (promotedEntry != null) {
+                        result.put(key, readValue(key, promotedEntry));
+                    }
                 }
             }
         }
+
+        statistics.recordGets(result.size(), keys.size() - result.size(), startTime);
+        if (loadCoalescer != null && result.size() < keys.size()) {
+            List<K> missingKeys = new ArrayList<>(keys.size() - result.size());
+            for (K key : keys) {
+                if (!result.containsKey(key)) {
+                    missingKeys.add(key);
+                }
+            }
+            result.putAll(loadCoalescer.loadAll(missingKeys, this::storeLoaded));
+        }
+        event.finish(cacheName, compressedValueMode.name(), BulkOperationEvent.GET_ALL, keys.size(), result.size());
         return result;
     }
 
+    //splits the entries into ranges, the calling thread decompresses the first one itself
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void decompressInParallel(Map<K, CompressedEntry<V>> foundEntries, Map<K, V> result) {
+        Map.Entry<K, CompressedEntry<V>>[] entries = foundEntries.entrySet().toArray(new Map.Entry[0]);
+        Object[] values = new Object[entries.length];
+        int partCount = Math.min(batchParallelism, entries.length);
+
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[partCount - 1];
+        for (int part = 1; part < partCount; part++) {
+            int from = (int) ((long) entries.length * part / partCount);
+            int to = (int) ((long) entries.length * (part + 1) / partCount);
+            parts[part - 1] = CompletableFuture.runAsync(() -> decompressRange(entries, values, from, to), batchExecutor);
+        }
+        decompressRange(entries, values, 0, entries.length / partCount);
+        joinParts(parts);
+
+        for (int i = 0; i < entries.length; i++) {
+            if (values[i] != null) {
+                result.put(entries[i].getKey(), (V) values[i]);
+            }
+        }
+    }
+
+    private static void joinParts(CompletableFuture<?>[] parts) {
+        try {
+            CompletableFuture.allOf(parts).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void decompressRange(Map.Entry<K, CompressedEntry<V>>[] entries, Object[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            values[i] = readValue(entries[i].getKey(), entries[i].getValue());
+        }
+    }
+
+    private V decode(K key, CompressedEntry<V> entry) {
+        return hotTier != null ? hotTier.getValue(key, entry) : entry.getUncompressedValue();
+    }
+
+    //a concurrent write frees the slot of a replaced off-heap entry, the key is mapped to the new entry then
+    private V readValue(K key, CompressedEntry<V> entry) {
+        CompressedEntry<V> currentEntry = entry;
+        while (true) {
+            V value = decode(key, currentEntry);
+            if (value != null || !(currentEntry instanceof OffHeapCompressedEntry<V> offHeapEntry) || !offHeapEntry.isReleased()) {
+                return value;
+            }
+
+            //another thread may deliver the removal notification while the writer still holds the segment lock
+            CompressedEntry<V> replacingEntry;
+            while ((replacingEntry = wrappedCache.asMap().get(key)) == currentEntry) {
+                Thread.onSpinWait();
+            }
+            if (replacingEntry == null) {
+                return null;
+            }
+            currentEntry = replacingEntry;
+        }
+    }
+
     /**
      * Returns {@code true} if this cache contains a mapping for the given key.
      *
@@ -120,20 +435,48 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
      */
     @Override
     public boolean containsKey(K key) {
-        return wrappedCache.getIfPresent(key) != null;
+        return wrappedCache.getIfPresent(key) != null || (overflowStore != null && overflowStore.contains(key));
     }
 
     /**
-     * Not supported. Always throws {@link UnsupportedOperationException}.
+     * Loads the values of the given keys on the async executor, with one bulk call of the loader.
+     *
+     * <p>Without a {@link CompressedCacheOptions#cacheLoader(CacheLoader) loader} the listener
+     * is notified right away.  Keys whose load is running already, e.g. due to a concurrent
+     * miss, aren't loaded again.</p>
      *
      * @param keys                   the keys to load
-     * @param replaceExistingValues  whether to replace existing values
-     * @param completionListener     listener notified on completion
-     * @throws UnsupportedOperationException always
+     * @param replaceExistingValues  whether to replace existing values, otherwise only missing keys are loaded
+     * @param completionListener     listener notified on completion, may be {@code null}
      */
     @Override
     public void loadAll(Set<? extends K> keys, boolean replaceExistingValues, CompletionListener completionListener) {
-        throw new UnsupportedOperationException("currently not supported");
+        if (loadCoalescer == null) {
+            if (completionListener != null) {
+                completionListener.onCompletion();
+            }
+            return;
+        }
+
+        CompletableFuture.runAsync(() -> {
+            List<K> keysToLoad = new ArrayList<>(keys.size());
+            for (K key : keys) {
+                if (replaceExistingValues || !containsKey(key)) {
+                    keysToLoad.add(key);
+                }
+            }
+            loadCoalescer.loadAll(keysToLoad, replaceExistingValues ? this::storeReplacing : this::storeLoaded);
+        }, asyncExecutor).whenComplete((ignored, failure) -> {
+            if (completionListener == null) {
+                return;
+            }
+            if (failure == null) {
+                completionListener.onCompletion();
+            } else {
+                Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                completionListener.onException(cause instanceof Exception exception ? exception : new CompletionException(cause));
+            }
+        });
     }
 
     /**
@@ -145,14 +488,15 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
      */
     @Override
     public void put(K key, V value) {
-        if (key != null && value != null) {
-            CompressedEntry<V> entry = createCompressedEntry(value);
-            if (entry.isValid()) {
-                wrappedCache.put(key, entry);
-            } else {
-                throw new IllegalStateException("it wasn't possible to compress and store the given value for " + key);
-            }
+        if (key == null || value == null) {
+            return;
         }
+
+        long startTime = statistics.startTime();
+        if (!store(key, value)) {
+            throw new IllegalStateException("it wasn't possible to compress and store the given value for " + key);
+        }
+        statistics.recordPuts(1, startTime);
     }
 
     /**
@@ -164,45 +508,111 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
      */
     @Override
     public V getAndPut(K key, V value) {
-        CompressedEntry<V> foundEntry = wrappedCache.getIfPresent(key);
-
-        SmallCompressedEntry<V> newEntry = new SmallCompressedEntry<>(value, this.marshaller);
-        if (newEntry.isValid()) {
-            wrappedCache.put(key, newEntry);
+        long startTime = statistics.startTime();
+        CompressedEntry<V> newEntry = prepareEntry(value);
+        if (newEntry == null) {
+            CompressedEntry<V> foundEntry = findEntry(key);
+            return foundEntry != null ? foundEntry.getUncompressedValue() : null;
         }
 
-        if (foundEntry != null) {
-            return foundEntry.getUncompressedValue();
+        promoteOverflowed(key);
+        boolean observed = !listeners.isEmpty();
+        CompressedEntry<V> previousEntry = swapRetained(key, newEntry, false, observed);
+        entryStored(key, newEntry);
+        recordGet(previousEntry != null, startTime);
+        statistics.recordPuts(1, startTime);
+        try {
+            return previousEntry != null ? previousEntry.getUncompressedValue() : null;
+        } finally {
+            entrySwapped(key, newEntry, previousEntry, observed);
         }
-        return null;
     }
 
     /**
      * Stores all key-value pairs from the given map in the cache.
      *
+     * <p>From {@link CompressedCacheOptions#parallelBatchThreshold(int)} entries on, the values
+     * are compressed in parallel on the batch executor, each thread stores the entries it
+     * compressed right away.  A value which can't be compressed doesn't stop the other
+     * entries from being stored.</p>
+     *
      * @param map the key-value pairs to store
+     * @throws PutAllException if some values couldn't be compressed, all other entries are stored
      */
     @Override
     public void putAll(Map<? extends K, ? extends V> map) {
-        for (Map.Entry<? extends K, ? extends V> currentEntry : map.entrySet()) {
-            put(currentEntry.getKey(), currentEntry.getValue());
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Map.Entry<? extends K, ? extends V>[] entries = map.entrySet().toArray(new Map.Entry[0]);
+        Set<Object> failedKeys = ConcurrentHashMap.newKeySet();
+        AtomicReference<RuntimeException> firstFailure = new AtomicReference<>();
+        BulkOperationEvent event = new BulkOperationEvent();
+        event.begin();
+        long startTime = statistics.startTime();
+
+        int partCount = entries.length >= parallelBatchThreshold ? Math.min(batchParallelism, entries.length) : 1;
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[partCount - 1];
+        for (int part = 1; part < partCount; part++) {
+            int from = (int) ((long) entries.length * part / partCount);
+            int to = (int) ((long) entries.length * (part + 1) / partCount);
+            parts[part - 1] = CompletableFuture.runAsync(() -> storeRange(entries, from, to, failedKeys, firstFailure), batchExecutor);
+        }
+        storeRange(entries, 0, entries.length / partCount, failedKeys, firstFailure);
+        joinParts(parts);
+        statistics.recordPuts(entries.length - failedKeys.size(), startTime);
+        event.finish(cacheName, compressedValueMode.name(), BulkOperationEvent.PUT_ALL, entries.length, entries.length - failedKeys.size());
+
+        if (!failedKeys.isEmpty()) {
+            throw new PutAllException(failedKeys, firstFailure.get());
+        }
+    }
+
+    private void storeRange(Map.Entry<? extends K, ? extends V>[] entries, int from, int to,
+                            Set<Object> failedKeys, AtomicReference<RuntimeException> firstFailure) {
+        for (int i = from; i < to; i++) {
+            K key = entries[i].getKey();
+            V value = entries[i].getValue();
+            if (key == null || value == null) {
+                continue;
+            }
+
+            try {
+                if (!store(key, value)) {
+                    failedKeys.add(key);
+                }
+            } catch (RuntimeException e) {
+                failedKeys.add(key);
+                firstFailure.compareAndSet(null, e);
+            }
         }
     }
 
     /**
      * Stores the value only if no mapping for the key already exists.
      *
+     * <p>An existing mapping is detected before the value gets compressed.</p>
+     *
      * @param key   the key
      * @param value the value to store if absent
      * @return {@code true} if the value was stored, {@code false} if a mapping already existed
+     * @throws IllegalStateException if the value cannot be compressed
      */
     @Override
     public boolean putIfAbsent(K key, V value) {
-        if (!containsKey(key)) {
-            put(key, value);
-            return true;
+        long startTime = statistics.startTime();
+        if (findEntry(key) != null) {
+            return false;
+        }
+
+        CompressedEntry<V> newEntry = prepareEntry(value);
+        if (newEntry == null) {
+            throw new IllegalStateException("it wasn't possible to compress and store the given value for " + key);
+        }
+        if (!swapEntry(key, null, newEntry)) {
+            releaseEntry(newEntry);
+            return false;
         }
-        return false;
+        statistics.recordPuts(1, startTime);
+        return true;
     }
 
     /**
@@ -213,32 +623,48 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
      */
     @Override
     public boolean remove(K key) {
-        if (containsKey(key)) {
-            wrappedCache.invalidate(key);
-            return true;
+        long startTime = statistics.startTime();
+        if (!listeners.isEmpty()) {
+            if (!removeObserved(key)) {
+                return false;
+            }
+        } else {
+            boolean removed = wrappedCache.asMap().remove(key) != null;
+            if (!removed && (overflowStore == null || !awaitEvictedToDisk(key))) {
+                return false;
+            }
+            keyChanged(key);
         }
-        return false;
+        statistics.recordRemovals(1, startTime);
+        return true;
     }
 
     /**
      * Removes the mapping for the key only if it is currently mapped to the given value.
      *
+     * <p>Values are compared via {@code equals}, or by their serialised forms, see
+     * {@link CompressedCacheOptions#serializedValueComparison(boolean)}.</p>
+     *
      * @param key      the key
      * @param oldValue the value that must match the current mapping
      * @return {@code true} if the mapping was removed
      */
     @Override
     public boolean remove(K key, V oldValue) {
-        CompressedEntry<V> foundValue = wrappedCache.getIfPresent(key);
+        long startTime = statistics.startTime();
+        ValueCompressor.SerializedValue serializedOldValue = serializeForComparison(oldValue);
+        while (true) {
+            CompressedEntry<V> foundEntry = findEntry(key);
+            if (foundEntry == null || !holdsValue(key, foundEntry, oldValue, serializedOldValue)) {
+                return false;
+            }
 
-        if (foundValue != null) {
-            V value = foundValue.getUncompressedValue();
-            if (oldValue.equals(value)) {
-                wrappedCache.invalidate(key);
+            //fails if the entry was replaced after it was compared
+            if (removeEntry(key, foundEntry)) {
+                statistics.recordRemovals(1, startTime);
                 return true;
             }
         }
-        return false;
     }
 
     /**
@@ -249,18 +675,30 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
      */
     @Override
     public V getAndRemove(K key) {
-        CompressedEntry<V> foundValue = wrappedCache.getIfPresent(key);
+        long startTime = statistics.startTime();
+        promoteOverflowed(key);
+        boolean observed = !listeners.isEmpty();
+        CompressedEntry<V> removedEntry = swapRetained(key, null, true, observed);
 
-        if (foundValue != null) {
-            wrappedCache.invalidate(key);
-            return foundValue.getUncompressedValue();
+        recordGet(removedEntry != null, startTime);
+        if (removedEntry == null) {
+            return null;
+        }
+        keyChanged(key);
+        statistics.recordRemovals(1, startTime);
+        try {
+            return removedEntry.getUncompressedValue();
+        } finally {
+            entrySwapped(key, null, removedEntry, observed);
         }
-        return null;
     }
 
     /**
      * Replaces the value for the key only if it is currently mapped to the given old value.
      *
+     * <p>Values are compared via {@code equals}, or by their serialised forms, see
+     * {@link CompressedCacheOptions#serializedValueComparison(boolean)}.</p>
+     *
      * @param key      the key
      * @param oldValue the expected current value
      * @param newValue the new value to store
@@ -268,17 +706,28 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
      */
     @Override
     public boolean replace(K key, V oldValue, V newValue) {
-        CompressedEntry<V> foundValue = wrappedCache.getIfPresent(key);
+        long startTime = statistics.startTime();
+        ValueCompressor.SerializedValue serializedOldValue = serializeForComparison(oldValue);
+        CompressedEntry<V> newEntry = null;
+        while (true) {
+            CompressedEntry<V> foundEntry = findEntry(key);
+            if (foundEntry == null || !holdsValue(key, foundEntry, oldValue, serializedOldValue)) {
+                releaseEntry(newEntry);
+                return false;
+            }
 
-        if (foundValue != null) {
-            V value = foundValue.getUncompressedValue();
-            if (oldValue.equals(value)) {
-                SmallCompressedEntry<V> newEntry = new SmallCompressedEntry<>(newValue, this.marshaller);
-                wrappedCache.put(key, newEntry);
+            if (newEntry == null) {
+                newEntry = prepareEntry(newValue);
+                if (newEntry == null) {
+                    return false;
+                }
+            }
+            //fails if the entry was replaced after it was compared
+            if (swapEntry(key, foundEntry, newEntry)) {
+                statistics.recordPuts(1, startTime);
                 return true;
             }
         }
-        return false;
     }
 
     /**
@@ -290,15 +739,23 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
      */
     @Override
     public boolean replace(K key, V value) {
-        if (containsKey(key)) {
-            try {
-                put(key, value);
-            } catch (IllegalStateException e) {
-                return false;
-            }
-            return true;
+        long startTime = statistics.startTime();
+        CompressedEntry<V> newEntry = prepareEntry(value);
+        if (newEntry == null) {
+            return false;
+        }
+
+        promoteOverflowed(key);
+        boolean observed = !listeners.isEmpty();
+        CompressedEntry<V> previousEntry = swapRetained(key, newEntry, true, observed);
+        if (previousEntry == null) {
+            releaseEntry(newEntry);
+            return false;
         }
-        return false;
+        entryStored(key, newEntry);
+        statistics.recordPuts(1, startTime);
+        entrySwapped(key, newEntry, previousEntry, observed);
+        return true;
     }
 
     /**
@@ -310,89 +767,222 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
      */
     @Override
     public V getAndReplace(K key, V value) {
-        CompressedEntry<V> foundEntry = wrappedCache.getIfPresent(key);
+        long startTime = statistics.startTime();
+        CompressedEntry<V> newEntry = prepareEntry(value);
+        if (newEntry == null) {
+            return null;
+        }
 
-        if (foundEntry != null) {
-            SmallCompressedEntry<V> newEntry = new SmallCompressedEntry<>(value, this.marshaller);
-            if (newEntry.isValid()) {
-                wrappedCache.put(key, newEntry);
-                return foundEntry.getUncompressedValue();
-            }
+        promoteOverflowed(key);
+        boolean observed = !listeners.isEmpty();
+        CompressedEntry<V> previousEntry = swapRetained(key, newEntry, true, observed);
+
+        recordGet(previousEntry != null, startTime);
+        if (previousEntry == null) {
+            releaseEntry(newEntry);
+            return null;
+        }
+        entryStored(key, newEntry);
+        statistics.recordPuts(1, startTime);
+        try {
+            return previousEntry.getUncompressedValue();
+        } finally {
+            entrySwapped(key, newEntry, previousEntry, observed);
         }
-        return null;
     }
 
     /**
      * Removes the mappings for the given keys.
      *
+     * <p>Entry listeners are notified of each removed entry.</p>
+     *
      * @param keys the keys to remove
      */
     @Override
     public void removeAll(Set<? extends K> keys) {
+        if (!listeners.isEmpty()) {
+            keys.forEach(this::removeObserved);
+            return;
+        }
         wrappedCache.invalidateAll(keys);
+        keys.forEach(this::keyChanged);
     }
 
     /**
      * Removes all mappings from the cache.
+     *
+     * <p>Unlike {@link #clear()}, entry listeners are notified of each removed entry.</p>
      */
     @Override
     public void removeAll() {
-        //TODO
+        if (!listeners.isEmpty()) {
+            keyIterator().forEachRemaining(this::removeObserved);
+            return;
+        }
         wrappedCache.invalidateAll();
         wrappedCache.cleanUp();
+        allKeysChanged();
     }
 
     /**
-     * Clears all entries from the cache.
+     * Clears all entries from the cache, without notifying entry listeners.
      */
     @Override
     public void clear() {
         wrappedCache.invalidateAll();
         wrappedCache.cleanUp();
+        allKeysChanged();
     }
 
     /**
-     * Not supported. Always throws {@link UnsupportedOperationException}.
+     * Returns the JCache view of the configuration, a {@link MutableConfiguration}.
+     *
+     * <p>It reflects statistics, read-through and the registered entry listeners; eviction and expiry are configured via
+     * the Guava cache builder and aren't part of it.  Changes of the returned configuration
+     * have no effect on the cache.</p>
      *
      * @param <C>  the configuration type
      * @param clazz the configuration class to return
-     * @return never returns normally
-     * @throws UnsupportedOperationException always
+     * @return a copy of the configuration
+     * @throws IllegalArgumentException if the configuration isn't an instance of the given class
      */
     @Override
     public <C extends Configuration<K, V>> C getConfiguration(Class<C> clazz) {
-        throw new UnsupportedOperationException("currently not supported");
+        MutableConfiguration<K, V> configuration = new MutableConfiguration<K, V>()
+                .setStatisticsEnabled(statistics.isEnabled())
+                .setReadThrough(loadCoalescer != null);
+        if (loadCoalescer != null) {
+            configuration.setCacheLoaderFactory(new FactoryBuilder.SingletonFactory<>(loadCoalescer.getCacheLoader()));
+        }
+        listeners.getConfigurations().forEach(configuration::addCacheEntryListenerConfiguration);
+
+        if (clazz.isInstance(configuration)) {
+            return clazz.cast(configuration);
+        }
+        throw new IllegalArgumentException("configurations of type " + clazz.getName() + " are not supported");
     }
 
     /**
-     * Not supported. Always throws {@link UnsupportedOperationException}.
+     * Invokes the processor on the entry of the given key.
+     *
+     * <p>The current value gets decoded only if the processor reads it, and a new value gets
+     * compressed only if the processor sets one.  The processor runs outside the map lock; its
+     * change is applied only if the entry wasn't changed meanwhile, otherwise the processor is
+     * invoked again on the new entry.  So processors must not have side effects besides the
+     * changes of the entry.</p>
      *
      * @param <T>            the return type of the entry processor
      * @param key            the key to process
      * @param entryProcessor the processor to invoke
      * @param arguments      additional arguments for the processor
-     * @return never returns normally
-     * @throws EntryProcessorException never (operation is unsupported)
-     * @throws UnsupportedOperationException always
+     * @return the result of the processor
+     * @throws EntryProcessorException if the processor fails or the new value cannot be compressed
      */
     @Override
     public <T> T invoke(K key, EntryProcessor<K, V, T> entryProcessor, Object... arguments) throws EntryProcessorException {
-        throw new UnsupportedOperationException("currently not supported");
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(entryProcessor, "entryProcessor");
+
+        long startTime = statistics.startTime();
+        while (true) {
+            CompressedEntry<V> foundEntry = findEntry(key);
+            ProcessedEntry<K, V> entry = new ProcessedEntry<>(key, foundEntry != null, () -> decode(key, foundEntry));
+
+            T result;
+            try {
+                result = entryProcessor.process(entry, arguments);
+            } catch (EntryProcessorException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw new EntryProcessorException(e);
+            }
+
+            if (applyProcessed(key, foundEntry, entry, startTime)) {
+                return result;
+            }
+        }
     }
 
     /**
-     * Not supported. Always throws {@link UnsupportedOperationException}.
+     * Invokes the processor on the entries of the given keys, see {@link #invoke(Object, EntryProcessor, Object...)}.
+     *
+     * <p>From {@link CompressedCacheOptions#parallelBatchThreshold(int)} keys on, the entries are
+     * processed in parallel on the batch executor.  Each entry is processed atomically, the
+     * batch as a whole isn't.</p>
      *
      * @param <T>            the return type of the entry processor
      * @param keys           the keys to process
      * @param entryProcessor the processor to invoke
      * @param arguments      additional arguments for the processor
-     * @return never returns normally
-     * @throws UnsupportedOperationException always
+     * @return the non-null results and the failures of the processor per key
      */
     @Override
     public <T> Map<K, EntryProcessorResult<T>> invokeAll(Set<? extends K> keys, EntryProcessor<K, V, T> entryProcessor, Object... arguments) {
-        throw new UnsupportedOperationException("currently not supported");
+        Objects.requireNonNull(entryProcessor, "entryProcessor");
+
+        @SuppressWarnings("unchecked")
+        K[] keyArray = (K[]) keys.toArray();
+        Map<K, EntryProcessorResult<T>> results = new ConcurrentHashMap<>();
+        BulkOperationEvent event = new BulkOperationEvent();
+        event.begin();
+
+        int partCount = keyArray.length >= parallelBatchThreshold ? Math.min(batchParallelism, keyArray.length) : 1;
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[partCount - 1];
+        for (int part = 1; part < partCount; part++) {
+            int from = (int) ((long) keyArray.length * part / partCount);
+            int to = (int) ((long) keyArray.length * (part + 1) / partCount);
+            parts[part - 1] = CompletableFuture.runAsync(() -> invokeRange(keyArray, from, to, entryProcessor, arguments, results), batchExecutor);
+        }
+        invokeRange(keyArray, 0, keyArray.length / partCount, entryProcessor, arguments, results);
+        joinParts(parts);
+        event.finish(cacheName, compressedValueMode.name(), BulkOperationEvent.INVOKE_ALL, keyArray.length, keyArray.length);
+        return results;
+    }
+
+    private <T> void invokeRange(K[] keys, int from, int to, EntryProcessor<K, V, T> entryProcessor, Object[] arguments,
+                                 Map<K, EntryProcessorResult<T>> results) {
+        for (int i = from; i < to; i++) {
+            K key = keys[i];
+            try {
+                T result = invoke(key, entryProcessor, arguments);
+                if (result != null) {
+                    results.put(key, () -> result);
+                }
+            } catch (EntryProcessorException e) {
+                results.put(key, () -> {
+                    throw e;
+                });
+            }
+        }
+    }
+
+    //applies the change of a processor, fails if the entry it processed isn't current anymore
+    private boolean applyProcessed(K key, CompressedEntry<V> foundEntry, ProcessedEntry<K, V> entry, long startTime) {
+        switch (entry.getOperation()) {
+            case REMOVE:
+                if (foundEntry == null) {
+                    return true;
+                }
+                if (!removeEntry(key, foundEntry)) {
+                    return false;
+                }
+                statistics.recordRemovals(1, startTime);
+                return true;
+            case UPDATE:
+                CompressedEntry<V> newEntry = prepareEntry(entry.getValue());
+                if (newEntry == null) {
+                    throw new EntryProcessorException("it wasn't possible to compress and store the new value for " + key);
+                }
+
+                if (!swapEntry(key, foundEntry, newEntry)) {
+                    releaseEntry(newEntry);
+                    return false;
+                }
+                statistics.recordPuts(1, startTime);
+                return true;
+            default:
+                return true;
+        }
     }
 
     /**
@@ -417,11 +1007,28 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
     }
 
     /**
-     * Marks this cache as closed.
+     * Marks this cache as closed.  Entry listeners get deregistered, in OFF_HEAP mode all
+     * entries get removed and the off-heap memory is released, the files of the disk tier
+     * get deleted.
      */
     @Override
     public void close() {
         this.closed = true;
+
+        listeners.close();
+        if (statistics.isEnabled()) {
+            statistics.unregister();
+        }
+        if (deferredCompactor != null) {
+            deferredCompactor.close();
+        }
+        if (overflowStore != null) {
+            overflowStore.close();
+        }
+        if (offHeapStore != null) {
+            clear();
+            offHeapStore.close();
+        }
     }
 
     /**
@@ -435,80 +1042,885 @@ public class GuavaWrapper<K, V> implements Cache<K, V> {
     }
 
     /**
-     * Not supported. Always throws {@link UnsupportedOperationException}.
+     * Returns this cache as the given type, e.g. {@link CompressedCache}.
      *
      * @param <T>   the type to unwrap to
      * @param clazz the class to unwrap to
-     * @return never returns normally
-     * @throws UnsupportedOperationException always
+     * @return this cache
+     * @throws IllegalArgumentException if this cache isn't an instance of the given class
      */
     @Override
     public <T> T unwrap(Class<T> clazz) {
-        throw new UnsupportedOperationException("currently not supported");
+        if (clazz.isInstance(this)) {
+            return clazz.cast(this);
+        }
+        throw new IllegalArgumentException("unwrapping to " + clazz.getName() + " is not supported");
     }
 
     /**
-     * Not supported. Always throws {@link UnsupportedOperationException}.
+     * Reads the value of the given key on the async executor.
      *
-     * @param cacheEntryListenerConfiguration the listener configuration to register
-     * @throws UnsupportedOperationException always
+     * @param key the key
+     * @return the value, completed with {@code null} if there is no mapping
      */
     @Override
-    public void registerCacheEntryListener(CacheEntryListenerConfiguration<K, V> cacheEntryListenerConfiguration) {
-        throw new UnsupportedOperationException("currently not supported");
+    public CompletableFuture<V> getAsync(K key) {
+        return submitAsync(() -> get(key));
     }
 
     /**
-     * Not supported. Always throws {@link UnsupportedOperationException}.
+     * Compresses and stores the value on the async executor.
      *
-     * @param cacheEntryListenerConfiguration the listener configuration to deregister
-     * @throws UnsupportedOperationException always
+     * @param key   the key
+     * @param value the value
+     * @return completed once the value is stored
      */
     @Override
-    public void deregisterCacheEntryListener(CacheEntryListenerConfiguration<K, V> cacheEntryListenerConfiguration) {
-        throw new UnsupportedOperationException("currently not supported");
+    public CompletableFuture<Void> putAsync(K key, V value) {
+        return submitAsync(() -> {
+            put(key, value);
+            return null;
+        });
     }
 
     /**
-     * Not supported. Always throws {@link UnsupportedOperationException}.
+     * Reads the values of the given keys on the async executor.
      *
-     * @return never returns normally
-     * @throws UnsupportedOperationException always
+     * @param keys the keys
+     * @return the found values
      */
     @Override
-    public Iterator<Entry<K, V>> iterator() {
-        throw new UnsupportedOperationException("currently not supported");
+    public CompletableFuture<Map<K, V>> getAllAsync(Set<? extends K> keys) {
+        return submitAsync(() -> getAll(keys));
     }
 
-    private CompressedEntry<V> createCompressedEntry(V value) {
-        switch (compressedValueMode) {
-            case FAST:
-                return new FastCompressedEntry<>(value, this.marshaller);
-            case SMALL:
-                return new SmallCompressedEntry<>(value, this.marshaller);
-            default:
-                throw new IllegalStateException(compressedValueMode.name() + " isn't supported");
+    /**
+     * Compresses and stores the given entries on the async executor.
+     *
+     * @param map the entries
+     * @return completed once the entries are stored
+     */
+    @Override
+    public CompletableFuture<Void> putAllAsync(Map<? extends K, ? extends V> map) {
+        return submitAsync(() -> {
+            putAll(map);
+            return null;
+        });
+    }
+
+    //the permit is released before the future completes, so dependent stages can submit again
+    private <T> CompletableFuture<T> submitAsync(Supplier<T> operation) {
+        if (!asyncPermits.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    maxPendingAsyncOperations + " asynchronous operations are pending for cache " + cacheName));
+        }
+
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return operation.get();
+                } finally {
+                    asyncPermits.release();
+                }
+            }, asyncExecutor);
+        } catch (RejectedExecutionException e) {
+            asyncPermits.release();
+            return CompletableFuture.failedFuture(e);
         }
     }
 
     /**
-     * Obtains the marshaller from the running Ignite instance.
+     * Returns the compression counters of this cache.
+     *
+     * @return a live view of the counters
+     */
+    @Override
+    public CompressionStatistics getCompressionStatistics() {
+        return compressor;
+    }
+
+    /**
+     * Returns the counters of the tier of decoded values.
+     *
+     * @return a live view of the counters, all {@code 0} if the cache has no hot tier
+     */
+    @Override
+    public HotTierStatistics getHotTierStatistics() {
+        return hotTier != null ? hotTier : NO_HOT_TIER;
+    }
+
+    /**
+     * Returns the JCache statistics together with the compression metrics of this cache.
      *
-     * <p>Prior to Ignite 2.17, SMALL mode used {@code OptimizedMarshaller} for
-     * smaller serialised output.  That class was moved to an internal package
-     * ({@code org.apache.ignite.internal.marshaller.optimized}) in 2.17 and is
-     * no longer part of the public API, so the configured marshaller
-     * ({@code BinaryMarshaller}) is now used for all modes.</p>
+     * @return a live view of the statistics
+     */
+    @Override
+    public CompressedCacheStatisticsMXBean getStatistics() {
+        return statistics;
+    }
+
+    private void recordGet(boolean hit, long startTime) {
+        statistics.recordGets(hit ? 1 : 0, hit ? 0 : 1, startTime);
+    }
+
+    private long computeFootprint() {
+        long result = 0;
+        for (Map.Entry<K, CompressedEntry<V>> entry : wrappedCache.asMap().entrySet()) {
+            result += CompressedEntryWeigher.INSTANCE.weigh(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Writes all entries, including the ones of the disk tier, with their stored bytes to the given file.
      *
-     * @param compressedValueMode the compression mode (retained for future use)
-     * @return the marshaller configured on the Ignite node
+     * @param file the snapshot file, replaced atomically once the snapshot is complete
+     * @throws IOException if the snapshot cannot be written
      */
-    // Ignite deprecated getMarshaller() but no replacement exists for
-    // retrieving the configured marshaller from a running node.
-    @SuppressWarnings("deprecation")
-    private Marshaller createMarshaller(CompressedValueMode compressedValueMode) {
-        Ignite ignite = Ignition.ignite();
-        GridKernalContext context = ((IgniteKernal) ignite).context();
-        return context.grid().configuration().getMarshaller();
+    @Override
+    public void writeSnapshot(Path file) throws IOException {
+        long changeMark = changeSequence.get();
+        long clearMark = lastClearSequence;
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(file, createHeader(SnapshotFile.FULL, false))) {
+            for (Map.Entry<K, CompressedEntry<V>> currentEntry : wrappedCache.asMap().entrySet()) {
+                if (currentEntry.getValue() instanceof AbstractCompressedEntry<V> entry) {
+                    byte[] storedBytes = entry.getStoredBytes();
+                    if (storedBytes != null) {
+                        writeRecord(writer, currentEntry.getKey(), storedBytes);
+                    }
+                }
+            }
+
+            if (overflowStore != null) {
+                for (K key : overflowStore.keys()) {
+                    byte[] storedBytes = isOnlyOverflowed(key) ? overflowStore.peek(key) : null;
+                    if (storedBytes != null) {
+                        writeRecord(writer, key, storedBytes);
+                    }
+                }
+            }
+            writer.setTrailerCodecState(compressor.getCodec().exportState());
+            writer.commit();
+        }
+
+        if (changedKeys != null) {
+            //changes during the snapshot end up in the next incremental snapshot as well
+            changedKeys.values().removeIf(sequence -> sequence <= changeMark);
+            snapshotClearSequence = clearMark;
+        }
+        fullSnapshotWritten = true;
+    }
+
+    /**
+     * Writes the keys changed since the previous snapshot to the given file.
+     *
+     * @param file the snapshot file, replaced atomically once the snapshot is complete
+     * @throws IOException           if the snapshot cannot be written
+     * @throws IllegalStateException if incremental snapshots aren't enabled or no full snapshot was written yet
+     */
+    @Override
+    public void writeIncrementalSnapshot(Path file) throws IOException {
+        if (changedKeys == null) {
+            throw new IllegalStateException("incremental snapshots aren't enabled for cache " + cacheName);
+        }
+        if (!fullSnapshotWritten) {
+            throw new IllegalStateException("an incremental snapshot needs a previous full snapshot");
+        }
+
+        long clearMark = lastClearSequence;
+        Map<K, Long> writtenKeys = new HashMap<>();
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(file, createHeader(SnapshotFile.INCREMENTAL, clearMark > snapshotClearSequence))) {
+            for (Map.Entry<K, Long> changedKey : changedKeys.entrySet()) {
+                K key = changedKey.getKey();
+                writtenKeys.put(key, changedKey.getValue());
+
+                CompressedEntry<V> currentEntry = wrappedCache.asMap().get(key);
+                byte[] storedBytes = null;
+                if (currentEntry instanceof AbstractCompressedEntry<V> entry) {
+                    storedBytes = entry.getStoredBytes();
+                } else if (overflowStore != null) {
+                    storedBytes = overflowStore.peek(key);
+                }
+                writeRecord(writer, key, storedBytes);
+            }
+            writer.setTrailerCodecState(compressor.getCodec().exportState());
+            writer.commit();
+        }
+
+        //keys changed again while the snapshot was written have a newer sequence and stay
+        writtenKeys.forEach(changedKeys::remove);
+        snapshotClearSequence = clearMark;
+    }
+
+    /**
+     * Loads the entries of a full or incremental snapshot without decompressing them.
+     *
+     * @param file the snapshot file
+     * @return the number of loaded records, including removals
+     * @throws IOException              if the snapshot cannot be read
+     * @throws IllegalArgumentException if the snapshot was written with a different codec
+     */
+    @Override
+    public long loadSnapshot(Path file) throws IOException {
+        return SnapshotFile.read(file, header -> {
+            checkFormat(header);
+            if (header.kind() == SnapshotFile.INCREMENTAL && header.cleared()) {
+                wrappedCache.invalidateAll();
+                allKeysChanged();
+            }
+        }, (keyBytes, storedBytes) -> {
+            K key = compressor.deserialize(keyBytes);
+            if (storedBytes == null) {
+                wrappedCache.invalidate(key);
+                keyChanged(key);
+                return;
+            }
+
+            CompressedEntry<V> entry = restoreCompressedEntry(storedBytes);
+            if (entry.isValid()) {
+                //restored entries count as written now, so they don't all refresh at once
+                stampWriteTime(entry);
+                wrappedCache.put(key, entry);
+                entryStored(key, entry);
+            }
+        }, this::importCodecState);
+    }
+
+    /**
+     * Registers an entry listener for created, updated, removed and expired entries.
+     *
+     * <p>Synchronous listeners are called before the operation returns, asynchronous ones get
+     * their events in batches on the {@link CompressedCacheOptions#listenerExecutor(Executor) listener executor}.
+     * Values are decoded only if the listener or its filter reads them.  Expired events need the
+     * removal listener of the Guava cache, which is installed only if listeners are configured
+     * via {@link CompressedCacheOptions#cacheEntryListener(CacheEntryListenerConfiguration)}, in
+     * OFF_HEAP mode or with the disk tier; expiring caches without it reject expired listeners.
+     * {@link #clear()}, evictions and snapshot loads don't notify listeners.  Exceptions of synchronous listeners reach the caller as
+     * {@link javax.cache.event.CacheEntryListenerException} after the change was applied.</p>
+     *
+     * @param cacheEntryListenerConfiguration the listener configuration to register
+     * @throws IllegalArgumentException if the configuration is registered already or the listener
+     *                                  waits for expired events the cache can't report
+     */
+    @Override
+    public void registerCacheEntryListener(CacheEntryListenerConfiguration<K, V> cacheEntryListenerConfiguration) {
+        listeners.register(cacheEntryListenerConfiguration, !expiredEventsMissed);
+    }
+
+    /**
+     * Deregisters an entry listener, events which weren't delivered yet are dropped.
+     *
+     * @param cacheEntryListenerConfiguration the listener configuration to deregister
+     */
+    @Override
+    public void deregisterCacheEntryListener(CacheEntryListenerConfiguration<K, V> cacheEntryListenerConfiguration) {
+        listeners.deregister(cacheEntryListenerConfiguration);
+    }
+
+    /**
+     * Returns an iterator over all entries, which decompresses a value only if it gets read.
+     *
+     * <p>The iteration is weakly consistent, see {@link #stream()}.  {@link Iterator#remove()}
+     * removes the mapping of the last key.</p>
+     *
+     * @return an iterator over the entries, including those of the disk tier
+     */
+    @Override
+    public Iterator<Entry<K, V>> iterator() {
+        return new ScanIterator<>(stream().iterator(), Entry::getKey);
+    }
+
+    /**
+     * Returns the keys of all entries, without decompressing any value.
+     *
+     * @return an iterator over the keys, including those of the disk tier
+     */
+    @Override
+    public Iterator<K> keyIterator() {
+        Stream<K> keys = wrappedCache.asMap().keySet().stream();
+        if (overflowStore != null) {
+            keys = Stream.concat(keys, overflowStore.keys().stream().filter(this::isOnlyOverflowed));
+        }
+        return new ScanIterator<>(keys.iterator(), key -> key);
+    }
+
+    /**
+     * Returns a stream of all entries, which decompresses a value only if it gets read.
+     *
+     * <p>The entries of the Guava cache are streamed via the spliterator of its map view, a
+     * parallel stream hands batches of them to the worker threads, which decompress the values
+     * they read.  Values are decoded without populating soft references or the hot tier, so a
+     * scan doesn't displace the values of regular reads.</p>
+     *
+     * @return a sequential stream of the entries, including those of the disk tier
+     */
+    @Override
+    public Stream<Entry<K, V>> stream() {
+        Stream<Entry<K, V>> entries = wrappedCache.asMap().entrySet().stream()
+                .filter(entry -> entry.getValue().isValid())
+                .map(entry -> new ScannedEntry<>(entry.getKey(), () -> peekValue(entry.getValue())));
+        if (overflowStore != null) {
+            entries = Stream.concat(entries, overflowStore.keys().stream()
+                    .filter(this::isOnlyOverflowed)
+                    .map(key -> new ScannedEntry<>(key, () -> peekOverflowedValue(key))));
+        }
+        return entries;
+    }
+
+    private static <V> V peekValue(CompressedEntry<V> entry) {
+        return entry instanceof AbstractCompressedEntry<V> storedEntry ? storedEntry.peekUncompressedValue() : entry.getUncompressedValue();
+    }
+
+    //entries being promoted are in both tiers for a moment, scans take the one in memory
+    private boolean isOnlyOverflowed(K key) {
+        return !wrappedCache.asMap().containsKey(key) && overflowStore.contains(key);
+    }
+
+    private V peekOverflowedValue(K key) {
+        byte[] storedBytes = overflowStore.peek(key);
+        if (storedBytes == null) {
+            return null;
+        }
+
+        try {
+            return compressor.restore(storedBytes);
+        } catch (IOException | RuntimeException e) {
+            //counted and logged by the compressor
+            return null;
+        }
+    }
+
+    /**
+     * Iterator of a scan, whose {@link #remove()} removes the mapping of the last key.
+     *
+     * @param <T> type of the iterated elements
+     */
+    private final class ScanIterator<T> implements Iterator<T> {
+
+        private final Iterator<T> delegate;
+        private final Function<T, K> keyFunction;
+        private T last;
+
+        private ScanIterator(Iterator<T> delegate, Function<T, K> keyFunction) {
+            this.delegate = delegate;
+            this.keyFunction = keyFunction;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public T next() {
+            last = delegate.next();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException("next() wasn't called");
+            }
+            GuavaWrapper.this.remove(keyFunction.apply(last));
+            last = null;
+        }
+    }
+
+    private boolean store(K key, V value) {
+        CompressedEntry<V> entry = prepareEntry(value);
+        if (entry == null) {
+            return false;
+        }
+        if (listeners.isEmpty()) {
+            wrappedCache.put(key, entry);
+            entryStored(key, entry);
+            return true;
+        }
+
+        //the listeners get the previous value, even if it was evicted to the disk tier
+        promoteOverflowed(key);
+        CompressedEntry<V> previousEntry = swapRetained(key, entry, false, true);
+        entryStored(key, entry);
+        entrySwapped(key, entry, previousEntry, true);
+        return true;
+    }
+
+    //removes the entry under the map lock, so the listeners get the removed value
+    private boolean removeObserved(K key) {
+        promoteOverflowed(key);
+        CompressedEntry<V> removedEntry = swapRetained(key, null, true, true);
+        if (removedEntry == null) {
+            return false;
+        }
+        keyChanged(key);
+        entrySwapped(key, null, removedEntry, true);
+        return true;
+    }
+
+    /**
+     * Swaps the entry of the key under the map lock.
+     *
+     * @param key           the key
+     * @param newEntry      the new entry, {@code null} to remove the entry
+     * @param onlyIfPresent whether to swap only an existing entry
+     * @param observed      whether the new entry gets retained for the listeners as well
+     * @return the retained previous entry, to be passed to {@link #entrySwapped(Object, CompressedEntry, CompressedEntry, boolean)}
+     */
+    private CompressedEntry<V> swapRetained(K key, CompressedEntry<V> newEntry, boolean onlyIfPresent, boolean observed) {
+        AtomicReference<CompressedEntry<V>> previousEntry = new AtomicReference<>();
+        BiFunction<K, CompressedEntry<V>, CompressedEntry<V>> swap = (k, foundEntry) -> {
+            previousEntry.set(retainEntry(foundEntry));
+            return observed ? retainEntry(newEntry) : newEntry;
+        };
+        if (onlyIfPresent) {
+            wrappedCache.asMap().computeIfPresent(key, swap);
+        } else {
+            wrappedCache.asMap().compute(key, swap);
+        }
+        return previousEntry.get();
+    }
+
+    //hands the retained entries over to the listeners, or releases the previous one if nobody listens
+    private void entrySwapped(K key, CompressedEntry<V> newEntry, CompressedEntry<V> previousEntry, boolean observed) {
+        if (!observed) {
+            releaseEntry(previousEntry);
+            return;
+        }
+
+        EventType eventType = newEntry == null ? EventType.REMOVED : previousEntry == null ? EventType.CREATED : EventType.UPDATED;
+        listeners.dispatch(eventType, key, newEntry, previousEntry);
+    }
+
+    //stores the new entry if the found one (null for none) is still current
+    private boolean swapEntry(K key, CompressedEntry<V> foundEntry, CompressedEntry<V> newEntry) {
+        //a freed entry was replaced or removed meanwhile
+        if (!tryRetainEntry(foundEntry)) {
+            return false;
+        }
+
+        boolean observed = !listeners.isEmpty();
+        if (observed) {
+            retainEntry(newEntry);
+        }
+        boolean swapped = foundEntry == null ?
+                wrappedCache.asMap().putIfAbsent(key, newEntry) == null :
+                wrappedCache.asMap().replace(key, foundEntry, newEntry);
+        if (!swapped) {
+            releaseEntry(foundEntry);
+            if (observed) {
+                releaseEntry(newEntry);
+            }
+            return false;
+        }
+        entryStored(key, newEntry);
+        entrySwapped(key, newEntry, foundEntry, observed);
+        return true;
+    }
+
+    //removes the found entry if it's still current
+    private boolean removeEntry(K key, CompressedEntry<V> foundEntry) {
+        if (!tryRetainEntry(foundEntry)) {
+            return false;
+        }
+
+        boolean observed = !listeners.isEmpty();
+        if (!wrappedCache.asMap().remove(key, foundEntry)) {
+            releaseEntry(foundEntry);
+            return false;
+        }
+        keyChanged(key);
+        entrySwapped(key, null, foundEntry, observed);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void registerConfiguredListeners(CompressedCacheOptions options) {
+        for (CacheEntryListenerConfiguration<?, ?> configuration : options.getCacheEntryListenerConfigurations()) {
+            listeners.register((CacheEntryListenerConfiguration<K, V>) configuration, true);
+        }
+    }
+
+    private ValueCompressor.SerializedValue serializeForComparison(V value) {
+        if (!serializedValueComparison) {
+            return null;
+        }
+        try {
+            return compressor.serializeForComparison(value);
+        } catch (IOException | RuntimeException e) {
+            //compared by decoding the stored value instead
+            return null;
+        }
+    }
+
+    //values are equal if their serialised forms are, see CompressedCacheOptions#serializedValueComparison
+    private boolean holdsValue(K key, CompressedEntry<V> entry, V expectedValue, ValueCompressor.SerializedValue serializedValue) {
+        if (serializedValue != null && entry instanceof AbstractCompressedEntry<V> storedEntry && storedEntry.hasFingerprint()) {
+            return storedEntry.holdsSerializedValue(serializedValue);
+        }
+        return expectedValue.equals(decode(key, entry));
+    }
+
+    @SuppressWarnings("unchecked")
+    private LoadCoalescer<K, V> createLoadCoalescer(CacheLoader<?, ?> cacheLoader) {
+        return cacheLoader != null ? new LoadCoalescer<>((CacheLoader<K, V>) cacheLoader) : null;
+    }
+
+    //stores a value loaded for a miss, unless a value was written meanwhile
+    private V storeLoaded(K key, V value) {
+        CompressedEntry<V> newEntry = prepareEntry(value);
+        if (newEntry == null) {
+            return value;
+        }
+
+        if (!swapEntry(key, null, newEntry)) {
+            releaseEntry(newEntry);
+            CompressedEntry<V> concurrentlyAddedEntry = findEntry(key);
+            return concurrentlyAddedEntry != null ? decode(key, concurrentlyAddedEntry) : value;
+        }
+        return value;
+    }
+
+    private V storeReplacing(K key, V value) {
+        store(key, value);
+        return value;
+    }
+
+    private void refreshIfDue(K key, CompressedEntry<V> entry) {
+        if (refreshAfterWriteNanos > 0 && entry instanceof AbstractCompressedEntry<V> storedEntry &&
+                (storedEntry.getWriteTime() == 0 || System.nanoTime() - storedEntry.getWriteTime() >= refreshAfterWriteNanos)) {
+            loadCoalescer.refresh(key, (k, value) -> storeRefreshed(k, entry, value), asyncExecutor);
+        }
+    }
+
+    //the reloaded value only replaces the entry it was triggered by
+    private V storeRefreshed(K key, CompressedEntry<V> refreshedEntry, V value) {
+        CompressedEntry<V> newEntry = prepareEntry(value);
+        if (newEntry != null && !swapEntry(key, refreshedEntry, newEntry)) {
+            releaseEntry(newEntry);
+        }
+        return value;
+    }
+
+    //compresses (or defers compressing) a new value before the entry gets into the map
+    private CompressedEntry<V> prepareEntry(V value) {
+        CompressedEntry<V> entry = deferredCompactor != null ?
+                new PendingCompressedEntry<>(value, this.compressor) : createCompressedEntry(value);
+        if (!entry.isValid()) {
+            return null;
+        }
+        stampWriteTime(entry);
+        return entry;
+    }
+
+    private void stampWriteTime(CompressedEntry<V> entry) {
+        if (overflowStore != null && entry instanceof AbstractCompressedEntry<V> storedEntry) {
+            //strictly increasing, the disk tier keeps the newest version of a key
+            storedEntry.setWriteTime(lastWriteTime.accumulateAndGet(System.nanoTime(), (last, now) -> now - last > 0 ? now : last + 1));
+        } else if ((refreshAfterWriteNanos > 0 || expireAfterWriteNanos > 0) && entry instanceof AbstractCompressedEntry<V> storedEntry) {
+            storedEntry.setWriteTime(System.nanoTime());
+        }
+    }
+
+    private void entryStored(K key, CompressedEntry<V> entry) {
+        keyChanged(key, entry);
+        if (entry instanceof PendingCompressedEntry<V> pendingEntry) {
+            deferredCompactor.register(key, pendingEntry);
+        }
+    }
+
+    //compound operations work on the map view, which doesn't look into the disk tier
+    private void promoteOverflowed(K key) {
+        if (overflowStore != null && !wrappedCache.asMap().containsKey(key)) {
+            awaitPendingEvictions();
+            promote(key);
+        }
+    }
+
+    private boolean awaitEvictedToDisk(K key) {
+        awaitPendingEvictions();
+        return overflowStore.contains(key);
+    }
+
+    //an evicted entry reaches the disk tier via the removal listener, possibly on another thread;
+    //removals wait for it, otherwise the removed value would be written after they cleaned the disk tier up
+    private void awaitPendingEvictions() {
+        long queuedEvictions = wrappedCache.stats().evictionCount();
+        while (processedEvictions.get() < queuedEvictions) {
+            wrappedCache.cleanUp();
+            Thread.onSpinWait();
+        }
+    }
+
+    //called under the map lock, keeps the off-heap slot of a replaced entry until it got decoded
+    private static <V> CompressedEntry<V> retainEntry(CompressedEntry<V> entry) {
+        if (entry instanceof OffHeapCompressedEntry<V> offHeapEntry) {
+            offHeapEntry.retain();
+        }
+        return entry;
+    }
+
+    //outside the map lock the entry might have been freed already
+    private static <V> boolean tryRetainEntry(CompressedEntry<V> entry) {
+        return !(entry instanceof OffHeapCompressedEntry<V> offHeapEntry) || offHeapEntry.retain();
+    }
+
+    private CompressedEntry<V> createCompressedEntry(V value) {
+        switch (compressedValueMode) {
+            case FAST:
+                if (hotTier != null) {
+                    //the hot tier keeps the decoded values instead of soft references
+                    return new SmallCompressedEntry<>(value, this.compressor);
+                }
+                return new FastCompressedEntry<>(value, this.compressor);
+            case SMALL:
+                return new SmallCompressedEntry<>(value, this.compressor);
+            case OFF_HEAP:
+                return new OffHeapCompressedEntry<>(value, this.compressor, this.offHeapStore);
+            default:
+                throw new IllegalStateException(compressedValueMode.name() + " isn't supported");
+        }
+    }
+
+    private CompressedEntry<V> restoreCompressedEntry(byte[] storedBytes) {
+        switch (compressedValueMode) {
+            case FAST:
+                if (hotTier != null) {
+                    return SmallCompressedEntry.fromStoredBytes(storedBytes, this.compressor);
+                }
+                return FastCompressedEntry.fromStoredBytes(storedBytes, this.compressor);
+            case SMALL:
+                return SmallCompressedEntry.fromStoredBytes(storedBytes, this.compressor);
+            case OFF_HEAP:
+                return OffHeapCompressedEntry.fromStoredBytes(storedBytes, this.compressor, this.offHeapStore);
+            default:
+                throw new IllegalStateException(compressedValueMode.name() + " isn't supported");
+        }
+    }
+
+    private CompressedEntry<V> findEntry(K key) {
+        CompressedEntry<V> compressedEntry = wrappedCache.getIfPresent(key);
+
+        if (compressedEntry == null && overflowStore != null) {
+            return promote(key);
+        }
+        return compressedEntry;
+    }
+
+    private CompressedEntry<V> promote(K key) {
+        DiskOverflowStore.OverflowRecord overflowRecord = overflowStore.take(key);
+        if (overflowRecord == null) {
+            return null;
+        }
+
+        CompressedEntry<V> promotedEntry = restoreCompressedEntry(overflowRecord.storedBytes());
+        if (!promotedEntry.isValid()) {
+            return null;
+        }
+        if (promotedEntry instanceof AbstractCompressedEntry<V> storedEntry) {
+            //a later eviction derives the deadline from the original write, not from the promotion
+            storedEntry.setWriteTime(overflowRecord.writeTime());
+        }
+
+        CompressedEntry<V> concurrentlyAddedEntry = wrappedCache.asMap().putIfAbsent(key, promotedEntry);
+        if (concurrentlyAddedEntry != null) {
+            releaseEntry(promotedEntry);
+            return concurrentlyAddedEntry;
+        }
+        return promotedEntry;
+    }
+
+    private void keyChanged(K key) {
+        keyChanged(key, null);
+    }
+
+    private void keyChanged(K key, CompressedEntry<V> newEntry) {
+        if (hotTier != null) {
+            hotTier.invalidate(key);
+        }
+        if (overflowStore != null && newEntry instanceof AbstractCompressedEntry<V> storedEntry) {
+            //the new entry may have been evicted to disk already, only older versions are outdated
+            overflowStore.removeOutdated(key, storedEntry.getWriteTime());
+        } else if (overflowStore != null) {
+            awaitPendingEvictions();
+            overflowStore.remove(key);
+        }
+        if (changedKeys != null) {
+            changedKeys.put(key, changeSequence.incrementAndGet());
+        }
+    }
+
+    private void allKeysChanged() {
+        if (hotTier != null) {
+            hotTier.clear();
+        }
+        if (overflowStore != null) {
+            awaitPendingEvictions();
+            overflowStore.clear();
+        }
+        if (changedKeys != null) {
+            //keys changed between both steps stay, the next incremental snapshot writes them after the clear
+            changedKeys.clear();
+            lastClearSequence = changeSequence.incrementAndGet();
+        }
+    }
+
+    private void writeRecord(SnapshotFile.Writer writer, K key, byte[] storedBytes) throws IOException {
+        writer.write(compressor.serialize(key), storedBytes);
+    }
+
+    //values of another codec or serializer would be restored wrongly, not just fail to decompress
+    private void checkFormat(SnapshotFile.Header header) {
+        CompressionCodec codec = compressor.getCodec();
+        if (!codec.getClass().getName().equals(header.codecClass())) {
+            throw new IllegalArgumentException("the snapshot was compressed with " + header.codecClass() +
+                    ", this cache uses " + codec.getClass().getName());
+        }
+        if (!serializerIdentity().equals(header.serializer()) || schemaHash() != header.schemaHash()) {
+            throw new IllegalArgumentException("the snapshot was serialised with " + header.serializer() +
+                    " (schema " + header.schemaHash() + "), this cache uses " + serializerIdentity() + " (schema " + schemaHash() + ")");
+        }
+        importCodecState(header.codecState());
+    }
+
+    private String serializerIdentity() {
+        ValueSerializer serializer = compressor.getSerializer();
+        if (serializer instanceof GeneratedSerializer generatedSerializer) {
+            return serializer.getClass().getName() + "/" + generatedSerializer.getValueClass().getName();
+        }
+        return serializer.getClass().getName();
+    }
+
+    private int schemaHash() {
+        return compressor.getSerializer() instanceof GeneratedSerializer generatedSerializer ? generatedSerializer.getSchemaHash() : 0;
+    }
+
+    private void importCodecState(byte[] codecState) {
+        if (codecState.length == 0) {
+            return;
+        }
+        try {
+            compressor.getCodec().importState(codecState);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private SnapshotFile.Header createHeader(byte kind, boolean cleared) {
+        CompressionCodec codec = compressor.getCodec();
+        byte[] codecState = codec.exportState();
+        return new SnapshotFile.Header(kind, cleared, codec.getClass().getName(), codecState != null ? codecState : new byte[0],
+                serializerIdentity(), schemaHash());
+    }
+
+    private com.google.common.cache.Cache<K, CompressedEntry<V>> createCacheWithRemovalListener(CacheBuilder<Object, Object> cacheBuilder) {
+        RemovalListener<K, CompressedEntry<V>> removalListener = this::onRemoval;
+        com.google.common.cache.Cache<K, CompressedEntry<V>> cache;
+        try {
+            cache = cacheBuilder.removalListener(removalListener).build();
+        } catch (IllegalStateException e) {
+            throw new IllegalArgumentException("OFF_HEAP mode, the disk tier, entry listeners and deferred compression need their own removal listener, " +
+                    "the given cache builder has one already", e);
+        }
+
+        //a collected entry would keep its slot; the built cache doesn't see the value strength set afterwards,
+        //which the builder only rejects if soft or weak values were configured already
+        if (offHeapStore != null) {
+            try {
+                cacheBuilder.softValues();
+            } catch (IllegalStateException e) {
+                throw new IllegalArgumentException(CompressedValueMode.OFF_HEAP.name() + " can't be combined with soft or weak values", e);
+            }
+        }
+        return cache;
+    }
+
+    //the disk tier has no expiry of its own, evicted entries keep the deadline they had in memory
+    private long overflowDeadline(AbstractCompressedEntry<V> entry, long now) {
+        long deadline = DiskOverflowStore.NO_DEADLINE;
+        if (expireAfterWriteNanos > 0) {
+            deadline = (entry.getWriteTime() != 0 ? entry.getWriteTime() : now) + expireAfterWriteNanos;
+        }
+        if (expireAfterAccessNanos > 0) {
+            //the last access isn't known, it was at the latest now
+            deadline = Math.min(deadline, now + expireAfterAccessNanos);
+        }
+        return deadline;
+    }
+
+    //the stored bytes name the classes to instantiate, only the value's own package and the JDK base classes get accepted
+    private static ObjectInputFilter valueClassFilter(Class<?> valueClass) {
+        if (valueClass == null) {
+            return null;
+        }
+        String packageName = valueClass.getPackageName();
+        String valuePattern = packageName.isEmpty() ? valueClass.getName() : packageName + ".**";
+        return ObjectInputFilter.Config.createFilter(valuePattern + ";java.base/*;!*");
+    }
+
+    //the builder doesn't expose its expiry, but checks for an existing one before it rejects a negative duration
+    private static boolean hasExpiry(CacheBuilder<Object, Object> cacheBuilder) {
+        return isAlreadySet(() -> cacheBuilder.expireAfterWrite(-1, TimeUnit.NANOSECONDS)) ||
+                isAlreadySet(() -> cacheBuilder.expireAfterAccess(-1, TimeUnit.NANOSECONDS));
+    }
+
+    private static boolean isAlreadySet(Runnable invalidSetting) {
+        try {
+            invalidSetting.run();
+        } catch (IllegalStateException e) {
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        throw new IllegalStateException("the cache builder accepted a negative expiry");
+    }
+
+    private static void configureExpiry(CacheBuilder<Object, Object> cacheBuilder, CompressedCacheOptions options) {
+        try {
+            if (options.getExpireAfterWrite() != null) {
+                cacheBuilder.expireAfterWrite(options.getExpireAfterWrite());
+            }
+            if (options.getExpireAfterAccess() != null) {
+                cacheBuilder.expireAfterAccess(options.getExpireAfterAccess());
+            }
+        } catch (IllegalStateException e) {
+            throw new IllegalArgumentException("the expiry is configured in the options and on the cache builder", e);
+        }
+    }
+
+    private void onRemoval(RemovalNotification<K, CompressedEntry<V>> notification) {
+        CompressedEntry<V> removedEntry = notification.getValue();
+
+        try {
+            //the disk tier keeps the newer version if a later put got evicted meanwhile
+            if (overflowStore != null && notification.getCause() == RemovalCause.SIZE &&
+                    removedEntry instanceof AbstractCompressedEntry<V> evictedEntry &&
+                    !wrappedCache.asMap().containsKey(notification.getKey())) {
+                byte[] storedBytes = evictedEntry.getStoredBytes();
+                long now = System.nanoTime();
+                long deadline = overflowDeadline(evictedEntry, now);
+                if (storedBytes != null && (deadline == DiskOverflowStore.NO_DEADLINE || deadline - now > 0)) {
+                    overflowStore.write(notification.getKey(), storedBytes, evictedEntry.getWriteTime(), deadline);
+                }
+            }
+        } finally {
+            if (notification.wasEvicted()) {
+                processedEvictions.incrementAndGet();
+            }
+        }
+        if (deferredCompactor != null && notification.getKey() != null && removedEntry instanceof PendingCompressedEntry<V> pendingEntry) {
+            deferredCompactor.forget(notification.getKey(), pendingEntry);
+        }
+        if (notification.getCause() == RemovalCause.EXPIRED && !listeners.isEmpty()) {
+            listeners.dispatch(EventType.EXPIRED, notification.getKey(), null, retainEntry(removedEntry));
+        }
+
+        releaseEntry(removedEntry);
+    }
+
+    private static <V> void releaseEntry(CompressedEntry<V> entry) {
+        if (entry instanceof OffHeapCompressedEntry<V> offHeapEntry) {
+            offHeapEntry.release();
+        }
     }
 }
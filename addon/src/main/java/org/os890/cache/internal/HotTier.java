@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import org.os890.cache.CompressedEntry;
+import org.os890.cache.HotTierStatistics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Byte-budgeted tier of decoded values in front of the compressed entries, with a
+ * W-TinyLFU admission policy.
+ *
+ * <p>New values enter a small LRU window (1% of the budget).  Values leaving the window
+ * compete with the least recently used value of the main area, and the one with the
+ * higher access frequency according to the {@link FrequencySketch} stays.  So one-off
+ * reads can't push out values which are read over and over.  The main area is a segmented
+ * LRU: values read again while on probation move to the protected segment (80% of the
+ * main area).</p>
+ *
+ * <p>Hits are served from a concurrent map without locking.  They are recorded in a lossy
+ * ring buffer, which gets applied to the sketch and the LRU order under the lock by
+ * whichever thread finds it free, dropped records only make the policy less precise.  A
+ * decoded value is only returned for the {@link CompressedEntry} it was decoded from, so
+ * overwritten entries never return stale values, even before {@link #invalidate(Object)}
+ * got called.</p>
+ *
+ * <p>The size of a decoded value is estimated from its serialised size, like in
+ * {@link CompressedEntryWeigher}.</p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class HotTier<K, V> implements HotTierStatistics {
+
+    private static final int NODE_OVERHEAD = 96;
+    private static final int READ_BUFFER_SIZE = 256;
+    private static final int DRAIN_THRESHOLD = 64;
+    private static final int ASSUMED_VALUE_SIZE = 512;
+
+    private final long maxBytes;
+    private final long maxWindowBytes;
+    private final long maxProtectedBytes;
+
+    private final Map<K, Node<K, V>> nodes = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+
+    private final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong readBufferWrites = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    //guarded by lock
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedSegment = new AccessOrder<>();
+    private volatile long windowBytes;
+    private volatile long mainBytes;
+    private long protectedBytes;
+
+    /**
+     * Creates a hot tier with the given budget.
+     *
+     * @param maxBytes estimated size of all decoded values the tier may hold
+     */
+    HotTier(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.maxWindowBytes = Math.max(1, maxBytes / 100);
+        this.maxProtectedBytes = (maxBytes - maxWindowBytes) * 8 / 10;
+        this.sketch = new FrequencySketch(maxBytes / ASSUMED_VALUE_SIZE);
+    }
+
+    /**
+     * Returns the decoded value of the given entry, decoding and offering it for admission on a miss.
+     *
+     * @param key   the key of the entry
+     * @param entry the entry currently stored for the key
+     * @return the decoded value
+     */
+    V getValue(K key, CompressedEntry<V> entry) {
+        if (entry instanceof PendingCompressedEntry<V>) {
+            //not compressed yet, nothing to save
+            return entry.getUncompressedValue();
+        }
+
+        Node<K, V> node = nodes.get(key);
+        if (node != null && node.entry == entry) {
+            hitCount.increment();
+            recordRead(node);
+            return node.value;
+        }
+
+        missCount.increment();
+        V value = entry.getUncompressedValue();
+        if (value != null && entry instanceof AbstractCompressedEntry<V> compressedEntry) {
+            long weight = NODE_OVERHEAD + (long) compressedEntry.getSerializedLength() * CompressedEntryWeigher.DECODED_EXPANSION_FACTOR;
+            admit(key, entry, value, weight);
+        }
+        return value;
+    }
+
+    /**
+     * Drops the decoded value of the given key, e.g. because the key was overwritten or removed.
+     *
+     * @param key the key
+     */
+    void invalidate(K key) {
+        Node<K, V> node = nodes.remove(key);
+        if (node != null) {
+            lock.lock();
+            try {
+                unlink(node);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drops all decoded values.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            nodes.clear();
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                readBuffer.set(i, null);
+            }
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            windowBytes = 0;
+            mainBytes = 0;
+            protectedBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public long getEntryCount() {
+        return nodes.size();
+    }
+
+    @Override
+    public long getWeightedSize() {
+        return windowBytes + mainBytes;
+    }
+
+    private void recordRead(Node<K, V> node) {
+        long writeIndex = readBufferWrites.getAndIncrement();
+        readBuffer.lazySet((int) (writeIndex & (READ_BUFFER_SIZE - 1)), node);
+
+        if ((writeIndex & (DRAIN_THRESHOLD - 1)) == 0 && lock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void admit(K key, CompressedEntry<V> entry, V value, long weight) {
+        if (weight > maxBytes) {
+            return;
+        }
+
+        Node<K, V> node = new Node<>(key, entry, value, weight);
+        lock.lock();
+        try {
+            drainReadBuffer();
+            sketch.increment(key.hashCode());
+
+            Node<K, V> previousNode = nodes.put(key, node);
+            if (previousNode != null) {
+                unlink(previousNode);
+            }
+            node.segment = Segment.WINDOW;
+            window.addLast(node);
+            windowBytes += weight;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //guarded by lock
+    private void drainReadBuffer() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            Node<K, V> node = readBuffer.getAndSet(i, null);
+            if (node != null) {
+                onRead(node);
+            }
+        }
+    }
+
+    //guarded by lock
+    private void onRead(Node<K, V> node) {
+        sketch.increment(node.key.hashCode());
+
+        switch (node.segment) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.segment = Segment.PROTECTED;
+                node.candidate = false;
+                protectedSegment.addLast(node);
+                protectedBytes += node.weight;
+                demoteProtected();
+                break;
+            case PROTECTED:
+                protectedSegment.moveToLast(node);
+                break;
+            default:
+                //already removed
+                break;
+        }
+    }
+
+    //guarded by lock
+    private void demoteProtected() {
+        while (protectedBytes > maxProtectedBytes) {
+            Node<K, V> demoted = protectedSegment.first();
+            protectedSegment.remove(demoted);
+            protectedBytes -= demoted.weight;
+            demoted.segment = Segment.PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    //guarded by lock
+    private void evict() {
+        while (windowBytes > maxWindowBytes) {
+            Node<K, V> candidate = window.first();
+            window.remove(candidate);
+            windowBytes -= candidate.weight;
+            mainBytes += candidate.weight;
+            candidate.segment = Segment.PROBATION;
+            candidate.candidate = true;
+            probation.addLast(candidate);
+        }
+
+        long maxMainBytes = maxBytes - maxWindowBytes;
+        while (mainBytes > maxMainBytes) {
+            Node<K, V> victim = probation.first();
+            if (victim == null) {
+                victim = protectedSegment.first();
+                protectedSegment.remove(victim);
+                protectedBytes -= victim.weight;
+                victim.segment = Segment.PROBATION;
+                probation.addLast(victim);
+                continue;
+            }
+
+            //the value which came from the window last has to beat the least recently used one
+            Node<K, V> candidate = probation.last();
+            if (candidate != victim && candidate.candidate
+                    && sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) {
+                victim = candidate;
+            } else {
+                candidate.candidate = false;
+            }
+            nodes.remove(victim.key, victim);
+            unlink(victim);
+            evictionCount.increment();
+        }
+    }
+
+    //guarded by lock
+    private void unlink(Node<K, V> node) {
+        switch (node.segment) {
+            case WINDOW:
+                window.remove(node);
+                windowBytes -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                mainBytes -= node.weight;
+                break;
+            case PROTECTED:
+                protectedSegment.remove(node);
+                mainBytes -= node.weight;
+                protectedBytes -= node.weight;
+                break;
+            default:
+                break;
+        }
+        node.segment = Segment.REMOVED;
+    }
+
+    /**
+     * Position of a node in the policy.
+     */
+    private enum Segment {
+        NEW, WINDOW, PROBATION, PROTECTED, REMOVED
+    }
+
+    /**
+     * A decoded value, linked into one of the access-order lists.
+     */
+    private static final class Node<K, V> {
+
+        private final K key;
+        private final CompressedEntry<V> entry;
+        private final V value;
+        private final long weight;
+
+        //guarded by lock
+        private Segment segment = Segment.NEW;
+        private boolean candidate;
+        private Node<K, V> previous;
+        private Node<K, V> next;
+
+        private Node(K key, CompressedEntry<V> entry, V value, long weight) {
+            this.key = key;
+            this.entry = entry;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Doubly linked list of nodes, least recently used first.
+     */
+    private static final class AccessOrder<K, V> {
+
+        private Node<K, V> head;
+        private Node<K, V> tail;
+
+        Node<K, V> first() {
+            return head;
+        }
+
+        Node<K, V> last() {
+            return tail;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import org.os890.cache.CompressedEntry;
+
+import javax.cache.Cache;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.EventType;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Entry event which decodes the new and the old value only when a listener reads them.
+ *
+ * <p>The event keeps the entries it refers to, so off-heap slots stay readable while listeners
+ * run.  Once all registrations got it, the bytes of off-heap values which weren't read yet get
+ * copied to the heap and the entries are released, so listeners which keep the event (e.g. to
+ * process it on another thread) can still read the values afterwards.  For
+ * {@link EventType#REMOVED removed} and
+ * {@link EventType#EXPIRED expired} entries the value is the old value.</p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class LazyEntryEvent<K, V> extends CacheEntryEvent<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient K key;
+    private transient CompressedEntry<V> newEntry;
+    private transient CompressedEntry<V> oldEntry;
+    private final transient Function<CompressedEntry<V>, V> decoder;
+    private final transient Consumer<CompressedEntry<V>> releaser;
+    private final transient AtomicInteger pendingDeliveries;
+
+    private transient V newValue;
+    private transient V oldValue;
+    private transient boolean newValueDecoded;
+    private transient boolean oldValueDecoded;
+
+    /**
+     * Creates an event which takes over one retained reference of each entry.
+     *
+     * @param source        the cache
+     * @param eventType     the type of the change
+     * @param key           the key of the entry
+     * @param newEntry      the new entry, {@code null} for removed and expired entries
+     * @param oldEntry      the replaced entry, {@code null} for created entries
+     * @param decoder       decodes the value of an entry
+     * @param releaser      releases an entry
+     * @param registrations number of registrations which get the event
+     */
+    LazyEntryEvent(Cache<K, V> source, EventType eventType, K key, CompressedEntry<V> newEntry, CompressedEntry<V> oldEntry,
+                   Function<CompressedEntry<V>, V> decoder, Consumer<CompressedEntry<V>> releaser, int registrations) {
+        super(source, eventType);
+        this.key = key;
+        this.newEntry = newEntry;
+        this.oldEntry = oldEntry;
+        this.decoder = decoder;
+        this.releaser = releaser;
+        this.pendingDeliveries = new AtomicInteger(registrations);
+    }
+
+    @Override
+    public K getKey() {
+        return key;
+    }
+
+    @Override
+    public synchronized V getValue() {
+        if (newEntry == null) {
+            return getOldValue();
+        }
+        if (!newValueDecoded) {
+            newValue = decoder.apply(newEntry);
+            newValueDecoded = true;
+        }
+        return newValue;
+    }
+
+    @Override
+    public synchronized V getOldValue() {
+        if (oldEntry == null) {
+            return null;
+        }
+        if (!oldValueDecoded) {
+            oldValue = decoder.apply(oldEntry);
+            oldValueDecoded = true;
+        }
+        return oldValue;
+    }
+
+    @Override
+    public boolean isOldValueAvailable() {
+        return oldEntry != null;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        if (clazz.isInstance(this)) {
+            return clazz.cast(this);
+        }
+        throw new IllegalArgumentException("unwrapping to " + clazz.getName() + " is not supported");
+    }
+
+    //called once per registration, the last one releases the entries
+    void delivered() {
+        if (pendingDeliveries.decrementAndGet() != 0) {
+            return;
+        }
+
+        CompressedEntry<V> deliveredNewEntry;
+        CompressedEntry<V> deliveredOldEntry;
+        synchronized (this) {
+            deliveredNewEntry = newEntry;
+            deliveredOldEntry = oldEntry;
+            if (!newValueDecoded) {
+                newEntry = copyToHeap(newEntry);
+            }
+            if (!oldValueDecoded) {
+                oldEntry = copyToHeap(oldEntry);
+            }
+        }
+        releaser.accept(deliveredNewEntry);
+        releaser.accept(deliveredOldEntry);
+    }
+
+    //an entry which can't be copied keeps failing to decode, as it would have during the delivery
+    private static <V> CompressedEntry<V> copyToHeap(CompressedEntry<V> entry) {
+        if (entry instanceof OffHeapCompressedEntry<V> offHeapEntry) {
+            CompressedEntry<V> copy = offHeapEntry.copyToHeap();
+            return copy != null ? copy : entry;
+        }
+        return entry;
+    }
+}
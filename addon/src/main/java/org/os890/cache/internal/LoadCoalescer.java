@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import javax.cache.integration.CacheLoader;
+import javax.cache.integration.CacheLoaderException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+
+/**
+ * Calls the {@link CacheLoader} of a read-through cache, at most once per key at a time.
+ *
+ * <p>The first miss of a key registers a future for the key and calls the loader, further
+ * misses of the same key wait for that future instead of calling the loader again.  The
+ * loading thread stores the value via the given function, so it gets compressed once.
+ * Bulk loads register all keys which aren't loaded yet, call {@link CacheLoader#loadAll(Iterable)}
+ * once for them and wait for the others afterwards, so two bulk loads waiting for each
+ * other can't block.</p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class LoadCoalescer<K, V> {
+
+    private static final System.Logger LOGGER = System.getLogger(LoadCoalescer.class.getName());
+
+    private final CacheLoader<K, V> cacheLoader;
+    private final ConcurrentMap<K, CompletableFuture<V>> runningLoads = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a coalescer for the given loader.
+     *
+     * @param cacheLoader the loader of the cache
+     */
+    LoadCoalescer(CacheLoader<K, V> cacheLoader) {
+        this.cacheLoader = cacheLoader;
+    }
+
+    CacheLoader<K, V> getCacheLoader() {
+        return cacheLoader;
+    }
+
+    /**
+     * Loads the value of the given key, or waits for the load which is running already.
+     *
+     * @param key   the key
+     * @param store stores a loaded value and returns the value to hand out
+     * @return the value, {@code null} if the loader didn't find one
+     * @throws CacheLoaderException if the loader failed
+     */
+    V load(K key, BiFunction<K, V, V> store) {
+        CompletableFuture<V> ownLoad = new CompletableFuture<>();
+        CompletableFuture<V> runningLoad = runningLoads.putIfAbsent(key, ownLoad);
+        if (runningLoad != null) {
+            return await(runningLoad);
+        }
+
+        try {
+            V value = cacheLoader.load(key);
+            V result = value != null ? store.apply(key, value) : null;
+            ownLoad.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            CacheLoaderException failure = toLoaderException(e);
+            ownLoad.completeExceptionally(failure);
+            throw failure;
+        } finally {
+            runningLoads.remove(key, ownLoad);
+        }
+    }
+
+    /**
+     * Loads the values of the given keys with one bulk call, keys which are loaded already are waited for.
+     *
+     * @param keys  the keys
+     * @param store stores a loaded value and returns the value to hand out
+     * @return the values the loader found
+     * @throws CacheLoaderException if the loader failed
+     */
+    Map<K, V> loadAll(Collection<? extends K> keys, BiFunction<K, V, V> store) {
+        Map<K, CompletableFuture<V>> ownLoads = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> foreignLoads = new HashMap<>();
+        for (K key : keys) {
+            CompletableFuture<V> ownLoad = new CompletableFuture<>();
+            CompletableFuture<V> runningLoad = runningLoads.putIfAbsent(key, ownLoad);
+            if (runningLoad != null) {
+                foreignLoads.put(key, runningLoad);
+            } else {
+                ownLoads.put(key, ownLoad);
+            }
+        }
+
+        Map<K, V> result = HashMap.newHashMap(keys.size());
+        if (!ownLoads.isEmpty()) {
+            loadOwn(ownLoads, store, result);
+        }
+        for (Map.Entry<K, CompletableFuture<V>> foreignLoad : foreignLoads.entrySet()) {
+            V value = await(foreignLoad.getValue());
+            if (value != null) {
+                result.put(foreignLoad.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reloads the value of the given key in the background, unless a load of the key is running already.
+     *
+     * <p>Failures are dropped, the caller keeps using the current value.</p>
+     *
+     * @param key      the key
+     * @param store    stores the reloaded value
+     * @param executor runs the reload
+     */
+    void refresh(K key, BiFunction<K, V, V> store, Executor executor) {
+        CompletableFuture<V> ownLoad = new CompletableFuture<>();
+        if (runningLoads.putIfAbsent(key, ownLoad) != null) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    V value = cacheLoader.load(key);
+                    ownLoad.complete(value != null ? store.apply(key, value) : null);
+                } catch (RuntimeException e) {
+                    //nobody waits for a refresh, the current value stays
+                    LOGGER.log(System.Logger.Level.WARNING, "it wasn't possible to refresh the value of " + key, e);
+                    ownLoad.completeExceptionally(toLoaderException(e));
+                } finally {
+                    runningLoads.remove(key, ownLoad);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            runningLoads.remove(key, ownLoad);
+            ownLoad.complete(null);
+        }
+    }
+
+    private void loadOwn(Map<K, CompletableFuture<V>> ownLoads, BiFunction<K, V, V> store, Map<K, V> result) {
+        try {
+            Map<K, V> loadedValues = cacheLoader.loadAll(ownLoads.keySet());
+            for (Map.Entry<K, CompletableFuture<V>> ownLoad : ownLoads.entrySet()) {
+                V value = loadedValues != null ? loadedValues.get(ownLoad.getKey()) : null;
+                V storedValue = value != null ? store.apply(ownLoad.getKey(), value) : null;
+                ownLoad.getValue().complete(storedValue);
+                if (storedValue != null) {
+                    result.put(ownLoad.getKey(), storedValue);
+                }
+            }
+        } catch (RuntimeException e) {
+            CacheLoaderException failure = toLoaderException(e);
+            ownLoads.values().forEach(ownLoad -> ownLoad.completeExceptionally(failure));
+            throw failure;
+        } finally {
+            ownLoads.forEach(runningLoads::remove);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> runningLoad) {
+        try {
+            return runningLoad.join();
+        } catch (CompletionException e) {
+            throw new CacheLoaderException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static CacheLoaderException toLoaderException(RuntimeException e) {
+        return e instanceof CacheLoaderException loaderException ? loaderException : new CacheLoaderException(e);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Serialisation or deserialisation of a value which took longer than the threshold.
+ */
+@Name("org.os890.cache.Marshal")
+@Label("Value Marshalling")
+@Description("Serialisation or deserialisation of a cached value")
+@Threshold("1 ms")
+@StackTrace(false)
+final class MarshalEvent extends CacheEvent {
+
+    static final String SERIALIZE = "serialize";
+    static final String DESERIALIZE = "deserialize";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Serialized Size")
+    @DataAmount
+    int serializedSize;
+
+    void finish(ValueCompressor<?> source, String operation, int serializedSize) {
+        end();
+        if (shouldCommit()) {
+            this.cacheName = source.getCacheName();
+            this.valueMode = source.getValueModeName();
+            this.operation = operation;
+            this.serializedSize = serializedSize;
+            commit();
+        }
+    }
+}
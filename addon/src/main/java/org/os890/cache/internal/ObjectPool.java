@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free pool for objects which are expensive to create, like
+ * {@link java.util.zip.Deflater} instances or scratch buffers.
+ *
+ * <p>Idle objects are kept in a fixed array of slots.  Neither {@link #poll()} nor
+ * {@link #offer(Object)} allocates, and unlike a {@link ThreadLocal} the number of
+ * pooled objects doesn't grow with the number of (virtual) threads.</p>
+ *
+ * @param <T> the type of the pooled objects
+ */
+public final class ObjectPool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+
+    /**
+     * Creates a pool with two slots per available processor, at least four.
+     */
+    public ObjectPool() {
+        this(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a pool with the given number of slots.
+     *
+     * @param capacity maximum number of idle objects
+     */
+    public ObjectPool(int capacity) {
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Takes an idle object out of the pool.
+     *
+     * @return an idle object, or {@code null} if the pool is empty
+     */
+    public T poll() {
+        int capacity = slots.length();
+        int start = startSlot(capacity);
+        for (int i = 0; i < capacity; i++) {
+            int slot = (start + i) % capacity;
+            T candidate = slots.get(slot);
+            if (candidate != null && slots.compareAndSet(slot, candidate, null)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns an object to the pool.
+     *
+     * @param object the idle object
+     * @return {@code false} if the pool is full and the caller has to dispose the object
+     */
+    public boolean offer(T object) {
+        int capacity = slots.length();
+        int start = startSlot(capacity);
+        for (int i = 0; i < capacity; i++) {
+            int slot = (start + i) % capacity;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, object)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int startSlot(int capacity) {
+        //threads start at different slots to reduce contention
+        return (int) (Thread.currentThread().threadId() % capacity);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A compressed cache entry that keeps the compressed bytes in off-heap memory
+ * ({@link org.os890.cache.CompressedValueMode#OFF_HEAP OFF_HEAP} mode).
+ *
+ * <p>The entry itself is only a small handle with the slot id and length inside the
+ * {@link OffHeapStore} of the cache.  The slot is owned by the cache and gets freed
+ * via {@link #release()} once Guava evicts, replaces or invalidates the entry.  Readers
+ * take a temporary reference while copying the bytes back to the heap, so a concurrent
+ * removal never frees a slot which is still read.</p>
+ *
+ * @param <V> the type of the uncompressed value
+ */
+public class OffHeapCompressedEntry<V> extends AbstractCompressedEntry<V> {
+
+    private static final int ENTRY_SIZE = 56;
+    private static final VarHandle REFERENCE_COUNT;
+
+    static {
+        try {
+            REFERENCE_COUNT = MethodHandles.lookup()
+                    .findVarHandle(OffHeapCompressedEntry.class, "referenceCount", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final OffHeapStore store;
+    private long slotId;
+    private int length;
+
+    @SuppressWarnings("unused") //accessed via REFERENCE_COUNT
+    private volatile int referenceCount;
+
+    /**
+     * Creates a new off-heap entry by compressing the given value into a slot of the store.
+     *
+     * @param value      the value to compress
+     * @param compressor the compressor of the cache
+     * @param store      the off-heap store of the cache
+     */
+    OffHeapCompressedEntry(V value, ValueCompressor<V> compressor, OffHeapStore store) {
+        super(compressor);
+        this.store = store;
+        compressToSlot(value);
+    }
+
+    private OffHeapCompressedEntry(ValueCompressor<V> compressor, OffHeapStore store, byte[] storedBytes) {
+        super(compressor);
+        this.store = store;
+        copyToSlot(storedBytes);
+    }
+
+    /**
+     * Creates an entry from bytes produced by {@link ValueCompressor#compress(Object)}
+     * without recompressing them.
+     *
+     * @param <V>         the type of the uncompressed value
+     * @param storedBytes the stored form of the value
+     * @param compressor  the compressor of the cache
+     * @param store       the off-heap store of the cache
+     * @return the new entry
+     */
+    static <V> OffHeapCompressedEntry<V> fromStoredBytes(byte[] storedBytes, ValueCompressor<V> compressor, OffHeapStore store) {
+        return new OffHeapCompressedEntry<>(compressor, store, storedBytes);
+    }
+
+    @Override
+    public V getUncompressedValue() {
+        byte[] valueToDecompress = getStoredBytes();
+        if (valueToDecompress == null) {
+            return null;
+        }
+
+        try {
+            return compressor.restore(valueToDecompress);
+        } catch (Exception e) {
+            //counted and logged by the compressor
+            failureFound = true;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isValid() {
+        return !failureFound && referenceCount > 0;
+    }
+
+    /**
+     * Returns the size of the handle plus the off-heap bytes, so a byte budget covers both.
+     *
+     * @return the size in bytes
+     */
+    @Override
+    long getRetainedSize() {
+        return ENTRY_SIZE + length;
+    }
+
+    @Override
+    byte[] getStoredBytes() {
+        if (failureFound || !retain()) {
+            return null;
+        }
+
+        try {
+            return store.segment(slotId, length).toArray(ValueLayout.JAVA_BYTE);
+        } catch (IllegalStateException e) {
+            //the store got closed concurrently
+            return null;
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    int getSerializedLength() {
+        byte[] storedPrefix = getStoredPrefix();
+        return storedPrefix != null ? ValueCompressor.getUncompressedLength(storedPrefix, length) : 0;
+    }
+
+    @Override
+    boolean hasFingerprint() {
+        byte[] storedPrefix = getStoredPrefix();
+        return storedPrefix != null && ValueCompressor.hasFingerprint(storedPrefix);
+    }
+
+    //the slot gets copied completely only if the fingerprint matches
+    @Override
+    boolean holdsSerializedValue(ValueCompressor.SerializedValue value) {
+        byte[] storedPrefix = getStoredPrefix();
+        return storedPrefix != null && ValueCompressor.matchesFingerprint(storedPrefix, value) && holdsSerializedValue(getStoredBytes(), value);
+    }
+
+    /**
+     * Copies the bytes of the slot into a heap entry, which stays readable once the slot got freed.
+     *
+     * @return the copy, or {@code null} if the slot was freed already or can't be read
+     */
+    SmallCompressedEntry<V> copyToHeap() {
+        byte[] storedBytes = getStoredBytes();
+        return storedBytes != null ? SmallCompressedEntry.fromStoredBytes(storedBytes, compressor) : null;
+    }
+
+    /**
+     * Tells whether the slot was freed, e.g. because the entry got replaced or removed.
+     *
+     * @return {@code true} if the last reference to the slot is gone
+     */
+    boolean isReleased() {
+        return referenceCount <= 0;
+    }
+
+    /**
+     * Drops one reference to the slot and frees it once the last reference is gone.
+     * Called by the cache when the entry gets removed.
+     */
+    void release() {
+        if ((int) REFERENCE_COUNT.getAndAdd(this, -1) == 1) {
+            store.free(slotId);
+        }
+    }
+
+    /**
+     * Adds a reference to the slot, e.g. to read the entry after it got replaced in the cache.
+     *
+     * @return {@code false} if the slot was freed already
+     */
+    boolean retain() {
+        int current = referenceCount;
+        while (current > 0) {
+            int witness = (int) REFERENCE_COUNT.compareAndExchange(this, current, current + 1);
+            if (witness == current) {
+                return true;
+            }
+            current = witness;
+        }
+        return false;
+    }
+
+    private byte[] getStoredPrefix() {
+        if (failureFound || !retain()) {
+            return null;
+        }
+
+        try {
+            return store.segment(slotId, Math.min(length, ValueCompressor.MAX_HEADER_LENGTH)).toArray(ValueLayout.JAVA_BYTE);
+        } catch (IllegalStateException e) {
+            //the store got closed concurrently
+            return null;
+        } finally {
+            release();
+        }
+    }
+
+    private void compressToSlot(V value) {
+        if (value == null) {
+            return;
+        }
+
+        try {
+            copyToSlot(compressor.compress(value));
+        } catch (Exception e) {
+            //counted and logged by the compressor
+            failureFound = true;
+        }
+    }
+
+    private void copyToSlot(byte[] storedBytes) {
+        try {
+            long allocatedSlot = store.allocate(storedBytes.length);
+            MemorySegment.copy(storedBytes, 0, store.segment(allocatedSlot, storedBytes.length),
+                    ValueLayout.JAVA_BYTE, 0, storedBytes.length);
+
+            this.slotId = allocatedSlot;
+            this.length = storedBytes.length;
+            REFERENCE_COUNT.setRelease(this, 1);
+        } catch (IllegalStateException e) {
+            //the store is closed
+            failureFound = true;
+        }
+    }
+}
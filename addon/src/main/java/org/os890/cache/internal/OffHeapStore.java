@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Slab allocator for compressed values stored outside the Java heap.
+ *
+ * <p>Memory is requested from a shared {@link Arena} in slabs of at least 1 MiB.  Each slab
+ * serves slots of one size class; size classes grow in quarter steps between powers of two
+ * (64, 80, 96, 112, 128, 160, ...), which limits the internal fragmentation to 25%.  Freed
+ * slots go to a free list of their class and are reused before the slab grows.  Values
+ * larger than {@value #MAX_CLASS_SIZE} bytes get a dedicated arena which is closed on free.</p>
+ *
+ * <p>A slot is identified by a {@code long} (size class, slab index, offset), so a cache entry
+ * only needs this id and the length instead of a {@link MemorySegment} object.  Slabs are
+ * kept until the store gets {@link #close() closed}.</p>
+ */
+final class OffHeapStore implements AutoCloseable {
+
+    private static final int MIN_CLASS_SIZE = 64;
+    private static final int MAX_CLASS_SIZE = 1024 * 1024;
+    private static final long MIN_SLAB_SIZE = 1024 * 1024;
+    private static final int SLOTS_PER_LARGE_SLAB = 4;
+    private static final int LARGE_CLASS = 0xFF;
+    private static final int[] CLASS_SIZES = createClassSizes();
+
+    private final Arena arena = Arena.ofShared();
+    private final SizeClass[] sizeClasses = new SizeClass[CLASS_SIZES.length];
+    private final Map<Integer, Arena> largeArenas = new ConcurrentHashMap<>();
+    private final Map<Integer, MemorySegment> largeSegments = new ConcurrentHashMap<>();
+    private final AtomicInteger largeIds = new AtomicInteger();
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private volatile boolean closed;
+
+    OffHeapStore() {
+        for (int i = 0; i < CLASS_SIZES.length; i++) {
+            sizeClasses[i] = new SizeClass(CLASS_SIZES[i]);
+        }
+    }
+
+    /**
+     * Reserves a slot for the given number of bytes.
+     *
+     * @param length number of bytes to store
+     * @return the slot id
+     * @throws IllegalStateException if the store is closed
+     */
+    long allocate(int length) {
+        if (closed) {
+            throw new IllegalStateException("off-heap store is closed");
+        }
+
+        int classIndex = Arrays.binarySearch(CLASS_SIZES, Math.max(length, MIN_CLASS_SIZE));
+        if (classIndex < 0) {
+            classIndex = -classIndex - 1;
+        }
+
+        if (classIndex == CLASS_SIZES.length) {
+            return allocateLarge(length);
+        }
+        return sizeClasses[classIndex].allocate(classIndex);
+    }
+
+    /**
+     * Returns the memory of a slot.
+     *
+     * @param slotId the slot id returned by {@link #allocate(int)}
+     * @param length the number of bytes stored in the slot
+     * @return a segment covering the stored bytes
+     */
+    MemorySegment segment(long slotId, int length) {
+        int classIndex = classIndex(slotId);
+        if (classIndex == LARGE_CLASS) {
+            return largeSegments.get(slabIndex(slotId)).asSlice(0, length);
+        }
+        return sizeClasses[classIndex].slabs[slabIndex(slotId)].asSlice(offset(slotId), length);
+    }
+
+    /**
+     * Releases a slot, its memory gets reused for later allocations.
+     *
+     * @param slotId the slot id returned by {@link #allocate(int)}
+     */
+    void free(long slotId) {
+        int classIndex = classIndex(slotId);
+        if (classIndex == LARGE_CLASS) {
+            int largeId = slabIndex(slotId);
+            MemorySegment segment = largeSegments.remove(largeId);
+            Arena largeArena = largeArenas.remove(largeId);
+            if (largeArena != null && !closed) {
+                usedBytes.addAndGet(-segment.byteSize());
+                reservedBytes.addAndGet(-segment.byteSize());
+                largeArena.close();
+            }
+            return;
+        }
+        sizeClasses[classIndex].free(slotId);
+    }
+
+    /**
+     * Returns the off-heap memory requested from the operating system.
+     *
+     * @return reserved bytes
+     */
+    long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * Returns the off-heap memory occupied by slots in use.
+     *
+     * @return used bytes
+     */
+    long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Releases all off-heap memory.  Slots must not be accessed afterwards.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        arena.close();
+        for (Arena largeArena : largeArenas.values()) {
+            largeArena.close();
+        }
+        largeArenas.clear();
+        largeSegments.clear();
+        reservedBytes.set(0);
+        usedBytes.set(0);
+    }
+
+    private long allocateLarge(int length) {
+        Arena largeArena = Arena.ofShared();
+        MemorySegment segment = largeArena.allocate(length, Long.BYTES);
+        int largeId = largeIds.incrementAndGet();
+
+        largeSegments.put(largeId, segment);
+        largeArenas.put(largeId, largeArena);
+        reservedBytes.addAndGet(length);
+        usedBytes.addAndGet(length);
+        return slotId(LARGE_CLASS, largeId, 0);
+    }
+
+    private static long slotId(int classIndex, int slabIndex, long offset) {
+        return ((long) classIndex << 56) | ((long) slabIndex << 32) | offset;
+    }
+
+    private static int classIndex(long slotId) {
+        return (int) (slotId >>> 56);
+    }
+
+    private static int slabIndex(long slotId) {
+        return (int) (slotId >>> 32) & 0xFFFFFF;
+    }
+
+    private static long offset(long slotId) {
+        return slotId & 0xFFFFFFFFL;
+    }
+
+    private static int[] createClassSizes() {
+        int[] result = new int[64];
+        int count = 0;
+        for (int power = MIN_CLASS_SIZE; power < MAX_CLASS_SIZE; power <<= 1) {
+            for (int quarter = 0; quarter < 4; quarter++) {
+                result[count++] = power + quarter * (power >> 2);
+            }
+        }
+        result[count++] = MAX_CLASS_SIZE;
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Slabs and free slots of one size class.
+     */
+    private final class SizeClass {
+
+        private final int slotSize;
+        private final long slabSize;
+
+        private volatile MemorySegment[] slabs = new MemorySegment[0];
+        private long nextOffset;
+        private long[] freeSlots = new long[16];
+        private int freeCount;
+
+        private SizeClass(int slotSize) {
+            this.slotSize = slotSize;
+            long slabSlots = Math.max(SLOTS_PER_LARGE_SLAB, MIN_SLAB_SIZE / slotSize);
+            this.slabSize = slabSlots * slotSize;
+        }
+
+        private synchronized long allocate(int classIndex) {
+            usedBytes.addAndGet(slotSize);
+            if (freeCount > 0) {
+                return freeSlots[--freeCount];
+            }
+
+            MemorySegment[] currentSlabs = slabs;
+            if (currentSlabs.length == 0 || nextOffset + slotSize > slabSize) {
+                MemorySegment[] grownSlabs = Arrays.copyOf(currentSlabs, currentSlabs.length + 1);
+                grownSlabs[currentSlabs.length] = arena.allocate(slabSize, Long.BYTES);
+                reservedBytes.addAndGet(slabSize);
+                slabs = grownSlabs;
+                currentSlabs = grownSlabs;
+                nextOffset = 0;
+            }
+
+            long result = slotId(classIndex, currentSlabs.length - 1, nextOffset);
+            nextOffset += slotSize;
+            return result;
+        }
+
+        private synchronized void free(long slotId) {
+            if (closed) {
+                return;
+            }
+            usedBytes.addAndGet(-slotSize);
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slotId;
+        }
+    }
+}
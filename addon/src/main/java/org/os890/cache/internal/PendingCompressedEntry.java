@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import java.io.IOException;
+
+/**
+ * A freshly stored entry which holds its value uncompressed until the {@link DeferredCompactor}
+ * replaces it with a compressed entry.
+ *
+ * <p>Reads return the value as-is and record the access time, so frequently read entries
+ * stay uncompressed.  If the key gets overwritten before the entry is compacted, the value
+ * is never compressed at all.</p>
+ *
+ * @param <V> the type of the uncompressed value
+ */
+public class PendingCompressedEntry<V> extends AbstractCompressedEntry<V> {
+
+    private static final int ENTRY_SIZE = 48;
+
+    private final V value;
+    private volatile long lastAccessTime;
+
+    /**
+     * Creates a new pending entry.
+     *
+     * @param value      the uncompressed value
+     * @param compressor the compressor of the cache, used if the stored form is needed before compaction
+     */
+    PendingCompressedEntry(V value, ValueCompressor<V> compressor) {
+        super(compressor);
+        this.value = value;
+        this.lastAccessTime = System.nanoTime();
+    }
+
+    @Override
+    public V getUncompressedValue() {
+        lastAccessTime = System.nanoTime();
+        return value;
+    }
+
+    @Override
+    public boolean isValid() {
+        return value != null;
+    }
+
+    /**
+     * Returns the value without counting it as access.
+     *
+     * @return the uncompressed value
+     */
+    V getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the time of the last read, or of the creation if the entry wasn't read yet.
+     *
+     * @return the {@link System#nanoTime()} of the last access
+     */
+    long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    //scans don't count as access
+    @Override
+    V peekUncompressedValue() {
+        return value;
+    }
+
+    //compresses on demand, e.g. if the entry gets evicted to the disk tier before compaction
+    @Override
+    byte[] getStoredBytes() {
+        try {
+            return compressor.compress(value);
+        } catch (IOException | RuntimeException e) {
+            //counted and logged by the compressor
+            return null;
+        }
+    }
+
+    //the serialised size isn't known before compression, the average of the cache has to do
+    @Override
+    int getSerializedLength() {
+        return compressor.getAverageSerializedLength();
+    }
+
+    //the value is at hand, comparing it is cheaper than serialising it
+    @Override
+    boolean hasFingerprint() {
+        return false;
+    }
+
+    @Override
+    long getRetainedSize() {
+        return ENTRY_SIZE + (long) getSerializedLength() * CompressedEntryWeigher.DECODED_EXPANSION_FACTOR;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import javax.cache.processor.MutableEntry;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * The {@link MutableEntry} an {@link javax.cache.processor.EntryProcessor} works on.
+ *
+ * <p>The current value gets decoded on the first {@link #getValue()} call only, and changes
+ * are just recorded, so the cache compresses a new value only if the processor set one.</p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class ProcessedEntry<K, V> implements MutableEntry<K, V> {
+
+    /**
+     * What the processor did with the entry.
+     */
+    enum Operation {
+        /** The entry wasn't changed. */
+        NONE,
+        /** A new value was set. */
+        UPDATE,
+        /** The entry was removed. */
+        REMOVE
+    }
+
+    private final K key;
+    private final boolean existing;
+    private final Supplier<V> decoder;
+
+    private Operation operation = Operation.NONE;
+    private V value;
+    private boolean decoded;
+
+    /**
+     * Creates an entry for the given key.
+     *
+     * @param key      the key
+     * @param existing whether the cache has a mapping for the key
+     * @param decoder  decodes the current value, called at most once
+     */
+    ProcessedEntry(K key, boolean existing, Supplier<V> decoder) {
+        this.key = key;
+        this.existing = existing;
+        this.decoder = decoder;
+    }
+
+    @Override
+    public K getKey() {
+        return key;
+    }
+
+    @Override
+    public V getValue() {
+        if (operation == Operation.NONE && !decoded) {
+            value = existing ? decoder.get() : null;
+            decoded = true;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean exists() {
+        switch (operation) {
+            case UPDATE:
+                return true;
+            case REMOVE:
+                return false;
+            default:
+                return existing;
+        }
+    }
+
+    @Override
+    public void remove() {
+        operation = Operation.REMOVE;
+        value = null;
+    }
+
+    @Override
+    public void setValue(V value) {
+        this.value = Objects.requireNonNull(value, "value");
+        operation = Operation.UPDATE;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        if (clazz.isInstance(this)) {
+            return clazz.cast(this);
+        }
+        throw new IllegalArgumentException("unwrapping to " + clazz.getName() + " is not supported");
+    }
+
+    /**
+     * Returns what the processor did with the entry.
+     *
+     * @return the recorded operation
+     */
+    Operation getOperation() {
+        return operation;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import javax.cache.Cache;
+import java.util.function.Supplier;
+
+/**
+ * A {@link Cache.Entry} returned by scans over the cache, which decodes its value on the
+ * first {@link #getValue()} call only.
+ *
+ * <p>Scans which just look at the keys therefore don't decompress any value.</p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class ScannedEntry<K, V> implements Cache.Entry<K, V> {
+
+    private final K key;
+    private Supplier<V> decoder;
+    private V value;
+
+    /**
+     * Creates an entry for the given key.
+     *
+     * @param key     the key
+     * @param decoder decodes the value, called at most once
+     */
+    ScannedEntry(K key, Supplier<V> decoder) {
+        this.key = key;
+        this.decoder = decoder;
+    }
+
+    @Override
+    public K getKey() {
+        return key;
+    }
+
+    @Override
+    public V getValue() {
+        if (decoder != null) {
+            value = decoder.get();
+            decoder = null;
+        }
+        return value;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        if (clazz.isInstance(this)) {
+            return clazz.cast(this);
+        }
+        throw new IllegalArgumentException("unwrapping to " + clazz.getName() + " is not supported");
+    }
+}
@@ -19,15 +19,8 @@
 
 package org.os890.cache.internal;
 
-import org.apache.ignite.marshaller.Marshaller;
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-
 /**
- * A compressed cache entry that stores only the GZIP-compressed bytes without
+ * A compressed cache entry that stores only the compressed bytes without
  * a soft reference to the uncompressed value ({@link org.os890.cache.CompressedValueMode#SMALL SMALL} mode).
  *
  * <p>Every read decompresses and deserialises the value, which is slower than
@@ -37,17 +30,37 @@ import java.util.zip.GZIPOutputStream;
  */
 public class SmallCompressedEntry<V> extends AbstractCompressedEntry<V> {
 
+    private static final int ENTRY_SIZE = 32;
+
     /**
      * Creates a new small entry by compressing the given value.
      *
      * @param value      the value to compress
-     * @param marshaller the marshaller used to serialise the value before compression
+     * @param compressor the compressor of the cache
      */
-    SmallCompressedEntry(V value, Marshaller marshaller) {
-        super(marshaller);
+    SmallCompressedEntry(V value, ValueCompressor<V> compressor) {
+        super(compressor);
         compressToByteArray(value);
     }
 
+    private SmallCompressedEntry(ValueCompressor<V> compressor, byte[] storedBytes) {
+        super(compressor);
+        this.compressedValue = storedBytes;
+    }
+
+    /**
+     * Creates an entry from bytes produced by {@link ValueCompressor#compress(Object)}
+     * without recompressing them.
+     *
+     * @param <V>         the type of the uncompressed value
+     * @param storedBytes the stored form of the value
+     * @param compressor  the compressor of the cache
+     * @return the new entry
+     */
+    static <V> SmallCompressedEntry<V> fromStoredBytes(byte[] storedBytes, ValueCompressor<V> compressor) {
+        return new SmallCompressedEntry<>(compressor, storedBytes);
+    }
+
     @Override
     public V getUncompressedValue() {
         if (compressedValue != null) {
@@ -61,6 +74,17 @@ public class SmallCompressedEntry<V> extends AbstractCompressedEntry<V> {
         return !failureFound && compressedValue != null;
     }
 
+    @Override
+    long getRetainedSize() {
+        byte[] currentValue = compressedValue;
+        return ENTRY_SIZE + (currentValue != null ? CompressedEntryWeigher.ARRAY_OVERHEAD + currentValue.length : 0);
+    }
+
+    @Override
+    byte[] getStoredBytes() {
+        return failureFound ? null : compressedValue;
+    }
+
     private void compressToByteArray(V value) {
         if (compressedValue != null || failureFound) {
             return;
@@ -71,20 +95,9 @@ public class SmallCompressedEntry<V> extends AbstractCompressedEntry<V> {
                 return;
             }
 
-            byte[] valueAsByes = marshaller.marshal(value);
-            byte[] compressedOutput;
-
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                 GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
-                 ByteArrayInputStream inputStream = new ByteArrayInputStream(valueAsByes);) {
-                inputStream.transferTo(gzipOutputStream);
-                gzipOutputStream.finish();
-                compressedOutput = outputStream.toByteArray();
-            }
-
-            this.compressedValue = compressedOutput;
+            this.compressedValue = compressor.compress(value);
         } catch (Exception e) {
-            //TODO logging
+            //counted and logged by the compressor
             failureFound = true;
         }
     }
@@ -97,21 +110,9 @@ public class SmallCompressedEntry<V> extends AbstractCompressedEntry<V> {
         byte[] valueToDecompress = this.compressedValue;
 
         try {
-            byte[] uncompressedValue;
-
-            try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(valueToDecompress))) {
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-
-                gzipInputStream.transferTo(outputStream);
-                uncompressedValue = outputStream.toByteArray();
-            }
-
-            if (uncompressedValue != null) {
-                V result = marshaller.unmarshal(uncompressedValue, uncompressedValue.getClass().getClassLoader());
-                return result;
-            }
+            return compressor.restore(valueToDecompress);
         } catch (Exception e) {
-            //TODO logging
+            //counted and logged by the compressor
             failureFound = true;
         }
         return null;
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * File format of cache snapshots.
+ *
+ * <p>A snapshot contains the serialised keys together with the stored form of their values
+ * (as produced by {@link ValueCompressor#compress(Object)}), so writing and loading it is
+ * pure I/O without compressing or decompressing values.  Layout:</p>
+ * <pre>
+ * header:  magic, version, kind (full/incremental), cleared flag, codec class, codec state,
+ *          serializer, schema hash of the serialised form
+ * blocks:  [int length][records], record = [int keyLength][key][int valueLength | -1][value]
+ * end:     [int 0]
+ * trailer: codec state at the end of the snapshot
+ * </pre>
+ *
+ * <p>Incremental snapshots contain the keys changed since the previous snapshot, a value
+ * length of {@code -1} marks a removed key.  Blocks of about 1 MiB are parsed in parallel
+ * on the common {@link ForkJoinPool} while the next blocks are read.</p>
+ */
+final class SnapshotFile {
+
+    /** Kind of a snapshot with all entries. */
+    static final byte FULL = 0;
+
+    /** Kind of a snapshot with the changes since the previous one. */
+    static final byte INCREMENTAL = 1;
+
+    private static final int MAGIC = 0x4F43534E;
+    private static final int VERSION = 2;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int TOMBSTONE = -1;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Header of a snapshot, the codec state gets replaced by the one of the trailer once it was read.
+     *
+     * @param kind       {@link #FULL} or {@link #INCREMENTAL}
+     * @param cleared    {@code true} if the cache was cleared since the previous snapshot
+     * @param codecClass class name of the codec which compressed the values
+     * @param codecState state of the codec, empty for stateless codecs
+     * @param serializer identity of the serializer which serialised keys and values
+     * @param schemaHash hash of the format the serializer produced, {@code 0} for self-describing formats
+     */
+    record Header(byte kind, boolean cleared, String codecClass, byte[] codecState, String serializer, int schemaHash) {
+    }
+
+    /**
+     * Handles the records of a snapshot, invoked concurrently for different blocks.
+     */
+    interface RecordHandler {
+
+        /**
+         * Handles one record.
+         *
+         * @param key         the serialised key
+         * @param storedBytes the stored form of the value, or {@code null} if the key was removed
+         * @throws Exception if the record cannot be applied
+         */
+        void accept(byte[] key, byte[] storedBytes) throws Exception;
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param file          the snapshot file
+     * @param headerHandler invoked with the header before any record
+     * @param recordHandler invoked for every record
+     * @param codecHandler  invoked with the codec state of the trailer after all records
+     * @return the number of records
+     * @throws IOException if the file cannot be read or a record cannot be applied
+     */
+    static long read(Path file, Consumer<Header> headerHandler, RecordHandler recordHandler,
+                     Consumer<byte[]> codecHandler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (readInt(channel) != MAGIC) {
+                throw new IOException(file + " isn't a cache snapshot");
+            }
+            if (readInt(channel) != VERSION) {
+                throw new IOException("unsupported snapshot version in " + file);
+            }
+            byte[] flags = readBytes(channel, 2);
+            String codecClass = new String(readBytes(channel, readInt(channel)), StandardCharsets.UTF_8);
+            byte[] codecState = readBytes(channel, readInt(channel));
+            String serializer = new String(readBytes(channel, readInt(channel)), StandardCharsets.UTF_8);
+            headerHandler.accept(new Header(flags[0], flags[1] != 0, codecClass, codecState, serializer, readInt(channel)));
+
+            long recordCount = 0;
+            int maxPendingBlocks = ForkJoinPool.getCommonPoolParallelism() * 2;
+            Deque<CompletableFuture<Long>> pendingBlocks = new ArrayDeque<>();
+            try {
+                int blockLength;
+                while ((blockLength = readInt(channel)) > 0) {
+                    byte[] block = readBytes(channel, blockLength);
+                    pendingBlocks.addLast(CompletableFuture.supplyAsync(() -> parseBlock(block, recordHandler)));
+                    if (pendingBlocks.size() >= maxPendingBlocks) {
+                        recordCount += pendingBlocks.removeFirst().join();
+                    }
+                }
+                while (!pendingBlocks.isEmpty()) {
+                    recordCount += pendingBlocks.removeFirst().join();
+                }
+            } catch (CompletionException e) {
+                throw new IOException("can't load snapshot " + file, e.getCause());
+            }
+
+            codecHandler.accept(readBytes(channel, readInt(channel)));
+            return recordCount;
+        }
+    }
+
+    private static long parseBlock(byte[] block, RecordHandler recordHandler) {
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        long recordCount = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+
+                int valueLength = buffer.getInt();
+                byte[] storedBytes = null;
+                if (valueLength != TOMBSTONE) {
+                    storedBytes = new byte[valueLength];
+                    buffer.get(storedBytes);
+                }
+                recordHandler.accept(key, storedBytes);
+                recordCount++;
+            }
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+        return recordCount;
+    }
+
+    private static int readInt(FileChannel channel) throws IOException {
+        return ByteBuffer.wrap(readBytes(channel, Integer.BYTES)).getInt();
+    }
+
+    private static byte[] readBytes(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("snapshot is truncated");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Writes a snapshot to a temporary file which replaces the target file on {@link #commit()},
+     * {@link #close()} without a commit deletes the temporary file.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path file;
+        private final Path temporaryFile;
+        private final FileChannel channel;
+        private ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        private byte[] trailerCodecState = new byte[0];
+        private boolean committed;
+
+        /**
+         * Creates a writer and writes the header.
+         *
+         * @param file       the snapshot file
+         * @param header     the header
+         * @throws IOException if the file cannot be written
+         */
+        Writer(Path file, Header header) throws IOException {
+            this.file = file;
+            this.temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+
+            byte[] codecClass = header.codecClass().getBytes(StandardCharsets.UTF_8);
+            byte[] serializer = header.serializer().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer headerBuffer = ByteBuffer.allocate(26 + codecClass.length + header.codecState().length + serializer.length);
+            headerBuffer.putInt(MAGIC).putInt(VERSION)
+                    .put(header.kind()).put((byte) (header.cleared() ? 1 : 0))
+                    .putInt(codecClass.length).put(codecClass)
+                    .putInt(header.codecState().length).put(header.codecState())
+                    .putInt(serializer.length).put(serializer)
+                    .putInt(header.schemaHash());
+            writeFully(headerBuffer.flip());
+        }
+
+        /**
+         * Adds a record.
+         *
+         * @param key         the serialised key
+         * @param storedBytes the stored form of the value, or {@code null} for a removed key
+         * @throws IOException if the file cannot be written
+         */
+        void write(byte[] key, byte[] storedBytes) throws IOException {
+            int recordLength = 2 * Integer.BYTES + key.length + (storedBytes != null ? storedBytes.length : 0);
+            if (block.remaining() < recordLength) {
+                flushBlock();
+                if (block.capacity() < recordLength) {
+                    block = ByteBuffer.allocate(recordLength);
+                }
+            }
+
+            block.putInt(key.length).put(key);
+            if (storedBytes != null) {
+                block.putInt(storedBytes.length).put(storedBytes);
+            } else {
+                block.putInt(TOMBSTONE);
+            }
+        }
+
+        /**
+         * Sets the codec state stored after the records, which covers values compressed while
+         * the snapshot was written.
+         *
+         * @param codecState the codec state, {@code null} for stateless codecs
+         */
+        void setTrailerCodecState(byte[] codecState) {
+            this.trailerCodecState = codecState != null ? codecState : new byte[0];
+        }
+
+        /**
+         * Writes the remaining records and the trailer and moves the snapshot to its target file.
+         *
+         * @throws IOException if the file cannot be written
+         */
+        void commit() throws IOException {
+            try (channel) {
+                flushBlock();
+                ByteBuffer trailer = ByteBuffer.allocate(2 * Integer.BYTES + trailerCodecState.length);
+                trailer.putInt(0).putInt(trailerCodecState.length).put(trailerCodecState);
+                writeFully(trailer.flip());
+                channel.force(true);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        /**
+         * Discards the snapshot unless it was {@link #commit() committed}, the target file stays as it was.
+         *
+         * @throws IOException if the temporary file cannot be deleted
+         */
+        @Override
+        public void close() throws IOException {
+            if (committed) {
+                return;
+            }
+            try (channel) {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.position() == 0) {
+                return;
+            }
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).putInt(block.position());
+            writeFully(length.flip());
+            writeFully(block.flip());
+            block.clear();
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,574 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.internal;
+
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.CompressionCodec;
+import org.os890.cache.CompressionStatistics;
+import org.os890.cache.ValueSerializer;
+import org.os890.cache.codec.DeflateCodec;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * Turns values into their compressed form and back.
+ *
+ * <p>One instance is shared by all entries of a cache.  It combines the
+ * {@link ValueSerializer} used for value serialisation with the {@link CompressionCodec}
+ * configured for the cache.</p>
+ *
+ * <p>The first byte of the stored form tells whether the rest is the codec output or the
+ * serialised value as-is.  The latter is used for values below the minimum size and for
+ * values which don't reach the minimum compression ratio, so reading them skips
+ * decompression.  Values larger than {@value #PROBE_LENGTH} bytes are probed by
+ * compressing their prefix with the fastest Deflate level, before the codec gets to
+ * compress the whole value.</p>
+ *
+ * <p>The flag is followed by a 64-bit fingerprint of the serialised value, so conditional
+ * operations can compare values without decompressing them.  Stored forms written before
+ * fingerprints were introduced don't have the fingerprint flag and stay readable.</p>
+ *
+ * <p>Compressed values record their uncompressed length (as var-int after the header), so
+ * they are inflated straight into one array of the exact size.  Compression writes into
+ * a pooled scratch buffer, which gets copied once into the exact-size result.</p>
+ *
+ * @param <V> the type of the uncompressed value
+ */
+public class ValueCompressor<V> implements CompressionStatistics {
+
+    private static final byte CODEC_OUTPUT = 0;
+    private static final byte UNCOMPRESSED = 1;
+    private static final byte FINGERPRINTED = 2; //flag bit, combined with one of the above
+    private static final int FINGERPRINT_LENGTH = Long.BYTES;
+    private static final int PROBE_LENGTH = 4096;
+
+    /** Maximum length of the flag, fingerprint and var-int header in front of compressed values. */
+    static final int MAX_HEADER_LENGTH = 1 + FINGERPRINT_LENGTH + 5;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final int MIN_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final System.Logger LOGGER = System.getLogger(ValueCompressor.class.getName());
+
+    private static final CompressionCodec PROBE_CODEC = new DeflateCodec(Deflater.BEST_SPEED);
+    private static final ObjectPool<byte[]> BUFFERS = new ObjectPool<>();
+
+    private final String cacheName;
+    private final String valueModeName;
+    private final ValueSerializer serializer;
+    private final CompressionCodec codec;
+    private final int minCompressionSize;
+    private final double minCompressionRatio;
+
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder bypassedCount = new LongAdder();
+    private final LongAdder serialisedBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder compressionFailures = new LongAdder();
+    private final LongAdder decompressionFailures = new LongAdder();
+    private final LongAdder softReferenceHits = new LongAdder();
+    private final LongAdder softReferenceMisses = new LongAdder();
+    private final LatencyHistogram compressTimes;
+    private final LatencyHistogram restoreTimes;
+
+    /**
+     * Creates a new compressor which compresses every value.
+     *
+     * @param serializer the serializer used for value serialisation
+     * @param codec      the codec used to compress the serialised value
+     */
+    public ValueCompressor(ValueSerializer serializer, CompressionCodec codec) {
+        this(serializer, codec, 0, 0);
+    }
+
+    /**
+     * Creates a new compressor.
+     *
+     * @param serializer          the serializer used for value serialisation
+     * @param codec               the codec used to compress the serialised value
+     * @param minCompressionSize  serialised size below which values are stored uncompressed
+     * @param minCompressionRatio compression ratio a value has to reach to be stored compressed
+     */
+    public ValueCompressor(ValueSerializer serializer, CompressionCodec codec, int minCompressionSize, double minCompressionRatio) {
+        this(null, null, serializer, codec, minCompressionSize, minCompressionRatio, false);
+    }
+
+    /**
+     * Creates a new compressor of a cache, which optionally records the latency of each operation.
+     *
+     * <p>The cache name and mode are reported by the Flight Recorder events of slow operations.</p>
+     *
+     * @param cacheName           the name of the cache
+     * @param valueMode           the mode of the cache
+     * @param serializer          the serializer used for value serialisation
+     * @param codec               the codec used to compress the serialised value
+     * @param minCompressionSize  serialised size below which values are stored uncompressed
+     * @param minCompressionRatio compression ratio a value has to reach to be stored compressed
+     * @param recordTimes         whether to record compression and decompression times
+     */
+    public ValueCompressor(String cacheName, CompressedValueMode valueMode, ValueSerializer serializer, CompressionCodec codec,
+                           int minCompressionSize, double minCompressionRatio, boolean recordTimes) {
+        this.cacheName = cacheName;
+        this.valueModeName = valueMode != null ? valueMode.name() : null;
+        this.serializer = serializer;
+        this.codec = codec;
+        this.minCompressionSize = minCompressionSize;
+        this.minCompressionRatio = minCompressionRatio;
+        this.compressTimes = recordTimes ? new LatencyHistogram() : null;
+        this.restoreTimes = recordTimes ? new LatencyHistogram() : null;
+    }
+
+    /**
+     * Serialises and compresses the given value.
+     *
+     * <p>Failures are counted and logged, callers just mark their entry as invalid.</p>
+     *
+     * @param value the value to compress
+     * @return the compressed representation of the value
+     * @throws IOException if the value cannot be serialised or compressed
+     */
+    public byte[] compress(V value) throws IOException {
+        long startTime = compressTimes != null ? System.nanoTime() : 0;
+        try {
+            byte[] result = compressValue(value);
+            storedBytes.add(result.length);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            compressionFailures.increment();
+            LOGGER.log(System.Logger.Level.WARNING, "it wasn't possible to compress a value", e);
+            throw e;
+        } finally {
+            if (compressTimes != null) {
+                compressTimes.record(System.nanoTime() - startTime);
+            }
+        }
+    }
+
+    private byte[] compressValue(V value) throws IOException {
+        MarshalEvent marshalEvent = new MarshalEvent();
+        marshalEvent.begin();
+        byte[] valueAsBytes = serializer.serialize(value);
+        marshalEvent.finish(this, MarshalEvent.SERIALIZE, valueAsBytes.length);
+        serialisedBytes.add(valueAsBytes.length);
+
+        CompressEvent compressEvent = new CompressEvent();
+        compressEvent.begin();
+        byte[] result = encode(valueAsBytes);
+        compressEvent.finish(this, valueAsBytes.length, result.length, (result[0] & ~FINGERPRINTED) == CODEC_OUTPUT);
+        return result;
+    }
+
+    private byte[] encode(byte[] valueAsBytes) throws IOException {
+        int uncompressedLength = valueAsBytes.length;
+        long fingerprint = fingerprint(valueAsBytes);
+
+        if (uncompressedLength < minCompressionSize || !isPrefixCompressible(valueAsBytes)) {
+            return storeUncompressed(valueAsBytes, fingerprint);
+        }
+
+        //a compressed form which isn't smaller than the serialised value is never used
+        int maxCompressedLength = (int) (uncompressedLength / Math.max(minCompressionRatio, 1));
+        int headerLength = 1 + FINGERPRINT_LENGTH + varIntLength(uncompressedLength);
+        byte[] buffer = borrowBuffer(headerLength + maxCompressedLength);
+        try {
+            int compressedLength = codec.compress(valueAsBytes, 0, uncompressedLength, buffer, headerLength, maxCompressedLength);
+            if (compressedLength < 0) {
+                return storeUncompressed(valueAsBytes, fingerprint);
+            }
+
+            buffer[0] = CODEC_OUTPUT | FINGERPRINTED;
+            LONGS.set(buffer, 1, fingerprint);
+            writeVarInt(buffer, 1 + FINGERPRINT_LENGTH, uncompressedLength);
+            compressedCount.increment();
+            return Arrays.copyOf(buffer, headerLength + compressedLength);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Decompresses and deserialises a value created by {@link #compress(Object)}.
+     *
+     * <p>Failures are counted and logged, callers just mark their entry as invalid.</p>
+     *
+     * @param compressedValue the compressed representation of the value
+     * @return the restored value
+     * @throws IOException if the bytes cannot be decompressed or deserialised
+     */
+    public V restore(byte[] compressedValue) throws IOException {
+        long startTime = restoreTimes != null ? System.nanoTime() : 0;
+        try {
+            return restoreValue(compressedValue);
+        } catch (IOException | RuntimeException e) {
+            decompressionFailures.increment();
+            LOGGER.log(System.Logger.Level.WARNING, "it wasn't possible to restore a stored value of " + compressedValue.length + " bytes", e);
+            throw e;
+        } finally {
+            if (restoreTimes != null) {
+                restoreTimes.record(System.nanoTime() - startTime);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V restoreValue(byte[] compressedValue) throws IOException {
+        byte[] uncompressedValue = uncompress(compressedValue);
+        MarshalEvent marshalEvent = new MarshalEvent();
+        marshalEvent.begin();
+        V result = (V) serializer.deserialize(uncompressedValue);
+        marshalEvent.finish(this, MarshalEvent.DESERIALIZE, uncompressedValue.length);
+        return result;
+    }
+
+    //returns the serialised value
+    private byte[] uncompress(byte[] compressedValue) throws IOException {
+        byte[] uncompressedValue;
+        int offset = fingerprintEnd(compressedValue);
+
+        switch (compressedValue[0] & ~FINGERPRINTED) {
+            case CODEC_OUTPUT:
+                int uncompressedLength = readVarInt(compressedValue, offset);
+                int headerLength = offset + varIntLength(uncompressedLength);
+                uncompressedValue = new byte[uncompressedLength];
+                DecompressEvent decompressEvent = new DecompressEvent();
+                decompressEvent.begin();
+                codec.decompress(compressedValue, headerLength, compressedValue.length - headerLength, uncompressedValue, 0, uncompressedLength);
+                decompressEvent.finish(this, compressedValue.length, uncompressedLength);
+                break;
+            case UNCOMPRESSED:
+                uncompressedValue = Arrays.copyOfRange(compressedValue, offset, compressedValue.length);
+                break;
+            default:
+                throw new IOException("unknown storage flag " + compressedValue[0]);
+        }
+        return uncompressedValue;
+    }
+
+    /**
+     * Serialises an object of the cache which isn't compressed, e.g. a key.
+     *
+     * @param object the object to serialise
+     * @return the serialised form
+     * @throws IOException if the object cannot be serialised
+     */
+    public byte[] serialize(Object object) throws IOException {
+        return serializer.serialize(object);
+    }
+
+    /**
+     * Deserialises an object created by {@link #serialize(Object)}.
+     *
+     * @param <T>   the type of the object
+     * @param bytes the serialised form
+     * @return the restored object
+     * @throws IOException if the object cannot be deserialised
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(byte[] bytes) throws IOException {
+        return (T) serializer.deserialize(bytes);
+    }
+
+    String getCacheName() {
+        return cacheName;
+    }
+
+    String getValueModeName() {
+        return valueModeName;
+    }
+
+    /**
+     * Returns the codec used for the compressed values.
+     *
+     * @return the codec
+     */
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Returns the serializer used for the values.
+     *
+     * @return the serializer
+     */
+    public ValueSerializer getSerializer() {
+        return serializer;
+    }
+
+    /**
+     * Returns the serialised size of a value created by {@link #compress(Object)}, without decompressing it.
+     *
+     * @param compressedValue the compressed representation of the value
+     * @return the serialised size in bytes
+     */
+    public static int getUncompressedLength(byte[] compressedValue) {
+        return getUncompressedLength(compressedValue, compressedValue.length);
+    }
+
+    /**
+     * Returns the serialised size of a value created by {@link #compress(Object)}, from the
+     * first bytes of its compressed representation.
+     *
+     * @param storedPrefix the first {@value #MAX_HEADER_LENGTH} bytes (or all, if shorter) of the compressed representation
+     * @param storedLength the length of the complete compressed representation
+     * @return the serialised size in bytes
+     */
+    public static int getUncompressedLength(byte[] storedPrefix, int storedLength) {
+        int offset = fingerprintEnd(storedPrefix);
+        if ((storedPrefix[0] & ~FINGERPRINTED) == CODEC_OUTPUT) {
+            return readVarInt(storedPrefix, offset);
+        }
+        return storedLength - offset;
+    }
+
+    /**
+     * Serialises the given value for a comparison with compressed representations.
+     *
+     * @param value the value
+     * @return the serialised value and the fingerprint its compressed representation would record
+     * @throws IOException if the value cannot be serialised
+     */
+    public SerializedValue serializeForComparison(V value) throws IOException {
+        byte[] valueAsBytes = serializer.serialize(value);
+        return new SerializedValue(valueAsBytes, fingerprint(valueAsBytes));
+    }
+
+    /**
+     * Tells whether a value created by {@link #compress(Object)} records a fingerprint, from the
+     * first bytes of its compressed representation.  Stored forms of older snapshots don't.
+     *
+     * @param storedPrefix the first {@value #MAX_HEADER_LENGTH} bytes (or all, if shorter) of the compressed representation
+     * @return {@code true} if the value can be compared via {@link #holdsSerializedValue(byte[], SerializedValue)}
+     */
+    public static boolean hasFingerprint(byte[] storedPrefix) {
+        return (storedPrefix[0] & FINGERPRINTED) != 0;
+    }
+
+    /**
+     * Tells whether a value created by {@link #compress(Object)} records the fingerprint of the
+     * given serialised value, from the first bytes of its compressed representation.
+     *
+     * <p>A mismatch proves the serialised values to differ, a match has to be confirmed via
+     * {@link #holdsSerializedValue(byte[], SerializedValue)}.</p>
+     *
+     * @param storedPrefix the first {@value #MAX_HEADER_LENGTH} bytes (or all, if shorter) of the compressed representation
+     * @param value        the value returned by {@link #serializeForComparison(Object)}
+     * @return {@code true} if the fingerprints match, {@code false} if they differ or the value has none
+     */
+    public static boolean matchesFingerprint(byte[] storedPrefix, SerializedValue value) {
+        return hasFingerprint(storedPrefix) && (long) LONGS.get(storedPrefix, 1) == value.fingerprint();
+    }
+
+    /**
+     * Tells whether a value created by {@link #compress(Object)} holds the given serialised value.
+     *
+     * <p>The fingerprints get compared first, only if they match the serialised values are
+     * compared byte by byte, so a 64-bit hash collision doesn't count as equal.  Values stored
+     * uncompressed are compared in place, compressed ones get decompressed, but not deserialised.
+     * Values without fingerprint never match.</p>
+     *
+     * @param storedBytes the compressed representation
+     * @param value       the value returned by {@link #serializeForComparison(Object)}
+     * @return {@code true} if the serialised values are equal
+     * @throws IOException if the stored value cannot be decompressed
+     */
+    public boolean holdsSerializedValue(byte[] storedBytes, SerializedValue value) throws IOException {
+        if (!matchesFingerprint(storedBytes, value)) {
+            return false;
+        }
+
+        byte[] valueAsBytes = value.bytes();
+        if ((storedBytes[0] & ~FINGERPRINTED) == UNCOMPRESSED) {
+            return Arrays.equals(storedBytes, 1 + FINGERPRINT_LENGTH, storedBytes.length, valueAsBytes, 0, valueAsBytes.length);
+        }
+        return getUncompressedLength(storedBytes) == valueAsBytes.length && Arrays.equals(uncompress(storedBytes), valueAsBytes);
+    }
+
+    /**
+     * Returns the average serialised size of the values compressed so far.
+     *
+     * @return the average size in bytes, {@code 0} if no value was compressed yet
+     */
+    public int getAverageSerializedLength() {
+        long count = compressedCount.sum() + bypassedCount.sum();
+        return count > 0 ? (int) (serialisedBytes.sum() / count) : 0;
+    }
+
+    @Override
+    public long getCompressedCount() {
+        return compressedCount.sum();
+    }
+
+    @Override
+    public long getBypassedCount() {
+        return bypassedCount.sum();
+    }
+
+    long getSerializedBytes() {
+        return serialisedBytes.sum();
+    }
+
+    long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    long getCompressionFailures() {
+        return compressionFailures.sum();
+    }
+
+    long getDecompressionFailures() {
+        return decompressionFailures.sum();
+    }
+
+    //FAST entries report whether a read was served by the soft reference
+    void recordSoftReferenceRead(boolean hit) {
+        (hit ? softReferenceHits : softReferenceMisses).increment();
+    }
+
+    long getSoftReferenceHits() {
+        return softReferenceHits.sum();
+    }
+
+    long getSoftReferenceMisses() {
+        return softReferenceMisses.sum();
+    }
+
+    LatencyHistogram getCompressTimes() {
+        return compressTimes;
+    }
+
+    LatencyHistogram getRestoreTimes() {
+        return restoreTimes;
+    }
+
+    private boolean isPrefixCompressible(byte[] valueAsBytes) throws IOException {
+        if (valueAsBytes.length <= PROBE_LENGTH || minCompressionRatio <= 0) {
+            //small values get compressed completely and checked afterwards
+            return true;
+        }
+
+        int maxProbeOutputLength = (int) (PROBE_LENGTH / Math.max(minCompressionRatio, 1));
+        byte[] buffer = borrowBuffer(maxProbeOutputLength);
+        try {
+            return PROBE_CODEC.compress(valueAsBytes, 0, PROBE_LENGTH, buffer, 0, maxProbeOutputLength) >= 0;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private byte[] storeUncompressed(byte[] valueAsBytes, long fingerprint) {
+        bypassedCount.increment();
+
+        int headerLength = 1 + FINGERPRINT_LENGTH;
+        byte[] result = new byte[valueAsBytes.length + headerLength];
+        result[0] = UNCOMPRESSED | FINGERPRINTED;
+        LONGS.set(result, 1, fingerprint);
+        System.arraycopy(valueAsBytes, 0, result, headerLength, valueAsBytes.length);
+        return result;
+    }
+
+    private static int fingerprintEnd(byte[] storedPrefix) {
+        return (storedPrefix[0] & FINGERPRINTED) != 0 ? 1 + FINGERPRINT_LENGTH : 1;
+    }
+
+    //xxHash64-style mixing over 8-byte lanes, the length is part of the seed
+    private static long fingerprint(byte[] bytes) {
+        long hash = PRIME_3 + bytes.length * PRIME_1;
+        int position = 0;
+        for (; position + Long.BYTES <= bytes.length; position += Long.BYTES) {
+            long lane = Long.rotateLeft((long) LONGS.get(bytes, position) * PRIME_2, 31) * PRIME_1;
+            hash = Long.rotateLeft(hash ^ lane, 27) * PRIME_1 + PRIME_3;
+        }
+        for (; position < bytes.length; position++) {
+            hash = Long.rotateLeft(hash ^ (bytes[position] & 0xFF) * PRIME_3, 11) * PRIME_1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        return hash ^ (hash >>> 32);
+    }
+
+    private static byte[] borrowBuffer(int minLength) {
+        byte[] buffer = BUFFERS.poll();
+        if (buffer != null && buffer.length >= minLength) {
+            return buffer;
+        }
+        if (buffer != null) {
+            BUFFERS.offer(buffer);
+        }
+        return new byte[Math.max(minLength, MIN_BUFFER_SIZE)];
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    private static int varIntLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static void writeVarInt(byte[] target, int offset, int value) {
+        int position = offset;
+        while ((value & ~0x7F) != 0) {
+            target[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[position] = (byte) value;
+    }
+
+    private static int readVarInt(byte[] source, int offset) {
+        int result = 0;
+        int shift = 0;
+        int position = offset;
+        byte current;
+        do {
+            current = source[position++];
+            result |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return result;
+    }
+
+    /**
+     * Serialised value an entry gets compared with, e.g. the expected value of a conditional operation.
+     *
+     * @param bytes       the serialised value
+     * @param fingerprint the fingerprint the compressed representation of the value records
+     */
+    public record SerializedValue(byte[] bytes, long fingerprint) {
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.serializer;
+
+import java.io.ObjectInputFilter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides class loaders which only resolve the classes a deserialization filter accepts, for
+ * serializers which load the classes named in the serialised form through a class loader.
+ *
+ * <p>One filtering class loader is kept per context class loader, so the JVM and Ignite can
+ * cache the resolved classes and the filter gets consulted once per class.</p>
+ */
+final class FilteredClassLoaders {
+
+    private final ObjectInputFilter filter;
+    private final Map<ClassLoader, ClassLoader> classLoaders = new ConcurrentHashMap<>();
+
+    FilteredClassLoaders(ObjectInputFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the filtering class loader on top of the context class loader of the current thread.
+     *
+     * @return the class loader to resolve classes with
+     */
+    ClassLoader forCurrentThread() {
+        ClassLoader parent = Thread.currentThread().getContextClassLoader();
+        if (parent == null) {
+            parent = FilteredClassLoaders.class.getClassLoader();
+        }
+        return classLoaders.computeIfAbsent(parent, classLoader -> new FilteringClassLoader(classLoader, filter));
+    }
+
+    /**
+     * Delegates to its parent and rejects the loaded class if the filter does.
+     */
+    private static final class FilteringClassLoader extends ClassLoader {
+
+        private final ObjectInputFilter filter;
+
+        private FilteringClassLoader(ClassLoader parent, ObjectInputFilter filter) {
+            super(parent);
+            this.filter = filter;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            Class<?> loadedClass = super.loadClass(name, resolve);
+            if (filter.checkInput(new ClassCheck(loadedClass)) == ObjectInputFilter.Status.REJECTED) {
+                throw new ClassNotFoundException(name + " is rejected by the deserialization filter");
+            }
+            return loadedClass;
+        }
+    }
+
+    /**
+     * Filter input for a single class, without the stream limits of Java serialization.
+     *
+     * @param serialClass the class to check
+     */
+    private record ClassCheck(Class<?> serialClass) implements ObjectInputFilter.FilterInfo {
+
+        @Override
+        public long arrayLength() {
+            return -1;
+        }
+
+        @Override
+        public long depth() {
+            return 0;
+        }
+
+        @Override
+        public long references() {
+            return 0;
+        }
+
+        @Override
+        public long streamBytes() {
+            return 0;
+        }
+    }
+}
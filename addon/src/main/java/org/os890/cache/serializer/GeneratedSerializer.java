@@ -0,0 +1,670 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.serializer;
+
+import org.os890.cache.ValueSerializer;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Serialiser specialised for one value class, generated from its fields when the cache gets created.
+ *
+ * <p>Supported are records and simple value classes like
+ * <pre>
+ * public class Price {
+ *     private final String currency;
+ *     private final long amount;
+ *
+ *     public Price(String currency, long amount) { ... }
+ * }
+ * </pre>
+ * i.e. classes which extend {@code Object} directly and have a constructor taking all
+ * non-static, non-transient fields in declaration order.  Before such a class gets accepted,
+ * the constructor is called once with sample arguments, to make sure it really assigns the
+ * fields in that order.</p>
+ *
+ * <p>Fields are read with method handles (record accessors or field getters) and written
+ * one after the other, without class names or type ids: primitives as var-ints
+ * or their raw bits, strings as UTF-8, byte arrays and enums (by name) as length-prefixed
+ * bytes.  Fields of other types are embedded with the fallback serializer.  Instances of
+ * other classes, including subclasses and cache keys, are serialised completely by the
+ * fallback serializer; the first byte of the serialised form tells the two cases apart.</p>
+ *
+ * <p>The format depends on the fields of the class.  Generated values therefore start with a
+ * 32-bit {@link #getSchemaHash() hash} of the field names and types in declaration order;
+ * after adding, removing, renaming or reordering fields, values written before (e.g. in
+ * snapshots or the disk tier) fail to deserialise instead of getting their fields mixed up.
+ * Deserialisation calls the constructor of the class, so a constructor which validates or
+ * normalises its arguments takes part in every round-trip.</p>
+ */
+public final class GeneratedSerializer implements ValueSerializer {
+
+    private static final byte GENERATED = 0;
+    private static final byte FALLBACK = 1;
+
+    private final Class<?> valueClass;
+    private final ValueSerializer fallback;
+    private final FieldCodec[] fieldCodecs;
+    private final MethodHandle constructor;
+    private final int schemaHash;
+
+    //sizing hint for the next output buffer, races just lead to another resize
+    private int lastLength = 64;
+
+    /**
+     * Creates a serializer for the given class.
+     *
+     * @param valueClass the record or value class to generate the serializer for
+     * @param fallback   the serializer used for other classes and for field types without a built-in encoding
+     * @throws IllegalArgumentException if the class isn't supported, see {@link #forClass(Class, ValueSerializer)}
+     */
+    public GeneratedSerializer(Class<?> valueClass, ValueSerializer fallback) {
+        this.valueClass = Objects.requireNonNull(valueClass, "valueClass");
+        this.fallback = Objects.requireNonNull(fallback, "fallback");
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(valueClass, MethodHandles.lookup());
+            List<MethodHandle> getters = new ArrayList<>();
+            Class<?>[] fieldTypes;
+            StringBuilder schema = new StringBuilder();
+            Constructor<?> valueConstructor;
+
+            if (valueClass.isRecord()) {
+                RecordComponent[] components = valueClass.getRecordComponents();
+                fieldTypes = new Class<?>[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    fieldTypes[i] = components[i].getType();
+                    schema.append(components[i].getName()).append(' ').append(fieldTypes[i].getName()).append(';');
+                    getters.add(lookup.unreflect(components[i].getAccessor()));
+                }
+                valueConstructor = valueClass.getDeclaredConstructor(fieldTypes);
+            } else {
+                List<Field> fields = findValueFields(valueClass);
+                fieldTypes = new Class<?>[fields.size()];
+                for (int i = 0; i < fieldTypes.length; i++) {
+                    fieldTypes[i] = fields.get(i).getType();
+                    schema.append(fields.get(i).getName()).append(' ').append(fieldTypes[i].getName()).append(';');
+                    getters.add(lookup.unreflectGetter(fields.get(i)));
+                }
+                valueConstructor = valueClass.getDeclaredConstructor(fieldTypes);
+            }
+
+            //String#hashCode is specified, so the hash stays the same across JVMs
+            schemaHash = schema.toString().hashCode();
+            fieldCodecs = new FieldCodec[fieldTypes.length];
+            for (int i = 0; i < fieldTypes.length; i++) {
+                fieldCodecs[i] = createCodec(fieldTypes[i], getters.get(i), fallback);
+            }
+            constructor = lookup.unreflectConstructor(valueConstructor)
+                    .asSpreader(Object[].class, fieldTypes.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(valueClass.getName() + " has no constructor taking all fields in declaration order", e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(valueClass.getName() + " isn't accessible, its package has to be open", e);
+        }
+
+        if (!valueClass.isRecord() && !assignsFieldsInOrder()) {
+            throw new IllegalArgumentException("the constructor of " + valueClass.getName() + " doesn't assign the fields in declaration order");
+        }
+    }
+
+    /**
+     * Returns a generated serializer for the given class, if the class is supported.
+     *
+     * <p>Supported are records and classes which extend {@code Object} directly, aren't abstract
+     * and have a constructor taking all non-static, non-transient fields in declaration order.
+     * The class has to be accessible via {@link MethodHandles#privateLookupIn(Class, MethodHandles.Lookup)},
+     * which is the case for classes on the class path.</p>
+     *
+     * @param valueClass the value class of the cache, may be {@code null}
+     * @param fallback   the serializer used for other classes and for field types without a built-in encoding
+     * @return the generated serializer, or {@code fallback} if the class isn't supported
+     */
+    public static ValueSerializer forClass(Class<?> valueClass, ValueSerializer fallback) {
+        if (valueClass == null || !isCandidate(valueClass)) {
+            return fallback;
+        }
+        try {
+            return new GeneratedSerializer(valueClass, fallback);
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Returns the class this serializer was generated for.
+     *
+     * @return the value class
+     */
+    public Class<?> getValueClass() {
+        return valueClass;
+    }
+
+    /**
+     * Returns the hash of the field names and types in declaration order, which generated values start with.
+     *
+     * @return the schema hash
+     */
+    public int getSchemaHash() {
+        return schemaHash;
+    }
+
+    @Override
+    public byte[] serialize(Object object) throws IOException {
+        if (object.getClass() != valueClass) {
+            byte[] serialised = fallback.serialize(object);
+            byte[] result = new byte[serialised.length + 1];
+            result[0] = FALLBACK;
+            System.arraycopy(serialised, 0, result, 1, serialised.length);
+            return result;
+        }
+
+        Output output = new Output(lastLength);
+        output.writeByte(GENERATED);
+        output.writeInt(schemaHash);
+        try {
+            for (FieldCodec fieldCodec : fieldCodecs) {
+                fieldCodec.write(object, output);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IOException("can't serialise " + valueClass.getName(), e);
+        }
+        lastLength = output.position;
+        return output.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws IOException {
+        if (bytes.length > 0 && bytes[0] == FALLBACK) {
+            return fallback.deserialize(Arrays.copyOfRange(bytes, 1, bytes.length));
+        }
+        if (bytes.length == 0 || bytes[0] != GENERATED) {
+            throw new IOException("unknown serialised form");
+        }
+
+        Input input = new Input(bytes, 1);
+        Object[] arguments = new Object[fieldCodecs.length];
+        try {
+            if (input.readInt() != schemaHash) {
+                throw new IOException(valueClass.getName() + " was serialised with other fields");
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = fieldCodecs[i].read(input);
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("corrupt serialised " + valueClass.getName(), e);
+        }
+        if (input.position != bytes.length) {
+            throw new IOException("corrupt serialised " + valueClass.getName() + ", trailing bytes");
+        }
+
+        try {
+            return constructor.invokeExact(arguments);
+        } catch (Throwable e) {
+            throw new IOException("can't create " + valueClass.getName(), e);
+        }
+    }
+
+    private static boolean isCandidate(Class<?> valueClass) {
+        if (valueClass.isRecord()) {
+            return true;
+        }
+        return !valueClass.isInterface() && !valueClass.isArray() && !valueClass.isPrimitive() && !valueClass.isEnum()
+                && !Modifier.isAbstract(valueClass.getModifiers()) && valueClass.getSuperclass() == Object.class;
+    }
+
+    private static List<Field> findValueFields(Class<?> valueClass) {
+        if (!isCandidate(valueClass)) {
+            throw new IllegalArgumentException(valueClass.getName() + " isn't a record or a value class extending Object");
+        }
+
+        List<Field> fields = new ArrayList<>();
+        for (Field field : valueClass.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    //calls the constructor with distinct sample arguments and compares them with the fields
+    private boolean assignsFieldsInOrder() {
+        Object[] samples = new Object[fieldCodecs.length];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = fieldCodecs[i].sample(i);
+        }
+
+        try {
+            Object instance = constructor.invokeExact(samples);
+            for (int i = 0; i < samples.length; i++) {
+                if (!Objects.deepEquals(samples[i], fieldCodecs[i].get(instance))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Throwable e) {
+            //e.g. a constructor which rejects the sample arguments
+            return false;
+        }
+    }
+
+    private static FieldCodec createCodec(Class<?> type, MethodHandle getter, ValueSerializer fallback) {
+        if (type == boolean.class) {
+            return new BooleanCodec(getter);
+        }
+        if (type == float.class || type == double.class) {
+            return new FloatingCodec(getter, type);
+        }
+        if (type.isPrimitive()) {
+            return new IntegralCodec(getter, type);
+        }
+        if (type == String.class) {
+            return new StringCodec(getter);
+        }
+        if (type == byte[].class) {
+            return new BytesCodec(getter);
+        }
+        if (type.isEnum()) {
+            return new EnumCodec(getter, type);
+        }
+        return new FallbackCodec(getter, fallback);
+    }
+
+    /**
+     * Writes and reads one field.  Every field type has its own subclass, with a getter
+     * typed exactly for it, so primitives aren't boxed on writes.
+     */
+    private abstract static class FieldCodec {
+
+        final MethodHandle getter;
+        private final MethodHandle boxingGetter;
+
+        FieldCodec(MethodHandle getter, Class<?> fieldType) {
+            this.getter = getter.asType(MethodType.methodType(fieldType, Object.class));
+            this.boxingGetter = getter.asType(MethodType.methodType(Object.class, Object.class));
+        }
+
+        abstract void write(Object instance, Output output) throws Throwable;
+
+        abstract Object read(Input input) throws IOException;
+
+        //boxed field value, only used for the constructor check
+        Object get(Object instance) throws Throwable {
+            return boxingGetter.invokeExact(instance);
+        }
+
+        //a value distinguishable from the samples of the other fields
+        Object sample(int index) {
+            return null;
+        }
+    }
+
+    private static final class BooleanCodec extends FieldCodec {
+
+        BooleanCodec(MethodHandle getter) {
+            super(getter, boolean.class);
+        }
+
+        @Override
+        void write(Object instance, Output output) throws Throwable {
+            output.writeByte((boolean) getter.invokeExact(instance) ? (byte) 1 : (byte) 0);
+        }
+
+        @Override
+        Object read(Input input) {
+            return input.readByte() != 0;
+        }
+
+        @Override
+        Object sample(int index) {
+            return index % 2 == 0;
+        }
+    }
+
+    private static final class IntegralCodec extends FieldCodec {
+
+        private final Class<?> type;
+
+        IntegralCodec(MethodHandle getter, Class<?> type) {
+            super(getter, long.class);
+            this.type = type;
+        }
+
+        @Override
+        void write(Object instance, Output output) throws Throwable {
+            long value = (long) getter.invokeExact(instance);
+            output.writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        @Override
+        Object read(Input input) {
+            long zigZag = input.readVarLong();
+            return box((zigZag >>> 1) ^ -(zigZag & 1));
+        }
+
+        @Override
+        Object sample(int index) {
+            return box(index + 1);
+        }
+
+        private Object box(long value) {
+            if (type == int.class) {
+                return (int) value;
+            }
+            if (type == long.class) {
+                return value;
+            }
+            if (type == short.class) {
+                return (short) value;
+            }
+            if (type == byte.class) {
+                return (byte) value;
+            }
+            return (char) value;
+        }
+    }
+
+    private static final class FloatingCodec extends FieldCodec {
+
+        private final boolean singlePrecision;
+
+        FloatingCodec(MethodHandle getter, Class<?> type) {
+            super(getter, double.class);
+            this.singlePrecision = type == float.class;
+        }
+
+        @Override
+        void write(Object instance, Output output) throws Throwable {
+            double value = (double) getter.invokeExact(instance);
+            if (singlePrecision) {
+                output.writeInt(Float.floatToRawIntBits((float) value));
+            } else {
+                output.writeLong(Double.doubleToRawLongBits(value));
+            }
+        }
+
+        @Override
+        Object read(Input input) {
+            if (singlePrecision) {
+                return Float.intBitsToFloat(input.readInt());
+            }
+            return Double.longBitsToDouble(input.readLong());
+        }
+
+        @Override
+        Object sample(int index) {
+            return singlePrecision ? (Object) (float) (index + 1) : (Object) (double) (index + 1);
+        }
+    }
+
+    /**
+     * Base of the reference types: a var-int {@code 0} stands for {@code null},
+     * otherwise the length of the encoded value plus one precedes it.
+     */
+    private abstract static class ReferenceCodec extends FieldCodec {
+
+        ReferenceCodec(MethodHandle getter) {
+            super(getter, Object.class);
+        }
+
+        @Override
+        void write(Object instance, Output output) throws Throwable {
+            Object value = (Object) getter.invokeExact(instance);
+            if (value == null) {
+                output.writeVarLong(0);
+                return;
+            }
+            byte[] encoded = encode(value);
+            output.writeVarLong(encoded.length + 1L);
+            output.writeBytes(encoded);
+        }
+
+        @Override
+        Object read(Input input) throws IOException {
+            long length = input.readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            return decode(input.readBytes(Math.toIntExact(length - 1)));
+        }
+
+        abstract byte[] encode(Object value) throws IOException;
+
+        abstract Object decode(byte[] encoded) throws IOException;
+    }
+
+    private static final class StringCodec extends ReferenceCodec {
+
+        StringCodec(MethodHandle getter) {
+            super(getter);
+        }
+
+        @Override
+        byte[] encode(Object value) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        Object decode(byte[] encoded) {
+            return new String(encoded, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        Object sample(int index) {
+            return "sample-" + index;
+        }
+    }
+
+    private static final class BytesCodec extends ReferenceCodec {
+
+        BytesCodec(MethodHandle getter) {
+            super(getter);
+        }
+
+        @Override
+        byte[] encode(Object value) {
+            return (byte[]) value;
+        }
+
+        @Override
+        Object decode(byte[] encoded) {
+            return encoded;
+        }
+
+        @Override
+        Object sample(int index) {
+            return new byte[] {(byte) index};
+        }
+    }
+
+    private static final class EnumCodec extends ReferenceCodec {
+
+        private final Class<?> enumType;
+
+        EnumCodec(MethodHandle getter, Class<?> enumType) {
+            super(getter);
+            this.enumType = enumType;
+        }
+
+        @Override
+        byte[] encode(Object value) {
+            return ((Enum<?>) value).name().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object decode(byte[] encoded) {
+            return Enum.valueOf((Class) enumType, new String(encoded, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        Object sample(int index) {
+            Object[] constants = enumType.getEnumConstants();
+            return constants.length > 0 ? constants[index % constants.length] : null;
+        }
+    }
+
+    private static final class FallbackCodec extends ReferenceCodec {
+
+        private final ValueSerializer fallback;
+
+        FallbackCodec(MethodHandle getter, ValueSerializer fallback) {
+            super(getter);
+            this.fallback = fallback;
+        }
+
+        @Override
+        byte[] encode(Object value) throws IOException {
+            return fallback.serialize(value);
+        }
+
+        @Override
+        Object decode(byte[] encoded) throws IOException {
+            return fallback.deserialize(encoded);
+        }
+    }
+
+    /**
+     * Growable output buffer, little-endian.
+     */
+    private static final class Output {
+
+        private byte[] buffer;
+        private int position;
+
+        Output(int initialSize) {
+            buffer = new byte[Math.max(initialSize, 16)];
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(1);
+            buffer[position++] = value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            for (int i = 0; i < 4; i++) {
+                buffer[position++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int i = 0; i < 8; i++) {
+                buffer[position++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int additionalLength) {
+            if (position + additionalLength > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + additionalLength));
+            }
+        }
+    }
+
+    /**
+     * Reader for the output of {@link Output}, reads past the end throw
+     * {@link IndexOutOfBoundsException}.
+     */
+    private static final class Input {
+
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        long readVarLong() {
+            long result = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = buffer[position++];
+                result |= (current & 0x7FL) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+            return result;
+        }
+
+        int readInt() {
+            int result = 0;
+            for (int i = 0; i < 4; i++) {
+                result |= (buffer[position++] & 0xFF) << (i * 8);
+            }
+            return result;
+        }
+
+        long readLong() {
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result |= (buffer[position++] & 0xFFL) << (i * 8);
+            }
+            return result;
+        }
+
+        byte[] readBytes(int length) {
+            Objects.checkFromIndexSize(position, length, buffer.length);
+            byte[] result = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return result;
+        }
+    }
+}
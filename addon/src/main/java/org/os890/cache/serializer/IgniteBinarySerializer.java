@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.serializer;
+
+import org.apache.ignite.IgniteCheckedException;
+import org.apache.ignite.IgniteException;
+import org.apache.ignite.configuration.BinaryConfiguration;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.internal.binary.BinaryContext;
+import org.apache.ignite.internal.binary.BinaryMarshaller;
+import org.apache.ignite.internal.binary.BinaryNoopMetadataHandler;
+import org.apache.ignite.lang.IgnitePredicate;
+import org.apache.ignite.logger.NullLogger;
+import org.apache.ignite.marshaller.MarshallerContext;
+import org.apache.ignite.marshaller.jdk.JdkMarshaller;
+import org.os890.cache.ValueSerializer;
+
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+
+/**
+ * Serialises values with the Apache Ignite binary marshaller, without starting an Ignite node.
+ *
+ * <p>The marshaller gets its own binary context, the way the Ignite thin client sets it up.
+ * Without a cluster there is nothing to register type ids with, so the class names are
+ * written into the serialised form and the schema is stored with every object (no compact
+ * footer).  The serialised bytes are therefore self-describing and stay readable after a
+ * restart, e.g. for snapshots; the repeated class names compress well.  Since the bytes name
+ * the classes to instantiate, caches read them via {@link #withDeserializationFilter(java.io.ObjectInputFilter)}.</p>
+ *
+ * <p>Like with an Ignite node, the JVM needs the {@code --add-opens} flags listed in the
+ * README for Java 17+.</p>
+ */
+public class IgniteBinarySerializer implements ValueSerializer {
+
+    private final BinaryMarshaller marshaller;
+    private final FilteredClassLoaders filteredClassLoaders;
+
+    /**
+     * Creates a serializer with its own binary context.
+     */
+    public IgniteBinarySerializer() {
+        IgniteConfiguration configuration = new IgniteConfiguration()
+                .setBinaryConfiguration(new BinaryConfiguration().setCompactFooter(false));
+        BinaryContext binaryContext = new BinaryContext(BinaryNoopMetadataHandler.instance(), configuration, NullLogger.INSTANCE);
+
+        marshaller = new BinaryMarshaller();
+        marshaller.setContext(new StandaloneMarshallerContext());
+        binaryContext.configure(marshaller, configuration.getBinaryConfiguration());
+        marshaller.setBinaryContext(binaryContext, configuration);
+        filteredClassLoaders = null;
+    }
+
+    //shares the binary context, only the class loader used for reading differs
+    private IgniteBinarySerializer(BinaryMarshaller marshaller, ObjectInputFilter filter) {
+        this.marshaller = marshaller;
+        this.filteredClassLoaders = new FilteredClassLoaders(filter);
+    }
+
+    /**
+     * Returns the serializer shared by all caches which don't configure one.
+     *
+     * @return the shared instance
+     */
+    public static IgniteBinarySerializer getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    @Override
+    public byte[] serialize(Object object) throws IOException {
+        try {
+            return marshaller.marshal(object);
+        } catch (IgniteCheckedException e) {
+            throw new IOException("can't serialise " + object.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws IOException {
+        try {
+            return marshaller.unmarshal(bytes, filteredClassLoaders != null ?
+                    filteredClassLoaders.forCurrentThread() : Thread.currentThread().getContextClassLoader());
+        } catch (IgniteCheckedException | IgniteException e) {
+            //a class rejected by the filter surfaces as BinaryInvalidTypeException
+            throw new IOException("can't deserialise value", e);
+        }
+    }
+
+    /**
+     * Returns a serializer sharing the binary context of this one, which resolves the class
+     * names of the serialised form only if the filter accepts the classes.
+     *
+     * @param filter the filter to check the classes with
+     * @return a serializer applying the filter
+     */
+    @Override
+    public ValueSerializer withDeserializationFilter(ObjectInputFilter filter) {
+        return new IgniteBinarySerializer(marshaller, filter);
+    }
+
+    /**
+     * Lazily created default instance, the binary context takes a moment to set up.
+     */
+    private static final class DefaultHolder {
+        private static final IgniteBinarySerializer INSTANCE = new IgniteBinarySerializer();
+    }
+
+    /**
+     * Marshaller context without a cluster: no type id gets registered, so the binary
+     * writer stores class names instead of type ids.
+     */
+    private static final class StandaloneMarshallerContext implements MarshallerContext {
+
+        private final JdkMarshaller jdkMarshaller = new JdkMarshaller();
+
+        // deprecated in the interface, but still abstract and called by Ignite
+        @SuppressWarnings("deprecation")
+        @Override
+        public boolean registerClassName(byte platformId, int typeId, String className) {
+            return false;
+        }
+
+        @Override
+        public boolean registerClassNameLocally(byte platformId, int typeId, String className) {
+            return false;
+        }
+
+        @Override
+        public Class<?> getClass(int typeId, ClassLoader classLoader) throws ClassNotFoundException {
+            throw new ClassNotFoundException("unregistered type id " + typeId);
+        }
+
+        @Override
+        public String getClassName(byte platformId, int typeId) throws ClassNotFoundException {
+            throw new ClassNotFoundException("unregistered type id " + typeId);
+        }
+
+        @Override
+        public boolean isSystemType(String typeName) {
+            return false;
+        }
+
+        //the binary reader resolves the class names it reads without this filter, so
+        //withDeserializationFilter checks them in the class loader instead
+        @Override
+        public IgnitePredicate<String> classNameFilter() {
+            return null;
+        }
+
+        @Override
+        public JdkMarshaller jdkMarshaller() {
+            return jdkMarshaller;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.serializer;
+
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCheckedException;
+import org.apache.ignite.IgniteException;
+import org.apache.ignite.internal.IgniteKernal;
+import org.apache.ignite.marshaller.Marshaller;
+import org.os890.cache.ValueSerializer;
+
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+
+/**
+ * Serialises values with the marshaller of a running Ignite node.
+ *
+ * <p>For applications which run an Ignite node anyway and want the compact binary format
+ * with type ids registered in the cluster.  The type metadata lives in the work directory
+ * of the node, so the serialised bytes are only readable as long as it's kept.  Without a
+ * node, use {@link IgniteBinarySerializer}.</p>
+ */
+public class IgniteNodeSerializer implements ValueSerializer {
+
+    private final Marshaller marshaller;
+    private final FilteredClassLoaders filteredClassLoaders;
+
+    /**
+     * Creates a serializer using the marshaller configured for the given node.
+     *
+     * @param ignite the running node
+     */
+    // Ignite deprecated getMarshaller() but no replacement exists for
+    // retrieving the configured marshaller from a running node.
+    @SuppressWarnings("deprecation")
+    public IgniteNodeSerializer(Ignite ignite) {
+        this.marshaller = ((IgniteKernal) ignite).context().grid().configuration().getMarshaller();
+        this.filteredClassLoaders = null;
+    }
+
+    private IgniteNodeSerializer(Marshaller marshaller, ObjectInputFilter filter) {
+        this.marshaller = marshaller;
+        this.filteredClassLoaders = new FilteredClassLoaders(filter);
+    }
+
+    @Override
+    public byte[] serialize(Object object) throws IOException {
+        try {
+            return marshaller.marshal(object);
+        } catch (IgniteCheckedException e) {
+            throw new IOException("can't serialise " + object.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws IOException {
+        try {
+            return marshaller.unmarshal(bytes, filteredClassLoaders != null ?
+                    filteredClassLoaders.forCurrentThread() : Thread.currentThread().getContextClassLoader());
+        } catch (IgniteCheckedException | IgniteException e) {
+            //a class rejected by the filter surfaces as BinaryInvalidTypeException
+            throw new IOException("can't deserialise value", e);
+        }
+    }
+
+    @Override
+    public ValueSerializer withDeserializationFilter(ObjectInputFilter filter) {
+        return new IgniteNodeSerializer(marshaller, filter);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.serializer;
+
+import org.os890.cache.ValueSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * Serialises values with Java serialization, so they have to implement {@link java.io.Serializable}.
+ *
+ * <p>Needs no further library and no {@code --add-opens} flags.  The output is larger
+ * and slower to produce than the Ignite binary format, but compresses well.  Classes are
+ * resolved via the context class loader of the reading thread and checked with the
+ * deserialization filter of the cache.</p>
+ */
+public class JavaSerializer implements ValueSerializer {
+
+    private final ObjectInputFilter filter;
+
+    /**
+     * Creates a serializer which applies the JVM-wide deserialization filter, if one is configured.
+     */
+    public JavaSerializer() {
+        this(null);
+    }
+
+    /**
+     * Creates a serializer which checks the deserialised classes with the given filter.
+     *
+     * @param filter the filter for the classes, arrays and graph limits of the stream, or {@code null} for the JVM-wide filter
+     */
+    public JavaSerializer(ObjectInputFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(result)) {
+            output.writeObject(object);
+        }
+        return result.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream input = new ContextClassLoaderObjectInputStream(new ByteArrayInputStream(bytes))) {
+            if (filter != null) {
+                input.setObjectInputFilter(filter);
+            }
+            return input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("can't deserialise value", e);
+        }
+    }
+
+    @Override
+    public ValueSerializer withDeserializationFilter(ObjectInputFilter filter) {
+        return new JavaSerializer(filter);
+    }
+
+    /**
+     * Resolves classes via the context class loader, falling back to the default resolution.
+     */
+    private static final class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+
+        private ContextClassLoaderObjectInputStream(InputStream input) throws IOException {
+            super(input);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+            ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            if (contextClassLoader != null) {
+                try {
+                    return Class.forName(description.getName(), false, contextClassLoader);
+                } catch (ClassNotFoundException e) {
+                    //fall back to the default resolution, e.g. for primitive types
+                }
+            }
+            return super.resolveClass(description);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCache;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.CompressionStatistics;
+
+import javax.cache.Cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests that values which don't benefit from compression are stored as-is
+ * and that this is reflected in the {@link CompressionStatistics}.
+ */
+class AdaptiveCompressionTest {
+
+    /**
+     * Verifies that tiny and incompressible values skip compression, while
+     * compressible values get compressed, and that all of them can be read.
+     */
+    @Test
+    void incompressibleValuesAreStoredUncompressed() {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("adaptive-cache", 10, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .minCompressionSize(64)
+                        .minCompressionRatio(2));
+
+        MyValue tiny = new MyValue("t", 1);
+        MyValue compressible = new MyValue("compressible ".repeat(1000), 2);
+        MyValue incompressible = new MyValue(RandomText.of(10000, 890), 3);
+        MyValue smallIncompressible = new MyValue(RandomText.of(1000, 890), 4);
+
+        cache.put("tiny", tiny);
+        cache.put("compressible", compressible);
+        cache.put("incompressible", incompressible);
+        cache.put("smallIncompressible", smallIncompressible);
+
+        CompressionStatistics statistics = cache.unwrap(CompressedCache.class).getCompressionStatistics();
+        assertEquals(1, statistics.getCompressedCount());
+        assertEquals(3, statistics.getBypassedCount());
+        assertEquals(0.75, statistics.getBypassRate(), 0.0001);
+
+        assertEquals(tiny, cache.get("tiny"));
+        assertEquals(compressible, cache.get("compressible"));
+        assertEquals(incompressible, cache.get("incompressible"));
+        assertEquals(smallIncompressible, cache.get("smallIncompressible"));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCache;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the asynchronous operations of {@link CompressedCache}.
+ */
+class AsyncOperationsTest {
+
+    /**
+     * Verifies that values stored asynchronously can be read asynchronously.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void asyncRoundTrip() {
+        CompressedCache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("async-round-trip", 10, String.class, MyValue.class)
+                .unwrap(CompressedCache.class);
+
+        cache.putAsync("k1", new MyValue("first", 1)).join();
+        cache.putAllAsync(Map.of("k2", new MyValue("second", 2), "k3", new MyValue("third", 3))).join();
+
+        assertEquals(new MyValue("first", 1), cache.getAsync("k1").join());
+        assertNull(cache.getAsync("missing").join());
+        assertEquals(Map.of("k2", new MyValue("second", 2), "k3", new MyValue("third", 3)),
+                cache.getAllAsync(Set.of("k2", "k3", "missing")).join());
+    }
+
+    /**
+     * Verifies that operations beyond the pending limit are rejected without blocking,
+     * and accepted again once pending operations completed.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void pendingOperationsAreBounded() {
+        List<Runnable> heldTasks = new ArrayList<>();
+        CompressedCache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("async-bounded", 10, String.class, MyValue.class,
+                        CompressedCacheOptions.newOptions()
+                                .asyncExecutor(heldTasks::add)
+                                .maxPendingAsyncOperations(2))
+                .unwrap(CompressedCache.class);
+
+        CompletableFuture<Void> first = cache.putAsync("k1", new MyValue("first", 1));
+        CompletableFuture<Void> second = cache.putAsync("k2", new MyValue("second", 2));
+        CompletableFuture<MyValue> rejected = cache.getAsync("k1");
+
+        assertTrue(rejected.isCompletedExceptionally());
+        CompletionException exception = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+        assertFalse(first.isDone());
+
+        heldTasks.forEach(Runnable::run);
+        first.join();
+        second.join();
+
+        CompletableFuture<MyValue> accepted = cache.getAsync("k1");
+        heldTasks.get(2).run();
+        assertEquals(new MyValue("first", 1), accepted.join());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.PutAllException;
+import org.os890.cache.ValueSerializer;
+
+import javax.cache.Cache;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the batch operations {@code getAll} and {@code putAll}.
+ */
+class BatchOperationsTest {
+
+    /**
+     * Verifies that large batches are decompressed on the batch executor and return all values.
+     */
+    @Test
+    void largeBatchIsDecompressedInParallel() {
+        AtomicInteger submittedParts = new AtomicInteger();
+        Executor countingExecutor = task -> {
+            submittedParts.incrementAndGet();
+            ForkJoinPool.commonPool().execute(task);
+        };
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("batch-parallel", 1000, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .parallelBatchThreshold(100)
+                        .batchParallelism(4)
+                        .batchExecutor(countingExecutor));
+
+        Map<String, MyValue> values = fill(cache, 500);
+        submittedParts.set(0);
+        Set<String> keys = new HashSet<>(values.keySet());
+        keys.add("missing");
+
+        assertEquals(values, cache.getAll(keys));
+        assertEquals(3, submittedParts.get());
+    }
+
+    /**
+     * Verifies that batches below the threshold stay on the calling thread.
+     */
+    @Test
+    void smallBatchStaysOnCallingThread() {
+        AtomicInteger submittedParts = new AtomicInteger();
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("batch-sequential", 1000, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .parallelBatchThreshold(100)
+                        .batchExecutor(task -> {
+                            submittedParts.incrementAndGet();
+                            task.run();
+                        }));
+
+        Map<String, MyValue> values = fill(cache, 99);
+
+        assertEquals(values, cache.getAll(values.keySet()));
+        assertEquals(0, submittedParts.get());
+    }
+
+    /**
+     * Verifies that large maps are compressed on the batch executor.
+     */
+    @Test
+    void largePutAllIsCompressedInParallel() {
+        AtomicInteger submittedParts = new AtomicInteger();
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("batch-parallel-put", 1000, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .parallelBatchThreshold(100)
+                        .batchParallelism(2)
+                        .batchExecutor(task -> {
+                            submittedParts.incrementAndGet();
+                            new Thread(task).start();
+                        }));
+
+        Map<String, MyValue> values = fill(cache, 300);
+
+        assertEquals(1, submittedParts.get());
+        for (Map.Entry<String, MyValue> entry : values.entrySet()) {
+            assertEquals(entry.getValue(), cache.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Verifies that values which can't be compressed are reported, while the others get stored.
+     */
+    @Test
+    void putAllReportsFailedKeys() {
+        ValueSerializer failingSerializer = new ValueSerializer() {
+            @Override
+            public byte[] serialize(Object object) throws IOException {
+                if (object.toString().startsWith("bad")) {
+                    throw new IOException("can't serialise " + object);
+                }
+                return object.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateSimpleCache("batch-partial-failure", 1000, String.class, String.class,
+                CompressedCacheOptions.newOptions()
+                        .serializer(failingSerializer)
+                        .parallelBatchThreshold(10)
+                        .batchParallelism(3));
+
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            values.put("key-" + i, (i % 10 == 0 ? "bad-" : "good-") + i);
+        }
+
+        PutAllException exception = assertThrows(PutAllException.class, () -> cache.putAll(values));
+
+        assertEquals(Set.of("key-0", "key-10", "key-20"), exception.getFailedKeys());
+        assertNull(cache.get("key-10"));
+        assertEquals("good-11", cache.get("key-11"));
+        assertEquals(27, cache.getAll(values.keySet()).size());
+    }
+
+    private static Map<String, MyValue> fill(Cache<String, MyValue> cache, int count) {
+        Map<String, MyValue> values = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            values.put("key-" + i, new MyValue("label ".repeat(20) + i, i));
+        }
+        cache.putAll(values);
+        return values;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.ValueSerializer;
+
+import javax.cache.Cache;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the atomic compound operations in all compression modes.
+ */
+class CompoundOperationsTest {
+
+    /**
+     * Verifies the results of the compound operations and the values they leave behind.
+     *
+     * @param mode the compression mode of the cache
+     */
+    @ParameterizedTest
+    @EnumSource(CompressedValueMode.class)
+    void compoundOperationsReturnPreviousValues(CompressedValueMode mode) {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("compound-" + mode, 10, String.class, MyValue.class, mode);
+        MyValue first = new MyValue("first", 1);
+        MyValue second = new MyValue("second", 2);
+        MyValue third = new MyValue("third", 3);
+
+        assertNull(cache.getAndPut("key", first));
+        assertEquals(first, cache.getAndPut("key", second));
+        assertFalse(cache.putIfAbsent("key", third));
+        assertEquals(second, cache.get("key"));
+
+        assertFalse(cache.replace("key", first, third));
+        assertTrue(cache.replace("key", second, third));
+        assertEquals(third, cache.getAndReplace("key", first));
+        assertFalse(cache.remove("key", second));
+        assertTrue(cache.remove("key", first));
+
+        assertNull(cache.getAndReplace("key", first));
+        assertFalse(cache.replace("key", first));
+        assertTrue(cache.putIfAbsent("key", first));
+        assertTrue(cache.replace("key", second));
+        assertEquals(second, cache.getAndRemove("key"));
+        assertNull(cache.getAndRemove("key"));
+        assertFalse(cache.remove("key"));
+        assertNull(cache.get("key"));
+    }
+
+    /**
+     * Verifies that concurrent compare-and-replace loops don't lose updates.
+     *
+     * @throws Exception if an updater fails
+     */
+    @Test
+    void concurrentReplacesDontLoseUpdates() throws Exception {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("compound-contended", 10, String.class, MyValue.class,
+                CompressedValueMode.SMALL);
+        cache.put("counter", new MyValue("counter", 0));
+
+        List<Future<?>> updaters = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            for (int thread = 0; thread < 4; thread++) {
+                updaters.add(executor.submit(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        MyValue current;
+                        do {
+                            current = cache.get("counter");
+                        } while (!cache.replace("counter", current, new MyValue("counter", current.getValue() + 1)));
+                    }
+                }));
+            }
+        }
+        for (Future<?> updater : updaters) {
+            updater.get();
+        }
+
+        assertEquals(1000, cache.get("counter").getValue());
+    }
+
+    /**
+     * Verifies that conditional operations compare values by their serialised forms, without
+     * deserialising the stored value, also if the values differ.
+     *
+     * @param mode the compression mode of the cache
+     */
+    @ParameterizedTest
+    @EnumSource(value = CompressedValueMode.class, names = {"SMALL", "OFF_HEAP"})
+    void conditionalOperationsCompareFingerprints(CompressedValueMode mode) {
+        AtomicInteger deserializeCount = new AtomicInteger();
+        ValueSerializer countingSerializer = new ValueSerializer() {
+            @Override
+            public byte[] serialize(Object object) {
+                return object.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                deserializeCount.incrementAndGet();
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateSimpleCache("compound-fingerprint-" + mode, 10, String.class, String.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(mode)
+                        .serializer(countingSerializer)
+                        .serializedValueComparison(true));
+
+        String document = "document ".repeat(1000);
+        cache.put("key", document);
+        assertTrue(cache.replace("key", document, document + "v2"));
+        assertTrue(cache.remove("key", document + "v2"));
+        assertEquals(0, deserializeCount.get());
+
+        cache.put("key", document);
+        assertFalse(cache.replace("key", "other", document));
+        cache.put("short", "value");
+        assertFalse(cache.remove("short", "other"));
+        assertTrue(cache.remove("short", "value"));
+        assertEquals(0, deserializeCount.get());
+    }
+
+    /**
+     * Verifies that values are compared via {@code equals} unless the comparison of serialised
+     * forms is enabled.
+     */
+    @Test
+    void conditionalOperationsCompareViaEqualsByDefault() {
+        AtomicInteger serializeCount = new AtomicInteger();
+        ValueSerializer stampingSerializer = new ValueSerializer() {
+            @Override
+            public byte[] serialize(Object object) {
+                return (object + "|" + serializeCount.incrementAndGet()).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                String serialized = new String(bytes, StandardCharsets.UTF_8);
+                return serialized.substring(0, serialized.lastIndexOf('|'));
+            }
+        };
+        Cache<String, String> comparingCache = CompressedCacheFactory.getOrCreateSimpleCache("compound-serialized", 10, String.class, String.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .serializer(stampingSerializer)
+                        .serializedValueComparison(true));
+        comparingCache.put("key", "value");
+        assertFalse(comparingCache.replace("key", "value", "other"));
+
+        Cache<String, String> equalsCache = CompressedCacheFactory.getOrCreateSimpleCache("compound-equals", 10, String.class, String.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .serializer(stampingSerializer));
+        equalsCache.put("key", "value");
+        assertTrue(equalsCache.replace("key", "value", "other"));
+        assertEquals("other", equalsCache.get("key"));
+    }
+}
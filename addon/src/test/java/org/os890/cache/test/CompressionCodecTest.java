@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.CompressionCodec;
+import org.os890.cache.codec.DeflateCodec;
+import org.os890.cache.codec.GzipCodec;
+import org.os890.cache.codec.Lz4BlockCodec;
+import org.os890.cache.codec.Lz4FrameCodec;
+import org.os890.cache.codec.NoOpCodec;
+
+import javax.cache.Cache;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifies that every shipped {@link CompressionCodec} survives a full
+ * compress-store-retrieve-decompress round-trip in both compression modes,
+ * for a small value and for a value spanning several codec blocks.
+ */
+class CompressionCodecTest {
+
+    static Stream<Arguments> codecs() {
+        return Stream.of(CompressedValueMode.FAST, CompressedValueMode.SMALL).flatMap(mode -> Stream.of(
+                Arguments.of(mode, new GzipCodec()),
+                Arguments.of(mode, new DeflateCodec(1)),
+                Arguments.of(mode, new DeflateCodec(9)),
+                Arguments.of(mode, new Lz4BlockCodec()),
+                Arguments.of(mode, new Lz4FrameCodec()),
+                Arguments.of(mode, new NoOpCodec())));
+    }
+
+    /**
+     * Verifies put and get with the given mode and codec.
+     *
+     * @param mode  the compression mode
+     * @param codec the codec under test
+     */
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void putAndGet(CompressedValueMode mode, CompressionCodec codec) {
+        String cacheName = "codec-" + mode + "-" + codec.getClass().getSimpleName() + "-" + System.identityHashCode(codec);
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache(cacheName, 10, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions().valueMode(mode).codec(codec));
+
+        MyValue value = new MyValue("codec".repeat(100), 42);
+        StringBuilder largeLabel = new StringBuilder();
+        for (int i = 0; largeLabel.length() < 200_000; i++) {
+            largeLabel.append("entry-").append(i * 7919 % 1000).append(';');
+        }
+        MyValue largeValue = new MyValue(largeLabel.toString(), 43);
+
+        cache.put("v1", value);
+        cache.put("v2", largeValue);
+
+        assertEquals(value, cache.get("v1"));
+        assertEquals(largeValue, cache.get("v2"));
+    }
+}
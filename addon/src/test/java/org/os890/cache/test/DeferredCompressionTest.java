@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCache;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+
+import javax.cache.Cache;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for deferred compression.
+ */
+class DeferredCompressionTest {
+
+    /**
+     * Verifies that values are compressed once they were idle, and that overwritten values are never compressed.
+     *
+     * @throws InterruptedException if the test gets interrupted
+     */
+    @Test
+    void idleValuesGetCompressed() throws InterruptedException {
+        Duration idleTime = Duration.ofSeconds(1);
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("deferred-idle", 10, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .deferredCompression(idleTime)
+                        .deferredCompressionHeapWatermark(1));
+        CompressedCache<?, ?> compressedCache = cache.unwrap(CompressedCache.class);
+
+        MyValue value = new MyValue("label ".repeat(50), 1);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key", new MyValue("label ".repeat(50), i));
+        }
+        cache.put("key", value);
+
+        long readTime = System.nanoTime();
+        assertSame(value, cache.get("key"));
+        assertEquals(0, compressedCache.getCompressionStatistics().getCompressedCount());
+
+        assertTrue(Await.until(() -> compressedCache.getCompressionStatistics().getCompressedCount() > 0));
+        assertTrue(System.nanoTime() - readTime >= idleTime.toNanos());
+        assertEquals(1, compressedCache.getCompressionStatistics().getCompressedCount());
+        assertEquals(value, cache.get("key"));
+    }
+
+    /**
+     * Verifies that evicted pending values aren't kept until the next compaction run.
+     *
+     * @throws InterruptedException if the test gets interrupted
+     */
+    @Test
+    void evictedValuesAreReleased() throws InterruptedException {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("deferred-evicted", 1, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .deferredCompression(Duration.ofHours(1))
+                        .deferredCompressionHeapWatermark(1));
+
+        WeakReference<MyValue> evictedValue = putTracked(cache, "evicted");
+        cache.put("kept", new MyValue("label ".repeat(50), 2));
+
+        assertTrue(Await.until(() -> {
+            System.gc();
+            return evictedValue.get() == null;
+        }));
+        assertEquals(new MyValue("label ".repeat(50), 2), cache.get("kept"));
+    }
+
+    private static WeakReference<MyValue> putTracked(Cache<String, MyValue> cache, String key) {
+        MyValue value = new MyValue("label ".repeat(50), 1);
+        cache.put(key, value);
+        return new WeakReference<>(value);
+    }
+
+    /**
+     * Verifies that all pending values get compressed right away above the heap watermark.
+     *
+     * @throws InterruptedException if the test gets interrupted
+     */
+    @Test
+    void valuesAboveHeapWatermarkGetCompressed() throws InterruptedException {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("deferred-watermark", 10, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .deferredCompression(Duration.ofHours(1))
+                        .deferredCompressionHeapWatermark(0));
+        CompressedCache<?, ?> compressedCache = cache.unwrap(CompressedCache.class);
+
+        cache.put("k1", new MyValue("label ".repeat(50), 1));
+        cache.put("k2", new MyValue("label ".repeat(50), 2));
+
+        assertTrue(Await.until(() -> compressedCache.getCompressionStatistics().getCompressedCount() == 2));
+        assertEquals(2, compressedCache.getCompressionStatistics().getCompressedCount());
+        assertEquals(new MyValue("label ".repeat(50), 2), cache.get("k2"));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.CompressionCodec;
+import org.os890.cache.codec.DeflateCodec;
+import org.os890.cache.codec.DictionaryDeflateCodec;
+
+import javax.cache.Cache;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link DictionaryDeflateCodec}: training, compression gain for small
+ * values of the same shape and dictionary rotation.
+ */
+class DictionaryDeflateCodecTest {
+
+    private static byte[] smallValue(int index) {
+        return ("{\"type\":\"org.example.Customer\",\"id\":" + index + ",\"name\":\"customer-" + index
+                + "\",\"status\":\"ACTIVE\",\"region\":\"eu-central-1\",\"createdBy\":\"import-job\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(CompressionCodec codec, byte[] value) throws IOException {
+        byte[] output = new byte[value.length + 64];
+        int length = codec.compress(value, 0, value.length, output, 0, output.length);
+        return Arrays.copyOf(output, length);
+    }
+
+    private static byte[] decompress(CompressionCodec codec, byte[] compressed, int uncompressedLength) throws IOException {
+        byte[] output = new byte[uncompressedLength];
+        codec.decompress(compressed, 0, compressed.length, output, 0, uncompressedLength);
+        return output;
+    }
+
+    /**
+     * Verifies that a trained dictionary shrinks small values which barely compress on their own.
+     *
+     * @throws Exception if compression fails
+     */
+    @Test
+    void trainedDictionaryImprovesRatio() throws Exception {
+        DictionaryDeflateCodec codec = new DictionaryDeflateCodec(Deflater.DEFAULT_COMPRESSION, 64, 4096);
+        for (int i = 0; i < 32; i++) {
+            compress(codec, smallValue(i));
+        }
+        assertEquals(0, codec.getActiveDictionaryId());
+
+        int dictionaryId = codec.retrain();
+        assertTrue(dictionaryId > 0);
+
+        byte[] value = smallValue(1000);
+        byte[] withDictionary = compress(codec, value);
+        byte[] withoutDictionary = compress(new DeflateCodec(), value);
+
+        assertTrue(withDictionary.length * 2 < withoutDictionary.length,
+                withDictionary.length + " bytes with dictionary vs. " + withoutDictionary.length + " bytes without");
+        assertArrayEquals(value, decompress(codec, withDictionary, value.length));
+    }
+
+    /**
+     * Verifies that values compressed before and after a rotation stay readable.
+     *
+     * @throws Exception if compression fails
+     */
+    @Test
+    void rotationKeepsExistingValuesReadable() throws Exception {
+        DictionaryDeflateCodec codec = new DictionaryDeflateCodec(Deflater.DEFAULT_COMPRESSION, 64, 4096);
+        List<byte[]> compressed = new ArrayList<>();
+
+        for (int i = 0; i < 32; i++) {
+            compressed.add(compress(codec, smallValue(i)));
+        }
+        int firstDictionary = codec.retrain();
+        for (int i = 32; i < 48; i++) {
+            compressed.add(compress(codec, smallValue(i)));
+        }
+        int secondDictionary = codec.retrain();
+        for (int i = 48; i < 64; i++) {
+            compressed.add(compress(codec, smallValue(i)));
+        }
+
+        assertNotEquals(firstDictionary, secondDictionary);
+        assertEquals(2, codec.getDictionaryCount());
+        for (int i = 0; i < compressed.size(); i++) {
+            assertArrayEquals(smallValue(i), decompress(codec, compressed.get(i), smallValue(i).length));
+        }
+    }
+
+    /**
+     * Verifies a SMALL-mode cache round-trip across a dictionary rotation.
+     */
+    @Test
+    void cacheRoundTrip() {
+        DictionaryDeflateCodec codec = new DictionaryDeflateCodec();
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("dictionary-cache", 100, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions().valueMode(CompressedValueMode.SMALL).codec(codec));
+
+        for (int i = 0; i < 20; i++) {
+            cache.put("k" + i, new MyValue("label-" + i, i));
+        }
+        codec.retrain();
+        for (int i = 20; i < 40; i++) {
+            cache.put("k" + i, new MyValue("label-" + i, i));
+        }
+
+        for (int i = 0; i < 40; i++) {
+            assertEquals(new MyValue("label-" + i, i), cache.get("k" + i));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import com.google.common.cache.CacheBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+
+import javax.cache.Cache;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the disk tier which keeps entries evicted due to the size limit.
+ */
+class DiskOverflowTest {
+
+    @TempDir
+    Path overflowDirectory;
+
+    /**
+     * Verifies that evicted entries are read back from disk and that removals reach the disk tier.
+     */
+    @Test
+    void evictedEntriesAreReadFromDisk() {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("overflow-cache", 5, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .diskOverflow(overflowDirectory, 8 * 1024 * 1024));
+
+        for (int i = 0; i < 50; i++) {
+            cache.put("key" + i, new MyValue("value ".repeat(i + 1), i));
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(cache.containsKey("key" + i));
+            assertEquals(new MyValue("value ".repeat(i + 1), i), cache.get("key" + i));
+        }
+        assertEquals(2, cache.getAll(Set.of("key0", "key1")).size());
+
+        assertTrue(cache.remove("key3"));
+        assertNull(cache.get("key3"));
+
+        cache.put("key4", new MyValue("updated", 4));
+        assertEquals(new MyValue("updated", 4), cache.get("key4"));
+
+        cache.clear();
+        assertFalse(cache.containsKey("key10"));
+        assertNull(cache.get("key10"));
+
+        cache.close();
+    }
+
+    /**
+     * Verifies that removed keys don't come back via the disk write of a concurrent eviction.
+     *
+     * @throws Exception if a thread failed
+     */
+    @Test
+    void removedKeysStayRemovedDuringEvictions() throws Exception {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("overflow-removal-cache", 2, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .diskOverflow(overflowDirectory, 8 * 1024 * 1024));
+
+        List<Future<?>> writers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            for (int thread = 0; thread < 4; thread++) {
+                String prefix = "thread" + thread + "-key";
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        cache.put(prefix + i, new MyValue("value ".repeat(100), i));
+                        assertTrue(cache.remove(prefix + i));
+                    }
+                }));
+            }
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+
+        assertFalse(cache.iterator().hasNext());
+        cache.close();
+    }
+
+    /**
+     * Verifies that entries on disk expire at the deadline they had in memory, not before and
+     * not only when they are removed.
+     *
+     * @throws InterruptedException if the test gets interrupted
+     */
+    @Test
+    void evictedEntriesKeepTheirExpiry() throws InterruptedException {
+        Duration expiry = Duration.ofSeconds(1);
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateCache("overflow-expiry-cache",
+                CacheBuilder.newBuilder().maximumSize(2), String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .expireAfterWrite(expiry)
+                        .diskOverflow(overflowDirectory, 8 * 1024 * 1024));
+
+        long writeStart = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, new MyValue("value " + i, i));
+        }
+        assertTrue(cache.containsKey("key0"));
+
+        assertTrue(Await.until(() -> !cache.containsKey("key0")));
+        assertTrue(System.nanoTime() - writeStart >= expiry.toNanos());
+        assertTrue(Await.until(() -> !cache.containsKey("key9")));
+        for (int i = 0; i < 10; i++) {
+            assertFalse(cache.containsKey("key" + i));
+            assertNull(cache.get("key" + i));
+        }
+        assertFalse(cache.iterator().hasNext());
+
+        cache.close();
+    }
+
+    /**
+     * Verifies that the disk tier rejects an expiry it doesn't know.
+     */
+    @Test
+    void builderExpiryIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CompressedCacheFactory.getOrCreateCache("overflow-builder-expiry-cache",
+                CacheBuilder.newBuilder().maximumSize(2).expireAfterAccess(1, TimeUnit.MINUTES), String.class, MyValue.class,
+                CompressedCacheOptions.newOptions().diskOverflow(overflowDirectory, 8 * 1024 * 1024)));
+
+        assertThrows(IllegalArgumentException.class, () -> CompressedCacheFactory.getOrCreateCache("overflow-double-expiry-cache",
+                CacheBuilder.newBuilder().maximumSize(2).expireAfterWrite(1, TimeUnit.MINUTES), String.class, MyValue.class,
+                CompressedCacheOptions.newOptions().expireAfterWrite(Duration.ofMinutes(1))));
+    }
+
+    /**
+     * Verifies that caches sharing a directory keep their files apart and delete them on close.
+     *
+     * @throws IOException if the directory can't be listed
+     */
+    @Test
+    void cachesShareTheOverflowDirectory() throws IOException {
+        Cache<Integer, MyValue> firstCache = CompressedCacheFactory.getOrCreateSimpleCache("overflow-shared-first", 2, Integer.class, MyValue.class,
+                CompressedCacheOptions.newOptions().diskOverflow(overflowDirectory, 8 * 1024 * 1024));
+        Cache<Integer, MyValue> secondCache = CompressedCacheFactory.getOrCreateSimpleCache("overflow-shared-second", 2, Integer.class, MyValue.class,
+                CompressedCacheOptions.newOptions().diskOverflow(overflowDirectory, 8 * 1024 * 1024));
+
+        for (int i = 0; i < 20; i++) {
+            firstCache.put(i, new MyValue("first", i));
+            secondCache.put(i, new MyValue("second", i));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(new MyValue("first", i), firstCache.get(i));
+            assertEquals(new MyValue("second", i), secondCache.get(i));
+        }
+
+        firstCache.close();
+        secondCache.close();
+        try (Stream<Path> files = Files.list(overflowDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    /**
+     * Verifies that the disk tier works together with off-heap storage.
+     */
+    @Test
+    void offHeapEntriesOverflowToDisk() {
+        Cache<Integer, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("off-heap-overflow-cache", 2, Integer.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.OFF_HEAP)
+                        .diskOverflow(overflowDirectory, 8 * 1024 * 1024));
+
+        for (int i = 0; i < 20; i++) {
+            cache.put(i, new MyValue("value " + i, i));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(new MyValue("value " + i, i), cache.get(i));
+        }
+
+        cache.close();
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.ValueSerializer;
+
+import javax.cache.Cache;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for synchronous and asynchronous entry listeners.
+ */
+class EntryListenerTest {
+
+    /**
+     * Listener recording the events it got, optionally with their values.
+     */
+    private static class RecordingListener implements CacheEntryCreatedListener<String, String>, CacheEntryUpdatedListener<String, String>,
+            CacheEntryRemovedListener<String, String>, CacheEntryExpiredListener<String, String> {
+
+        private final boolean readValues;
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        RecordingListener(boolean readValues) {
+            this.readValues = readValues;
+        }
+
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+            record(events);
+        }
+
+        @Override
+        public void onUpdated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+            record(events);
+        }
+
+        @Override
+        public void onRemoved(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+            record(events);
+        }
+
+        @Override
+        public void onExpired(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+            record(events);
+        }
+
+        void record(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+            calls.incrementAndGet();
+            for (CacheEntryEvent<? extends String, ? extends String> event : events) {
+                String description = event.getEventType() + " " + event.getKey();
+                if (readValues) {
+                    description += " " + event.getOldValue() + " -> " + event.getValue();
+                }
+                this.events.add(description);
+            }
+        }
+    }
+
+    /**
+     * Serializer of strings which counts how often values get deserialised.
+     */
+    private static class CountingSerializer implements ValueSerializer {
+
+        private final AtomicInteger deserializations = new AtomicInteger();
+
+        @Override
+        public byte[] serialize(Object object) {
+            return object.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            deserializations.incrementAndGet();
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Ticker advanced by the test.
+     */
+    private static class ManualTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    }
+
+    private static MutableCacheEntryListenerConfiguration<String, String> configuration(RecordingListener listener, boolean synchronous) {
+        return new MutableCacheEntryListenerConfiguration<>(new FactoryBuilder.SingletonFactory<>(listener), null, true, synchronous);
+    }
+
+    /**
+     * Verifies that synchronous listeners get all changes and values are decoded only if read.
+     */
+    @Test
+    void synchronousListenerDecodesValuesOnlyIfRead() {
+        CountingSerializer serializer = new CountingSerializer();
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateSimpleCache("listener-sync", 100, String.class, String.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .serializer(serializer)
+                        .serializedValueComparison(true));
+        RecordingListener keyListener = new RecordingListener(false);
+        cache.registerCacheEntryListener(configuration(keyListener, true));
+
+        cache.put("a", "first");
+        cache.put("a", "second");
+        cache.replace("a", "second", "third");
+        cache.remove("a");
+        assertEquals(List.of("CREATED a", "UPDATED a", "UPDATED a", "REMOVED a"), keyListener.events);
+        assertEquals(0, serializer.deserializations.get());
+
+        RecordingListener valueListener = new RecordingListener(true);
+        cache.registerCacheEntryListener(configuration(valueListener, true));
+        cache.put("b", "first");
+        assertEquals("first", cache.getAndPut("b", "second"));
+        cache.getAndRemove("b");
+        assertEquals(List.of("CREATED b null -> first", "UPDATED b first -> second", "REMOVED b second -> second"), valueListener.events);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.registerCacheEntryListener(configuration(valueListener, true)));
+        cache.deregisterCacheEntryListener(configuration(valueListener, true));
+        cache.put("c", "value");
+        assertEquals(3, valueListener.events.size());
+        cache.close();
+    }
+
+    /**
+     * Verifies that a slow asynchronous listener doesn't block writers and gets its events in batches.
+     *
+     * @throws InterruptedException if the test gets interrupted
+     */
+    @Test
+    void asynchronousListenerGetsBatches() throws InterruptedException {
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch allDelivered = new CountDownLatch(100);
+        RecordingListener listener = new RecordingListener(true) {
+            @Override
+            void record(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.record(events);
+                events.forEach(event -> allDelivered.countDown());
+            }
+        };
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateSimpleCache("listener-async", 1000, String.class, String.class,
+                CompressedCacheOptions.newOptions().cacheEntryListener(configuration(listener, false)));
+
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value " + i);
+        }
+        released.countDown();
+
+        assertTrue(allDelivered.await(10, TimeUnit.SECONDS));
+        assertEquals("CREATED key99 null -> value 99", listener.events.get(99));
+        assertTrue(listener.calls.get() < 100);
+        cache.close();
+    }
+
+    /**
+     * Verifies that expired entries are reported with their value.
+     */
+    @Test
+    void expiredEntriesAreReported() {
+        ManualTicker ticker = new ManualTicker();
+        RecordingListener listener = new RecordingListener(true);
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateCache("listener-expiry",
+                CacheBuilder.newBuilder().concurrencyLevel(1).expireAfterWrite(1, TimeUnit.MINUTES).ticker(ticker), String.class, String.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .cacheEntryListener(configuration(listener, true)));
+
+        cache.put("key", "value");
+        ticker.nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        assertNull(cache.get("key"));
+        cache.put("other", "value");
+
+        assertEquals(List.of("CREATED key null -> value", "EXPIRED key value -> value", "CREATED other null -> value"), listener.events);
+        cache.close();
+    }
+
+    /**
+     * Verifies that an expiring cache without removal listener rejects later registered expired listeners.
+     */
+    @Test
+    void lateExpiredListenerIsRejected() {
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateCache("listener-late-expiry",
+                CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES), String.class, String.class,
+                CompressedCacheOptions.newOptions().valueMode(CompressedValueMode.SMALL));
+
+        assertThrows(IllegalArgumentException.class, () -> cache.registerCacheEntryListener(configuration(new RecordingListener(false), true)));
+        cache.close();
+
+        Cache<String, String> optionsCache = CompressedCacheFactory.getOrCreateSimpleCache("listener-late-options-expiry", 10, String.class, String.class,
+                CompressedCacheOptions.newOptions().expireAfterAccess(Duration.ofMinutes(1)));
+
+        assertThrows(IllegalArgumentException.class, () -> optionsCache.registerCacheEntryListener(configuration(new RecordingListener(false), true)));
+        optionsCache.close();
+    }
+
+    /**
+     * Verifies that events kept by a listener still have their values once the off-heap slots got freed.
+     */
+    @Test
+    void keptOffHeapEventsStayReadable() {
+        List<CacheEntryEvent<? extends String, ? extends String>> keptEvents = new CopyOnWriteArrayList<>();
+        RecordingListener listener = new RecordingListener(false) {
+            @Override
+            void record(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+                events.forEach(keptEvents::add);
+            }
+        };
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateSimpleCache("listener-off-heap", 10, String.class, String.class,
+                CompressedValueMode.OFF_HEAP);
+        cache.registerCacheEntryListener(configuration(listener, true));
+
+        cache.put("key", "first ".repeat(100));
+        cache.put("key", "second ".repeat(100));
+        cache.remove("key");
+        for (int i = 0; i < 10; i++) {
+            cache.put("other" + i, "other " + i);
+        }
+
+        assertEquals("first ".repeat(100), keptEvents.get(0).getValue());
+        assertEquals("first ".repeat(100), keptEvents.get(1).getOldValue());
+        assertEquals("second ".repeat(100), keptEvents.get(1).getValue());
+        assertEquals("second ".repeat(100), keptEvents.get(2).getValue());
+        cache.close();
+    }
+
+    /**
+     * Verifies that exceptions of synchronous listeners reach the caller after the change was applied.
+     */
+    @Test
+    void synchronousListenerFailureReachesCaller() {
+        RecordingListener listener = new RecordingListener(false) {
+            @Override
+            void record(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+                throw new IllegalStateException("listener failed");
+            }
+        };
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateSimpleCache("listener-failure", 10, String.class, String.class);
+        cache.registerCacheEntryListener(configuration(listener, true));
+
+        assertThrows(CacheEntryListenerException.class, () -> cache.put("key", "value"));
+        assertEquals("value", cache.get("key"));
+        cache.close();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.ValueSerializer;
+
+import javax.cache.Cache;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.EntryProcessorException;
+import javax.cache.processor.EntryProcessorResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link Cache#invoke(Object, EntryProcessor, Object...)} and
+ * {@link Cache#invokeAll(Set, EntryProcessor, Object...)}.
+ */
+class EntryProcessorTest {
+
+    private static final EntryProcessor<String, MyValue, Integer> INCREMENT = (entry, arguments) -> {
+        int next = entry.exists() ? entry.getValue().getValue() + (Integer) arguments[0] : 0;
+        entry.setValue(new MyValue(entry.getKey(), next));
+        return next;
+    };
+
+    /**
+     * Verifies that processors create, update and remove entries, and that their failures are wrapped.
+     */
+    @Test
+    void processorChangesEntry() {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("processor-changes", 10, String.class, MyValue.class,
+                CompressedValueMode.SMALL);
+
+        assertEquals(0, cache.invoke("counter", INCREMENT, 5));
+        assertEquals(5, cache.invoke("counter", INCREMENT, 5));
+        assertEquals(new MyValue("counter", 5), cache.get("counter"));
+
+        boolean removed = cache.invoke("counter", (entry, arguments) -> {
+            entry.remove();
+            return !entry.exists();
+        });
+        assertTrue(removed);
+        assertFalse(cache.containsKey("counter"));
+
+        EntryProcessorException exception = assertThrows(EntryProcessorException.class, () -> cache.invoke("counter", (entry, arguments) -> {
+            throw new IllegalStateException("failing processor");
+        }));
+        assertEquals(IllegalStateException.class, exception.getCause().getClass());
+    }
+
+    /**
+     * Verifies that the value gets decoded only if the processor reads it, and compressed only if it sets one.
+     */
+    @Test
+    void valueIsOnlyDecodedAndEncodedIfUsed() {
+        AtomicInteger serializeCount = new AtomicInteger();
+        AtomicInteger deserializeCount = new AtomicInteger();
+        ValueSerializer countingSerializer = new ValueSerializer() {
+            @Override
+            public byte[] serialize(Object object) {
+                serializeCount.incrementAndGet();
+                return object.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                deserializeCount.incrementAndGet();
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateSimpleCache("processor-lazy", 10, String.class, String.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .serializer(countingSerializer));
+        cache.put("key", "value");
+        serializeCount.set(0);
+
+        boolean exists = cache.invoke("key", (entry, arguments) -> entry.exists());
+        assertTrue(exists);
+        assertEquals(0, deserializeCount.get());
+
+        assertEquals("value", cache.invoke("key", (entry, arguments) -> entry.getValue()));
+        assertEquals(1, deserializeCount.get());
+        assertEquals(0, serializeCount.get());
+
+        cache.invoke("key", (entry, arguments) -> {
+            entry.setValue("new value");
+            return null;
+        });
+        assertEquals(1, serializeCount.get());
+        assertEquals(1, deserializeCount.get());
+        assertEquals("new value", cache.get("key"));
+    }
+
+    /**
+     * Verifies that concurrent processors on the same key don't lose updates.
+     *
+     * @throws Exception if an updater fails
+     */
+    @Test
+    void concurrentProcessorsDontLoseUpdates() throws Exception {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("processor-contended", 10, String.class, MyValue.class);
+        cache.put("counter", new MyValue("counter", 0));
+
+        List<Future<?>> updaters = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            for (int thread = 0; thread < 4; thread++) {
+                updaters.add(executor.submit(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        cache.invoke("counter", INCREMENT, 1);
+                    }
+                }));
+            }
+        }
+        for (Future<?> updater : updaters) {
+            updater.get();
+        }
+
+        assertEquals(1000, cache.get("counter").getValue());
+    }
+
+    /**
+     * Verifies that {@code invokeAll} processes large batches in parallel and reports results and failures per key.
+     */
+    @Test
+    void invokeAllReportsResultsPerKey() {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("processor-batch", 1000, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .parallelBatchThreshold(10)
+                        .batchParallelism(3));
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 30; i++) {
+            keys.add("key-" + i);
+            cache.put("key-" + i, new MyValue("key-" + i, i));
+        }
+
+        Map<String, EntryProcessorResult<Integer>> results = cache.invokeAll(keys, (entry, arguments) -> {
+            if (entry.getKey().equals("key-7")) {
+                throw new IllegalArgumentException("unlucky key");
+            }
+            if (entry.getKey().equals("key-8")) {
+                return null;
+            }
+            return INCREMENT.process(entry, arguments);
+        }, 100);
+
+        assertEquals(29, results.size());
+        assertEquals(110, results.get("key-10").get());
+        assertEquals(new MyValue("key-10", 110), cache.get("key-10"));
+        assertThrows(EntryProcessorException.class, () -> results.get("key-7").get());
+        assertNull(results.get("key-8"));
+        assertEquals(new MyValue("key-8", 8), cache.get("key-8"));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+
+import javax.cache.Cache;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the Java Flight Recorder events of a cache.
+ */
+class FlightRecorderTest {
+
+    @TempDir
+    Path recordingDirectory;
+
+    /**
+     * Verifies that (de)compression, marshalling and bulk operations are recorded with the cache name and sizes.
+     *
+     * @throws Exception if the recording can't be written or read
+     */
+    @Test
+    void operationsAreRecorded() throws Exception {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("jfr-cache", 100, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions().valueMode(CompressedValueMode.SMALL));
+        Path recordingFile = recordingDirectory.resolve("cache.jfr");
+
+        try (Recording recording = new Recording()) {
+            for (String eventName : List.of("org.os890.cache.Marshal", "org.os890.cache.Compress",
+                    "org.os890.cache.Decompress", "org.os890.cache.BulkOperation")) {
+                recording.enable(eventName).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+
+            Map<String, MyValue> values = new HashMap<>();
+            for (int i = 0; i < 5; i++) {
+                values.put("key" + i, new MyValue("value ".repeat(100), i));
+            }
+            cache.putAll(values);
+            assertEquals(5, cache.getAll(values.keySet()).size());
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        List<RecordedEvent> compressions = eventsOf(events, "org.os890.cache.Compress");
+        assertEquals(5, compressions.size());
+        for (RecordedEvent compression : compressions) {
+            assertEquals("jfr-cache", compression.getString("cacheName"));
+            assertEquals("SMALL", compression.getString("valueMode"));
+            assertTrue(compression.getBoolean("compressed"));
+            assertTrue(compression.getInt("outputSize") < compression.getInt("inputSize"));
+        }
+
+        List<RecordedEvent> decompressions = eventsOf(events, "org.os890.cache.Decompress");
+        assertEquals(5, decompressions.size());
+        assertTrue(decompressions.getFirst().getInt("outputSize") > decompressions.getFirst().getInt("inputSize"));
+        assertEquals(10, eventsOf(events, "org.os890.cache.Marshal").size());
+
+        List<RecordedEvent> bulkOperations = eventsOf(events, "org.os890.cache.BulkOperation");
+        assertEquals(List.of("putAll", "getAll"), bulkOperations.stream().map(event -> event.getString("operation")).toList());
+        assertEquals(5, bulkOperations.getLast().getInt("processedEntries"));
+    }
+
+    private static List<RecordedEvent> eventsOf(List<RecordedEvent> events, String eventName) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(eventName))
+                .filter(event -> "jfr-cache".equals(event.getString("cacheName")))
+                .toList();
+    }
+}
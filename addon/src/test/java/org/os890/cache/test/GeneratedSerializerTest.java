@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.ValueSerializer;
+import org.os890.cache.serializer.GeneratedSerializer;
+import org.os890.cache.serializer.IgniteBinarySerializer;
+import org.os890.cache.serializer.JavaSerializer;
+
+import javax.cache.Cache;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the serializer generated from the value class.
+ */
+class GeneratedSerializerTest {
+
+    private static final ValueSerializer FALLBACK = new JavaSerializer();
+
+    /**
+     * Verifies that all field types of a record survive the round-trip.
+     *
+     * @throws IOException if a value cannot be serialised
+     */
+    @Test
+    void recordRoundTrip() throws IOException {
+        ValueSerializer serializer = GeneratedSerializer.forClass(AllTypes.class, FALLBACK);
+        assertInstanceOf(GeneratedSerializer.class, serializer);
+
+        AllTypes value = new AllTypes(true, (byte) -3, (short) 300, 'x', -70000, Long.MIN_VALUE, 1.5f, Math.PI,
+                "text ümlaut", new byte[] {1, 2, 3}, TimeUnit.SECONDS, new ArrayList<>(List.of("a", "b")));
+        AllTypes restored = (AllTypes) serializer.deserialize(serializer.serialize(value));
+
+        assertEquals(value.flag(), restored.flag());
+        assertEquals(value.smallNumber(), restored.smallNumber());
+        assertEquals(value.shortNumber(), restored.shortNumber());
+        assertEquals(value.character(), restored.character());
+        assertEquals(value.number(), restored.number());
+        assertEquals(value.longNumber(), restored.longNumber());
+        assertEquals(value.floatNumber(), restored.floatNumber());
+        assertEquals(value.doubleNumber(), restored.doubleNumber());
+        assertEquals(value.text(), restored.text());
+        assertArrayEquals(value.bytes(), restored.bytes());
+        assertEquals(value.unit(), restored.unit());
+        assertEquals(value.other(), restored.other());
+    }
+
+    /**
+     * Verifies that {@code null} references survive the round-trip.
+     *
+     * @throws IOException if a value cannot be serialised
+     */
+    @Test
+    void nullFieldsRoundTrip() throws IOException {
+        ValueSerializer serializer = GeneratedSerializer.forClass(AllTypes.class, FALLBACK);
+
+        AllTypes value = new AllTypes(false, (byte) 0, (short) 0, '\0', 0, 0, 0, 0, null, null, null, null);
+        AllTypes restored = (AllTypes) serializer.deserialize(serializer.serialize(value));
+
+        assertNull(restored.text());
+        assertNull(restored.bytes());
+        assertNull(restored.unit());
+        assertNull(restored.other());
+    }
+
+    /**
+     * Verifies that a simple value class is supported and encoded without type metadata.
+     *
+     * @throws IOException if a value cannot be serialised
+     */
+    @Test
+    void valueClassIsEncodedCompactly() throws IOException {
+        ValueSerializer serializer = GeneratedSerializer.forClass(MyValue.class, IgniteBinarySerializer.getDefault());
+        assertInstanceOf(GeneratedSerializer.class, serializer);
+
+        MyValue value = new MyValue("label", 42);
+        byte[] generated = serializer.serialize(value);
+
+        assertEquals(value, serializer.deserialize(generated));
+        //flag, schema hash, length + "label", var-int
+        assertEquals(1 + 4 + 1 + 5 + 1, generated.length);
+        assertTrue(generated.length * 4 < IgniteBinarySerializer.getDefault().serialize(value).length);
+    }
+
+    /**
+     * Verifies that instances of other classes, e.g. keys, are serialised by the fallback.
+     *
+     * @throws IOException if a value cannot be serialised
+     */
+    @Test
+    void otherClassesUseFallback() throws IOException {
+        ValueSerializer serializer = GeneratedSerializer.forClass(MyValue.class, FALLBACK);
+
+        assertEquals("key", serializer.deserialize(serializer.serialize("key")));
+    }
+
+    /**
+     * Verifies that values written before the fields of the class were reordered aren't read with mixed up fields.
+     *
+     * @throws IOException if a value cannot be serialised
+     */
+    @Test
+    void reorderedFieldsAreRejected() throws IOException {
+        byte[] serialised = GeneratedSerializer.forClass(Named.class, FALLBACK).serialize(new Named("name", "label"));
+
+        assertEquals(new NamedCopy("name", "label"), GeneratedSerializer.forClass(NamedCopy.class, FALLBACK).deserialize(serialised));
+        assertThrows(IOException.class, () -> GeneratedSerializer.forClass(NamedReordered.class, FALLBACK).deserialize(serialised));
+    }
+
+    /**
+     * Verifies that unsupported classes get the fallback serializer.
+     */
+    @Test
+    void unsupportedClassesGetFallback() {
+        assertSame(FALLBACK, GeneratedSerializer.forClass(null, FALLBACK));
+        assertSame(FALLBACK, GeneratedSerializer.forClass(ArrayList.class, FALLBACK));
+        assertSame(FALLBACK, GeneratedSerializer.forClass(String.class, FALLBACK));
+        assertSame(FALLBACK, GeneratedSerializer.forClass(SwappedValue.class, FALLBACK));
+        assertThrows(IllegalArgumentException.class, () -> new GeneratedSerializer(SwappedValue.class, FALLBACK));
+    }
+
+    /**
+     * Verifies that a cache uses the serializer generated for its value class.
+     */
+    @Test
+    void cacheUsesGeneratedSerializer() {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("generated-serializer", 10, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .generatedSerializer(true));
+
+        cache.put("key", new MyValue("label", 42));
+        assertEquals(new MyValue("label", 42), cache.get("key"));
+    }
+
+    /**
+     * Record with one component of each supported kind.
+     */
+    record AllTypes(boolean flag, byte smallNumber, short shortNumber, char character, int number, long longNumber,
+                    float floatNumber, double doubleNumber, String text, byte[] bytes, TimeUnit unit, ArrayList<String> other) {
+    }
+
+    /**
+     * Record with two fields of the same type.
+     */
+    record Named(String name, String label) {
+    }
+
+    /**
+     * Record with the fields of {@link Named}.
+     */
+    record NamedCopy(String name, String label) {
+    }
+
+    /**
+     * Record with the fields of {@link Named} in the opposite order, like a new version of it.
+     */
+    record NamedReordered(String label, String name) {
+    }
+
+    /**
+     * Value class whose constructor parameters don't follow the field order.
+     */
+    static final class SwappedValue {
+
+        private final int x;
+        private final int y;
+
+        SwappedValue(int y, int x) {
+            this.x = x;
+            this.y = y;
+        }
+
+        int getX() {
+            return x;
+        }
+
+        int getY() {
+            return y;
+        }
+    }
+}
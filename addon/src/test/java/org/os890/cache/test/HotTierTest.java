@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCache;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.HotTierStatistics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the tier of decoded values.
+ */
+class HotTierTest {
+
+    /**
+     * Verifies that repeated reads are served decoded, and that overwritten values aren't.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void repeatedReadsHit() {
+        CompressedCache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("hot-tier-hits", 100, String.class, MyValue.class,
+                        CompressedCacheOptions.newOptions().hotTier(1024 * 1024))
+                .unwrap(CompressedCache.class);
+        HotTierStatistics statistics = cache.getHotTierStatistics();
+
+        cache.put("key", new MyValue("first", 1));
+        MyValue firstRead = cache.get("key");
+        assertSame(firstRead, cache.get("key"));
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+
+        cache.put("key", new MyValue("second", 2));
+        MyValue secondRead = cache.get("key");
+        assertEquals(new MyValue("second", 2), secondRead);
+        assertNotSame(firstRead, secondRead);
+        assertEquals(1, statistics.getEntryCount());
+    }
+
+    /**
+     * Verifies that a scan over many keys read once doesn't push out the frequently read keys.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void frequentKeysSurviveScan() {
+        CompressedCache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("hot-tier-scan", 2000, String.class, MyValue.class,
+                        CompressedCacheOptions.newOptions().hotTier(10_000))
+                .unwrap(CompressedCache.class);
+        HotTierStatistics statistics = cache.getHotTierStatistics();
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key-" + i, new MyValue("label ".repeat(50), i));
+        }
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 5; i++) {
+                cache.get("key-" + i);
+            }
+        }
+        for (int i = 5; i < 1000; i++) {
+            cache.get("key-" + i);
+        }
+
+        long hitsBefore = statistics.getHitCount();
+        for (int i = 0; i < 5; i++) {
+            cache.get("key-" + i);
+        }
+
+        assertEquals(hitsBefore + 5, statistics.getHitCount());
+        assertTrue(statistics.getWeightedSize() <= 10_000);
+        assertTrue(statistics.getEvictionCount() > 900);
+    }
+
+    /**
+     * Verifies that caches without a hot tier report empty counters.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void noHotTierByDefault() {
+        CompressedCache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("hot-tier-none", 10, String.class, MyValue.class)
+                .unwrap(CompressedCache.class);
+
+        cache.put("key", new MyValue("value", 1));
+        cache.get("key");
+
+        assertEquals(0, cache.getHotTierStatistics().getMissCount());
+        assertEquals(0, cache.getHotTierStatistics().getHitRate());
+    }
+}
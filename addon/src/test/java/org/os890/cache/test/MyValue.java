@@ -19,10 +19,14 @@
 
 package org.os890.cache.test;
 
+import java.io.Serializable;
+
 /**
  * Test value object used to exercise cache put/get round-trips.
  */
-public class MyValue {
+public class MyValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final String label;
     private final int value;
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import com.google.common.cache.CacheBuilder;
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedValueMode;
+
+import javax.cache.Cache;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for caches storing the compressed values off-heap.
+ */
+class OffHeapCacheTest {
+
+    /**
+     * Verifies put, overwrite, remove and eviction of off-heap entries of different sizes.
+     */
+    @Test
+    void offHeapEntriesCanBeStoredReplacedAndRemoved() {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("off-heap-cache", 3, String.class, MyValue.class,
+                CompressedValueMode.OFF_HEAP);
+
+        MyValue small = new MyValue("small", 1);
+        MyValue large = new MyValue(RandomText.of(2 * 1024 * 1024, 890), 2);
+        cache.put("small", small);
+        cache.put("large", large);
+
+        assertEquals(small, cache.get("small"));
+        assertEquals(large, cache.get("large"));
+
+        MyValue replacement = new MyValue("replacement", 3);
+        cache.put("small", replacement);
+        assertEquals(replacement, cache.get("small"));
+
+        assertTrue(cache.remove("large"));
+        assertNull(cache.get("large"));
+
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, new MyValue("value " + i, i));
+        }
+        assertEquals(new MyValue("value 99", 99), cache.get("key99"));
+
+        cache.close();
+        assertNull(cache.get("key99"));
+    }
+
+    /**
+     * Verifies that reads of a key which gets overwritten concurrently always find a value,
+     * although the slot of the entry they found may be freed before they decode it.
+     *
+     * @throws Exception if a reader fails
+     */
+    @Test
+    void concurrentOverwritesDontHideValues() throws Exception {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("off-heap-overwrite", 10, String.class, MyValue.class,
+                CompressedValueMode.OFF_HEAP);
+        cache.put("key", new MyValue("value", 0));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 1; i <= 20_000; i++) {
+                    cache.put("key", new MyValue("value", i));
+                }
+                running.set(false);
+            });
+            Future<?> firstReader = executor.submit(() -> readWhileRunning(cache, running));
+            Future<?> secondReader = executor.submit(() -> readWhileRunning(cache, running));
+
+            writer.get();
+            firstReader.get();
+            secondReader.get();
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+        assertEquals(new MyValue("value", 20_000), cache.get("key"));
+    }
+
+    private static void readWhileRunning(Cache<String, MyValue> cache, AtomicBoolean running) {
+        while (running.get()) {
+            assertNotNull(cache.get("key"));
+        }
+    }
+
+    /**
+     * Verifies that builders which conflict with off-heap slot management get rejected.
+     */
+    @Test
+    void conflictingBuilderSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CompressedCacheFactory.getOrCreateCache("off-heap-soft",
+                CacheBuilder.newBuilder().softValues(), String.class, MyValue.class, CompressedValueMode.OFF_HEAP));
+
+        assertThrows(IllegalArgumentException.class, () -> CompressedCacheFactory.getOrCreateCache("off-heap-weak",
+                CacheBuilder.newBuilder().weakValues(), String.class, MyValue.class, CompressedValueMode.OFF_HEAP));
+
+        assertThrows(IllegalArgumentException.class, () -> CompressedCacheFactory.getOrCreateCache("off-heap-listener",
+                CacheBuilder.newBuilder().removalListener(notification -> { }), String.class, MyValue.class, CompressedValueMode.OFF_HEAP));
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import java.util.Random;
+
+/**
+ * Generates test values which hardly compress.
+ */
+final class RandomText {
+
+    private RandomText() {
+    }
+
+    /**
+     * Returns printable ASCII characters drawn from a seeded random, so tests are repeatable.
+     *
+     * @param length number of characters
+     * @param seed   seed of the random
+     * @return the text
+     */
+    static String of(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder result = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            result.append((char) (' ' + random.nextInt(95)));
+        }
+        return result.toString();
+    }
+}
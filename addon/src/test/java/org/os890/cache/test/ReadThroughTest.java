@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+
+import javax.cache.Cache;
+import javax.cache.integration.CacheLoader;
+import javax.cache.integration.CacheLoaderException;
+import javax.cache.integration.CompletionListenerFuture;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for read-through caches.
+ */
+class ReadThroughTest {
+
+    /**
+     * Loader which returns a value derived from the key and counts its calls.
+     */
+    private static class CountingLoader implements CacheLoader<String, MyValue> {
+
+        private final AtomicInteger loadCount = new AtomicInteger();
+        private final AtomicInteger loadAllCount = new AtomicInteger();
+        private final List<String> bulkLoadedKeys = new ArrayList<>();
+        private volatile int version;
+
+        @Override
+        public MyValue load(String key) {
+            loadCount.incrementAndGet();
+            if (key.startsWith("failing")) {
+                throw new IllegalStateException("origin unavailable");
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new MyValue(key, version);
+        }
+
+        @Override
+        public Map<String, MyValue> loadAll(Iterable<? extends String> keys) {
+            loadAllCount.incrementAndGet();
+            Map<String, MyValue> result = new HashMap<>();
+            for (String key : keys) {
+                synchronized (bulkLoadedKeys) {
+                    bulkLoadedKeys.add(key);
+                }
+                result.put(key, new MyValue(key, version));
+            }
+            return result;
+        }
+    }
+
+    private static Cache<String, MyValue> createCache(String name, CompressedCacheOptions options) {
+        return CompressedCacheFactory.getOrCreateSimpleCache(name, 100, String.class, MyValue.class, options);
+    }
+
+    /**
+     * Verifies that concurrent misses of a key call the loader once, and that failures are reported.
+     *
+     * @throws Exception if a reader fails
+     */
+    @Test
+    void concurrentMissesAreLoadedOnce() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        Cache<String, MyValue> cache = createCache("read-through-coalesced", CompressedCacheOptions.newOptions().cacheLoader(loader));
+
+        List<Future<MyValue>> reads = new ArrayList<>();
+        try (ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 8; i++) {
+                reads.add(readers.submit(() -> cache.get("key")));
+            }
+        }
+        for (Future<MyValue> read : reads) {
+            assertEquals(new MyValue("key", 0), read.get());
+        }
+        assertEquals(1, loader.loadCount.get());
+        assertEquals(new MyValue("key", 0), cache.get("key"));
+        assertEquals(1, loader.loadCount.get());
+
+        assertThrows(CacheLoaderException.class, () -> cache.get("failing"));
+    }
+
+    /**
+     * Verifies that {@code getAll} and {@code loadAll} load the missing keys with one bulk call.
+     *
+     * @throws Exception if {@code loadAll} fails
+     */
+    @Test
+    void missingKeysAreBulkLoaded() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        Cache<String, MyValue> cache = createCache("read-through-bulk", CompressedCacheOptions.newOptions().cacheLoader(loader));
+        cache.put("present", new MyValue("present", 42));
+
+        Map<String, MyValue> values = cache.getAll(Set.of("present", "a", "b"));
+        assertEquals(3, values.size());
+        assertEquals(new MyValue("present", 42), values.get("present"));
+        assertEquals(1, loader.loadAllCount.get());
+        assertEquals(Set.of("a", "b"), Set.copyOf(loader.bulkLoadedKeys));
+
+        loader.version = 1;
+        CompletionListenerFuture onlyMissing = new CompletionListenerFuture();
+        cache.loadAll(Set.of("present", "a", "c"), false, onlyMissing);
+        onlyMissing.get();
+        assertEquals(new MyValue("a", 0), cache.get("a"));
+        assertEquals(new MyValue("c", 1), cache.get("c"));
+
+        CompletionListenerFuture replacing = new CompletionListenerFuture();
+        cache.loadAll(Set.of("present", "a"), true, replacing);
+        replacing.get();
+        assertEquals(new MyValue("present", 1), cache.get("present"));
+        assertEquals(new MyValue("a", 1), cache.get("a"));
+        assertEquals(0, loader.loadCount.get());
+    }
+
+    /**
+     * Verifies that reads after the refresh time return the current value and trigger a reload.
+     *
+     * @throws InterruptedException if the test gets interrupted
+     */
+    @Test
+    void readsRefreshOldEntries() throws InterruptedException {
+        CountingLoader loader = new CountingLoader();
+        Cache<String, MyValue> cache = createCache("read-through-refresh", CompressedCacheOptions.newOptions()
+                .cacheLoader(loader)
+                .refreshAfterWrite(Duration.ofMillis(100)));
+        cache.put("key", new MyValue("key", 0));
+        assertEquals(new MyValue("key", 0), cache.get("key"));
+        assertEquals(0, loader.loadCount.get());
+
+        loader.version = 1;
+        Thread.sleep(150);
+        assertEquals(new MyValue("key", 0), cache.get("key"));
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (cache.get("key").getValue() != 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(new MyValue("key", 1), cache.get("key"));
+        assertEquals(1, loader.loadCount.get());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.os890.cache.CompressedCache;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.ValueSerializer;
+
+import javax.cache.Cache;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for iterating over and streaming the entries of a cache.
+ */
+class ScanTest {
+
+    @TempDir
+    Path overflowDirectory;
+
+    /**
+     * Verifies that the iterator returns all entries and removes the last one on {@code remove()}.
+     */
+    @Test
+    void iteratorReturnsAllEntries() {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("scan-iterator", 100, String.class, MyValue.class);
+        for (int i = 0; i < 20; i++) {
+            cache.put("key" + i, new MyValue("value " + i, i));
+        }
+
+        Map<String, MyValue> scanned = new HashMap<>();
+        for (Cache.Entry<String, MyValue> entry : cache) {
+            scanned.put(entry.getKey(), entry.getValue());
+        }
+        assertEquals(20, scanned.size());
+        assertEquals(new MyValue("value 7", 7), scanned.get("key7"));
+
+        Iterator<Cache.Entry<String, MyValue>> iterator = cache.iterator();
+        assertThrows(IllegalStateException.class, iterator::remove);
+        String removedKey = iterator.next().getKey();
+        iterator.remove();
+        assertFalse(cache.containsKey(removedKey));
+    }
+
+    /**
+     * Verifies that key scans and streams only decode the values which get read.
+     */
+    @Test
+    void valuesAreOnlyDecodedIfRead() {
+        AtomicInteger deserializeCount = new AtomicInteger();
+        ValueSerializer countingSerializer = new ValueSerializer() {
+            @Override
+            public byte[] serialize(Object object) {
+                return object.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                deserializeCount.incrementAndGet();
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+        Cache<Integer, String> cache = CompressedCacheFactory.getOrCreateSimpleCache("scan-lazy", 1000, Integer.class, String.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .serializer(countingSerializer));
+        for (int i = 0; i < 500; i++) {
+            cache.put(i, "value " + i);
+        }
+        @SuppressWarnings("unchecked")
+        CompressedCache<Integer, String> compressedCache = cache.unwrap(CompressedCache.class);
+
+        Set<Integer> keys = new HashSet<>();
+        compressedCache.keyIterator().forEachRemaining(keys::add);
+        assertEquals(500, keys.size());
+        assertEquals(0, deserializeCount.get());
+
+        Set<String> values = compressedCache.stream()
+                .parallel()
+                .filter(entry -> entry.getKey() % 100 == 0)
+                .map(Cache.Entry::getValue)
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("value 0", "value 100", "value 200", "value 300", "value 400"), values);
+        assertEquals(5, deserializeCount.get());
+    }
+
+    /**
+     * Verifies that scans include the entries of the disk tier once.
+     */
+    @Test
+    void scansIncludeDiskTier() {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("scan-overflow", 5, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .diskOverflow(overflowDirectory, 8 * 1024 * 1024));
+        for (int i = 0; i < 30; i++) {
+            cache.put("key" + i, new MyValue("value " + i, i));
+        }
+        @SuppressWarnings("unchecked")
+        CompressedCache<String, MyValue> compressedCache = cache.unwrap(CompressedCache.class);
+
+        Map<String, MyValue> scanned = compressedCache.stream()
+                .collect(Collectors.toMap(Cache.Entry::getKey, Cache.Entry::getValue));
+        assertEquals(30, scanned.size());
+        assertEquals(new MyValue("value 0", 0), scanned.get("key0"));
+        assertEquals(new MyValue("value 29", 29), scanned.get("key29"));
+
+        cache.close();
+    }
+}
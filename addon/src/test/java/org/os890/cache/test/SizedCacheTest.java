@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+
+import javax.cache.Cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for caches limited by the retained size of their entries.
+ */
+class SizedCacheTest {
+
+    private static final int VALUE_COUNT = 200;
+    private static final long MAX_BYTES = 64 * 1024;
+
+    private static int fill(Cache<Integer, MyValue> cache, int valueLength) {
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            cache.put(i, new MyValue(RandomText.of(valueLength, i), i));
+        }
+
+        int retainedEntries = 0;
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            MyValue value = cache.get(i);
+            if (value != null) {
+                assertEquals(i, value.getValue());
+                retainedEntries++;
+            }
+        }
+        return retainedEntries;
+    }
+
+    /**
+     * Verifies that the byte budget bounds the cache and that smaller values allow more entries.
+     */
+    @Test
+    void byteBudgetLimitsTheRetainedEntries() {
+        Cache<Integer, MyValue> smallValues = CompressedCacheFactory.getOrCreateSizedCache("sized-small-values", MAX_BYTES, Integer.class, MyValue.class,
+                CompressedCacheOptions.newOptions().valueMode(CompressedValueMode.SMALL));
+        Cache<Integer, MyValue> largeValues = CompressedCacheFactory.getOrCreateSizedCache("sized-large-values", MAX_BYTES, Integer.class, MyValue.class,
+                CompressedCacheOptions.newOptions().valueMode(CompressedValueMode.SMALL));
+
+        int smallValueEntries = fill(smallValues, 100);
+        int largeValueEntries = fill(largeValues, 4000);
+
+        assertEquals(VALUE_COUNT, smallValueEntries);
+        assertTrue(largeValueEntries > 0);
+        assertTrue(largeValueEntries * 4000L <= MAX_BYTES, "more entries than the budget allows: " + largeValueEntries);
+    }
+
+    /**
+     * Verifies that FAST mode accounts for the decoded values as well.
+     */
+    @Test
+    void fastModeWeighsTheDecodedValue() {
+        Cache<Integer, MyValue> fastCache = CompressedCacheFactory.getOrCreateSizedCache("sized-fast", MAX_BYTES, Integer.class, MyValue.class);
+        Cache<Integer, MyValue> smallCache = CompressedCacheFactory.getOrCreateSizedCache("sized-small", MAX_BYTES, Integer.class, MyValue.class,
+                CompressedCacheOptions.newOptions().valueMode(CompressedValueMode.SMALL));
+
+        assertTrue(fill(fastCache, 1000) < fill(smallCache, 1000));
+    }
+}
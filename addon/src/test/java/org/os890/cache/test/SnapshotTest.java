@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.os890.cache.CompressedCache;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.ValueSerializer;
+import org.os890.cache.codec.DictionaryDeflateCodec;
+import org.os890.cache.codec.Lz4BlockCodec;
+
+import javax.cache.Cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for writing and loading cache snapshots.
+ */
+class SnapshotTest {
+
+    @TempDir
+    Path snapshotDirectory;
+
+    @SuppressWarnings("unchecked")
+    private static CompressedCache<String, MyValue> createCache(String name, CompressedCacheOptions options) {
+        return CompressedCacheFactory.getOrCreateSimpleCache(name, 1000, String.class, MyValue.class, options)
+                .unwrap(CompressedCache.class);
+    }
+
+    /**
+     * Verifies that a full snapshot followed by an incremental one restores the latest state.
+     *
+     * @throws IOException if a snapshot cannot be written or read
+     */
+    @Test
+    void fullAndIncrementalSnapshotsRestoreTheCache() throws IOException {
+        CompressedCache<String, MyValue> source = createCache("snapshot-source", CompressedCacheOptions.newOptions()
+                .valueMode(CompressedValueMode.SMALL)
+                .incrementalSnapshots(true));
+        for (int i = 0; i < 100; i++) {
+            source.put("key" + i, new MyValue("value ".repeat(i + 1), i));
+        }
+
+        Path fullSnapshot = snapshotDirectory.resolve("full.snapshot");
+        source.writeSnapshot(fullSnapshot);
+
+        source.put("key1", new MyValue("updated", 1));
+        source.put("key100", new MyValue("added", 100));
+        source.remove("key2");
+        Path incrementalSnapshot = snapshotDirectory.resolve("incremental.snapshot");
+        source.writeIncrementalSnapshot(incrementalSnapshot);
+
+        CompressedCache<String, MyValue> target = createCache("snapshot-target", CompressedCacheOptions.newOptions()
+                .valueMode(CompressedValueMode.FAST));
+        assertEquals(100, target.loadSnapshot(fullSnapshot));
+        assertEquals(3, target.loadSnapshot(incrementalSnapshot));
+
+        assertEquals(new MyValue("updated", 1), target.get("key1"));
+        assertEquals(new MyValue("added", 100), target.get("key100"));
+        assertFalse(target.containsKey("key2"));
+        for (int i = 3; i < 100; i++) {
+            assertEquals(new MyValue("value ".repeat(i + 1), i), target.get("key" + i));
+        }
+    }
+
+    /**
+     * Verifies that a failed write keeps the previous snapshot and the changed keys.
+     *
+     * @throws IOException if a snapshot cannot be written or read
+     */
+    @Test
+    void failedSnapshotKeepsPreviousFileAndChangedKeys() throws IOException {
+        AtomicBoolean failing = new AtomicBoolean();
+        ValueSerializer serializer = new ValueSerializer() {
+            @Override
+            public byte[] serialize(Object object) throws IOException {
+                if (failing.get() && "poison".equals(object)) {
+                    throw new IOException("can't serialise " + object);
+                }
+                return object.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+        @SuppressWarnings("unchecked")
+        CompressedCache<String, String> source = CompressedCacheFactory.getOrCreateSimpleCache("snapshot-failure-source", 100, String.class, String.class,
+                CompressedCacheOptions.newOptions()
+                        .serializer(serializer)
+                        .incrementalSnapshots(true)).unwrap(CompressedCache.class);
+        source.put("a", "first");
+        source.put("poison", "value");
+        Path fullSnapshot = snapshotDirectory.resolve("failure-full.snapshot");
+        source.writeSnapshot(fullSnapshot);
+        byte[] previousSnapshot = Files.readAllBytes(fullSnapshot);
+
+        source.put("a", "second");
+        source.put("poison", "changed");
+        failing.set(true);
+        assertThrows(IOException.class, () -> source.writeSnapshot(fullSnapshot));
+        assertArrayEquals(previousSnapshot, Files.readAllBytes(fullSnapshot));
+        Path incrementalSnapshot = snapshotDirectory.resolve("failure-incremental.snapshot");
+        assertThrows(IOException.class, () -> source.writeIncrementalSnapshot(incrementalSnapshot));
+        assertFalse(Files.exists(incrementalSnapshot));
+        try (var files = Files.list(snapshotDirectory)) {
+            assertEquals(1, files.count());
+        }
+
+        failing.set(false);
+        source.writeIncrementalSnapshot(incrementalSnapshot);
+        Cache<String, String> target = CompressedCacheFactory.getOrCreateSimpleCache("snapshot-failure-target", 100, String.class, String.class,
+                CompressedCacheOptions.newOptions().serializer(serializer));
+        CompressedCache<?, ?> compressedTarget = target.unwrap(CompressedCache.class);
+        compressedTarget.loadSnapshot(fullSnapshot);
+        assertEquals(2, compressedTarget.loadSnapshot(incrementalSnapshot));
+        assertEquals("second", target.get("a"));
+        assertEquals("changed", target.get("poison"));
+    }
+
+    /**
+     * Verifies that loaded keys are tracked for incremental snapshots.
+     *
+     * @throws IOException if a snapshot cannot be written or read
+     */
+    @Test
+    void loadedKeysAreTrackedForIncrementalSnapshots() throws IOException {
+        CompressedCache<String, MyValue> source = createCache("snapshot-tracking-source", CompressedCacheOptions.newOptions());
+        source.put("key", new MyValue("value", 1));
+        Path fullSnapshot = snapshotDirectory.resolve("tracking-full.snapshot");
+        source.writeSnapshot(fullSnapshot);
+
+        CompressedCache<String, MyValue> target = createCache("snapshot-tracking-target", CompressedCacheOptions.newOptions()
+                .incrementalSnapshots(true));
+        target.writeSnapshot(snapshotDirectory.resolve("tracking-empty.snapshot"));
+        target.loadSnapshot(fullSnapshot);
+        Path incrementalSnapshot = snapshotDirectory.resolve("tracking-incremental.snapshot");
+        target.writeIncrementalSnapshot(incrementalSnapshot);
+
+        CompressedCache<String, MyValue> copy = createCache("snapshot-tracking-copy", CompressedCacheOptions.newOptions());
+        assertEquals(1, copy.loadSnapshot(incrementalSnapshot));
+        assertEquals(new MyValue("value", 1), copy.get("key"));
+    }
+
+    /**
+     * Verifies that trained dictionaries are part of the snapshot.
+     *
+     * @throws IOException if a snapshot cannot be written or read
+     */
+    @Test
+    void dictionariesAreRestoredWithTheSnapshot() throws IOException {
+        DictionaryDeflateCodec sourceCodec = new DictionaryDeflateCodec(6, 16, 4096);
+        CompressedCache<String, MyValue> source = createCache("snapshot-dictionary-source", CompressedCacheOptions.newOptions()
+                .codec(sourceCodec)
+                .minCompressionSize(0)
+                .minCompressionRatio(0));
+        for (int i = 0; i < 16; i++) {
+            source.put("sample" + i, new MyValue("dictionary sample " + i, i));
+        }
+        sourceCodec.retrain();
+        source.put("key", new MyValue("dictionary sample value", 42));
+
+        Path snapshot = snapshotDirectory.resolve("dictionary.snapshot");
+        source.writeSnapshot(snapshot);
+
+        CompressedCache<String, MyValue> target = createCache("snapshot-dictionary-target", CompressedCacheOptions.newOptions()
+                .codec(new DictionaryDeflateCodec()));
+        target.loadSnapshot(snapshot);
+        assertEquals(new MyValue("dictionary sample value", 42), target.get("key"));
+    }
+
+    /**
+     * Verifies that concurrent first reads of a loaded FAST entry decompress it only once.
+     *
+     * @throws Exception if a snapshot cannot be written or read, or a reader fails
+     */
+    @Test
+    void concurrentReadsOfLoadedEntryDecompressOnce() throws Exception {
+        AtomicInteger deserializeCount = new AtomicInteger();
+        ValueSerializer slowSerializer = new ValueSerializer() {
+            @Override
+            public byte[] serialize(Object object) {
+                return object.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) throws IOException {
+                deserializeCount.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+
+        @SuppressWarnings("unchecked")
+        CompressedCache<String, String> source = CompressedCacheFactory.getOrCreateSimpleCache("snapshot-single-flight-source", 10, String.class, String.class,
+                        CompressedCacheOptions.newOptions().serializer(slowSerializer))
+                .unwrap(CompressedCache.class);
+        source.put("key", "value ".repeat(100));
+        Path snapshot = snapshotDirectory.resolve("single-flight.snapshot");
+        source.writeSnapshot(snapshot);
+
+        @SuppressWarnings("unchecked")
+        CompressedCache<String, String> target = CompressedCacheFactory.getOrCreateSimpleCache("snapshot-single-flight-target", 10, String.class, String.class,
+                        CompressedCacheOptions.newOptions().serializer(slowSerializer))
+                .unwrap(CompressedCache.class);
+        target.loadSnapshot(snapshot);
+        deserializeCount.set(0);
+
+        List<Future<String>> reads = new ArrayList<>();
+        try (ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 8; i++) {
+                reads.add(readers.submit(() -> target.get("key")));
+            }
+        }
+
+        String firstRead = reads.get(0).get();
+        for (Future<String> read : reads) {
+            assertSame(firstRead, read.get());
+        }
+        assertEquals(1, deserializeCount.get());
+    }
+
+    /**
+     * Verifies that snapshots can't be loaded into caches with a different codec
+     * and that incremental snapshots need to be enabled.
+     *
+     * @throws IOException if a snapshot cannot be written
+     */
+    @Test
+    void incompatibleUsageIsRejected() throws IOException {
+        CompressedCache<String, MyValue> source = createCache("snapshot-gzip", CompressedCacheOptions.newOptions());
+        source.put("key", new MyValue("value", 1));
+
+        Path snapshot = snapshotDirectory.resolve("gzip.snapshot");
+        source.writeSnapshot(snapshot);
+        assertThrows(IllegalStateException.class, () -> source.writeIncrementalSnapshot(snapshotDirectory.resolve("incremental.snapshot")));
+
+        CompressedCache<String, MyValue> target = createCache("snapshot-lz4", CompressedCacheOptions.newOptions().codec(new Lz4BlockCodec()));
+        assertThrows(IllegalArgumentException.class, () -> target.loadSnapshot(snapshot));
+        assertNull(target.get("key"));
+    }
+
+    /**
+     * Verifies that snapshots can't be loaded into caches with a different serializer.
+     *
+     * @throws IOException if a snapshot cannot be written
+     */
+    @Test
+    void otherSerializerIsRejected() throws IOException {
+        CompressedCache<String, MyValue> source = createCache("snapshot-generated", CompressedCacheOptions.newOptions().generatedSerializer(true));
+        source.put("key", new MyValue("value", 1));
+
+        Path snapshot = snapshotDirectory.resolve("generated.snapshot");
+        source.writeSnapshot(snapshot);
+
+        CompressedCache<String, MyValue> target = createCache("snapshot-ignite", CompressedCacheOptions.newOptions());
+        assertThrows(IllegalArgumentException.class, () -> target.loadSnapshot(snapshot));
+        assertNull(target.get("key"));
+
+        CompressedCache<String, MyValue> copy = createCache("snapshot-generated-copy", CompressedCacheOptions.newOptions().generatedSerializer(true));
+        assertEquals(1, copy.loadSnapshot(snapshot));
+        assertEquals(new MyValue("value", 1), copy.get("key"));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.os890.cache.CompressedCache;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedCacheStatisticsMXBean;
+import org.os890.cache.ValueSerializer;
+
+import javax.cache.Cache;
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.configuration.Configuration;
+import javax.cache.management.CacheStatisticsMXBean;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the JCache statistics and the compression metrics.
+ */
+class StatisticsTest {
+
+    /**
+     * Configuration type the cache doesn't provide.
+     */
+    private interface OtherConfiguration extends Configuration<String, MyValue> {
+    }
+
+    /**
+     * Verifies that the JCache counters are registered via JMX and unregistered on close.
+     *
+     * @throws Exception if the MBean can't be queried
+     */
+    @Test
+    void jcacheCountersAreRegisteredViaJmx() throws Exception {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("statistics-jmx", 5, String.class, MyValue.class,
+                CompressedCacheOptions.newOptions().statisticsEnabled(true));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("javax.cache:type=CacheStatistics,CacheManager="
+                + ObjectName.quote(CompressedCacheFactory.class.getName()) + ",Cache=" + ObjectName.quote("statistics-jmx"));
+        CacheStatisticsMXBean statistics = JMX.newMXBeanProxy(server, name, CacheStatisticsMXBean.class);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, new MyValue("value " + i, i));
+        }
+        cache.put("key", new MyValue("value", 0));
+        cache.get("key");
+        cache.get("missing");
+        cache.remove("key");
+
+        assertEquals(11, statistics.getCachePuts());
+        assertEquals(1, statistics.getCacheHits());
+        assertEquals(1, statistics.getCacheMisses());
+        assertEquals(50, statistics.getCacheHitPercentage());
+        assertEquals(1, statistics.getCacheRemovals());
+        assertTrue(statistics.getCacheEvictions() >= 6);
+        assertTrue(statistics.getAveragePutTime() > 0);
+
+        statistics.clear();
+        assertEquals(0, statistics.getCachePuts());
+        assertEquals(0, statistics.getCacheEvictions());
+
+        assertTrue(server.isRegistered(new ObjectName("org.os890.cache:type=CompressedCacheStatistics,Cache=" + ObjectName.quote("statistics-jmx"))));
+        cache.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+    /**
+     * Verifies the compression metrics, including failures and soft reference hits.
+     */
+    @Test
+    void compressionMetricsAreRecorded() {
+        ValueSerializer failingSerializer = new ValueSerializer() {
+            @Override
+            public byte[] serialize(Object object) throws IOException {
+                if (object.toString().startsWith("bad")) {
+                    throw new IOException("can't serialise " + object);
+                }
+                return object.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateSimpleCache("statistics-compression", 100, String.class, String.class,
+                CompressedCacheOptions.newOptions()
+                        .serializer(failingSerializer)
+                        .statisticsEnabled(true));
+        CompressedCacheStatisticsMXBean statistics = cache.unwrap(CompressedCache.class).getStatistics();
+
+        cache.put("key", "value ".repeat(100));
+        assertEquals("value ".repeat(100), cache.get("key"));
+        assertThrows(IllegalStateException.class, () -> cache.put("bad", "bad value"));
+
+        assertEquals(1, statistics.getCompressionFailures());
+        assertEquals(1, statistics.getSoftReferenceHits());
+        assertEquals(0, statistics.getSoftReferenceMisses());
+        assertEquals(600, statistics.getSerializedBytes());
+        assertTrue(statistics.getCompressionRatio() > 10);
+        assertEquals(2, Arrays.stream(statistics.getCompressTimeHistogram()).sum());
+        assertTrue(statistics.getCompressTime99thPercentile() > 0);
+        assertTrue(statistics.getCompressedFootprint() > statistics.getStoredBytes());
+
+        cache.close();
+    }
+
+    /**
+     * Verifies that the configuration reflects the options.
+     */
+    @Test
+    void configurationReflectsOptions() {
+        Cache<String, MyValue> cache = CompressedCacheFactory.getOrCreateSimpleCache("statistics-configuration", 10, String.class, MyValue.class);
+
+        @SuppressWarnings("unchecked")
+        CompleteConfiguration<String, MyValue> configuration = cache.getConfiguration(CompleteConfiguration.class);
+        assertFalse(configuration.isStatisticsEnabled());
+        assertFalse(configuration.isReadThrough());
+        assertThrows(IllegalArgumentException.class, () -> cache.getConfiguration(OtherConfiguration.class));
+        assertEquals(0, cache.unwrap(CompressedCache.class).getStatistics().getCacheHits());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.CompressedValueMode;
+import org.os890.cache.ValueSerializer;
+import org.os890.cache.serializer.IgniteBinarySerializer;
+import org.os890.cache.serializer.JavaSerializer;
+
+import javax.cache.Cache;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the value serializers.
+ */
+class ValueSerializerTest {
+
+    private static final AtomicInteger CACHE_COUNTER = new AtomicInteger();
+
+    static List<ValueSerializer> serializers() {
+        return List.of(new IgniteBinarySerializer(), new JavaSerializer());
+    }
+
+    /**
+     * Verifies that values survive the round-trip through a cache with the given serializer.
+     *
+     * @param serializer the serializer under test
+     */
+    @ParameterizedTest
+    @MethodSource("serializers")
+    void valuesRoundTrip(ValueSerializer serializer) {
+        Cache<String, List<String>> cache = CompressedCacheFactory.getOrCreateSimpleCache("serializer-" + CACHE_COUNTER.incrementAndGet(),
+                10, String.class, null, CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .serializer(serializer));
+
+        List<String> value = List.of("value ".repeat(100), "second");
+        cache.put("key", value);
+        assertEquals(value, cache.get("key"));
+    }
+
+    /**
+     * Verifies that a filtered serializer only instantiates the accepted classes.
+     *
+     * @param serializer the serializer under test
+     * @throws IOException if a value cannot be serialised
+     */
+    @ParameterizedTest
+    @MethodSource("serializers")
+    void deserializationFilterRejectsClasses(ValueSerializer serializer) throws IOException {
+        MyValue value = new MyValue("label", 42);
+        byte[] serialised = serializer.serialize(value);
+
+        ValueSerializer rejecting = serializer.withDeserializationFilter(ObjectInputFilter.Config.createFilter("java.base/*;!*"));
+        assertThrows(IOException.class, () -> rejecting.deserialize(serialised));
+        assertEquals(List.of("value"), rejecting.deserialize(serializer.serialize(List.of("value"))));
+
+        ValueSerializer accepting = serializer.withDeserializationFilter(
+                ObjectInputFilter.Config.createFilter(MyValue.class.getName() + ";java.base/*;!*"));
+        assertEquals(value, accepting.deserialize(serialised));
+    }
+
+    /**
+     * Verifies that caches only read back classes of the package of their value class, unless
+     * they configure a filter.
+     *
+     * @param serializer the serializer under test
+     */
+    @ParameterizedTest
+    @MethodSource("serializers")
+    void cachesFilterByTheirValueClass(ValueSerializer serializer) {
+        Cache<String, Object> textCache = CompressedCacheFactory.getOrCreateSimpleCache("serializer-" + CACHE_COUNTER.incrementAndGet(),
+                10, String.class, castClass(CharSequence.class), CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .serializer(serializer));
+        textCache.put("key", new MyValue("label", 42));
+        assertNull(textCache.get("key"));
+
+        Cache<String, Object> filteredCache = CompressedCacheFactory.getOrCreateSimpleCache("serializer-" + CACHE_COUNTER.incrementAndGet(),
+                10, String.class, castClass(CharSequence.class), CompressedCacheOptions.newOptions()
+                        .valueMode(CompressedValueMode.SMALL)
+                        .serializer(serializer)
+                        .deserializationFilter(ObjectInputFilter.Config.createFilter("org.os890.cache.test.*;java.base/*;!*")));
+        filteredCache.put("key", new MyValue("label", 42));
+        assertEquals(new MyValue("label", 42), filteredCache.get("key"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<Object> castClass(Class<?> valueClass) {
+        return (Class<Object>) valueClass;
+    }
+
+    /**
+     * Verifies that the standalone binary format can be read by a new serializer, e.g. after a restart.
+     *
+     * @throws IOException if a value cannot be serialised
+     */
+    @Test
+    void binaryFormatIsReadableByNewInstances() throws IOException {
+        MyValue value = new MyValue("label", 42);
+        byte[] serialised = new IgniteBinarySerializer().serialize(value);
+
+        assertEquals(value, new IgniteBinarySerializer().deserialize(serialised));
+    }
+
+    /**
+     * Verifies that a custom serializer gets used.
+     */
+    @Test
+    void customSerializerIsUsed() {
+        AtomicInteger serialisedValues = new AtomicInteger();
+        ValueSerializer utf8Serializer = new ValueSerializer() {
+            @Override
+            public byte[] serialize(Object object) {
+                serialisedValues.incrementAndGet();
+                return ((String) object).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+
+        Cache<String, String> cache = CompressedCacheFactory.getOrCreateSimpleCache("serializer-custom", 10, String.class, String.class,
+                CompressedCacheOptions.newOptions().serializer(utf8Serializer));
+        cache.put("key", "text ".repeat(100));
+
+        assertEquals("text ".repeat(100), cache.get("key"));
+        assertEquals(1, serialisedValues.get());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the {@link javax.cache.Cache} operations of the Guava-backed compressed cache.
+ *
+ * <p>The thread count is fixed per subclass, the remaining dimensions (compression mode,
+ * value size and compressibility) are JMH parameters of {@link CacheState}.  Run e.g.
+ * {@code java -jar benchmarks/target/benchmarks.jar GuavaWrapperBenchmark -p valueSize=1024}.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Xmx2g",
+        "--add-opens=java.base/jdk.internal.misc=ALL-UNNAMED",
+        "--add-opens=java.base/sun.nio.ch=ALL-UNNAMED",
+        "--add-opens=java.base/sun.reflect.generics.reflectiveObjects=ALL-UNNAMED",
+        "--add-opens=java.base/java.io=ALL-UNNAMED",
+        "--add-opens=java.base/java.nio=ALL-UNNAMED",
+        "--add-opens=java.base/java.util=ALL-UNNAMED",
+        "--add-opens=java.base/java.lang=ALL-UNNAMED",
+        "--add-opens=java.management/com.sun.jmx.mbeanserver=ALL-UNNAMED"})
+public abstract class AbstractGuavaWrapperBenchmark {
+
+    /**
+     * Reads a single value.
+     *
+     * @param state  the cache under test
+     * @param cursor the per-thread key cursor
+     * @return the value read
+     */
+    @Benchmark
+    public BenchmarkValue get(CacheState state, KeyCursor cursor) {
+        return state.cache.get(state.keys[cursor.nextIndex(state.keyCount)]);
+    }
+
+    /**
+     * Overwrites a single value.
+     *
+     * @param state  the cache under test
+     * @param cursor the per-thread key cursor
+     */
+    @Benchmark
+    public void put(CacheState state, KeyCursor cursor) {
+        int index = cursor.nextIndex(state.keyCount);
+        state.cache.put(state.keys[index], state.values[index]);
+    }
+
+    /**
+     * Reads a batch of values.
+     *
+     * @param state  the cache under test
+     * @param cursor the per-thread key cursor
+     * @return the values read
+     */
+    @Benchmark
+    public Map<String, BenchmarkValue> getAll(CacheState state, KeyCursor cursor) {
+        return state.cache.getAll(state.keyBatches.get(cursor.nextIndex(state.keyBatches.size())));
+    }
+
+    /**
+     * Overwrites a batch of values.
+     *
+     * @param state  the cache under test
+     * @param cursor the per-thread key cursor
+     */
+    @Benchmark
+    public void putAll(CacheState state, KeyCursor cursor) {
+        state.cache.putAll(state.valueBatches.get(cursor.nextIndex(state.valueBatches.size())));
+    }
+
+    /**
+     * Overwrites a single value and returns the previous one.
+     *
+     * @param state  the cache under test
+     * @param cursor the per-thread key cursor
+     * @return the previous value
+     */
+    @Benchmark
+    public BenchmarkValue getAndPut(CacheState state, KeyCursor cursor) {
+        int index = cursor.nextIndex(state.keyCount);
+        return state.cache.getAndPut(state.keys[index], state.values[index]);
+    }
+}
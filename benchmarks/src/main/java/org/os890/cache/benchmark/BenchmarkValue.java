@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.benchmark;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Value object stored by the benchmarks.
+ *
+ * <p>Mirrors the typical shape of a cached domain object: a small identifier
+ * plus a payload whose size and compressibility are controlled by the benchmark parameters.</p>
+ */
+public class BenchmarkValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+    private final byte[] payload;
+
+    /**
+     * Creates a new benchmark value.
+     *
+     * @param id      identifier of the value
+     * @param payload payload bytes
+     */
+    public BenchmarkValue(String id, byte[] payload) {
+        this.id = id;
+        this.payload = payload;
+    }
+
+    /**
+     * Returns the identifier.
+     *
+     * @return the identifier
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the payload.
+     *
+     * @return the payload bytes
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Compares this value to the specified object for equality.
+     *
+     * @param o the object to compare with
+     * @return {@code true} if the given object has the same id and payload
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        BenchmarkValue that = (BenchmarkValue) o;
+        return id.equals(that.id) && Arrays.equals(payload, that.payload);
+    }
+
+    /**
+     * Returns a hash code based on the id and payload.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return 31 * id.hashCode() + Arrays.hashCode(payload);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedValueMode;
+
+import javax.cache.Cache;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared benchmark state: one pre-filled compressed cache per parameter combination.
+ *
+ * <p>All keys are inserted during setup, so read benchmarks always hit.  Keys and
+ * batches are created up-front to keep their allocation out of the measurement.</p>
+ */
+@State(Scope.Benchmark)
+public class CacheState {
+
+    private static final AtomicInteger CACHE_COUNTER = new AtomicInteger();
+
+    /**
+     * Compression mode of the cache under test.
+     */
+    @Param({"FAST", "SMALL"})
+    public CompressedValueMode mode;
+
+    /**
+     * Payload size of each value in bytes.
+     */
+    @Param({"100", "1024", "16384", "131072", "1048576"})
+    public int valueSize;
+
+    /**
+     * Compressibility of the payloads.
+     */
+    @Param({"HIGH", "MEDIUM", "NONE"})
+    public Compressibility compressibility;
+
+    /**
+     * Number of distinct keys in the cache.
+     */
+    @Param("64")
+    public int keyCount;
+
+    /**
+     * Number of keys per {@code getAll}/{@code putAll} call.
+     */
+    @Param("16")
+    public int batchSize;
+
+    Cache<String, BenchmarkValue> cache;
+    String[] keys;
+    BenchmarkValue[] values;
+    List<Set<String>> keyBatches;
+    List<Map<String, BenchmarkValue>> valueBatches;
+
+    /**
+     * Creates and fills the cache for the current parameter combination.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        keys = new String[keyCount];
+        values = new BenchmarkValue[keyCount];
+
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "key-" + i;
+            values[i] = new BenchmarkValue(keys[i], compressibility.createPayload(valueSize, random));
+        }
+
+        String cacheName = "benchmark-" + mode + "-" + valueSize + "-" + compressibility + "-" + CACHE_COUNTER.incrementAndGet();
+        cache = CompressedCacheFactory.getOrCreateSimpleCache(cacheName, keyCount, String.class, BenchmarkValue.class, mode);
+
+        for (int i = 0; i < keyCount; i++) {
+            cache.put(keys[i], values[i]);
+        }
+
+        int batchCount = Math.max(1, keyCount / batchSize);
+        keyBatches = new ArrayList<>(batchCount);
+        valueBatches = new ArrayList<>(batchCount);
+
+        for (int batch = 0; batch < batchCount; batch++) {
+            Set<String> batchKeys = new LinkedHashSet<>();
+            Map<String, BenchmarkValue> batchValues = new HashMap<>();
+
+            for (int i = 0; i < batchSize; i++) {
+                int index = (batch * batchSize + i) % keyCount;
+                batchKeys.add(keys[index]);
+                batchValues.put(keys[index], values[index]);
+            }
+            keyBatches.add(batchKeys);
+            valueBatches.add(batchValues);
+        }
+    }
+
+    /**
+     * Releases the cache content.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Controls how well the generated benchmark payloads compress.
+ */
+public enum Compressibility {
+
+    /**
+     * Repetitive, document-like text (roughly 10:1 with GZIP).
+     */
+    HIGH {
+        @Override
+        void fill(byte[] target, Random random) {
+            byte[] fragment = ("{\"status\":\"ACTIVE\",\"region\":\"eu-central\",\"tags\":[\"a\",\"b\"],\"score\":"
+                    + random.nextInt(100) + "},").getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < target.length; i++) {
+                target[i] = fragment[i % fragment.length];
+            }
+        }
+    },
+
+    /**
+     * Text built from a small random vocabulary (roughly 3:1 with GZIP).
+     */
+    MEDIUM {
+        @Override
+        void fill(byte[] target, Random random) {
+            int position = 0;
+            while (position < target.length) {
+                byte[] word = WORDS[random.nextInt(WORDS.length)];
+                int length = Math.min(word.length, target.length - position);
+                System.arraycopy(word, 0, target, position, length);
+                position += length;
+            }
+        }
+    },
+
+    /**
+     * Random bytes, comparable to already-compressed content such as JPEG images.
+     */
+    NONE {
+        @Override
+        void fill(byte[] target, Random random) {
+            random.nextBytes(target);
+        }
+    };
+
+    private static final byte[][] WORDS = createWords();
+
+    /**
+     * Fills the given array with content of this compressibility.
+     *
+     * @param target the array to fill
+     * @param random source of randomness
+     */
+    abstract void fill(byte[] target, Random random);
+
+    /**
+     * Creates a payload of the given size.
+     *
+     * @param size   payload size in bytes
+     * @param random source of randomness
+     * @return the new payload
+     */
+    byte[] createPayload(int size, Random random) {
+        byte[] result = new byte[size];
+        fill(result, random);
+        return result;
+    }
+
+    private static byte[][] createWords() {
+        Random random = new Random(890);
+        byte[][] result = new byte[256][];
+        for (int i = 0; i < result.length; i++) {
+            byte[] word = new byte[3 + random.nextInt(8)];
+            for (int j = 0; j < word.length - 1; j++) {
+                word[j] = (byte) ('a' + random.nextInt(26));
+            }
+            word[word.length - 1] = ' ';
+            result[i] = word;
+        }
+        return result;
+    }
+}
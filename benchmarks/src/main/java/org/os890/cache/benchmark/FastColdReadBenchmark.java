@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedValueMode;
+
+import javax.cache.Cache;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures FAST-mode reads after the garbage collector cleared the soft reference
+ * to the uncompressed value, i.e. the cold decompress-and-unmarshal path.
+ *
+ * <p>Before every invocation the soft reference of the key about to be read is cleared,
+ * so each measured {@code get} has to restore the value from the compressed bytes.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Xmx2g",
+        "--add-opens=java.base/jdk.internal.misc=ALL-UNNAMED",
+        "--add-opens=java.base/sun.nio.ch=ALL-UNNAMED",
+        "--add-opens=java.base/sun.reflect.generics.reflectiveObjects=ALL-UNNAMED",
+        "--add-opens=java.base/java.io=ALL-UNNAMED",
+        "--add-opens=java.base/java.nio=ALL-UNNAMED",
+        "--add-opens=java.base/java.util=ALL-UNNAMED",
+        "--add-opens=java.base/java.lang=ALL-UNNAMED",
+        "--add-opens=java.management/com.sun.jmx.mbeanserver=ALL-UNNAMED"})
+@Threads(1)
+public class FastColdReadBenchmark {
+
+    /**
+     * FAST-mode cache whose soft references get cleared before each read.
+     */
+    @State(Scope.Thread)
+    public static class ColdCacheState {
+
+        private static final AtomicInteger CACHE_COUNTER = new AtomicInteger();
+
+        /**
+         * Payload size of each value in bytes.
+         */
+        @Param({"100", "1024", "16384", "131072", "1048576"})
+        public int valueSize;
+
+        /**
+         * Compressibility of the payloads.
+         */
+        @Param({"HIGH", "MEDIUM", "NONE"})
+        public Compressibility compressibility;
+
+        /**
+         * Number of distinct keys in the cache.
+         */
+        @Param("64")
+        public int keyCount;
+
+        Cache<String, BenchmarkValue> cache;
+        String[] keys;
+        String nextKey;
+        private int position;
+
+        /**
+         * Creates and fills the cache for the current parameter combination.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(42);
+            String cacheName = "benchmark-cold-" + valueSize + "-" + compressibility + "-" + CACHE_COUNTER.incrementAndGet();
+            cache = CompressedCacheFactory.getOrCreateSimpleCache(cacheName, keyCount, String.class, BenchmarkValue.class, CompressedValueMode.FAST);
+            keys = new String[keyCount];
+
+            for (int i = 0; i < keyCount; i++) {
+                keys[i] = "key-" + i;
+                cache.put(keys[i], new BenchmarkValue(keys[i], compressibility.createPayload(valueSize, random)));
+            }
+        }
+
+        /**
+         * Picks the next key and clears its soft reference.
+         */
+        @Setup(Level.Invocation)
+        public void clearSoftReference() {
+            position = (position + 1) % keyCount;
+            nextKey = keys[position];
+            SoftReferenceClearer.clear(cache, nextKey);
+        }
+
+        /**
+         * Releases the cache content.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Reads a value whose soft reference has just been cleared.
+     *
+     * @param state the cache under test
+     * @return the restored value
+     */
+    @Benchmark
+    public BenchmarkValue coldGet(ColdCacheState state) {
+        return state.cache.get(state.nextKey);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-thread cursor over the keys and batches of a {@link CacheState}.
+ *
+ * <p>Each thread starts at a different offset, so concurrent benchmark threads
+ * spread over the key space instead of all hitting the same entry.</p>
+ */
+@State(Scope.Thread)
+public class KeyCursor {
+
+    private static final int THREAD_STRIDE = 13;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private int position = THREAD_COUNTER.getAndIncrement() * THREAD_STRIDE;
+
+    /**
+     * Returns the index of the next key.
+     *
+     * @param keyCount number of keys
+     * @return the next key index
+     */
+    int nextIndex(int keyCount) {
+        position = (position + 1) % keyCount;
+        return position;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.os890.cache.ValueSerializer;
+import org.os890.cache.serializer.GeneratedSerializer;
+import org.os890.cache.serializer.IgniteBinarySerializer;
+import org.os890.cache.serializer.JavaSerializer;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the serializer generated for {@link BenchmarkValue} with the generic serializers,
+ * without compression, e.g.
+ * {@code java -jar benchmarks/target/benchmarks.jar SerializerBenchmark -p valueSize=100}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Xmx2g",
+        "--add-opens=java.base/jdk.internal.misc=ALL-UNNAMED",
+        "--add-opens=java.base/sun.nio.ch=ALL-UNNAMED",
+        "--add-opens=java.base/sun.reflect.generics.reflectiveObjects=ALL-UNNAMED",
+        "--add-opens=java.base/java.io=ALL-UNNAMED",
+        "--add-opens=java.base/java.nio=ALL-UNNAMED",
+        "--add-opens=java.base/java.util=ALL-UNNAMED",
+        "--add-opens=java.base/java.lang=ALL-UNNAMED",
+        "--add-opens=java.management/com.sun.jmx.mbeanserver=ALL-UNNAMED"})
+@Threads(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    /**
+     * Serializers to compare.
+     */
+    public enum SerializerSetup {
+        /** Serializer generated for {@link BenchmarkValue}. */
+        GENERATED,
+        /** Ignite binary format without a node. */
+        IGNITE_BINARY,
+        /** Java serialization. */
+        JAVA
+    }
+
+    /**
+     * Serializer under test.
+     */
+    @Param({"GENERATED", "IGNITE_BINARY", "JAVA"})
+    public SerializerSetup serializerSetup;
+
+    /**
+     * Payload size of the value in bytes.
+     */
+    @Param({"100", "1024", "16384"})
+    public int valueSize;
+
+    private ValueSerializer serializer;
+    private BenchmarkValue value;
+    private byte[] serialised;
+
+    /**
+     * Creates the serializer and the value.
+     *
+     * @throws IOException if the value cannot be serialised
+     */
+    @Setup
+    public void setUp() throws IOException {
+        switch (serializerSetup) {
+            case GENERATED:
+                serializer = new GeneratedSerializer(BenchmarkValue.class, IgniteBinarySerializer.getDefault());
+                break;
+            case IGNITE_BINARY:
+                serializer = IgniteBinarySerializer.getDefault();
+                break;
+            case JAVA:
+                serializer = new JavaSerializer();
+                break;
+            default:
+                throw new IllegalStateException("unknown setup " + serializerSetup);
+        }
+
+        value = new BenchmarkValue("key-1", Compressibility.MEDIUM.createPayload(valueSize, new Random(42)));
+        serialised = serializer.serialize(value);
+    }
+
+    /**
+     * Serialises the value, the part of {@code put} before compression.
+     *
+     * @return the serialised form
+     * @throws IOException if the value cannot be serialised
+     */
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return serializer.serialize(value);
+    }
+
+    /**
+     * Deserialises the value, the part of a cold {@code get} after decompression.
+     *
+     * @return the restored value
+     * @throws IOException if the value cannot be deserialised
+     */
+    @Benchmark
+    public Object deserialize() throws IOException {
+        return serializer.deserialize(serialised);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.benchmark;
+
+import org.os890.cache.internal.FastCompressedEntry;
+import org.os890.cache.internal.GuavaWrapper;
+
+import javax.cache.Cache;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.SoftReference;
+
+/**
+ * Reaches into the cache internals to simulate a garbage collector that cleared
+ * the {@link SoftReference} of a {@link FastCompressedEntry}.
+ *
+ * <p>Only used to measure the cold decompression path of FAST mode.</p>
+ */
+final class SoftReferenceClearer {
+
+    private static final VarHandle WRAPPED_CACHE;
+    private static final VarHandle TRANSIENT_VALUE_REF;
+
+    static {
+        try {
+            WRAPPED_CACHE = MethodHandles.privateLookupIn(GuavaWrapper.class, MethodHandles.lookup())
+                    .findVarHandle(GuavaWrapper.class, "wrappedCache", com.google.common.cache.Cache.class);
+            TRANSIENT_VALUE_REF = MethodHandles.privateLookupIn(FastCompressedEntry.class, MethodHandles.lookup())
+                    .findVarHandle(FastCompressedEntry.class, "transientValueRef", SoftReference.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private SoftReferenceClearer() {
+    }
+
+    /**
+     * Drops the uncompressed value cached for the given key, so the next read has to decompress.
+     *
+     * @param cache the compressed cache
+     * @param key   the key whose uncompressed value gets dropped
+     */
+    static void clear(Cache<?, ?> cache, Object key) {
+        com.google.common.cache.Cache<?, ?> wrappedCache = (com.google.common.cache.Cache<?, ?>) WRAPPED_CACHE.get(cache);
+        Object entry = wrappedCache.getIfPresent(key);
+
+        if (entry instanceof FastCompressedEntry) {
+            TRANSIENT_VALUE_REF.set(entry, (SoftReference<?>) null);
+        }
+    }
+}
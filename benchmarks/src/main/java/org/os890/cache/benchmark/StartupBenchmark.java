@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.os890.cache.benchmark;
+
+import org.apache.ignite.Ignite;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.configuration.IgniteConfiguration;
+import org.apache.ignite.internal.binary.BinaryMarshaller;
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.os890.cache.CompressedCacheFactory;
+import org.os890.cache.CompressedCacheOptions;
+import org.os890.cache.ValueSerializer;
+import org.os890.cache.serializer.IgniteBinarySerializer;
+import org.os890.cache.serializer.IgniteNodeSerializer;
+import org.os890.cache.serializer.JavaSerializer;
+
+import javax.cache.Cache;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time until a freshly started JVM has stored and read its first value,
+ * and the number of live threads afterwards, per serializer.
+ *
+ * <p>{@code IGNITE_NODE} reproduces the former behaviour of {@link CompressedCacheFactory}:
+ * an Ignite server node with TCP discovery on 127.0.0.1 provides the marshaller.  The other
+ * setups serialise without a node.  Every fork measures one cold start.</p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 5, jvmArgsAppend = {
+        "-Xmx2g",
+        "--add-opens=java.base/jdk.internal.misc=ALL-UNNAMED",
+        "--add-opens=java.base/sun.nio.ch=ALL-UNNAMED",
+        "--add-opens=java.base/sun.reflect.generics.reflectiveObjects=ALL-UNNAMED",
+        "--add-opens=java.base/java.io=ALL-UNNAMED",
+        "--add-opens=java.base/java.nio=ALL-UNNAMED",
+        "--add-opens=java.base/java.util=ALL-UNNAMED",
+        "--add-opens=java.base/java.lang=ALL-UNNAMED",
+        "--add-opens=java.management/com.sun.jmx.mbeanserver=ALL-UNNAMED"})
+@Threads(1)
+public class StartupBenchmark {
+
+    /**
+     * Serialisation setups to compare.
+     */
+    public enum SerializerSetup {
+        /** Marshaller of an embedded Ignite server node, the former default. */
+        IGNITE_NODE,
+        /** Ignite binary marshaller without a node. */
+        IGNITE_BINARY,
+        /** Java serialization. */
+        JAVA
+    }
+
+    /**
+     * The serializer setup of the current fork.
+     */
+    @State(Scope.Benchmark)
+    public static class StartupState {
+
+        /**
+         * Serialisation setup to start.
+         */
+        @Param({"IGNITE_NODE", "IGNITE_BINARY", "JAVA"})
+        public SerializerSetup serializerSetup;
+
+        /**
+         * Stops the Ignite node, if one was started.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            Ignition.stopAll(true);
+        }
+    }
+
+    /**
+     * Number of live threads after the first value was read, reported next to the time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ThreadCount {
+
+        /**
+         * Live threads of the JVM, including the JMH threads.
+         */
+        public int liveThreads;
+    }
+
+    /**
+     * Starts the serializer, creates a cache and stores and reads one value.
+     *
+     * @param state       the serializer setup
+     * @param threadCount receives the number of live threads
+     * @return the value read from the cache
+     */
+    @Benchmark
+    public BenchmarkValue firstReadAfterStart(StartupState state, ThreadCount threadCount) {
+        CompressedCacheOptions options = CompressedCacheOptions.newOptions().serializer(createSerializer(state.serializerSetup));
+        Cache<String, BenchmarkValue> cache = CompressedCacheFactory.getOrCreateSimpleCache(
+                "startup-" + state.serializerSetup, 10, String.class, BenchmarkValue.class, options);
+
+        cache.put("key", new BenchmarkValue("key", Compressibility.MEDIUM.createPayload(1024, new Random(42))));
+        BenchmarkValue result = cache.get("key");
+        threadCount.liveThreads = Thread.activeCount();
+        return result;
+    }
+
+    private static ValueSerializer createSerializer(SerializerSetup serializerSetup) {
+        switch (serializerSetup) {
+            case IGNITE_NODE:
+                return new IgniteNodeSerializer(startIgniteNode());
+            case IGNITE_BINARY:
+                return new IgniteBinarySerializer();
+            case JAVA:
+                return new JavaSerializer();
+            default:
+                throw new IllegalStateException(serializerSetup + " isn't supported");
+        }
+    }
+
+    private static Ignite startIgniteNode() {
+        System.setProperty("IGNITE_UPDATE_NOTIFIER", "false");
+        System.setProperty("IGNITE_QUIET", "true");
+        System.setProperty("IGNITE_NO_ASCII", "true");
+
+        TcpDiscoverySpi nodeDiscovery = new TcpDiscoverySpi();
+        TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder();
+        ipFinder.setAddresses(Collections.singletonList("127.0.0.1"));
+        nodeDiscovery.setIpFinder(ipFinder);
+
+        // Ignite deprecated setMarshaller/getMarshaller but no replacement
+        // exists for explicitly configuring the marshaller.
+        @SuppressWarnings("deprecation")
+        IgniteConfiguration configuration = new IgniteConfiguration()
+                .setDiscoverySpi(nodeDiscovery)
+                .setMarshaller(new BinaryMarshaller());
+        return Ignition.start(configuration);
+    }
+}